@@ -8,6 +8,7 @@ import eu.nimble.service.catalogue.exception.InvalidCategoryException;
 import eu.nimble.service.catalogue.index.ItemIndexClient;
 import eu.nimble.service.catalogue.persistence.util.CatalogueLinePersistenceUtil;
 import eu.nimble.service.catalogue.persistence.util.CataloguePersistenceUtil;
+import eu.nimble.service.catalogue.persistence.util.CatalogueVersionRegistry;
 import eu.nimble.service.catalogue.util.DataIntegratorUtil;
 import eu.nimble.service.catalogue.util.SpringBridge;
 import eu.nimble.service.catalogue.util.migration.r10.VatMigrationUtility;
@@ -68,6 +69,8 @@ public class AdminController {
     private ItemIndexClient itemIndexClient;
     @Autowired
     private CatalogueService catalogueService;
+    @Autowired
+    private CatalogueVersionRegistry catalogueVersionRegistry;
 
     @Autowired
     private IValidationUtil validationUtil;
@@ -325,7 +328,8 @@ public class AdminController {
         for (CatalogueLineType catalogueLine : catalogueLines) {
             try {
                 DataIntegratorUtil.setParentCategories(catalogueLine.getGoodsItem().getItem().getCommodityClassification());
-                catalogueRepo.updateEntity(catalogueLine);
+                Object[] catalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(catalogueLine.getGoodsItem().getItem().getCatalogueDocumentReference().getID());
+                catalogueVersionRegistry.update((String) catalogueIdAndPartyId[1], (String) catalogueIdAndPartyId[0], () -> catalogueRepo.updateEntity(catalogueLine));
             } catch (InvalidCategoryException e) {
                 String msg = String.format("Catalogue: %s,catalogue line: %s has an invalid category",catalogueLine.getGoodsItem().getItem().getCatalogueDocumentReference().getID(),catalogueLine.getID());
                 logger.error(msg,e);
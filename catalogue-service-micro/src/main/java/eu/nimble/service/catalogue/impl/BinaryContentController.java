@@ -1,6 +1,10 @@
 package eu.nimble.service.catalogue.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.nimble.service.catalogue.image.ImageVariantManager;
+import eu.nimble.service.catalogue.persistence.util.BinaryContentHashRegistry;
+import eu.nimble.service.catalogue.persistence.util.BinaryContentStreamer;
+import eu.nimble.service.catalogue.persistence.util.ImageVariantStore.Variant;
 import eu.nimble.service.model.ubl.catalogue.CatalogueType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.BinaryObjectType;
 import eu.nimble.utility.ExecutionContext;
@@ -17,6 +21,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -24,21 +32,43 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Controller
 public class BinaryContentController {
 
     private static Logger logger = LoggerFactory.getLogger(BinaryContentController.class);
+    // size of the buffer used while streaming the raw binary contents
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     @Autowired
     private ExecutionContext executionContext;
+    @Autowired
+    private BinaryContentStreamer binaryContentStreamer;
+    @Autowired
+    private BinaryContentHashRegistry binaryContentHashRegistry;
+    @Autowired
+    private ImageVariantManager imageVariantManager;
+
+    // contents are never modified once they are stored with a uri, so they can be cached as long as possible
+    @Value("${nimble.catalog.binary-content.cache-control:public, max-age=31536000, immutable}")
+    private String cacheControl;
+    @Value("${nimble.catalog.binary-content.max-ranges:16}")
+    private int maxRanges;
 
     @CrossOrigin(origins = {"*"})
     @ApiOperation(value = "", notes = "Retrieves a specified binary content wrapped inside a BinaryCbjectType instance.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Retrieved the binary content successfully", response = CatalogueType.class),
+            @ApiResponse(code = 304, message = "The binary content has not been modified since the version specified in the If-None-Match header"),
             @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
             @ApiResponse(code = 404, message = "No binary content exists for the specified uri"),
             @ApiResponse(code = 500, message = "Unexpected error while getting binary content"),
@@ -47,7 +77,8 @@ public class BinaryContentController {
             method = RequestMethod.GET,
             produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity getBinaryContent(@ApiParam(value = "Uri of the binary content to be retrieved", required = true) @RequestParam(value = "uri") String uri,
-                                           @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization") String bearerToken) {
+                                           @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization") String bearerToken,
+                                           @ApiParam(value = "ETags of the cached versions of the binary content", required = false) @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
             // set request log of ExecutionContext
             String requestLog = String.format("Request to retrieve binary content for uri: %s", uri);
@@ -55,6 +86,17 @@ public class BinaryContentController {
 
             logger.info(requestLog);
 
+            // the JSON representation has its own ETag, different from the one of the raw content
+            String hash = binaryContentHashRegistry.getHash(uri);
+            if(hash == null){
+                throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_BINARY_CONTENT.toString(), Arrays.asList(uri));
+            }
+            String eTag = "\"" + hash + "-json\"";
+            if (isNotModified(ifNoneMatch, eTag)) {
+                logger.info("Binary content for uri: {} is not modified", uri);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).header(HttpHeaders.CACHE_CONTROL, cacheControl).build();
+            }
+
             BinaryObjectType result = new BinaryContentService().retrieveContent(uri);
             // check whether the binary content exists or not
             if(result == null){
@@ -65,7 +107,7 @@ public class BinaryContentController {
             String response = objectMapper.writeValueAsString(result);
 
             logger.info("Completed request to retrieve binary content for uri: {}", uri);
-            return ResponseEntity.ok().body(response);
+            return ResponseEntity.ok().eTag(eTag).header(HttpHeaders.CACHE_CONTROL, cacheControl).body(response);
 
         } catch (Exception e) {
             throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_GET_BINARY_CONTENT.toString(),Arrays.asList(uri),e);
@@ -110,11 +152,15 @@ public class BinaryContentController {
     }
 
     @CrossOrigin(origins = {"*"})
-    @ApiOperation(value = "", notes = "Retrieves a specified binary content in raw Base64 encoded format.")
+    @ApiOperation(value = "", notes = "Retrieves a specified binary content in raw Base64 encoded format. Parts of the content " +
+            "can be retrieved by specifying one or more byte ranges in the Range header.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Retrieved the binary content successfully", response = CatalogueType.class),
+            @ApiResponse(code = 206, message = "Retrieved the requested ranges of the binary content successfully"),
+            @ApiResponse(code = 304, message = "The binary content has not been modified since the version specified in the If-None-Match header"),
             @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
             @ApiResponse(code = 404, message = "No binary content exists for the specified uri"),
+            @ApiResponse(code = 416, message = "None of the requested ranges is within the binary content"),
             @ApiResponse(code = 500, message = "Unexpected error while getting binary content"),
     })
     @RequestMapping(value = "/binary-content/raw",
@@ -122,32 +168,223 @@ public class BinaryContentController {
             produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     public void getBase64BinaryContent(@ApiParam(value = "Uri of the binary content to be retrieved", required = true) @RequestParam(value = "uri") String uri,
                                        @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization") String bearerToken,
+                                       @ApiParam(value = "Byte ranges of the content to be retrieved. e.g. bytes=0-1023", required = false) @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                       @ApiParam(value = "ETags of the cached versions of the binary content", required = false) @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
                                        HttpServletResponse response) {
         try {
             // set request log of ExecutionContext
-            String requestLog = String.format("Request to retrieve raw binary content for uri: %s", uri);
+            String requestLog = String.format("Request to retrieve raw binary content for uri: %s, range: %s", uri, range);
             executionContext.setRequestLog(requestLog);
 
             logger.info(requestLog);
-            BinaryObjectType result = new BinaryContentService().retrieveContent(uri);
-            // check whether the binary content exists or not
-            if(result == null){
-                throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_BINARY_CONTENT.toString(),Arrays.asList(uri),true);
-            }
+            boolean exists;
             try {
-                response.setHeader("Content-disposition", "attachment; filename=" + result.getFileName());
-                response.addHeader("Access-Control-Expose-Headers", "Content-Disposition");
-                IOUtils.write(result.getValue(), response.getOutputStream());
-                response.flushBuffer();
-
-                logger.info("Completed the request to retrieve raw binary content for uri: {}", uri);
+                // the hash is kept separately, so that the cached contents are validated without reading them
+                String hash = binaryContentHashRegistry.getHash(uri);
+                exists = hash != null;
+                if (exists) {
+                    String eTag = "\"" + hash + "\"";
+                    response.setHeader(HttpHeaders.ETAG, eTag);
+                    response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+                    if (isNotModified(ifNoneMatch, eTag)) {
+                        response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                        logger.info("Raw binary content for uri: {} is not modified", uri);
+                        return;
+                    }
+                    // the content is streamed from the database instead of being loaded into the memory
+                    exists = binaryContentStreamer.consumeContent(uri, content -> writeContent(content, range, response));
+                }
+                if (exists) {
+                    response.flushBuffer();
+                    logger.info("Completed the request to retrieve raw binary content for uri: {}", uri);
+                }
 
             } catch (IOException e) {
                 throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_WRITE_BINARY_CONTENT_TO_OUTPUT_STREAM.toString(),Arrays.asList(uri),e,true);
             }
+            // check whether the binary content exists or not
+            if(!exists){
+                throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_BINARY_CONTENT.toString(),Arrays.asList(uri),true);
+            }
 
         } catch (Exception e) {
             throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_GET_BASE_64_BINARY_CONTENT.toString(),Arrays.asList(uri),e,true);
         }
     }
-}
\ No newline at end of file
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Retrieves a resized variant of a specified image. The variant fits into the specified " +
+            "width and height while keeping the aspect ratio of the image. Images are never scaled up. The width and height are " +
+            "rounded up to the next fixed size and the quality is rounded to the nearest fixed quality. Variants are generated " +
+            "once and served from the variant store afterwards.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Retrieved the image variant successfully"),
+            @ApiResponse(code = 304, message = "The image variant has not been modified since the version specified in the If-None-Match header"),
+            @ApiResponse(code = 400, message = "Invalid size, format or quality, or the binary content is not an image or has too many pixels"),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 404, message = "No binary content exists for the specified uri"),
+            @ApiResponse(code = 500, message = "Unexpected error while getting the image variant"),
+            @ApiResponse(code = 503, message = "Too many image variants are waiting to be generated")
+    })
+    // the content type is set per response, as the error messages are returned as text
+    @RequestMapping(value = "/binary-content/variant",
+            method = RequestMethod.GET)
+    public ResponseEntity getImageVariant(@ApiParam(value = "Uri of the image", required = true) @RequestParam(value = "uri") String uri,
+                                          @ApiParam(value = "Maximum width of the variant in pixels", required = false) @RequestParam(value = "width", required = false, defaultValue = "0") int width,
+                                          @ApiParam(value = "Maximum height of the variant in pixels", required = false) @RequestParam(value = "height", required = false, defaultValue = "0") int height,
+                                          @ApiParam(value = "Format of the variant. jpg or png", required = false) @RequestParam(value = "format", required = false, defaultValue = ImageVariantManager.FORMAT_JPG) String format,
+                                          @ApiParam(value = "Quality of the jpg variants, between 1 and 100", required = false) @RequestParam(value = "quality", required = false, defaultValue = "80") int quality,
+                                          @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization") String bearerToken,
+                                          @ApiParam(value = "ETags of the cached versions of the image variant", required = false) @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Request to retrieve image variant for uri: %s, width: %d, height: %d, format: %s, quality: %d", uri, width, height, format, quality);
+        executionContext.setRequestLog(requestLog);
+
+        logger.info(requestLog);
+
+        // validate the parameters
+        if (width <= 0 && height <= 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("At least one of the width and height must be specified");
+        }
+        if (width < 0 || height < 0 || width > imageVariantManager.getMaxSize() || height > imageVariantManager.getMaxSize()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(String.format("Width and height must be between 1 and %d", imageVariantManager.getMaxSize()));
+        }
+        format = format.toLowerCase();
+        if (!ImageVariantManager.FORMATS.contains(format)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(String.format("Format must be one of %s", ImageVariantManager.FORMATS));
+        }
+        if (quality < 1 || quality > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Quality must be between 1 and 100");
+        }
+
+        Variant variant;
+        try {
+            variant = imageVariantManager.getVariant(uri, width, height, format, quality);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rejected the image variant request for uri: {} as the generation queue is full", uri);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many image variants are waiting to be generated. Please try again later.");
+        } catch (Exception e) {
+            throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_GET_BINARY_CONTENT.toString(),Arrays.asList(uri),e);
+        }
+        // check whether the binary content exists or not
+        if (variant == null) {
+            throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_BINARY_CONTENT.toString(), Arrays.asList(uri));
+        }
+
+        String eTag = "\"" + variant.getHash() + "\"";
+        if (isNotModified(ifNoneMatch, eTag)) {
+            logger.info("Image variant for uri: {} is not modified", uri);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).header(HttpHeaders.CACHE_CONTROL, cacheControl).build();
+        }
+
+        logger.info("Completed request to retrieve image variant for uri: {}", uri);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(variant.getMimeCode()))
+                .contentLength(variant.getContent().length)
+                .eTag(eTag)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                .body(variant.getContent());
+    }
+
+    /**
+     * Checks whether the given ETag is among the ones of the If-None-Match header. As specified for If-None-Match, the
+     * weak comparison is used.
+     */
+    private static boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String requestedETag : ifNoneMatch.split(",")) {
+            requestedETag = requestedETag.trim();
+            if (requestedETag.startsWith("W/")) {
+                requestedETag = requestedETag.substring(2);
+            }
+            if (requestedETag.equals("*") || requestedETag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the whole content or the requested ranges of it. A single range is written as the response body, while
+     * multiple ranges are written as a multipart/byteranges body. Invalid range headers are ignored as allowed by RFC 7233.
+     */
+    private void writeContent(BinaryContentStreamer.Content content, String rangeHeader, HttpServletResponse response) throws IOException {
+        long length = content.getLength();
+        response.setHeader("Content-disposition", "attachment; filename=" + content.getFileName());
+        response.addHeader("Access-Control-Expose-Headers", "Content-Disposition");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        List<HttpRange> ranges = new ArrayList<>();
+        if (rangeHeader != null) {
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring invalid range header: {}", rangeHeader);
+            }
+        }
+
+        if (ranges.isEmpty()) {
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(length));
+            copy(content, 0, length, response.getOutputStream());
+            return;
+        }
+
+        // the ranges starting after the end of the content are skipped
+        List<long[]> satisfiableRanges = new ArrayList<>();
+        if (ranges.size() <= maxRanges) {
+            for (HttpRange range : ranges) {
+                try {
+                    long start = range.getRangeStart(length);
+                    long end = range.getRangeEnd(length);
+                    // HttpRange does not check the start of the range against the length of the content
+                    if (start >= length || start > end) {
+                        logger.debug("Skipping unsatisfiable range: {}", range);
+                        continue;
+                    }
+                    satisfiableRanges.add(new long[]{start, end});
+                } catch (IllegalArgumentException e) {
+                    logger.debug("Skipping unsatisfiable range: {}", range);
+                }
+            }
+        } else {
+            logger.warn("Rejecting range header with {} ranges, at most {} ranges are served", ranges.size(), maxRanges);
+        }
+        if (satisfiableRanges.isEmpty()) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        String contentType = content.getMimeCode() != null ? content.getMimeCode() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        if (satisfiableRanges.size() == 1) {
+            long[] range = satisfiableRanges.get(0);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", range[0], range[1], length));
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(range[1] - range[0] + 1));
+            copy(content, range[0], range[1] - range[0] + 1, response.getOutputStream());
+            return;
+        }
+
+        String boundary = UUID.randomUUID().toString();
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        OutputStream out = response.getOutputStream();
+        for (long[] range : satisfiableRanges) {
+            String partHeader = String.format("\r\n--%s\r\n%s: %s\r\n%s: bytes %d-%d/%d\r\n\r\n",
+                    boundary, HttpHeaders.CONTENT_TYPE, contentType, HttpHeaders.CONTENT_RANGE, range[0], range[1], length);
+            out.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+            copy(content, range[0], range[1] - range[0] + 1, out);
+        }
+        out.write(String.format("\r\n--%s--\r\n", boundary).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void copy(BinaryContentStreamer.Content content, long start, long length, OutputStream out) throws IOException {
+        try (InputStream in = content.getStream(start, length)) {
+            IOUtils.copyLarge(in, out, new byte[STREAM_BUFFER_SIZE]);
+        }
+    }
+}
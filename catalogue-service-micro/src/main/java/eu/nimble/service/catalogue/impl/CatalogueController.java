@@ -1,20 +1,30 @@
 package eu.nimble.service.catalogue.impl;
 
+import eu.nimble.service.catalogue.CataloguePurgeManager;
 import eu.nimble.service.catalogue.CatalogueService;
 import eu.nimble.service.catalogue.config.RoleConfig;
 import eu.nimble.service.catalogue.exception.CatalogueServiceException;
+import eu.nimble.service.catalogue.exception.CatalogueVersionConflictException;
+import eu.nimble.service.catalogue.exception.UploadSessionClosedException;
 import eu.nimble.service.catalogue.model.catalogue.CatalogueLineSortOptions;
 import eu.nimble.service.catalogue.model.catalogue.CataloguePaginationResponse;
+import eu.nimble.service.catalogue.model.upload.UploadJob;
+import eu.nimble.service.catalogue.model.upload.UploadMergeResult;
+import eu.nimble.service.catalogue.model.upload.UploadSession;
 import eu.nimble.service.catalogue.persistence.util.CatalogueDatabaseAdapter;
 import eu.nimble.service.catalogue.persistence.util.CataloguePersistenceUtil;
-import eu.nimble.service.catalogue.persistence.util.LockPool;
+import eu.nimble.service.catalogue.persistence.util.CatalogueVersionRegistry;
+import eu.nimble.service.catalogue.upload.ChunkedUploadManager;
+import eu.nimble.service.catalogue.upload.UploadJobManager;
 import eu.nimble.service.catalogue.util.CatalogueEvent;
+import eu.nimble.service.catalogue.util.SpringBridge;
 import eu.nimble.service.catalogue.validation.CatalogueValidator;
 import eu.nimble.service.catalogue.validation.ValidationMessages;
 import eu.nimble.service.model.modaml.catalogue.TEXCatalogType;
 import eu.nimble.service.model.ubl.catalogue.CatalogueType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyNameType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
 import eu.nimble.utility.*;
 import eu.nimble.utility.exception.BinaryContentException;
 import eu.nimble.utility.exception.NimbleException;
@@ -26,10 +36,10 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -39,10 +49,14 @@ import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -54,6 +68,8 @@ import java.util.zip.ZipInputStream;
 public class CatalogueController {
 
     private String defaultLanguage = "en";
+    // templates are always published into the default catalogue of the party
+    private static final String TEMPLATE_CATALOGUE_ID = "default";
 
     private static Logger log = LoggerFactory
             .getLogger(CatalogueController.class);
@@ -65,11 +81,21 @@ public class CatalogueController {
     @Autowired
     private ResourceValidationUtility resourceValidationUtil;
     @Autowired
-    private LockPool lockPool;
-    @Autowired
     private IValidationUtil validationUtil;
     @Autowired
     private ExecutionContext executionContext;
+    @Autowired
+    private UploadJobManager uploadJobManager;
+    @Autowired
+    private ChunkedUploadManager chunkedUploadManager;
+    @Autowired
+    private CataloguePurgeManager cataloguePurgeManager;
+    @Autowired
+    private CatalogueVersionRegistry catalogueVersionRegistry;
+
+    // number of times a template upload is parsed again when the catalogue is updated concurrently
+    @Value("${nimble.catalog.upload.conflict-retries:1}")
+    private int uploadConflictRetries;
 
     @CrossOrigin(origins = {"*"})
     @ApiOperation(value = "", notes = "Retrieves the default CataloguePaginationResponse for the specified party.")
@@ -431,7 +457,7 @@ public class CatalogueController {
     }
 
     @CrossOrigin(origins = {"*"})
-    @ApiOperation(value = "", notes = "Deletes the specified catalogues")
+    @ApiOperation(value = "", notes = "Deletes the specified catalogues. When all the catalogues of the party are deleted, they are not available anymore once the request completes, while their data is removed from the database in the background")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Specified catalogue has been deleted successfully"),
             @ApiResponse(code = 401, message = "Invalid token"),
@@ -455,12 +481,16 @@ public class CatalogueController {
                 throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
             }
 
-            // if all the catalogues is requested to be deleted get the identifiers first
+            // all the catalogues of the party are hidden and removed from the index right away, while their rows are
+            // removed in the background
             if(deleteAll) {
-                ids = CataloguePersistenceUtil.getCatalogueIdListsForParty(partyId);
-            }
+                List<String> uuids = cataloguePurgeManager.purgeCataloguesForParty(partyId);
+                Map<String,String> paramMap = new HashMap<String, String>();
+                paramMap.put("activity", CatalogueEvent.CATALOGUE_DELETE.getActivity());
+                paramMap.put("companyId", partyId);
+                LoggerUtils.logWithMDC(log, paramMap, LoggerUtils.LogLevel.INFO, "Successfully deleted catalogues: {} for company: {}", uuids, partyId);
 
-            if(ids != null){
+            } else if(ids != null){
                 for (String id : ids) {
                     service.deleteCatalogue(id, partyId);
                     Map<String,String> paramMap = new HashMap<String, String>();
@@ -508,9 +538,9 @@ public class CatalogueController {
             throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
         }
 
-        Workbook template;
+        byte[] template;
         try {
-            template = service.generateTemplateForCategory(categoryIds, taxonomyIds,templateLanguage);
+            template = service.getTemplateContentForCategory(categoryIds, taxonomyIds,templateLanguage);
         } catch (Exception e) {
             throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_GENERATE_TEMPLATE.toString(),e,true);
         }
@@ -519,7 +549,8 @@ public class CatalogueController {
             String fileName = "product_data_template.xlsx";
             response.setHeader("Content-disposition", "attachment; filename=" + fileName);
             response.addHeader("Access-Control-Expose-Headers", "Content-Disposition");
-            template.write(response.getOutputStream());
+            response.setContentLength(template.length);
+            response.getOutputStream().write(template);
             response.flushBuffer();
             log.info("Completed the request to generate template");
         } catch (IOException e) {
@@ -538,6 +569,7 @@ public class CatalogueController {
             @ApiResponse(code = 200, message = "Persisted uploaded template successfully and returned the corresponding catalogue", response = CatalogueType.class),
             @ApiResponse(code = 400, message = "Invalid template content"),
             @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 409, message = "The catalogue has been updated by another request while the template was being processed"),
             @ApiResponse(code = 500, message = "Unexpected error while uploading the template")
     })
     @RequestMapping(value = "/catalogue/template/upload",
@@ -566,27 +598,7 @@ public class CatalogueController {
 
             CatalogueType catalogue;
 
-            // lock the update for the specified party
-            try {
-                lockPool.getLockForParty(partyId).writeLock().lock();
-
-                // parse catalogue
-                try {
-                    catalogue = service.parseCatalogue(file.getInputStream(), uploadMode, party, includeVat);
-                } catch (Exception e) {
-                    throw new NimbleException(NimbleExceptionMessageCode.BAD_REQUEST_PARSE_CATALOGUE.toString(),e);
-                }
-
-                // save catalogue
-                // check whether an insert or update operations is needed
-                if (catalogue.getHjid() == null) {
-                    catalogue = service.addCatalogue(catalogue, Configuration.Standard.UBL);
-                } else {
-                    catalogue = service.updateCatalogue(catalogue);
-                }
-            } finally {
-                lockPool.getLockForParty(partyId).writeLock().unlock();
-            }
+            catalogue = saveTemplate(file::getInputStream, uploadMode, party, includeVat, null);
 
             URI catalogueURI;
             try {
@@ -599,6 +611,10 @@ public class CatalogueController {
             }
 
 
+        } catch (CatalogueVersionConflictException e) {
+            log.info(e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+
         } catch (Exception e) {
             throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_UPLOAD_TEMPLATE.toString(),e);
         }
@@ -702,6 +718,497 @@ public class CatalogueController {
         }
     }
 
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Stages the provided template and publishes its contents in the background. The " +
+            "response contains the upload job whose status can be followed via the job id. See the synchronous template " +
+            "upload service for the details of the template.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 202, message = "Staged the template and queued the upload job successfully", response = UploadJob.class),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 503, message = "Too many upload jobs are waiting to be processed"),
+            @ApiResponse(code = 500, message = "Unexpected error while uploading the template")
+    })
+    @RequestMapping(value = "/catalogue/template/upload/async",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = {"application/json"},
+            method = RequestMethod.POST)
+    public ResponseEntity uploadTemplateAsync(
+            @ApiParam(value = "Filled in excel-based template", required = true) @RequestParam("file") MultipartFile file,
+            @ApiParam(value = "Upload mode for the catalogue. Possible options are: append and replace", defaultValue = "append") @RequestParam(value = "uploadMode", defaultValue = "append") String uploadMode,
+            @ApiParam(value = "Identifier of the party for which the catalogue will be published", required = true) @RequestParam("partyId") String partyId,
+            @ApiParam(value = "Whether VAT should be set for the uploaded products or not", required = true) @RequestParam(value = "includeVat", defaultValue = "true") Boolean includeVat ,
+            @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Incoming request to upload template asynchronously upload mode: %s, party id: %s", uploadMode, partyId);
+        executionContext.setRequestLog(requestLog);
+
+        log.info(requestLog);
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        UploadJob job;
+        try {
+            // check the existence of the specified party in the catalogue DB
+            PartyType party = CatalogueDatabaseAdapter.syncPartyInUBLDB(partyId, bearerToken);
+
+            job = uploadJobManager.submit(UploadJob.Type.TEMPLATE, partyId, file.getInputStream(),
+                    (uploadJob, stagedFile) -> publishTemplate(uploadJob, stagedFile, uploadMode, party, includeVat));
+
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejected the template upload for party: {} as the upload queue is full", partyId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many uploads are waiting to be processed. Please try again later.");
+        } catch (Exception e) {
+            throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_UPLOAD_TEMPLATE.toString(),e);
+        }
+
+        log.info("Completed the request to upload template asynchronously. Upload job: {}", job.getJobId());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Stages the provided image package and associates the images with the relevant " +
+            "products in the background. The response contains the upload job whose status can be followed via the job id. " +
+            "See the synchronous image upload service for the naming of the images.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 202, message = "Staged the package and queued the upload job successfully", response = UploadJob.class),
+            @ApiResponse(code = 400, message = "Failed obtain a Zip package from the provided data"),
+            @ApiResponse(code = 404, message = "Catalogue with the given uuid does not exist"),
+            @ApiResponse(code = 503, message = "Too many upload jobs are waiting to be processed"),
+            @ApiResponse(code = 500, message = "Unexpected error while uploading images")
+    })
+    @RequestMapping(value = "/catalogue/{id}/image/upload/async",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = {"application/json"},
+            method = RequestMethod.POST)
+    public ResponseEntity uploadImagesAsync(
+            @ApiParam(value = "The package compressed as a Zip file, including the images.", required = true) @RequestParam("package") MultipartFile pack,
+            @ApiParam(value = "uuid of the catalogue to be updated.", required = true) @PathVariable("id") String id,
+            @ApiParam(value = "Identifier of the party for which the catalogue will be updated", required = true) @RequestParam("partyId") String partyId,
+            @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Incoming request to upload images asynchronously for catalogue: %s", id);
+        executionContext.setRequestLog(requestLog);
+
+        log.info(requestLog);
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        if (!CataloguePersistenceUtil.checkCatalogueExistenceById(id, partyId)) {
+            throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(),Arrays.asList(id));
+        }
+
+        if(!pack.getOriginalFilename().endsWith(".zip")){
+            log.error("Provided file to upload images is not zip");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("You should provide a Zip package to upload images");
+        }
+
+        UploadJob job;
+        try {
+            job = uploadJobManager.submit(UploadJob.Type.IMAGES, partyId, pack.getInputStream(),
+                    (uploadJob, stagedFile) -> addImagesToCatalogue(uploadJob, stagedFile, id, partyId));
+
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejected the image upload for catalogue: {} as the upload queue is full", id);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many uploads are waiting to be processed. Please try again later.");
+        } catch (IOException e) {
+            throw new NimbleException(NimbleExceptionMessageCode.BAD_REQUEST_GET_ZIP_PACKAGE.toString(),e);
+        }
+
+        log.info("Completed the request to upload images asynchronously. Upload job: {}", job.getJobId());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Retrieves the status of the specified upload job. Completed jobs include the uuid " +
+            "of the updated catalogue, failed jobs include the reason of the failure.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Retrieved the upload job successfully", response = UploadJob.class),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 403, message = "The upload job belongs to another party"),
+            @ApiResponse(code = 404, message = "No upload job for the given id")
+    })
+    @RequestMapping(value = "/catalogue/upload/job/{jobId}",
+            produces = {"application/json"},
+            method = RequestMethod.GET)
+    public ResponseEntity getUploadJob(@ApiParam(value = "Identifier of the upload job", required = true) @PathVariable("jobId") String jobId,
+                                       @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        UploadJob job = uploadJobManager.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(String.format("No upload job for the id: %s", jobId));
+        }
+        if (!isJobOfUserParty(job, bearerToken)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(String.format("The upload job: %s belongs to another party", jobId));
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Cancels the specified upload job. Jobs can be cancelled until they start updating " +
+            "the catalogue.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Cancelled the upload job successfully", response = UploadJob.class),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 403, message = "The upload job belongs to another party"),
+            @ApiResponse(code = 404, message = "No upload job for the given id"),
+            @ApiResponse(code = 409, message = "The upload job has already started updating the catalogue or finished")
+    })
+    @RequestMapping(value = "/catalogue/upload/job/{jobId}",
+            produces = {"application/json"},
+            method = RequestMethod.DELETE)
+    public ResponseEntity cancelUploadJob(@ApiParam(value = "Identifier of the upload job", required = true) @PathVariable("jobId") String jobId,
+                                          @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Incoming request to cancel upload job: %s", jobId);
+        executionContext.setRequestLog(requestLog);
+
+        log.info(requestLog);
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        UploadJob job = uploadJobManager.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(String.format("No upload job for the id: %s", jobId));
+        }
+        if (!isJobOfUserParty(job, bearerToken)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(String.format("The upload job: %s belongs to another party", jobId));
+        }
+        if (!job.cancel()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(job);
+        }
+
+        log.info("Completed the request to cancel upload job: {}", jobId);
+        return ResponseEntity.ok(job);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Starts a resumable upload of a template or an image package. The file is then sent " +
+            "in chunks of the size specified in the response, each together with its SHA-256 checksum. Interrupted uploads " +
+            "are resumed from the chunk indicated by the session status.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "Created the upload session successfully", response = UploadSession.class),
+            @ApiResponse(code = 400, message = "Invalid upload size"),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 503, message = "Too many upload sessions are open"),
+            @ApiResponse(code = 500, message = "Unexpected error while creating the upload session")
+    })
+    @RequestMapping(value = "/catalogue/upload/session",
+            produces = {"application/json"},
+            method = RequestMethod.POST)
+    public ResponseEntity createUploadSession(@ApiParam(value = "Type of the uploaded file. Possible options are: TEMPLATE and IMAGES", required = true) @RequestParam("type") UploadJob.Type type,
+                                              @ApiParam(value = "Identifier of the party for which the file is uploaded", required = true) @RequestParam("partyId") String partyId,
+                                              @ApiParam(value = "Name of the uploaded file", required = true) @RequestParam("fileName") String fileName,
+                                              @ApiParam(value = "Size of the uploaded file in bytes", required = true) @RequestParam("size") long size,
+                                              @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Incoming request to create an upload session for party: %s, type: %s, size: %d", partyId, type, size);
+        executionContext.setRequestLog(requestLog);
+
+        log.info(requestLog);
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        if(type == UploadJob.Type.IMAGES && !fileName.endsWith(".zip")){
+            log.error("Provided file to upload images is not zip");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("You should provide a Zip package to upload images");
+        }
+
+        UploadSession session;
+        try {
+            session = chunkedUploadManager.createSession(type, partyId, fileName, size);
+        } catch (CatalogueServiceException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejected the upload session for party: {}: {}", partyId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many uploads are in progress. Please try again later.");
+        } catch (IOException e) {
+            throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_UPLOAD_TEMPLATE.toString(),e);
+        }
+
+        log.info("Completed the request to create upload session: {}", session.getSessionId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(session);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Retrieves the status of the upload session, including the received chunks and the " +
+            "chunk to continue with.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Retrieved the upload session successfully", response = UploadSession.class),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 404, message = "No upload session of the parties of the user for the given id")
+    })
+    @RequestMapping(value = "/catalogue/upload/session/{sessionId}",
+            produces = {"application/json"},
+            method = RequestMethod.GET)
+    public ResponseEntity getUploadSession(@ApiParam(value = "Identifier of the upload session", required = true) @PathVariable("sessionId") String sessionId,
+                                           @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        // the sessions of the other parties are reported as missing, so that their ids can not be probed
+        UploadSession session = chunkedUploadManager.getSession(sessionId);
+        if (session == null || !isSessionOfUserParty(session, bearerToken)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(String.format("No upload session for the id: %s", sessionId));
+        }
+        return ResponseEntity.ok(session);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Stores a chunk of the upload session. The request body is the raw content of the " +
+            "chunk. All chunks except the last one must have the chunk size of the session. Chunks can be re-sent.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Stored the chunk successfully", response = UploadSession.class),
+            @ApiResponse(code = 400, message = "Invalid chunk index, size or checksum"),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 404, message = "No upload session of the parties of the user for the given id"),
+            @ApiResponse(code = 409, message = "The upload session has been completed, aborted or expired"),
+            @ApiResponse(code = 500, message = "Unexpected error while storing the chunk")
+    })
+    @RequestMapping(value = "/catalogue/upload/session/{sessionId}/chunk/{index}",
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = {"application/json"},
+            method = RequestMethod.PUT)
+    public ResponseEntity uploadChunk(@ApiParam(value = "Identifier of the upload session", required = true) @PathVariable("sessionId") String sessionId,
+                                      @ApiParam(value = "Zero-based index of the chunk", required = true) @PathVariable("index") int index,
+                                      @ApiParam(value = "Hex encoded SHA-256 checksum of the chunk", required = true) @RequestParam("checksum") String checksum,
+                                      @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken,
+                                      HttpServletRequest request) {
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        // the sessions of the other parties are reported as missing, so that their ids can not be probed
+        UploadSession session = chunkedUploadManager.getSession(sessionId);
+        if (session == null || !isSessionOfUserParty(session, bearerToken)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(String.format("No upload session for the id: %s", sessionId));
+        }
+
+        try {
+            session = chunkedUploadManager.writeChunk(session, index, request.getInputStream(), checksum);
+        } catch (UploadSessionClosedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (CatalogueServiceException e) {
+            log.warn("Rejected chunk {} of upload session: {}: {}", index, sessionId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IOException e) {
+            throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_UPLOAD_TEMPLATE.toString(),e);
+        }
+        return ResponseEntity.ok(session);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Completes the upload session and processes the assembled file in the background " +
+            "like the asynchronous template and image uploads. The catalogue id is required for image packages.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 202, message = "Queued the upload job successfully", response = UploadJob.class),
+            @ApiResponse(code = 400, message = "Some chunks are missing or the catalogue id is not provided"),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 404, message = "No upload session of the parties of the user or no catalogue for the given id"),
+            @ApiResponse(code = 409, message = "The upload session has been completed, aborted or expired"),
+            @ApiResponse(code = 503, message = "Too many upload jobs are waiting to be processed"),
+            @ApiResponse(code = 500, message = "Unexpected error while completing the upload session")
+    })
+    @RequestMapping(value = "/catalogue/upload/session/{sessionId}/complete",
+            produces = {"application/json"},
+            method = RequestMethod.POST)
+    public ResponseEntity completeUploadSession(@ApiParam(value = "Identifier of the upload session", required = true) @PathVariable("sessionId") String sessionId,
+                                                @ApiParam(value = "Upload mode for the catalogue. Possible options are: append and replace", defaultValue = "append") @RequestParam(value = "uploadMode", defaultValue = "append") String uploadMode,
+                                                @ApiParam(value = "Whether VAT should be set for the uploaded products or not") @RequestParam(value = "includeVat", defaultValue = "true") Boolean includeVat,
+                                                @ApiParam(value = "uuid of the catalogue to which the images are added") @RequestParam(value = "catalogueId", required = false) String catalogueId,
+                                                @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Incoming request to complete upload session: %s", sessionId);
+        executionContext.setRequestLog(requestLog);
+
+        log.info(requestLog);
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        // the sessions of the other parties are reported as missing, so that their ids can not be probed
+        UploadSession session = chunkedUploadManager.getSession(sessionId);
+        if (session == null || !isSessionOfUserParty(session, bearerToken)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(String.format("No upload session for the id: %s", sessionId));
+        }
+        String partyId = session.getPartyId();
+
+        UploadJob job;
+        try {
+            if (session.getType() == UploadJob.Type.TEMPLATE) {
+                // check the existence of the specified party in the catalogue DB
+                PartyType party = CatalogueDatabaseAdapter.syncPartyInUBLDB(partyId, bearerToken);
+                job = chunkedUploadManager.complete(session,
+                        (uploadJob, stagedFile) -> publishTemplate(uploadJob, stagedFile, uploadMode, party, includeVat));
+
+            } else {
+                if (catalogueId == null) {
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("The catalogue id should be provided to upload images");
+                }
+                if (!CataloguePersistenceUtil.checkCatalogueExistenceById(catalogueId, partyId)) {
+                    throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(),Arrays.asList(catalogueId));
+                }
+                job = chunkedUploadManager.complete(session,
+                        (uploadJob, stagedFile) -> addImagesToCatalogue(uploadJob, stagedFile, catalogueId, partyId));
+            }
+
+        } catch (UploadSessionClosedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (CatalogueServiceException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            // the session and the assembled file are kept, so the completion can be requested again
+            log.warn("Rejected upload session: {} as the upload queue is full", sessionId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many uploads are waiting to be processed. Please complete the upload session again later.");
+        }
+
+        log.info("Completed the request to complete upload session: {}. Upload job: {}", sessionId, job.getJobId());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Aborts the upload session and removes the received chunks.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Aborted the upload session successfully"),
+            @ApiResponse(code = 401, message = "Invalid token. No user was found for the provided token"),
+            @ApiResponse(code = 404, message = "No upload session of the parties of the user for the given id")
+    })
+    @RequestMapping(value = "/catalogue/upload/session/{sessionId}",
+            method = RequestMethod.DELETE)
+    public ResponseEntity abortUploadSession(@ApiParam(value = "Identifier of the upload session", required = true) @PathVariable("sessionId") String sessionId,
+                                             @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization", required = true) String bearerToken) {
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        // the sessions of the other parties are reported as missing, so that their ids can not be probed
+        UploadSession session = chunkedUploadManager.getSession(sessionId);
+        if (session == null || !isSessionOfUserParty(session, bearerToken)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(String.format("No upload session for the id: %s", sessionId));
+        }
+        chunkedUploadManager.abort(session);
+        log.info("Aborted upload session: {}", sessionId);
+        return ResponseEntity.ok(null);
+    }
+
+    /**
+     * Checks whether the given upload job is submitted for one of the parties of the user owning the token
+     */
+    private boolean isJobOfUserParty(UploadJob job, String bearerToken) {
+        return isPartyOfUser(job.getPartyId(), bearerToken);
+    }
+
+    /**
+     * Checks whether the given upload session is created for one of the parties of the user owning the token
+     */
+    private boolean isSessionOfUserParty(UploadSession session, String bearerToken) {
+        return isPartyOfUser(session.getPartyId(), bearerToken);
+    }
+
+    private boolean isPartyOfUser(String partyId, String bearerToken) {
+        List<PartyType> parties;
+        try {
+            PersonType person = SpringBridge.getInstance().getiIdentityClientTyped().getPerson(bearerToken);
+            parties = SpringBridge.getInstance().getiIdentityClientTyped().getPartyByPersonID(person.getID());
+        } catch (Exception e) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_NO_USER_FOR_TOKEN.toString(), Arrays.asList(bearerToken), e);
+        }
+        for (PartyType party : parties) {
+            if (party.getPartyIdentification().get(0).getID().equals(partyId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String publishTemplate(UploadJob job, File stagedFile, String uploadMode, PartyType party, Boolean includeVat) throws Exception {
+        CatalogueType catalogue = saveTemplate(() -> new FileInputStream(stagedFile), uploadMode, party, includeVat, job);
+        return catalogue.getUUID();
+    }
+
+    @FunctionalInterface
+    private interface TemplateSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Parses the template against the current state of the catalogue and saves the result only if the catalogue has not
+     * been updated in the meantime. The template is parsed without holding any lock, so only the uploads to the same
+     * catalogue affect each other. A conflicting upload is parsed again for a limited number of times.
+     *
+     * @param job the background job of the upload, if any, whose stages are updated
+     * @throws CatalogueVersionConflictException if the catalogue is still updated concurrently after the retries
+     */
+    private CatalogueType saveTemplate(TemplateSource source, String uploadMode, PartyType party, Boolean includeVat, UploadJob job) {
+        String partyId = party.getPartyIdentification().get(0).getID();
+        for (int attempt = 0; attempt <= uploadConflictRetries; attempt++) {
+            long version = catalogueVersionRegistry.getVersion(partyId, TEMPLATE_CATALOGUE_ID);
+
+            if (job != null) {
+                job.enterStage(UploadJob.Stage.PARSING, 10, true);
+            }
+            CatalogueType catalogue;
+            UploadMergeResult mergeResult = new UploadMergeResult();
+            try (InputStream is = source.open()) {
+                catalogue = service.parseCatalogue(is, uploadMode, party, includeVat, mergeResult);
+            } catch (Exception e) {
+                throw new NimbleException(NimbleExceptionMessageCode.BAD_REQUEST_PARSE_CATALOGUE.toString(), e);
+            }
+
+            // the lock of the catalogue only covers the version check and the update
+            Optional<CatalogueType> savedCatalogue = catalogueVersionRegistry.updateIfUnchanged(partyId, TEMPLATE_CATALOGUE_ID, version, () -> {
+                // the catalogue can not be left half updated after this point
+                if (job != null) {
+                    job.enterStage(UploadJob.Stage.PERSISTING, 60, false);
+                }
+                // check whether an insert or update operations is needed
+                if (catalogue.getHjid() == null) {
+                    return service.addCatalogue(catalogue, Configuration.Standard.UBL);
+                } else {
+                    return service.updateCatalogue(catalogue);
+                }
+            });
+            if (savedCatalogue.isPresent()) {
+                log.info("Saved the template of party: {} in {} mode. {}", partyId, uploadMode, mergeResult);
+                if (job != null) {
+                    job.setMergeResult(mergeResult);
+                }
+                return savedCatalogue.get();
+            }
+            log.info("Catalogue: {} of party: {} has been updated while parsing the template. Attempt: {}", TEMPLATE_CATALOGUE_ID, partyId, attempt + 1);
+        }
+        throw new CatalogueVersionConflictException(String.format("Catalogue %s of party %s has been updated by another request while the template was being processed. Please upload the template again", TEMPLATE_CATALOGUE_ID, partyId));
+    }
+
+    private String addImagesToCatalogue(UploadJob job, File stagedFile, String catalogueUuid, String partyId) throws Exception {
+        // the images are stored as they are read, hence the job can not be cancelled from now on
+        job.enterStage(UploadJob.Stage.PROCESSING_IMAGES, 10, false);
+        CatalogueType catalogue = CataloguePersistenceUtil.getCatalogueForParty(catalogueUuid, partyId);
+        if (catalogue == null) {
+            throw new CatalogueServiceException(String.format("Catalogue %s does not exist anymore", catalogueUuid));
+        }
+        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(stagedFile))) {
+            catalogue = service.addImagesToProducts(zis, catalogue);
+        }
+        return catalogue.getUUID();
+    }
+
     @CrossOrigin(origins = {"*"})
     @ApiOperation(value = "", notes = "Deletes all the images of CatalogueLines of the specified catalogue")
     @ApiResponses(value = {
@@ -1,12 +1,16 @@
 package eu.nimble.service.catalogue.impl;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
 import eu.nimble.service.catalogue.CatalogueService;
 import eu.nimble.service.catalogue.config.CatalogueServiceConfig;
 import eu.nimble.service.catalogue.config.RoleConfig;
+import eu.nimble.service.catalogue.model.catalogue.CatalogueLineBulkResult;
 import eu.nimble.service.catalogue.model.catalogue.CatalogueLineSortOptions;
 import eu.nimble.service.catalogue.model.statistics.ProductAndServiceStatistics;
 import eu.nimble.service.catalogue.persistence.util.CatalogueLinePersistenceUtil;
+import eu.nimble.service.catalogue.persistence.util.CataloguePersistenceUtil;
 import eu.nimble.service.catalogue.util.CatalogueEvent;
 import eu.nimble.service.catalogue.util.LoggerUtil;
 import eu.nimble.service.catalogue.validation.CatalogueLineValidator;
@@ -457,6 +461,128 @@ public class CatalogueLineController {
         }
     }
 
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Adds or updates the provided catalogue lines in the specified catalogue. Lines without " +
+            "an hjid are added to the catalogue, the others replace the existing lines with the same hjid. Each line is " +
+            "validated separately and the valid ones are persisted in a single transaction. Only the affected lines are indexed. " +
+            "The response contains the result of each line in the order of the request.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Processed the catalogue lines and returned the result for each line", response = CatalogueLineBulkResult.class, responseContainer = "List"),
+            @ApiResponse(code = 400, message = "Invalid catalogue line list serialization"),
+            @ApiResponse(code = 404, message = "Catalogue with the given uuid does not exist"),
+            @ApiResponse(code = 500, message = "Unexpected error while persisting the catalogue lines")
+    })
+    @RequestMapping( value = "/catalogue/{catalogueUuid}/cataloguelines",
+            consumes = {"application/json"},
+            produces = {"application/json"},
+            method = RequestMethod.POST)
+    public ResponseEntity addOrUpdateCatalogueLines(@ApiParam(value = "uuid of the catalogue containing the lines. (catalogue.uuid)", required = true) @PathVariable String catalogueUuid,
+                                                    @ApiParam(value = "Serialized list of catalogue lines. See the service adding a single catalogue line for an example line serialization.", required = true) @RequestBody String catalogueLinesJson,
+                                                    @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization") String bearerToken) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Incoming request to add or update catalogue lines of catalogue: %s", catalogueUuid);
+        executionContext.setRequestLog(requestLog);
+
+        log.info(requestLog);
+        // validate role
+        if(!validationUtil.validateRole(bearerToken, executionContext.getUserRoles(),RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        // parse catalogue lines
+        List<CatalogueLineType> catalogueLines;
+        try {
+            catalogueLines = JsonSerializationUtility.getObjectMapper().readValue(catalogueLinesJson, new TypeReference<List<CatalogueLineType>>(){});
+        } catch (IOException e) {
+            throw new NimbleException(NimbleExceptionMessageCode.BAD_REQUEST_DESERIALIZE_CATALOGUE_LINE.toString(),Arrays.asList(catalogueLinesJson),e);
+        }
+
+        CatalogueType catalogue = service.getCatalogue(catalogueUuid);
+        if (catalogue == null) {
+            throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(),Arrays.asList(catalogueUuid));
+        }
+
+        // validate the lines against the lines of the catalogue which is loaded already, instead of querying the
+        // existence of each line separately. The lines conflicting with the lines saved in the meantime are detected
+        // while saving.
+        List<CatalogueLineBulkResult> results = validateCatalogueLines(catalogue, catalogueLines);
+        boolean validLineExists = false;
+        for (int i = 0; i < catalogueLines.size(); i++) {
+            if (results.get(i).getStatus() != CatalogueLineBulkResult.Status.FAILED) {
+                results.get(i).setStatus(catalogueLines.get(i).getHjid() == null ? CatalogueLineBulkResult.Status.CREATED : CatalogueLineBulkResult.Status.UPDATED);
+                validLineExists = true;
+            }
+        }
+
+        if (validLineExists) {
+            try {
+                service.addOrUpdateCatalogueLines(catalogueUuid, catalogueLines, results);
+            } catch (Exception e) {
+                throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_ADD_CATALOGUE_LINE.toString(),e);
+            }
+        }
+
+        int failedLines = 0;
+        for (CatalogueLineBulkResult result : results) {
+            if (result.getStatus() == CatalogueLineBulkResult.Status.FAILED) {
+                failedLines++;
+            }
+        }
+        log.info("Completed the request to add or update catalogue lines of catalogue: {}. Persisted: {}, failed: {}",
+                catalogueUuid, catalogueLines.size() - failedLines, failedLines);
+        return ResponseEntity.ok(serializationUtility.serializeUBLObject(results));
+    }
+
+    private List<CatalogueLineBulkResult> validateCatalogueLines(CatalogueType catalogue, List<CatalogueLineType> catalogueLines) {
+        String partyId = catalogue.getProviderParty().getPartyIdentification().get(0).getID();
+        Map<String, Long> existingLineHjids = new HashMap<>();
+        for (CatalogueLineType existingLine : catalogue.getCatalogueLine()) {
+            existingLineHjids.put(existingLine.getID(), existingLine.getHjid());
+        }
+        Set<Long> existingHjids = new HashSet<>(existingLineHjids.values());
+        Set<String> requestedLineIds = new HashSet<>();
+
+        List<CatalogueLineBulkResult> results = new ArrayList<>();
+        for (int i = 0; i < catalogueLines.size(); i++) {
+            CatalogueLineType catalogueLine = catalogueLines.get(i);
+            CatalogueLineBulkResult result = new CatalogueLineBulkResult(i, catalogueLine.getID());
+            results.add(result);
+            try {
+                // validate the incoming content
+                ValidationMessages errors = new CatalogueLineValidator(catalogue, catalogueLine).validate();
+                for (int j = 0; j < errors.getErrorMessages().size(); j++) {
+                    result.addError(errors.getErrorMessages().get(j), errors.getErrorParameters().get(j));
+                }
+
+                // check the entity ids
+                Long hjid = catalogueLine.getHjid();
+                if (hjid == null) {
+                    if (resourceValidationUtil.hjidsExit(catalogueLine)) {
+                        result.addError(NimbleExceptionMessageCode.BAD_REQUEST_HJIDS.toString(), new ArrayList<>());
+                    }
+                } else if (!existingHjids.contains(hjid)) {
+                    result.addError(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE_LINE_FOR_HJID.toString(), Arrays.asList(hjid.toString()));
+                } else if (!resourceValidationUtil.hjidsBelongsToParty(catalogueLine, partyId, Configuration.Standard.UBL.toString())) {
+                    result.addError(NimbleExceptionMessageCode.BAD_REQUEST_INVALID_HJIDS_IN_LINE.toString(), Arrays.asList(hjid.toString()));
+                }
+
+                // check duplicate lines both in the catalogue and in the request
+                String lineId = catalogueLine.getID() != null ? catalogueLine.getID() : catalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID();
+                if (lineId != null) {
+                    Long existingHjid = existingLineHjids.get(lineId);
+                    if ((existingHjid != null && !existingHjid.equals(hjid)) || !requestedLineIds.add(lineId)) {
+                        result.addError(NimbleExceptionMessageCode.NOT_ACCEPTABLE_ALREADY_EXISTS.toString(), Arrays.asList(lineId));
+                    }
+                }
+
+            } catch (RuntimeException e) {
+                log.warn("Failed to validate catalogue line at index: {}", i, e);
+                result.addError(NimbleExceptionMessageCode.BAD_REQUEST_DESERIALIZE_CATALOGUE_LINE.toString(), new ArrayList<>());
+            }
+        }
+        return results;
+    }
+
     @CrossOrigin(origins = {"*"})
     @ApiOperation(value = "", notes = "Deletes the specified catalogue line")
     @ApiResponses(value = {
@@ -498,6 +624,61 @@ public class CatalogueLineController {
         return ResponseEntity.status(HttpStatus.OK).build();
     }
 
+    @CrossOrigin(origins = {"*"})
+    @ApiOperation(value = "", notes = "Deletes the catalogue lines matching all of the provided filters, i.e. the lines " +
+            "having one of the given ids, the given category and a manufacturer item id starting with the given prefix. " +
+            "At least one filter should be provided. Returns the ids of the deleted lines.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Deleted the catalogue lines successfully", response = String.class, responseContainer = "List"),
+            @ApiResponse(code = 400, message = "No filter is provided"),
+            @ApiResponse(code = 404, message = "Catalogue with the given uuid does not exist"),
+            @ApiResponse(code = 500, message = "Failed to delete the catalogue lines")
+    })
+    @RequestMapping(value = "/catalogue/{catalogueUuid}/cataloguelines",
+            produces = {"application/json"},
+            method = RequestMethod.DELETE)
+    public ResponseEntity deleteCatalogueLines(@ApiParam(value = "uuid of the catalogue containing the lines to be deleted. (catalogue.uuid)", required = true) @PathVariable String catalogueUuid,
+                                               @ApiParam(value = "Identifiers of the catalogue lines to be deleted. (line.id)") @RequestParam(value = "ids", required = false) List<String> lineIds,
+                                               @ApiParam(value = "Uri of the category whose catalogue lines to be deleted") @RequestParam(value = "categoryUri", required = false) String categoryUri,
+                                               @ApiParam(value = "Prefix of the manufacturer item ids of the catalogue lines to be deleted") @RequestParam(value = "manufacturerItemIdPrefix", required = false) String manufacturerItemIdPrefix,
+                                               @ApiParam(value = "The Bearer token provided by the identity service", required = true) @RequestHeader(value = "Authorization") String bearerToken) {
+        // set request log of ExecutionContext
+        String requestLog = String.format("Incoming request to delete catalogue lines. catalogue uuid: %s, line ids: %s, category uri: %s, manufacturer item id prefix: %s",
+                catalogueUuid, lineIds, categoryUri, manufacturerItemIdPrefix);
+        executionContext.setRequestLog(requestLog);
+
+        log.info(requestLog);
+        // validate role
+        if(!validationUtil.validateRole(bearerToken,executionContext.getUserRoles(), RoleConfig.REQUIRED_ROLES_CATALOGUE)) {
+            throw new NimbleException(NimbleExceptionMessageCode.UNAUTHORIZED_INVALID_ROLE.toString());
+        }
+
+        // deleting all lines is not allowed via this service
+        if ((lineIds == null || lineIds.isEmpty()) && Strings.isNullOrEmpty(categoryUri) && Strings.isNullOrEmpty(manufacturerItemIdPrefix)) {
+            throw new NimbleException(NimbleExceptionMessageCode.BAD_REQUEST_MISSING_PARAMETERS.toString(),Arrays.asList("ids, categoryUri, manufacturerItemIdPrefix"));
+        }
+
+        if (!CataloguePersistenceUtil.checkCatalogueExistenceByUuid(catalogueUuid)) {
+            throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(),Arrays.asList(catalogueUuid));
+        }
+
+        List<String> deletedLineIds;
+        try {
+            deletedLineIds = service.deleteCatalogueLines(catalogueUuid, lineIds,
+                    Strings.isNullOrEmpty(categoryUri) ? null : categoryUri,
+                    Strings.isNullOrEmpty(manufacturerItemIdPrefix) ? null : manufacturerItemIdPrefix);
+        } catch (Exception e) {
+            throw new NimbleException(NimbleExceptionMessageCode.INTERNAL_SERVER_ERROR_DELETE_CATALOGUE_LINE.toString(),e);
+        }
+        //mdc logging
+        Map<String,String> paramMap = new HashMap<String, String>();
+        paramMap.put("activity", CatalogueEvent.PRODUCT_DELETE.getActivity());
+        paramMap.put("productId", String.join(",", deletedLineIds));
+        LoggerUtils.logWithMDC(log, paramMap, LoggerUtils.LogLevel.INFO, "Completed the request to delete catalogue lines: catalogue uuid: {}, deleted line count: {}",
+                catalogueUuid, deletedLineIds.size());
+        return ResponseEntity.ok(deletedLineIds);
+    }
+
     @RequestMapping(value = "/cataloguelines/statistics",
             produces = {"application/json"},
             method = RequestMethod.GET)
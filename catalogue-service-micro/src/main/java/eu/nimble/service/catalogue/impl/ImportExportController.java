@@ -14,28 +14,36 @@ import eu.nimble.utility.ExecutionContext;
 import eu.nimble.utility.JsonSerializationUtility;
 import eu.nimble.utility.exception.NimbleException;
 import eu.nimble.utility.exception.NimbleExceptionMessageCode;
+import eu.nimble.utility.persistence.binary.BinaryContentService;
 import eu.nimble.utility.validation.IValidationUtil;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -52,6 +60,14 @@ public class ImportExportController {
     @Autowired
     private ExecutionContext executionContext;
 
+    // number of catalogues exported concurrently
+    @Value("${nimble.catalog.export.parallelism:4}")
+    private int exportParallelism;
+    // number of product images retrieved from the binary content database at once while exporting a catalogue
+    @Value("${nimble.catalog.export.image-batch-size:20}")
+    private int exportImageBatchSize;
+    private ExecutorService exportExecutor;
+
     @CrossOrigin(origins = {"*"})
     @ApiOperation(value = "", notes = "This service imports the provided UBL catalogue. The service replaces the PartyType" +
             " information in the given catalogue with the PartyType obtained from the currently configured identity service." +
@@ -202,8 +218,6 @@ public class ImportExportController {
         executionContext.setRequestLog(requestLog);
 
         String idsLog = ids == null ? "" : ids.toString();
-        ByteArrayInputStream responseInputStream = null;
-        ByteArrayOutputStream responseOutputStream = new ByteArrayOutputStream();
         ZipOutputStream zos = null;
 
         try {
@@ -221,29 +235,27 @@ public class ImportExportController {
                 ids = CataloguePersistenceUtil.getCatalogueIdListsForParty(partyId);
             }
 
-            for (String id : ids) {
-                CatalogueType catalogue = CataloguePersistenceUtil.getCatalogueForParty(id, partyId);
-                ByteArrayOutputStream catalogueBaos = new ByteArrayOutputStream();
-                getZipForCatalogue(catalogue, languageId, catalogueBaos);
-
-                try {
-                    ZipEntry zipEntry = new ZipEntry(catalogue.getID() + ".zip");
-                    zos.putNextEntry(zipEntry);
-                    catalogueBaos.writeTo(zos);
-
-                } catch (IOException e) {
-                    log.warn("Failed to write catalogue output stream to response output stream for catalogue: id{}, uuid: {}", catalogue.getID(), catalogue.getUUID(), e);
-
-                } finally {
-                    try {
-                        zos.closeEntry();
-                    } catch (IOException e) {
-                        log.warn("Failed to close zip entry for catalogue: id{}, uuid: {}", catalogue.getID(), catalogue.getUUID(), e);
+            // workbooks of the catalogues are generated concurrently. The generated ones are written to the response in
+            // the order of the catalogue ids and at most exportParallelism catalogues are kept in memory at a time.
+            RequestAttributes requestAttributes = RequestContextHolder.currentRequestAttributes();
+            Deque<Future<CatalogueExport>> pendingExports = new ArrayDeque<>();
+            try {
+                for (String id : ids) {
+                    if(pendingExports.size() >= exportParallelism) {
+                        addCatalogueExportToZip(pendingExports.poll().get(), zos);
                     }
+                    pendingExports.add(exportExecutor.submit(() -> generateCatalogueExport(id, partyId, languageId, requestAttributes)));
+                }
+                while (!pendingExports.isEmpty()) {
+                    addCatalogueExportToZip(pendingExports.poll().get(), zos);
+                }
+            } finally {
+                // release the workbooks of the catalogues which could not be written due to a failure
+                for (Future<CatalogueExport> pendingExport : pendingExports) {
                     try {
-                        catalogueBaos.close();
-                    } catch (IOException e) {
-                        log.warn("Failed to close catalogue output stream for catalogue: id{}, uuid: {}", catalogue.getID(), catalogue.getUUID(), e);
+                        disposeWorkbooks(pendingExport.get().workbooks);
+                    } catch (Exception e) {
+                        log.warn("Failed to generate the workbooks of a catalogue to be exported for party: {}", partyId, e);
                     }
                 }
             }
@@ -265,9 +277,42 @@ public class ImportExportController {
         }
     }
 
-    private void getZipForCatalogue(CatalogueType catalogue, String languageId, ByteArrayOutputStream outputStream) {
-        // get workbooks
-        Map<Workbook,String> workbooks = service.generateTemplateForCatalogue(catalogue,languageId);
+    /**
+     * Retrieves the catalogue and generates its workbooks. It is run by the export executor, so the attributes of the
+     * export request are bound to the worker thread for the request-scoped beans e.g. the bearer token of the user.
+     */
+    private CatalogueExport generateCatalogueExport(String catalogueId, String partyId, String languageId, RequestAttributes requestAttributes) {
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        try {
+            CatalogueType catalogue = CataloguePersistenceUtil.getCatalogueForParty(catalogueId, partyId);
+            Map<Workbook,String> workbooks = service.generateTemplateForCatalogue(catalogue, languageId);
+            return new CatalogueExport(catalogue, workbooks);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    private void addCatalogueExportToZip(CatalogueExport catalogueExport, ZipOutputStream zos) {
+        CatalogueType catalogue = catalogueExport.catalogue;
+        try {
+            ZipEntry zipEntry = new ZipEntry(catalogue.getID() + ".zip");
+            zos.putNextEntry(zipEntry);
+            // the zip of the catalogue is written directly into the entry
+            getZipForCatalogue(catalogue, catalogueExport.workbooks, new NonClosingOutputStream(zos));
+
+        } catch (IOException e) {
+            log.warn("Failed to write catalogue output stream to response output stream for catalogue: id{}, uuid: {}", catalogue.getID(), catalogue.getUUID(), e);
+
+        } finally {
+            try {
+                zos.closeEntry();
+            } catch (IOException e) {
+                log.warn("Failed to close zip entry for catalogue: id{}, uuid: {}", catalogue.getID(), catalogue.getUUID(), e);
+            }
+        }
+    }
+
+    private void getZipForCatalogue(CatalogueType catalogue, Map<Workbook,String> workbooks, OutputStream outputStream) {
         // get product images
         Map<String,List<BinaryObjectType>> catalogImages = service.getAllImagesFromCatalogue(catalogue);
 
@@ -278,22 +323,29 @@ public class ImportExportController {
             for (Map.Entry<Workbook,String> workbook : workbooks.entrySet()) {
                 addWorkbookImageToZip(workbook.getValue(),zos,workbook.getKey(),null);
             }
+            workbooks = Collections.emptyMap();
 
             // zip all images
+            // file name -> image
+            Map<String,BinaryObjectType> imageFiles = new LinkedHashMap<>();
             for (String lineId : catalogImages.keySet()) {
                 List<BinaryObjectType> images = catalogImages.get(lineId);
                 for (BinaryObjectType catalogImage : images) {
                     String fileName = catalogImage.getFileName();
                     fileName = fileName.startsWith(lineId+".") ? fileName : lineId + "." + fileName;
-                    addWorkbookImageToZip(fileName, zos, null,catalogImage.getValue());
+                    if(imageFiles.putIfAbsent(fileName, catalogImage) != null){
+                        log.warn("Skipped the image: {} of catalogue: {} as another image with the same name is exported already", fileName, catalogue.getUUID());
+                    }
                 }
             }
-
+            addImagesToZip(catalogue, imageFiles, zos);
 
         } catch (IOException e) {
             log.error("Failed to write the catalogue content to the zip output stream for catalogue id: {}, uuid: {}", catalogue.getID(), catalogue.getUUID(), e);
 
         } finally {
+            // dispose the workbooks which could not be written
+            disposeWorkbooks(workbooks);
             try {
                 zos.close();
             } catch (IOException e) {
@@ -302,26 +354,116 @@ public class ImportExportController {
         }
     }
 
+    /**
+     * Writes the given images to the zip. Contents of the images are retrieved from the binary content database in
+     * batches, so that only the images of a single batch are kept in memory. The file names are unique already, so an
+     * image shared by several products is written once for each of those products, since the file names associate the
+     * images with the products when the catalogue is imported back.
+     */
+    private void addImagesToZip(CatalogueType catalogue, Map<String,BinaryObjectType> imageFiles, ZipOutputStream zos) throws IOException {
+        List<Map.Entry<String,BinaryObjectType>> imageFileList = new ArrayList<>(imageFiles.entrySet());
+        int batchSize = Math.max(1, exportImageBatchSize);
+        for (int i = 0; i < imageFileList.size(); i += batchSize) {
+            List<Map.Entry<String,BinaryObjectType>> batch = imageFileList.subList(i, Math.min(i + batchSize, imageFileList.size()));
+
+            // retrieve the contents of the batch. The same uri is retrieved only once.
+            Set<String> uris = new LinkedHashSet<>();
+            for (Map.Entry<String,BinaryObjectType> imageFile : batch) {
+                if(imageFile.getValue().getUri() != null){
+                    uris.add(imageFile.getValue().getUri());
+                }
+            }
+            // uri -> content
+            Map<String,byte[]> contents = new HashMap<>();
+            if(!uris.isEmpty()){
+                for (BinaryObjectType binaryObject : new BinaryContentService().retrieveContents(new ArrayList<>(uris))) {
+                    contents.put(binaryObject.getUri(), binaryObject.getValue());
+                }
+            }
+
+            for (Map.Entry<String,BinaryObjectType> imageFile : batch) {
+                String fileName = imageFile.getKey();
+                BinaryObjectType image = imageFile.getValue();
+                // use the value kept in the catalogue if the content is not available in the binary content database
+                byte[] content = image.getUri() != null ? contents.get(image.getUri()) : null;
+                if(content == null){
+                    content = image.getValue();
+                }
+                if(content == null){
+                    log.warn("No content for the image: {} of catalogue: {}", fileName, catalogue.getUUID());
+                    continue;
+                }
+                addWorkbookImageToZip(fileName, zos, null, content);
+            }
+        }
+    }
+
     private void addWorkbookImageToZip(String fileName, ZipOutputStream zos, Workbook workbook, byte[] value) throws IOException {
-        ByteArrayOutputStream bos = null;
         try {
             ZipEntry zipEntry = new ZipEntry(fileName);
             zos.putNextEntry(zipEntry);
 
             if(workbook == null){
-                bos = new ByteArrayOutputStream(value.length);
-                bos.write(value);
+                zos.write(value);
             }
             else{
-                bos = new ByteArrayOutputStream();
-                workbook.write(bos);
+                // workbooks close the stream they are written to
+                workbook.write(new NonClosingOutputStream(zos));
             }
-            bos.writeTo(zos);
         }finally {
             zos.closeEntry();
-            if(bos != null){
-                bos.close();
+            if(workbook != null){
+                disposeWorkbooks(Collections.singletonMap(workbook, fileName));
+            }
+        }
+    }
+
+    private void disposeWorkbooks(Map<Workbook,String> workbooks) {
+        for (Workbook workbook : workbooks.keySet()) {
+            // streaming workbooks keep their rows in temporary files until they are disposed
+            if(workbook instanceof SXSSFWorkbook){
+                ((SXSSFWorkbook) workbook).dispose();
             }
         }
     }
+
+    @PostConstruct
+    private void initExportExecutor() {
+        exportExecutor = Executors.newFixedThreadPool(Math.max(1, exportParallelism));
+    }
+
+    @PreDestroy
+    private void shutdownExportExecutor() {
+        exportExecutor.shutdownNow();
+    }
+
+    private static class CatalogueExport {
+        private final CatalogueType catalogue;
+        private final Map<Workbook,String> workbooks;
+
+        private CatalogueExport(CatalogueType catalogue, Map<Workbook,String> workbooks) {
+            this.catalogue = catalogue;
+            this.workbooks = workbooks;
+        }
+    }
+
+    /**
+     * Passes the data to the wrapped stream but does not close it, so that the content written by the APIs closing
+     * their output streams (e.g. {@link Workbook#write(OutputStream)}) can be written into a zip entry
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
 }
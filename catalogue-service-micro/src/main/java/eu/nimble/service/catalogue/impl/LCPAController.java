@@ -3,6 +3,8 @@ package eu.nimble.service.catalogue.impl;
 import eu.nimble.service.catalogue.config.RoleConfig;
 import eu.nimble.service.catalogue.model.lcpa.ItemLCPAInput;
 import eu.nimble.service.catalogue.persistence.util.CatalogueLinePersistenceUtil;
+import eu.nimble.service.catalogue.persistence.util.CataloguePersistenceUtil;
+import eu.nimble.service.catalogue.persistence.util.CatalogueVersionRegistry;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.CatalogueLineType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.LCPAOutputType;
 import eu.nimble.utility.ExecutionContext;
@@ -44,6 +46,8 @@ public class LCPAController {
     private IValidationUtil validationUtil;
     @Autowired
     private ExecutionContext executionContext;
+    @Autowired
+    private CatalogueVersionRegistry catalogueVersionRegistry;
 
     @CrossOrigin(origins = {"*"})
     @ApiOperation(value = "", notes = "Returns the catalogue uuid/catalogue line information along with the corresponding " +
@@ -122,7 +126,9 @@ public class LCPAController {
                 throw new NimbleException(NimbleExceptionMessageCode.BAD_REQUEST_PARSE_LCPA_OUTPUT.toString(),Arrays.asList(catalogueLineHjid.toString(), lcpaOutputJson),e);
             }
             catalogueLine.getGoodsItem().getItem().getLifeCyclePerformanceAssessmentDetails().setLCPAOutput(lcpaOutput);
-            catalogueLine = repo.updateEntity(catalogueLine);
+            Object[] catalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(catalogueLine.getGoodsItem().getItem().getCatalogueDocumentReference().getID());
+            CatalogueLineType catalogueLineToUpdate = catalogueLine;
+            catalogueLine = catalogueVersionRegistry.update((String) catalogueIdAndPartyId[1], (String) catalogueIdAndPartyId[0], () -> repo.updateEntity(catalogueLineToUpdate));
 
             logger.info("Completed request to update LCPAOutput for catalogue line with hjid: {}", catalogueLineHjid);
             return ResponseEntity.ok(catalogueLine);
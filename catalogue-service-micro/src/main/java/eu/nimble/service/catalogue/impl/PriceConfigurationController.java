@@ -7,6 +7,8 @@ import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.Unirest;
 import eu.nimble.service.catalogue.CatalogueService;
 import eu.nimble.service.catalogue.config.RoleConfig;
+import eu.nimble.service.catalogue.persistence.util.CatalogueVersionRegistry;
+import eu.nimble.service.model.ubl.catalogue.CatalogueType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.CatalogueLineType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PriceOptionType;
 import eu.nimble.utility.Configuration;
@@ -53,6 +55,8 @@ public class PriceConfigurationController {
     @Autowired
     private CatalogueService service;
     @Autowired
+    private CatalogueVersionRegistry catalogueVersionRegistry;
+    @Autowired
     private IValidationUtil validationUtil;
     @Autowired
     private ExecutionContext executionContext;
@@ -87,7 +91,8 @@ public class PriceConfigurationController {
             }
 
             // check catalogue
-            if (service.getCatalogue(catalogueUuid) == null) {
+            CatalogueType catalogue = service.getCatalogue(catalogueUuid);
+            if (catalogue == null) {
                 throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(), Arrays.asList(catalogueUuid));
             }
 
@@ -103,14 +108,15 @@ public class PriceConfigurationController {
                 throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE_LINE.toString(),Arrays.asList(catalogueUuid, lineId));
             }
 
-            // first persist the price options
             EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogueLine.getGoodsItem().getItem().getManufacturerParty().getPartyIdentification().get(0).getID());
-            repositoryWrapper.persistEntity(priceOption);
+            catalogueVersionRegistry.update(catalogue.getProviderParty().getPartyIdentification().get(0).getID(), catalogue.getID(), () -> {
+                // first persist the price options
+                repositoryWrapper.persistEntity(priceOption);
 
-            // update the catalogue line
-            catalogueLine.getPriceOption().add(priceOption);
-            repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogueLine.getGoodsItem().getItem().getManufacturerParty().getPartyIdentification().get(0).getID());
-            repositoryWrapper.updateEntity(catalogueLine);
+                // update the catalogue line
+                catalogueLine.getPriceOption().add(priceOption);
+                return repositoryWrapper.updateEntity(catalogueLine);
+            });
 
             ObjectMapper objectMapper = JsonSerializationUtility.getObjectMapper();
             objectMapper.configure(MapperFeature.PROPAGATE_TRANSIENT_MARKER, false);
@@ -155,7 +161,8 @@ public class PriceConfigurationController {
             }
 
             // check catalogue
-            if (service.getCatalogue(catalogueUuid) == null) {
+            CatalogueType catalogue = service.getCatalogue(catalogueUuid);
+            if (catalogue == null) {
                 throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(),Arrays.asList(catalogueUuid));
             }
 
@@ -180,7 +187,10 @@ public class PriceConfigurationController {
 
             // remove the option and update the line
             EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogueLine.getGoodsItem().getItem().getManufacturerParty().getPartyIdentification().get(0).getID());
-            repositoryWrapper.deleteEntityByHjid(PriceOptionType.class, optionId);
+            catalogueVersionRegistry.update(catalogue.getProviderParty().getPartyIdentification().get(0).getID(), catalogue.getID(), () -> {
+                repositoryWrapper.deleteEntityByHjid(PriceOptionType.class, optionId);
+                return null;
+            });
 //            catalogueLine.getPriceOption().remove(optionIndex.intValue());
 //            repositoryWrapper.updateEntity(catalogueLine);
 
@@ -223,7 +233,8 @@ public class PriceConfigurationController {
             }
 
             // check catalogue
-            if (service.getCatalogue(catalogueUuid) == null) {
+            CatalogueType catalogue = service.getCatalogue(catalogueUuid);
+            if (catalogue == null) {
                 throw new NimbleException(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(),Arrays.asList(catalogueUuid));
             }
 
@@ -254,7 +265,9 @@ public class PriceConfigurationController {
 
             // remove the option and update the line
             EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogueLine.getGoodsItem().getItem().getManufacturerParty().getPartyIdentification().get(0).getID());
-            priceOption = repositoryWrapper.updateEntity(priceOption);
+            PriceOptionType priceOptionToUpdate = priceOption;
+            priceOption = catalogueVersionRegistry.update(catalogue.getProviderParty().getPartyIdentification().get(0).getID(), catalogue.getID(),
+                    () -> repositoryWrapper.updateEntity(priceOptionToUpdate));
 
             log.info("Completed request to update price option. catalogueId: {}, lineId: {}, optionId: {}", catalogueUuid, lineId, priceOption.getHjid());
             return ResponseEntity.ok().body(JsonSerializationUtility.getMapperForTransientFields().writeValueAsString(priceOption));
@@ -0,0 +1,37 @@
+package eu.nimble.service.catalogue.util;
+
+import eu.nimble.service.catalogue.persistence.util.LockPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the lock statistics of the {@link LockPool} via the actuator metrics as {@code locks.<lock class>.*}
+ */
+@Component
+public class LockPoolMetrics implements PublicMetrics {
+
+    @Autowired
+    private LockPool lockPool;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        for (LockPool.LockClass lockClass : LockPool.LockClass.values()) {
+            LockPool.LockStatistics statistics = lockPool.getStatistics(lockClass);
+            String prefix = "locks." + lockClass.name().toLowerCase() + ".";
+            metrics.add(new Metric<>(prefix + "acquisitions", statistics.getAcquisitions()));
+            metrics.add(new Metric<>(prefix + "wait.total", statistics.getTotalWaitMillis()));
+            metrics.add(new Metric<>(prefix + "wait.max", statistics.getMaxWaitMillis()));
+            metrics.add(new Metric<>(prefix + "write-holds", statistics.getWriteHolds()));
+            metrics.add(new Metric<>(prefix + "write-hold.total", statistics.getTotalWriteHoldMillis()));
+            metrics.add(new Metric<>(prefix + "write-hold.max", statistics.getMaxWriteHoldMillis()));
+        }
+        return metrics;
+    }
+}
@@ -1,6 +1,7 @@
 package eu.nimble.service.catalogue.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.nimble.service.catalogue.persistence.util.BinaryContentStreamer;
 import eu.nimble.service.model.ubl.catalogue.CatalogueType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.CatalogueLineType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.BinaryObjectType;
@@ -13,6 +14,8 @@ import org.junit.runners.MethodSorters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
@@ -40,6 +43,8 @@ public class Test04_BinaryContentTest {
     private MockMvc mockMvc;
     @Autowired
     private ObjectMapper mapper;
+    @Autowired
+    private BinaryContentStreamer binaryContentStreamer;
 
     private final String fileName = "product_image.jpeg";
     private final String secondFileName = "second_image.jpeg";
@@ -109,6 +114,74 @@ public class Test04_BinaryContentTest {
         Assert.assertEquals(fileName, binaryObject.getFileName());
     }
 
+    @Test
+    public void test12a_retrieveRawBinaryContentRanges() throws Exception {
+        // the content is streamed from the database rather than loaded as a whole
+        Assert.assertTrue(binaryContentStreamer.consumeContent(firstProductImageUri, content -> Assert.assertTrue(content.isStreamed())));
+
+        MockHttpServletRequestBuilder request = get("/binary-content/raw")
+                .header("Authorization", TestConfig.buyerId)
+                .param("uri", firstProductImageUri);
+        MvcResult result = this.mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+        byte[] content = result.getResponse().getContentAsByteArray();
+        int length = content.length;
+        Assert.assertTrue(length > 10);
+
+        // single range
+        request = get("/binary-content/raw")
+                .header("Authorization", TestConfig.buyerId)
+                .header(HttpHeaders.RANGE, "bytes=0-9")
+                .param("uri", firstProductImageUri);
+        result = this.mockMvc.perform(request).andExpect(status().isPartialContent()).andReturn();
+        Assert.assertArrayEquals(Arrays.copyOfRange(content, 0, 10), result.getResponse().getContentAsByteArray());
+        Assert.assertEquals("bytes 0-9/" + length, result.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+
+        // range starting after the end of the content
+        request = get("/binary-content/raw")
+                .header("Authorization", TestConfig.buyerId)
+                .header(HttpHeaders.RANGE, "bytes=" + length + "-")
+                .param("uri", firstProductImageUri);
+        result = this.mockMvc.perform(request).andExpect(status().is(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value())).andReturn();
+        Assert.assertEquals("bytes */" + length, result.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+
+        // too many ranges
+        StringBuilder ranges = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= 16; i++) {
+            ranges.append(",").append(i).append("-").append(i);
+        }
+        request = get("/binary-content/raw")
+                .header("Authorization", TestConfig.buyerId)
+                .header(HttpHeaders.RANGE, ranges.toString())
+                .param("uri", firstProductImageUri);
+        this.mockMvc.perform(request).andExpect(status().is(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()));
+    }
+
+    @Test
+    public void test12b_retrieveNotModifiedRawBinaryContent() throws Exception {
+        MockHttpServletRequestBuilder request = get("/binary-content/raw")
+                .header("Authorization", TestConfig.buyerId)
+                .param("uri", firstProductImageUri);
+        MvcResult result = this.mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        Assert.assertNotNull(eTag);
+
+        // the cached version is validated without sending the content
+        request = get("/binary-content/raw")
+                .header("Authorization", TestConfig.buyerId)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .param("uri", firstProductImageUri);
+        result = this.mockMvc.perform(request).andExpect(status().isNotModified()).andReturn();
+        Assert.assertEquals(eTag, result.getResponse().getHeader(HttpHeaders.ETAG));
+        Assert.assertEquals(0, result.getResponse().getContentAsByteArray().length);
+
+        // a different version is sent again
+        request = get("/binary-content/raw")
+                .header("Authorization", TestConfig.buyerId)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"outdated\"")
+                .param("uri", firstProductImageUri);
+        this.mockMvc.perform(request).andExpect(status().isOk());
+    }
+
     @Test
     public void test13_updateJsonCatalogue() throws Exception {
         // get the catalogue
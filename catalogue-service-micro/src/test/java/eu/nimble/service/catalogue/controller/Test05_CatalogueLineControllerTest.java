@@ -2,11 +2,13 @@ package eu.nimble.service.catalogue.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.nimble.service.catalogue.model.catalogue.CatalogueLineBulkResult;
 import eu.nimble.service.catalogue.model.catalogue.CatalogueLineSortOptions;
 import eu.nimble.service.model.ubl.catalogue.CatalogueType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.CatalogueLineType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.QuantityType;
 import eu.nimble.utility.JsonSerializationUtility;
+import eu.nimble.utility.exception.NimbleExceptionMessageCode;
 import org.apache.commons.io.IOUtils;
 import org.junit.*;
 import org.junit.runner.RunWith;
@@ -22,6 +24,8 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -226,4 +230,113 @@ public class Test05_CatalogueLineControllerTest {
                 .content(catalogueLineJson);
         this.mockMvc.perform(request).andDo(print()).andExpect(status().isBadRequest()).andReturn();
     }
+
+    @Test
+    public void test12_addCatalogueLines() throws Exception {
+        String catalogueLineJson = IOUtils.toString(Test05_CatalogueLineControllerTest.class.getResourceAsStream("/example_catalogue_line.json"));
+        CatalogueLineType catalogueLine = mapper.readValue(catalogueLineJson, CatalogueLineType.class);
+        catalogueLine.getGoodsItem().getItem().getCatalogueDocumentReference().setID(defaultCatalogueId);
+
+        MockHttpServletRequestBuilder request = post("/catalogue/" + defaultCatalogueId + "/cataloguelines")
+                .header("Authorization", TestConfig.buyerId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(Collections.singletonList(catalogueLine)));
+        MvcResult result = this.mockMvc.perform(request).andDo(print()).andExpect(status().isOk()).andReturn();
+        List<CatalogueLineBulkResult> results = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<CatalogueLineBulkResult>>() {});
+        Assert.assertEquals(CatalogueLineBulkResult.Status.CREATED, results.get(0).getStatus());
+        Assert.assertNotNull(results.get(0).getHjid());
+        defaultCatalogueLineId = results.get(0).getLineId();
+    }
+
+    // updates the existing line and adds a new one in the same request
+    @Test
+    public void test13_addOrUpdateCatalogueLines() throws Exception {
+        MockHttpServletRequestBuilder request = get("/catalogue/" + defaultCatalogueId + "/catalogueline/" + defaultCatalogueLineId)
+                .header("Authorization", TestConfig.buyerId);
+        MvcResult result = this.mockMvc.perform(request).andReturn();
+        CatalogueLineType existingLine = mapper.readValue(result.getResponse().getContentAsString(), CatalogueLineType.class);
+        QuantityType minimumOrderQuantity = new QuantityType();
+        minimumOrderQuantity.setValue(new BigDecimal(414));
+        existingLine.setMinimumOrderQuantity(minimumOrderQuantity);
+
+        String catalogueLineJson = IOUtils.toString(Test05_CatalogueLineControllerTest.class.getResourceAsStream("/example_catalogue_line.json"));
+        CatalogueLineType newLine = mapper.readValue(catalogueLineJson, CatalogueLineType.class);
+        newLine.getGoodsItem().getItem().getCatalogueDocumentReference().setID(defaultCatalogueId);
+        newLine.setID("bulk-catalogue-line");
+        newLine.getGoodsItem().getItem().getManufacturersItemIdentification().setID("bulk-catalogue-line");
+
+        request = post("/catalogue/" + defaultCatalogueId + "/cataloguelines")
+                .header("Authorization", TestConfig.buyerId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(Arrays.asList(existingLine, newLine)));
+        result = this.mockMvc.perform(request).andDo(print()).andExpect(status().isOk()).andReturn();
+        List<CatalogueLineBulkResult> results = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<CatalogueLineBulkResult>>() {});
+        Assert.assertEquals(CatalogueLineBulkResult.Status.UPDATED, results.get(0).getStatus());
+        Assert.assertEquals(existingLine.getHjid(), results.get(0).getHjid());
+        Assert.assertEquals(CatalogueLineBulkResult.Status.CREATED, results.get(1).getStatus());
+
+        // the existing line is updated
+        request = get("/catalogue/" + defaultCatalogueId + "/catalogueline/" + defaultCatalogueLineId)
+                .header("Authorization", TestConfig.buyerId);
+        result = this.mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+        CatalogueLineType updatedLine = mapper.readValue(result.getResponse().getContentAsString(), CatalogueLineType.class);
+        Assert.assertEquals(0, new BigDecimal(414).compareTo(updatedLine.getMinimumOrderQuantity().getValue()));
+        // the new line is added
+        request = get("/catalogue/" + defaultCatalogueId + "/catalogueline/bulk-catalogue-line")
+                .header("Authorization", TestConfig.buyerId);
+        this.mockMvc.perform(request).andExpect(status().isOk());
+    }
+
+    // the valid lines of a request are saved even if the other lines of it fail
+    @Test
+    public void test14_addOrUpdateCatalogueLinesPartially() throws Exception {
+        String catalogueLineJson = IOUtils.toString(Test05_CatalogueLineControllerTest.class.getResourceAsStream("/example_catalogue_line.json"));
+        CatalogueLineType validLine = createBulkCatalogueLine(catalogueLineJson, "bulk-catalogue-line-2");
+        // a line with the same id exists in the catalogue already
+        CatalogueLineType duplicateLine = createBulkCatalogueLine(catalogueLineJson, "bulk-catalogue-line");
+        // the line to be updated does not exist
+        CatalogueLineType unknownLine = createBulkCatalogueLine(catalogueLineJson, "bulk-catalogue-line-3");
+        unknownLine.setHjid(999999999L);
+
+        MockHttpServletRequestBuilder request = post("/catalogue/" + defaultCatalogueId + "/cataloguelines")
+                .header("Authorization", TestConfig.buyerId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(Arrays.asList(duplicateLine, validLine, unknownLine)));
+        MvcResult result = this.mockMvc.perform(request).andDo(print()).andExpect(status().isOk()).andReturn();
+        List<CatalogueLineBulkResult> results = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<CatalogueLineBulkResult>>() {});
+        Assert.assertEquals(3, results.size());
+
+        Assert.assertEquals(0, results.get(0).getIndex());
+        Assert.assertEquals("bulk-catalogue-line", results.get(0).getLineId());
+        Assert.assertEquals(CatalogueLineBulkResult.Status.FAILED, results.get(0).getStatus());
+        Assert.assertTrue(results.get(0).getErrorMessages().contains(NimbleExceptionMessageCode.NOT_ACCEPTABLE_ALREADY_EXISTS.toString()));
+
+        Assert.assertEquals(1, results.get(1).getIndex());
+        Assert.assertEquals("bulk-catalogue-line-2", results.get(1).getLineId());
+        Assert.assertEquals(CatalogueLineBulkResult.Status.CREATED, results.get(1).getStatus());
+        Assert.assertNotNull(results.get(1).getHjid());
+        Assert.assertTrue(results.get(1).getErrorMessages().isEmpty());
+
+        Assert.assertEquals(2, results.get(2).getIndex());
+        Assert.assertEquals("bulk-catalogue-line-3", results.get(2).getLineId());
+        Assert.assertEquals(CatalogueLineBulkResult.Status.FAILED, results.get(2).getStatus());
+        Assert.assertTrue(results.get(2).getErrorMessages().contains(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE_LINE_FOR_HJID.toString()));
+
+        // only the valid line is saved
+        request = get("/catalogue/" + defaultCatalogueId + "/catalogueline/bulk-catalogue-line-2")
+                .header("Authorization", TestConfig.buyerId);
+        result = this.mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+        Assert.assertEquals(results.get(1).getHjid(), mapper.readValue(result.getResponse().getContentAsString(), CatalogueLineType.class).getHjid());
+        request = get("/catalogue/" + defaultCatalogueId + "/catalogueline/bulk-catalogue-line-3")
+                .header("Authorization", TestConfig.buyerId);
+        this.mockMvc.perform(request).andExpect(status().isNotFound());
+    }
+
+    private CatalogueLineType createBulkCatalogueLine(String catalogueLineJson, String lineId) throws Exception {
+        CatalogueLineType catalogueLine = mapper.readValue(catalogueLineJson, CatalogueLineType.class);
+        catalogueLine.getGoodsItem().getItem().getCatalogueDocumentReference().setID(defaultCatalogueId);
+        catalogueLine.setID(lineId);
+        catalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().setID(lineId);
+        return catalogueLine;
+    }
 }
@@ -0,0 +1,178 @@
+package eu.nimble.service.catalogue;
+
+import eu.nimble.service.catalogue.index.ItemIndexClient;
+import eu.nimble.service.catalogue.persistence.util.CatalogueLinePersistenceUtil;
+import eu.nimble.service.catalogue.persistence.util.CataloguePersistenceUtil;
+import eu.nimble.service.catalogue.persistence.util.CataloguePurgeRegistry;
+import eu.nimble.service.catalogue.persistence.util.CatalogueVersionRegistry;
+import eu.nimble.service.model.ubl.catalogue.CatalogueType;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.CatalogueLineType;
+import eu.nimble.utility.persistence.resource.EntityIdAwareRepositoryWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes all catalogues of a party in two steps. The catalogues are marked as deleted and removed from the index right
+ * away, while the database rows and the binary contents are removed in the background in batches of lines. The marks
+ * are kept in the database until the rows are removed, so that the catalogues stay hidden and their removal is resumed
+ * after a restart.
+ *
+ * Each batch is removed in its own transaction under the lock of the catalogue and increments its version, so that the
+ * writers which have read a catalogue before its purge do not save their updates to it, while the other writers of the
+ * same lock stripe are not blocked for the whole purge. The removal of a catalogue is claimed by a single instance.
+ * The instances take over the removals whose claims are not renewed, e.g. because their owner has stopped.
+ */
+@Component
+public class CataloguePurgeManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(CataloguePurgeManager.class);
+
+    @Autowired
+    private ItemIndexClient itemIndexClient;
+    @Autowired
+    private CatalogueVersionRegistry catalogueVersionRegistry;
+    @Autowired
+    private CataloguePurgeRegistry cataloguePurgeRegistry;
+
+    // number of catalogue lines removed in a single transaction
+    @Value("${nimble.catalog.purge.batch-size:100}")
+    private int purgeBatchSize;
+    // time after which a removal not progressing is taken over by another instance
+    @Value("${nimble.catalog.purge.claim-timeout-minutes:10}")
+    private int claimTimeoutMinutes;
+
+    // identifies this instance in the claims of the removals
+    private final String instanceId = UUID.randomUUID().toString();
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    private void init() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        // resume the removals interrupted by a shutdown of this or another instance
+        executor.scheduleWithFixedDelay(this::resumeRemovals, 0, claimTimeoutMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Marks the catalogues of the given party as deleted, removes them from the index and queues the removal of their
+     * database rows.
+     *
+     * @return uuids of the purged catalogues
+     */
+    public List<String> purgeCataloguesForParty(String partyId) {
+        List<Object[]> catalogueIdsAndUuids = CataloguePersistenceUtil.getCatalogueIdAndNameListsForParty(partyId);
+        List<String> catalogueIds = new ArrayList<>();
+        List<String> catalogueUuids = new ArrayList<>();
+        for (Object[] catalogueIdAndUuid : catalogueIdsAndUuids) {
+            catalogueIds.add((String) catalogueIdAndUuid[0]);
+            catalogueUuids.add((String) catalogueIdAndUuid[1]);
+        }
+        if (catalogueUuids.isEmpty()) {
+            return catalogueUuids;
+        }
+
+        catalogueVersionRegistry.update(partyId, catalogueIds, () -> {
+            cataloguePurgeRegistry.markCatalogues(partyId, catalogueUuids, instanceId);
+            return null;
+        });
+        itemIndexClient.deleteCatalogues(catalogueUuids);
+        logger.info("Marked {} catalogues of party: {} as deleted", catalogueUuids.size(), partyId);
+
+        executor.submit(() -> removeCatalogues(partyId, catalogueUuids));
+        return catalogueUuids;
+    }
+
+    private void resumeRemovals() {
+        try {
+            Map<String, List<String>> markedCatalogues = cataloguePurgeRegistry.getMarkedCatalogues();
+            for (Map.Entry<String, List<String>> partyCatalogues : markedCatalogues.entrySet()) {
+                removeCatalogues(partyCatalogues.getKey(), partyCatalogues.getValue());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to resume the removal of the deleted catalogues", e);
+        }
+    }
+
+    private void removeCatalogues(String partyId, List<String> catalogueUuids) {
+        for (String uuid : catalogueUuids) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                // skip the catalogues removed by another instance
+                if (!claimCatalogue(uuid)) {
+                    continue;
+                }
+                logger.info("Removing catalogue: {} of party: {}", uuid, partyId);
+                if (removeCatalogue(partyId, uuid)) {
+                    cataloguePurgeRegistry.unmarkCatalogue(uuid);
+                }
+            } catch (Exception e) {
+                // the catalogue stays marked, so its removal is retried once the claim expires
+                logger.error("Failed to remove catalogue: {} of party: {}", uuid, partyId, e);
+            }
+        }
+    }
+
+    /**
+     * Removes the lines of the catalogue in batches and then the catalogue itself. Each batch is removed in a separate
+     * transaction and the lock of the catalogue is released in between.
+     *
+     * @return whether the catalogue is removed. {@code false} if the removal is interrupted or taken over by another
+     * instance.
+     */
+    private boolean removeCatalogue(String partyId, String catalogueUuid) {
+        Object[] catalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(catalogueUuid);
+        Long catalogueHjid = CataloguePersistenceUtil.getCatalogueHjid(catalogueUuid);
+        if (catalogueIdAndPartyId == null || catalogueHjid == null) {
+            return true;
+        }
+        String catalogueId = (String) catalogueIdAndPartyId[0];
+        EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+
+        // the lines are deleted via their hjids, so that the catalogue is not loaded and merged again for each batch
+        List<Object[]> hjidsAndIds = CatalogueLinePersistenceUtil.getCatalogueLineHjidsAndIds(catalogueUuid, null, null, null);
+        int batchSize = Math.max(1, purgeBatchSize);
+        for (int i = 0; i < hjidsAndIds.size(); i += batchSize) {
+            // renew the claim before each batch
+            if (Thread.currentThread().isInterrupted() || !claimCatalogue(catalogueUuid)) {
+                logger.info("Stopped removing catalogue: {} of party: {} after {} lines", catalogueUuid, partyId, i);
+                return false;
+            }
+            List<Object[]> batch = hjidsAndIds.subList(i, Math.min(i + batchSize, hjidsAndIds.size()));
+            catalogueVersionRegistry.update(partyId, catalogueId, () -> {
+                for (Object[] hjidAndId : batch) {
+                    repositoryWrapper.deleteEntityByHjid(CatalogueLineType.class, (Long) hjidAndId[0]);
+                }
+                return null;
+            });
+        }
+        catalogueVersionRegistry.update(partyId, catalogueId, () -> {
+            repositoryWrapper.deleteEntityByHjid(CatalogueType.class, catalogueHjid);
+            return null;
+        });
+        logger.info("Removed catalogue: {} with {} lines of party: {}", catalogueUuid, hjidsAndIds.size(), partyId);
+        return true;
+    }
+
+    private boolean claimCatalogue(String catalogueUuid) {
+        return cataloguePurgeRegistry.claimCatalogue(catalogueUuid, instanceId, TimeUnit.MINUTES.toMillis(claimTimeoutMinutes));
+    }
+}
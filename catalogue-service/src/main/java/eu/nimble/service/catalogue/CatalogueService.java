@@ -1,8 +1,10 @@
 package eu.nimble.service.catalogue;
 
+import eu.nimble.service.catalogue.model.catalogue.CatalogueLineBulkResult;
 import eu.nimble.service.catalogue.model.catalogue.CatalogueLineSortOptions;
 import eu.nimble.service.catalogue.model.catalogue.CataloguePaginationResponse;
 import eu.nimble.service.catalogue.model.statistics.ProductAndServiceStatistics;
+import eu.nimble.service.catalogue.model.upload.UploadMergeResult;
 import eu.nimble.service.model.ubl.catalogue.CatalogueType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.CatalogueLineType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
@@ -64,13 +66,20 @@ public interface CatalogueService {
      */
     public Workbook generateTemplateForCategory(List<String> categoryId, List<String> taxonomyIds,String templateLanguage);
 
+    /**
+     * Returns the content of the template generated for the given categories. Templates are cached per category set
+     * and language, so the same template is not generated again until the categories are re-indexed.
+     */
+    public byte[] getTemplateContentForCategory(List<String> categoryIds, List<String> taxonomyIds, String templateLanguage);
+
     /**
      * Adds the catalogue given through the NIMBLE-specific, Excel-based template.
      *
      * @param catalogueTemplate
      * @param party
+     * @param mergeResult populated with the numbers of the lines affected by the upload
      */
-    public CatalogueType parseCatalogue(InputStream catalogueTemplate, String uploadMode, PartyType party, Boolean includeVat);
+    public CatalogueType parseCatalogue(InputStream catalogueTemplate, String uploadMode, PartyType party, Boolean includeVat, UploadMergeResult mergeResult);
 
     /**
      * Adds the provided images to the relevant products in the catalogue.
@@ -103,8 +112,26 @@ public interface CatalogueService {
 
     CatalogueLineType updateCatalogueLine(CatalogueLineType catalogueLine);
 
+    /**
+     * Adds the lines without an hjid to the catalogue and replaces the existing lines of the catalogue with the ones
+     * having the same hjid. The catalogue is read again under its lock and the lines are persisted in a single
+     * transaction. Lines conflicting with the lines saved in the meantime are not persisted.
+     *
+     * @param results results of the given lines in the same order. The results of the failed lines are skipped, the
+     *                others are completed with the persisted lines or the errors of the conflicting lines.
+     */
+    void addOrUpdateCatalogueLines(String catalogueUuid, List<CatalogueLineType> catalogueLines, List<CatalogueLineBulkResult> results);
+
     void deleteCatalogueLineById(String catalogueId, String lineId);
 
+    /**
+     * Deletes the lines of the catalogue matching all of the given filters, i.e. lines having one of the given ids, a
+     * category with the given uri and a manufacturer item id starting with the given prefix. Null filters are ignored.
+     *
+     * @return ids of the deleted lines
+     */
+    List<String> deleteCatalogueLines(String catalogueUuid, List<String> lineIds, String categoryUri, String manufacturerItemIdPrefix);
+
     List<String> getCatalogueIdsForParty(String partyId);
 
     List<Object[]> getCatalogueIdAndNameForParty(String partyId);
@@ -1,20 +1,26 @@
 package eu.nimble.service.catalogue;
 
+import eu.nimble.service.catalogue.cache.CacheHelper;
 import eu.nimble.service.catalogue.category.IndexCategoryService;
 import eu.nimble.service.catalogue.exception.CatalogueServiceException;
 import eu.nimble.service.catalogue.exception.InvalidCategoryException;
 import eu.nimble.service.catalogue.exception.TemplateParseException;
+import eu.nimble.service.catalogue.model.catalogue.CatalogueLineBulkResult;
 import eu.nimble.service.catalogue.model.catalogue.CatalogueLineSortOptions;
 import eu.nimble.service.catalogue.model.catalogue.CataloguePaginationResponse;
 import eu.nimble.service.catalogue.model.category.Category;
 import eu.nimble.service.catalogue.model.statistics.ProductAndServiceStatistics;
+import eu.nimble.service.catalogue.model.upload.UploadMergeResult;
+import eu.nimble.service.catalogue.persistence.util.BinaryContentHashRegistry;
 import eu.nimble.service.catalogue.persistence.util.CatalogueLinePersistenceUtil;
 import eu.nimble.service.catalogue.persistence.util.CataloguePersistenceUtil;
+import eu.nimble.service.catalogue.persistence.util.CatalogueVersionRegistry;
 import eu.nimble.service.catalogue.index.ItemIndexClient;
 import eu.nimble.service.catalogue.template.TemplateGenerator;
 import eu.nimble.service.catalogue.template.TemplateParser;
 import eu.nimble.service.catalogue.util.DataIntegratorUtil;
 import eu.nimble.service.catalogue.util.LanguageUtil;
+import eu.nimble.service.catalogue.util.SpringBridge;
 import eu.nimble.service.catalogue.validation.CatalogueValidator;
 import eu.nimble.service.catalogue.validation.ValidationException;
 import eu.nimble.service.catalogue.validation.ValidationMessages;
@@ -27,21 +33,34 @@ import eu.nimble.utility.HibernateUtility;
 import eu.nimble.utility.JAXBUtility;
 import eu.nimble.utility.exception.NimbleException;
 import eu.nimble.utility.exception.NimbleExceptionMessageCode;
+import eu.nimble.utility.persistence.binary.BinaryContentService;
+import eu.nimble.utility.persistence.binary.ImageScaler;
 import eu.nimble.utility.persistence.resource.EntityIdAwareRepositoryWrapper;
-import org.apache.commons.io.IOUtils;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.ehcache.Cache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import javax.activation.MimetypesFileTypeMap;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -57,6 +76,18 @@ public class CatalogueServiceImpl implements CatalogueService {
     @Autowired
     private ItemIndexClient itemIndexClient;
     @Autowired
+    private CacheHelper cacheHelper;
+    @Autowired
+    private CatalogueVersionRegistry catalogueVersionRegistry;
+    @Autowired
+    private ImageScaler imageScaler;
+
+    // number of uploaded images stored concurrently
+    @Value("${nimble.catalog.image-upload.parallelism:4}")
+    private int imageUploadParallelism;
+    @Autowired
+    private BinaryContentHashRegistry binaryContentHashRegistry;
+    @Autowired
     private IndexCategoryService indexCategoryService;
 
     public static void main(String[] args) throws IOException {
@@ -113,8 +144,10 @@ public class CatalogueServiceImpl implements CatalogueService {
             logger.error(msg, e);
             throw new CatalogueServiceException(msg, e);
         }
-        EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogue.getProviderParty().getPartyIdentification().get(0).getID());
-        catalogue = repositoryWrapper.updateEntity(catalogue);
+        String partyId = catalogue.getProviderParty().getPartyIdentification().get(0).getID();
+        EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+        CatalogueType catalogueToUpdate = catalogue;
+        catalogue = catalogueVersionRegistry.update(partyId, catalogue.getID(), () -> repositoryWrapper.updateEntity(catalogueToUpdate));
         logger.info("Catalogue with uuid: {} updated in DB", catalogue.getUUID());
 
         // index catalogue
@@ -175,8 +208,9 @@ public class CatalogueServiceImpl implements CatalogueService {
             }
 
             // persist the catalogue in relational DB
-            EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(ublCatalogue.getProviderParty().getPartyIdentification().get(0).getID());
-            catalogue = repositoryWrapper.updateEntityForPersistCases((T) ublCatalogue);
+            String partyId = ublCatalogue.getProviderParty().getPartyIdentification().get(0).getID();
+            EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+            catalogue = catalogueVersionRegistry.update(partyId, ublCatalogue.getID(), () -> repositoryWrapper.updateEntityForPersistCases((T) ublCatalogue));
             logger.info("Catalogue with uuid: {} persisted in DB", uuid.toString());
 
             // index the catalogue
@@ -255,8 +289,12 @@ public class CatalogueServiceImpl implements CatalogueService {
             CatalogueType catalogue = getCatalogue(uuid);
 
             if (catalogue != null) {
-                EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogue.getProviderParty().getPartyIdentification().get(0).getID());
-                repositoryWrapper.deleteEntity(catalogue);
+                String partyId = catalogue.getProviderParty().getPartyIdentification().get(0).getID();
+                EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+                catalogueVersionRegistry.update(partyId, catalogue.getID(), () -> {
+                    repositoryWrapper.deleteEntity(catalogue);
+                    return null;
+                });
 
                 // delete indexed catalogue
                 itemIndexClient.deleteCatalogue(uuid);
@@ -293,6 +331,44 @@ public class CatalogueServiceImpl implements CatalogueService {
         return template;
     }
 
+    @Override
+    public byte[] getTemplateContentForCategory(List<String> categoryIds, List<String> taxonomyIds, String templateLanguage) {
+        Cache<String,byte[]> templateCache = cacheHelper.getTemplateCache();
+        String cacheKey = getTemplateCacheKey(categoryIds, taxonomyIds, templateLanguage);
+        byte[] content = templateCache.get(cacheKey);
+        if(content != null){
+            logger.debug("Retrieved the template from cache for key: {}", cacheKey);
+            return content;
+        }
+
+        Workbook template = generateTemplateForCategory(categoryIds, taxonomyIds, templateLanguage);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            template.write(bos);
+            template.close();
+        } catch (IOException e) {
+            String msg = String.format("Failed to write the template for categories: %s", categoryIds);
+            logger.error(msg, e);
+            throw new CatalogueServiceException(msg, e);
+        }
+        content = bos.toByteArray();
+        templateCache.put(cacheKey, content);
+        return content;
+    }
+
+    /**
+     * Creates a key consisting of the sorted taxonomy-qualified category ids and the language, so that the same category
+     * set is mapped to the same template regardless of the order of the categories
+     */
+    private static String getTemplateCacheKey(List<String> categoryIds, List<String> taxonomyIds, String templateLanguage) {
+        List<String> qualifiedCategoryIds = new ArrayList<>();
+        for (int i = 0; i < categoryIds.size(); i++) {
+            qualifiedCategoryIds.add(taxonomyIds.get(i) + "|" + categoryIds.get(i));
+        }
+        Collections.sort(qualifiedCategoryIds);
+        return templateLanguage + "|" + String.join(",", qualifiedCategoryIds);
+    }
+
     @Override
     public Map<Workbook,String> generateTemplateForCatalogue(CatalogueType catalogue,String languageId) {
         Map<HashSet<String>,List<CatalogueLineType>> categoryCatalogueLineMap = new HashMap<>();
@@ -306,14 +382,7 @@ public class CatalogueServiceImpl implements CatalogueService {
             }
 
             HashSet<String> categories = new HashSet<>(uris);
-            if(categoryCatalogueLineMap.containsKey(categories)){
-                List<CatalogueLineType> catalogueLineTypes = new ArrayList<>();
-                catalogueLineTypes.add(catalogueLine);
-                catalogueLineTypes.addAll(categoryCatalogueLineMap.get(categories));
-                categoryCatalogueLineMap.put(categories,catalogueLineTypes);
-            } else{
-                categoryCatalogueLineMap.put(categories,Arrays.asList(catalogueLine));
-            }
+            categoryCatalogueLineMap.computeIfAbsent(categories, key -> new ArrayList<>()).add(catalogueLine);
         }
         // workbook-file name map
         Map<Workbook,String> workbooks = new HashMap<>();
@@ -332,8 +401,8 @@ public class CatalogueServiceImpl implements CatalogueService {
                 logger.error(msg, e);
                 throw new CatalogueServiceException(msg, e);
             }
-            // generate a template for the catalogue lines
-            TemplateGenerator templateGenerator = new TemplateGenerator();
+            // generate a template for the catalogue lines. The rows are streamed as the number of lines is not bounded
+            TemplateGenerator templateGenerator = new TemplateGenerator(true);
             Workbook template = null;
             try {
                 template = templateGenerator.generateTemplateForCatalogueLines(entry.getValue(),categories,languageId);
@@ -350,7 +419,7 @@ public class CatalogueServiceImpl implements CatalogueService {
 
 
     @Override
-    public CatalogueType parseCatalogue(InputStream catalogueTemplate, String uploadMode, PartyType party, Boolean includeVat) {
+    public CatalogueType parseCatalogue(InputStream catalogueTemplate, String uploadMode, PartyType party, Boolean includeVat, UploadMergeResult mergeResult) {
         CatalogueType catalogue = getCatalogue("default", party.getPartyIdentification().get(0).getID());
         boolean newCatalogue = false;
         if (catalogue == null) {
@@ -373,179 +442,257 @@ public class CatalogueServiceImpl implements CatalogueService {
             catalogue.setID("default");
             catalogue.setProviderParty(party);
             catalogue.setCatalogueLine(catalogueLines);
+            mergeResult.setInserted(catalogueLines.size());
             return catalogue;
 
         } else {
-            updateLinesForUploadMode(catalogue, uploadMode, catalogueLines);
+            UploadMergeResult result = updateLinesForUploadMode(catalogue, uploadMode, catalogueLines);
+            mergeResult.setInserted(result.getInserted());
+            mergeResult.setUpdated(result.getUpdated());
+            mergeResult.setRemoved(result.getRemoved());
+            mergeResult.setUnchanged(result.getUnchanged());
             return catalogue;
         }
     }
 
     /**
-     * Populates catalogue line list of the catalogue based on the given update mode.
+     * Populates catalogue line list of the catalogue based on the given update mode. Lines are matched by their
+     * manufacturer item identifiers via hash maps, so that the merge takes linear time in the number of lines.
+     *
+     * @return the numbers of the inserted, updated, removed and unchanged lines
      */
-    private void updateLinesForUploadMode(CatalogueType catalogue, String uploadMode, List<CatalogueLineType> catalogueLines) {
-        List<CatalogueLineType> newCatalogueLines = new ArrayList<>();
+    UploadMergeResult updateLinesForUploadMode(CatalogueType catalogue, String uploadMode, List<CatalogueLineType> catalogueLines) {
+        UploadMergeResult mergeResult = new UploadMergeResult();
+        // manufacturer item id -> uploaded catalogue line
+        Map<String,CatalogueLineType> uploadedLineMap = new LinkedHashMap<>();
+        for (CatalogueLineType catalogueLine : catalogueLines) {
+            uploadedLineMap.put(getManufacturerItemId(catalogueLine), catalogueLine);
+        }
+
         if (uploadMode.compareToIgnoreCase("replace") == 0) {
             // since each catalogue line has the same categories, it is OK to get categories using the first one
             CommodityClassificationType defaultCategory = DataIntegratorUtil.getDefaultCategories(catalogueLines.get(0));
-            List<String> categoriesUris = null;
+            Set<String> categoriesUris = null;
             try {
-                categoriesUris = DataIntegratorUtil.getCategoryUris(catalogueLines.get(0));
+                categoriesUris = new HashSet<>(DataIntegratorUtil.getCategoryUris(catalogueLines.get(0)));
             } catch (InvalidCategoryException e) {
                 String msg = e.getMessage();
                 logger.error(msg, e);
                 throw new CatalogueServiceException(msg, e);
             }
+            // identifiers of the remaining catalogue lines
+            Set<String> productIds = new HashSet<>();
+            // identifiers of the removed lines which are replaced by the uploaded ones
+            Set<String> replacedLineIds = new HashSet<>();
             // catalogue lines which will be removed and will be replaced by the new ones
-            List<CatalogueLineType> catalogueLinesToBeRemoved = new ArrayList<>();
+            Set<CatalogueLineType> catalogueLinesToBeRemoved = Collections.newSetFromMap(new IdentityHashMap<>());
             for(CatalogueLineType catalogueLine:catalogue.getCatalogueLine()){
-                // firstly,both catalogue line should have the same number of categories,otherwise that means that they do not have the same categories.
-                if(catalogueLine.getGoodsItem().getItem().getCommodityClassification().size() == categoriesUris.size() + 1){
-                    boolean remove = true;
-                    // check catalogue line's categories
-                    for (CommodityClassificationType classificationType:catalogueLine.getGoodsItem().getItem().getCommodityClassification()){
-                        if(classificationType.getItemClassificationCode().getListID().contentEquals("Default")){
-                            if(!defaultCategory.getItemClassificationCode().getValue().contentEquals(classificationType.getItemClassificationCode().getValue())){
-                                remove = false;
-                                break;
-                            }
-                        } else if(!categoriesUris.contains(classificationType.getItemClassificationCode().getURI())){
-                            remove = false;
-                            break;
-                        }
-                    }
-
-                    if(remove){
-                        catalogueLinesToBeRemoved.add(catalogueLine);
+                String lineId = getManufacturerItemId(catalogueLine);
+                if(hasCategories(catalogueLine, defaultCategory, categoriesUris)){
+                    catalogueLinesToBeRemoved.add(catalogueLine);
+                    if(uploadedLineMap.containsKey(lineId)){
+                        replacedLineIds.add(lineId);
+                    } else {
+                        mergeResult.setRemoved(mergeResult.getRemoved() + 1);
                     }
+                    continue;
                 }
-            }
 
-            catalogue.getCatalogueLine().removeAll(catalogueLinesToBeRemoved);
-            catalogue.getCatalogueLine().addAll(catalogueLines);
-
-            // since the replace operation applies for the product with the specified categories
-            // there may be multiple products with the same id at the end
-            // check whether this is the case or not
-            List<String> productIds = new ArrayList<>();
-            for (CatalogueLineType lineType : catalogue.getCatalogueLine()) {
-                String lineId = lineType.getGoodsItem().getItem().getManufacturersItemIdentification().getID();
-                if(productIds.contains(lineId)){
+                // since the replace operation applies for the product with the specified categories
+                // there may be multiple products with the same id at the end
+                // check whether this is the case or not
+                if(uploadedLineMap.containsKey(lineId) || !productIds.add(lineId)){
                     throw new CatalogueServiceException(String.format("There exists another product having different categories for the given id: %s",lineId));
                 }
-                productIds.add(lineId);
             }
+            mergeResult.setUpdated(replacedLineIds.size());
+            mergeResult.setInserted(uploadedLineMap.size() - replacedLineIds.size());
+            mergeResult.setUnchanged(productIds.size());
 
-        } else {
+            catalogue.getCatalogueLine().removeIf(catalogueLinesToBeRemoved::contains);
+            catalogue.getCatalogueLine().addAll(catalogueLines);
 
-            // add catalogue lines which do not match with the existing ones to the new catalogue line list
-            for(CatalogueLineType catalogueLine : catalogueLines){
-                boolean isNewLine = true;
-                for(CatalogueLineType existingCatalogueLine : catalogue.getCatalogueLine()){
-                    if(catalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID().contentEquals(
-                            existingCatalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID())){
-                        isNewLine = false;
-                        break;
-                    }
+        } else {
+            // update the existing catalogue lines matching with the uploaded ones
+            Set<String> existingLineIds = new HashSet<>();
+            for(CatalogueLineType existingCatalogueLine : catalogue.getCatalogueLine()){
+                String lineId = getManufacturerItemId(existingCatalogueLine);
+                existingLineIds.add(lineId);
+                CatalogueLineType catalogueLine = uploadedLineMap.get(lineId);
+                if(catalogueLine != null){
+                    // update existing catalogue line
+                    updateExistingCatalogueLine(existingCatalogueLine,catalogueLine);
+                    mergeResult.setUpdated(mergeResult.getUpdated() + 1);
+                } else {
+                    mergeResult.setUnchanged(mergeResult.getUnchanged() + 1);
                 }
+            }
 
-                if(isNewLine){
-                    newCatalogueLines.add(catalogueLine);
+            // add catalogue lines which do not match with the existing ones
+            List<CatalogueLineType> newCatalogueLines = new ArrayList<>();
+            for(Map.Entry<String,CatalogueLineType> uploadedLine : uploadedLineMap.entrySet()){
+                if(!existingLineIds.contains(uploadedLine.getKey())){
+                    newCatalogueLines.add(uploadedLine.getValue());
                 }
             }
+            catalogue.getCatalogueLine().addAll(newCatalogueLines);
+            mergeResult.setInserted(newCatalogueLines.size());
+        }
 
-            // find catalogue lines which we need to update
-            for(CatalogueLineType catalogueLine : catalogueLines){
-                for(CatalogueLineType existingCatalogueLine : catalogue.getCatalogueLine()){
-                    if(catalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID().contentEquals(
-                            existingCatalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID())){
-                        // update existing catalogue line
-                        updateExistingCatalogueLine(existingCatalogueLine,catalogueLine);
-                    }
+        logger.info("Merged the uploaded catalogue lines into catalogue: {} in {} mode. {}", catalogue.getUUID(), uploadMode, mergeResult);
+        return mergeResult;
+    }
+
+    /**
+     * Checks whether the catalogue line has exactly the given default category and the categories with the given uris
+     */
+    private static boolean hasCategories(CatalogueLineType catalogueLine, CommodityClassificationType defaultCategory, Set<String> categoriesUris) {
+        List<CommodityClassificationType> classifications = catalogueLine.getGoodsItem().getItem().getCommodityClassification();
+        // firstly,both catalogue line should have the same number of categories,otherwise that means that they do not have the same categories.
+        if(classifications.size() != categoriesUris.size() + 1){
+            return false;
+        }
+        // check catalogue line's categories
+        for (CommodityClassificationType classificationType : classifications){
+            if(classificationType.getItemClassificationCode().getListID().contentEquals("Default")){
+                if(!defaultCategory.getItemClassificationCode().getValue().contentEquals(classificationType.getItemClassificationCode().getValue())){
+                    return false;
                 }
+            } else if(!categoriesUris.contains(classificationType.getItemClassificationCode().getURI())){
+                return false;
             }
         }
-        // add new catalogue lines
-        catalogue.getCatalogueLine().addAll(newCatalogueLines);
+        return true;
+    }
+
+    private static String getManufacturerItemId(CatalogueLineType catalogueLine) {
+        return catalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID();
     }
 
     @Override
     public CatalogueType addImagesToProducts(ZipInputStream imagePackage, CatalogueType catalogue) {
+        // manufacturer item id -> catalogue line
+        Map<String, CatalogueLineType> catalogueLineMap = new HashMap<>();
+        for (CatalogueLineType line : catalogue.getCatalogueLine()) {
+            catalogueLineMap.putIfAbsent(line.getGoodsItem().getItem().getManufacturersItemIdentification().getID(), line);
+        }
+
+        // images are copied into temporary files while reading the package, so that the package is validated before
+        // any image is stored and only the images being processed are kept in memory
+        List<ProductImageFile> imageFiles = new ArrayList<>();
+        ExecutorService executorService = null;
         try {
-            ZipEntry ze = imagePackage.getNextEntry();
+            int maxFileSize = SpringBridge.getInstance().getCatalogueServiceConfig().getMaxFileSize() * 1024 * 1024;
+            List<String> errorMessages = new ArrayList<>();
+            List<List<String>> errorParameters = new ArrayList<>();
 
+            ZipEntry ze = imagePackage.getNextEntry();
             while (ze != null) {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                try {
-                    String fileName = ze.getName();
-                    String mimeType = MimetypesFileTypeMap.getDefaultFileTypeMap().getContentType(fileName);
-                    String type = mimeType.split("/")[0];
-                    String prefix = fileName.split("\\.")[0];
-
-                    if (type.equals("image")) {
-                        // find the item according to the prefix provided in the image name
-                        ItemType item = null;
-                        for (CatalogueLineType line : catalogue.getCatalogueLine()) {
-                            if (line.getGoodsItem().getItem().getManufacturersItemIdentification().getID().contentEquals(prefix)) {
-                                item = line.getGoodsItem().getItem();
-                                break;
-                            }
-                        }
-                        if (item == null) {
-                            logger.warn("No product to assign image with prefix: {}", prefix);
-
-                            // item is available
-                        } else {
-                            // prepare the new binary content
-                            IOUtils.copy(imagePackage, baos);
-                            BinaryObjectType binaryObject = new BinaryObjectType();
-                            binaryObject.setMimeCode(mimeType);
-                            binaryObject.setFileName(ze.getName());
-                            binaryObject.setValue(baos.toByteArray());
-
-                            // check whether the image is already attached to the item
-                            ItemType finalItem = item;
-                            ZipEntry finalZe = ze;
-                            int itemIndex = IntStream.range(0, item.getProductImage().size())
-                                    .filter(i -> finalItem.getProductImage().get(i).getFileName().contentEquals(finalZe.getName()))
-                                    .findFirst()
-                                    .orElse(-1);
-                            // if an image exists with the same name put it to the previous index
-                            if (itemIndex != -1) {
-                                item.getProductImage().remove(itemIndex);
-                                item.getProductImage().add(itemIndex, binaryObject);
-                            } else {
-                                item.getProductImage().add(binaryObject);
+                String fileName = ze.getName();
+                String mimeType = MimetypesFileTypeMap.getDefaultFileTypeMap().getContentType(fileName);
+                String type = mimeType.split("/")[0];
+                String prefix = fileName.split("\\.")[0];
+
+                if (type.equals("image")) {
+                    // find the line according to the prefix provided in the image name
+                    CatalogueLineType line = catalogueLineMap.get(prefix);
+                    if (line == null) {
+                        logger.warn("No product to assign image with prefix: {}", prefix);
+
+                        // line is available
+                    } else {
+                        try {
+                            ProductImageFile imageFile = new ProductImageFile(line, fileName, mimeType, Files.createTempFile("catalogue-image", null));
+                            imageFiles.add(imageFile);
+                            Files.copy(imagePackage, imageFile.file, StandardCopyOption.REPLACE_EXISTING);
+                            if (Files.size(imageFile.file) > maxFileSize) {
+                                errorMessages.add(NimbleExceptionMessageCode.BAD_REQUEST_LARGER_THAN_ALLOWED_SIZE.toString());
+                                errorParameters.add(Arrays.asList(fileName, Integer.toString(maxFileSize)));
                             }
-
-                            logger.info("Image {} added to item {}", fileName, item.getManufacturersItemIdentification().getID());
+                        } catch (IOException e) {
+                            logger.warn("Failed to get data from the zip entry: {}", ze.getName(), e);
                         }
-
-                    } else {
-                        logger.warn("The file: {} is not an image", fileName);
-                    }
-                } catch(IOException e){
-                    logger.warn("Failed to get data from the zip entry: {}", ze.getName(), e);
-                } finally{
-                    try {
-                        baos.close();
-                    } catch (IOException e) {
-                        logger.warn("Failed to close baos", e);
                     }
+
+                } else {
+                    logger.warn("The file: {} is not an image", fileName);
                 }
 
                 imagePackage.closeEntry();
                 ze = imagePackage.getNextEntry();
             }
-
+            // do not store any image if some of them are not valid. The size is the only constraint on the product
+            // images, so the rest of the catalogue can be validated before the images are attached.
+            if (errorMessages.size() > 0) {
+                throw new NimbleException(errorMessages, errorParameters);
+            }
             CatalogueValidator catalogueValidator = new CatalogueValidator(catalogue);
             ValidationMessages validationMessages = catalogueValidator.validate();
             if(validationMessages.getErrorMessages().size() > 0){
                 throw new NimbleException(validationMessages.getErrorMessages(),validationMessages.getErrorParameters());
             }
 
-            catalogue = updateCatalogue(catalogue);
+            // store the images and create their thumbnails on a bounded pool
+            executorService = Executors.newFixedThreadPool(Math.max(1, imageUploadParallelism));
+            List<Future<BinaryObjectType>> binaryObjects = new ArrayList<>();
+            for (ProductImageFile imageFile : imageFiles) {
+                binaryObjects.add(executorService.submit(() -> storeProductImage(imageFile)));
+            }
+
+            // attach the images to the items in the order they are provided in the package
+            Set<CatalogueLineType> affectedLines = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < imageFiles.size(); i++) {
+                BinaryObjectType binaryObject = getResult(binaryObjects.get(i));
+                if (binaryObject == null) {
+                    continue;
+                }
+                ProductImageFile imageFile = imageFiles.get(i);
+                ItemType item = imageFile.line.getGoodsItem().getItem();
+                // check whether the image is already attached to the item
+                int itemIndex = IntStream.range(0, item.getProductImage().size())
+                        .filter(index -> item.getProductImage().get(index).getFileName().contentEquals(imageFile.fileName))
+                        .findFirst()
+                        .orElse(-1);
+                // if an image exists with the same name put it to the previous index
+                if (itemIndex != -1) {
+                    item.getProductImage().remove(itemIndex);
+                    item.getProductImage().add(itemIndex, binaryObject);
+                } else {
+                    item.getProductImage().add(binaryObject);
+                }
+                affectedLines.add(imageFile.line);
+
+                logger.info("Image {} added to item {}", imageFile.fileName, item.getManufacturersItemIdentification().getID());
+            }
+
+            // persist only the lines to which images are added, as updateCatalogueLine does
+            String partyId = catalogue.getProviderParty().getPartyIdentification().get(0).getID();
+            EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+            List<CatalogueLineType> catalogueLines = catalogue.getCatalogueLine();
+            List<CatalogueLineType> persistedLines = catalogueVersionRegistry.update(partyId, catalogue.getID(), () -> {
+                List<CatalogueLineType> lines = new ArrayList<>();
+                for (int i = 0; i < catalogueLines.size(); i++) {
+                    if (affectedLines.contains(catalogueLines.get(i))) {
+                        CatalogueLineType line = repositoryWrapper.updateEntity(catalogueLines.get(i));
+                        catalogueLines.set(i, line);
+                        lines.add(line);
+                    }
+                }
+                return lines;
+            });
+
+            // the hashes of the original images are kept as the ETags of the contents
+            for (ProductImageFile imageFile : imageFiles) {
+                if (imageFile.hash != null && imageFile.uri != null) {
+                    binaryContentHashRegistry.saveHash(imageFile.uri, imageFile.hash);
+                }
+            }
+
+            // index the affected lines with a single call
+            if (!persistedLines.isEmpty()) {
+                itemIndexClient.indexCatalogueLines(catalogue, persistedLines);
+            }
+            logger.info("Added images to {} products of catalogue: {}", persistedLines.size(), catalogue.getUUID());
 
             return catalogue;
 
@@ -553,6 +700,98 @@ public class CatalogueServiceImpl implements CatalogueService {
             String msg = "Failed to get next entry";
             logger.error(msg, e);
             throw new CatalogueServiceException(msg, e);
+
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+            for (ProductImageFile imageFile : imageFiles) {
+                try {
+                    Files.deleteIfExists(imageFile.file);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete the temporary image file: {}", imageFile.file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the original image in the binary content database and returns a binary object including the thumbnail of
+     * the image and referring to the original one. If the image can not be scaled, the original content is used as the
+     * value of the binary object. Returns {@code null} if the image could not be read.
+     */
+    private BinaryObjectType storeProductImage(ProductImageFile imageFile) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(imageFile.file);
+        } catch (IOException e) {
+            logger.warn("Failed to read the image: {}", imageFile.fileName, e);
+            return null;
+        }
+
+        byte[] thumbnailContent = content;
+        try {
+            if (ImageIO.read(new ByteArrayInputStream(content)) != null) {
+                String formatName = "png";
+                if(imageFile.mimeType.contains("jpeg")) {
+                    formatName = "jpg";
+                } else if(imageFile.mimeType.contains("gif")) {
+                    formatName = "gif";
+                }
+                BufferedImage thumbnail = imageScaler.scale(new ByteArrayInputStream(content), true);
+                ByteArrayOutputStream thumbnailBytes = new ByteArrayOutputStream();
+                ImageIO.write(thumbnail, formatName, thumbnailBytes);
+                thumbnailContent = thumbnailBytes.toByteArray();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to create a thumbnail for the image: {}. The original image will be used", imageFile.fileName, e);
+        }
+
+        // store the original content in the binary content database
+        BinaryObjectType originalBinaryObject = new BinaryObjectType();
+        originalBinaryObject.setValue(content);
+        originalBinaryObject.setMimeCode(imageFile.mimeType);
+        originalBinaryObject.setFileName(imageFile.fileName);
+        originalBinaryObject = new BinaryContentService().createContent(originalBinaryObject);
+        imageFile.uri = originalBinaryObject.getUri();
+        imageFile.hash = BinaryContentHashRegistry.computeHash(content);
+
+        BinaryObjectType binaryObject = new BinaryObjectType();
+        binaryObject.setMimeCode(imageFile.mimeType);
+        binaryObject.setFileName(imageFile.fileName);
+        binaryObject.setValue(thumbnailContent);
+        binaryObject.setUri(originalBinaryObject.getUri());
+        return binaryObject;
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CatalogueServiceException("Interrupted while processing the images", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CatalogueServiceException("Failed to process the images", e.getCause());
+        }
+    }
+
+    private static class ProductImageFile {
+        private final CatalogueLineType line;
+        private final String fileName;
+        private final String mimeType;
+        private final Path file;
+        // uri and hash of the stored original image, set by the thread storing the image
+        private volatile String uri;
+        private volatile String hash;
+
+        private ProductImageFile(CatalogueLineType line, String fileName, String mimeType, Path file) {
+            this.line = line;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.file = file;
         }
     }
 
@@ -621,8 +860,10 @@ public class CatalogueServiceImpl implements CatalogueService {
             logger.error(msg, e);
             throw new CatalogueServiceException(msg, e);
         }
-        EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogue.getProviderParty().getPartyIdentification().get(0).getID());
-        catalogue = repositoryWrapper.updateEntity(catalogue);
+        String partyId = catalogue.getProviderParty().getPartyIdentification().get(0).getID();
+        EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+        CatalogueType catalogueToUpdate = catalogue;
+        catalogue = catalogueVersionRegistry.update(partyId, catalogue.getID(), () -> repositoryWrapper.updateEntity(catalogueToUpdate));
         catalogueLine = catalogue.getCatalogueLine().get(catalogue.getCatalogueLine().size() - 1);
 
         // index the line
@@ -633,6 +874,24 @@ public class CatalogueServiceImpl implements CatalogueService {
 
     @Override
     public CatalogueLineType updateLinesCatalogue(String newCatalogueUuid, String oldeCatalogueUuid,CatalogueLineType catalogueLine) {
+        Object[] oldCatalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(oldeCatalogueUuid);
+        Object[] newCatalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(newCatalogueUuid);
+        Long hjidLine = catalogueLine.getHjid();
+
+        // both catalogues are read and updated under their locks, so that no update of them is overwritten
+        CatalogueLineType catalogueLineToMove = catalogueLine;
+        catalogueLine = catalogueVersionRegistry.update((String) newCatalogueIdAndPartyId[1], Arrays.asList((String) oldCatalogueIdAndPartyId[0], (String) newCatalogueIdAndPartyId[0]),
+                () -> moveCatalogueLine(newCatalogueUuid, oldeCatalogueUuid, catalogueLineToMove));
+
+        // index the line
+        itemIndexClient.indexCatalogueLine(catalogueLine);
+        // delete the old catalogue line from the index
+        itemIndexClient.deleteCatalogueLine(hjidLine);
+
+        return catalogueLine;
+    }
+
+    private CatalogueLineType moveCatalogueLine(String newCatalogueUuid, String oldeCatalogueUuid, CatalogueLineType catalogueLine) {
         CatalogueType oldcatalogue = getCatalogue(oldeCatalogueUuid);
         CatalogueType newcatalogue = getCatalogue(newCatalogueUuid);
 
@@ -659,16 +918,9 @@ public class CatalogueServiceImpl implements CatalogueService {
             throw new CatalogueServiceException(msg, e);
         }
 
-        oldcatalogue = repositoryWrapper.updateEntity(oldcatalogue);
+        repositoryWrapper.updateEntity(oldcatalogue);
         newcatalogue = repositoryWrapper.updateEntity(newcatalogue);
-        catalogueLine = newcatalogue.getCatalogueLine().get(newcatalogue.getCatalogueLine().size() - 1);
-
-        // index the line
-        itemIndexClient.indexCatalogueLine(catalogueLine);
-        // delete the old catalogue line from the index
-        itemIndexClient.deleteCatalogueLine(hjidLine);
-
-        return catalogueLine;
+        return newcatalogue.getCatalogueLine().get(newcatalogue.getCatalogueLine().size() - 1);
     }
 
     @Override
@@ -682,7 +934,9 @@ public class CatalogueServiceImpl implements CatalogueService {
             throw new CatalogueServiceException(msg, e);
         }
         EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(catalogueLine.getGoodsItem().getItem().getManufacturerParty().getPartyIdentification().get(0).getID());
-        catalogueLine = repositoryWrapper.updateEntity(catalogueLine);
+        CatalogueLineType catalogueLineToUpdate = catalogueLine;
+        catalogueLine = catalogueVersionRegistry.update(catalogue.getProviderParty().getPartyIdentification().get(0).getID(), catalogue.getID(),
+                () -> repositoryWrapper.updateEntity(catalogueLineToUpdate));
 
         // index the line
         // Not UUID but ID of the document reference should be used.
@@ -692,20 +946,185 @@ public class CatalogueServiceImpl implements CatalogueService {
         return catalogueLine;
     }
 
+    @Override
+    public void addOrUpdateCatalogueLines(String catalogueUuid, List<CatalogueLineType> catalogueLines, List<CatalogueLineBulkResult> results) {
+        Object[] catalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(catalogueUuid);
+        if (catalogueIdAndPartyId == null) {
+            for (CatalogueLineBulkResult result : results) {
+                result.addError(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE.toString(), Arrays.asList(catalogueUuid));
+            }
+            return;
+        }
+        String partyId = (String) catalogueIdAndPartyId[1];
+        // the catalogue is read again under its lock, so that the lines saved in the meantime are not overwritten. The
+        // new and updated lines are written in the single transaction of the update.
+        CatalogueType catalogue = catalogueVersionRegistry.update(partyId, (String) catalogueIdAndPartyId[0],
+                () -> saveCatalogueLines(partyId, catalogueUuid, catalogueLines, results));
+
+        // line ids are unique in a catalogue, so the persisted lines are matched via them
+        Map<String, CatalogueLineType> persistedLines = new HashMap<>();
+        for (CatalogueLineType catalogueLine : catalogue.getCatalogueLine()) {
+            persistedLines.put(catalogueLine.getID(), catalogueLine);
+        }
+        List<CatalogueLineType> savedLines = new ArrayList<>();
+        for (int i = 0; i < catalogueLines.size(); i++) {
+            CatalogueLineBulkResult result = results.get(i);
+            if (result.getStatus() != CatalogueLineBulkResult.Status.FAILED) {
+                CatalogueLineType persistedLine = persistedLines.get(catalogueLines.get(i).getID());
+                result.setLineId(persistedLine.getID());
+                result.setHjid(persistedLine.getHjid());
+                savedLines.add(persistedLine);
+            }
+        }
+        logger.info("Saved {} of {} lines of catalogue: {}", savedLines.size(), catalogueLines.size(), catalogueUuid);
+
+        // index the affected lines with a single call
+        if (!savedLines.isEmpty()) {
+            itemIndexClient.indexCatalogueLines(catalogue, savedLines);
+        }
+    }
+
+    /**
+     * Adds the new lines to the catalogue and replaces the existing ones. The lines conflicting with the current lines
+     * of the catalogue, i.e. the lines removed or added after the lines are validated, are reported as failed.
+     *
+     * @return the persisted catalogue
+     */
+    private CatalogueType saveCatalogueLines(String partyId, String catalogueUuid, List<CatalogueLineType> catalogueLines, List<CatalogueLineBulkResult> results) {
+        CatalogueType catalogue = getCatalogue(catalogueUuid);
+        List<CatalogueLineType> lines = catalogue.getCatalogueLine();
+        Map<Long, Integer> lineIndexes = new HashMap<>();
+        Set<String> lineIds = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            lineIndexes.put(lines.get(i).getHjid(), i);
+            lineIds.add(lines.get(i).getID());
+        }
+
+        List<CatalogueLineType> newLines = new ArrayList<>();
+        List<CatalogueLineType> updatedLines = new ArrayList<>();
+        List<Integer> updatedLineIndexes = new ArrayList<>();
+        for (int i = 0; i < catalogueLines.size(); i++) {
+            CatalogueLineType catalogueLine = catalogueLines.get(i);
+            CatalogueLineBulkResult result = results.get(i);
+            if (result.getStatus() == CatalogueLineBulkResult.Status.FAILED) {
+                continue;
+            }
+            if (catalogueLine.getHjid() == null) {
+                if (!lineIds.add(catalogueLine.getID())) {
+                    result.addError(NimbleExceptionMessageCode.NOT_ACCEPTABLE_ALREADY_EXISTS.toString(), Arrays.asList(catalogueLine.getID()));
+                    continue;
+                }
+                lines.add(catalogueLine);
+                newLines.add(catalogueLine);
+            } else {
+                Integer index = lineIndexes.get(catalogueLine.getHjid());
+                if (index == null) {
+                    result.addError(NimbleExceptionMessageCode.NOT_FOUND_NO_CATALOGUE_LINE_FOR_HJID.toString(), Arrays.asList(catalogueLine.getHjid().toString()));
+                    continue;
+                }
+                String existingLineId = lines.get(index).getID();
+                if (!existingLineId.equals(catalogueLine.getID()) && lineIds.contains(catalogueLine.getID())) {
+                    result.addError(NimbleExceptionMessageCode.NOT_ACCEPTABLE_ALREADY_EXISTS.toString(), Arrays.asList(catalogueLine.getID()));
+                    continue;
+                }
+                lineIds.remove(existingLineId);
+                lineIds.add(catalogueLine.getID());
+                lines.set(index, catalogueLine);
+                updatedLines.add(catalogueLine);
+                updatedLineIndexes.add(index);
+            }
+        }
+        if (newLines.isEmpty() && updatedLines.isEmpty()) {
+            return catalogue;
+        }
+
+        List<CatalogueLineType> savedLines = new ArrayList<>(newLines);
+        savedLines.addAll(updatedLines);
+        try {
+            DataIntegratorUtil.ensureCatalogueLinesDataIntegrityAndEnhancement(savedLines, catalogue);
+        } catch (InvalidCategoryException e) {
+            String msg = e.getMessage();
+            logger.error(msg, e);
+            throw new CatalogueServiceException(msg, e);
+        }
+
+        EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+        // new lines are attached to the catalogue, so they can only be persisted by updating the catalogue. The
+        // unchanged lines of the catalogue are not written by this update, and the inserts and updates of the lines
+        // are batched when the transaction is flushed.
+        if (!newLines.isEmpty()) {
+            return repositoryWrapper.updateEntity(catalogue);
+        }
+        for (Integer index : updatedLineIndexes) {
+            lines.set(index, repositoryWrapper.updateEntity(lines.get(index)));
+        }
+        return catalogue;
+    }
+
     @Override
     public void deleteCatalogueLineById(String catalogueId, String id) {
-        Object[] lineHjidAndPartyId = CatalogueLinePersistenceUtil.getCatalogueLineHjidAndPartyId(catalogueId,id);
+        Object[] catalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(catalogueId);
+        if (catalogueIdAndPartyId == null) {
+            return;
+        }
 
-        if (lineHjidAndPartyId != null) {
-            Long hjid = (Long) lineHjidAndPartyId[0];
+        Long hjid = catalogueVersionRegistry.update((String) catalogueIdAndPartyId[1], (String) catalogueIdAndPartyId[0], () -> {
+            Object[] lineHjidAndPartyId = CatalogueLinePersistenceUtil.getCatalogueLineHjidAndPartyId(catalogueId,id);
+            if (lineHjidAndPartyId == null) {
+                return null;
+            }
             EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper((String) lineHjidAndPartyId[1]);
-            repositoryWrapper.deleteEntityByHjid(CatalogueLineType.class, hjid);
+            repositoryWrapper.deleteEntityByHjid(CatalogueLineType.class, (Long) lineHjidAndPartyId[0]);
+            return (Long) lineHjidAndPartyId[0];
+        });
 
+        if (hjid != null) {
             // delete indexed item
             itemIndexClient.deleteCatalogueLine(hjid);
         }
     }
 
+    @Override
+    public List<String> deleteCatalogueLines(String catalogueUuid, List<String> lineIds, String categoryUri, String manufacturerItemIdPrefix) {
+        // resolve the matching lines with a single query
+        List<Object[]> hjidsAndIds = CatalogueLinePersistenceUtil.getCatalogueLineHjidsAndIds(catalogueUuid, lineIds, categoryUri, manufacturerItemIdPrefix);
+        if (hjidsAndIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Long> hjids = new HashSet<>();
+        List<String> deletedLineIds = new ArrayList<>();
+        for (Object[] hjidAndId : hjidsAndIds) {
+            hjids.add((Long) hjidAndId[0]);
+            deletedLineIds.add((String) hjidAndId[1]);
+        }
+
+        // remove the lines and their dependent entities in a single update of the catalogue. The catalogue is read under
+        // its lock, so that the updates of the other lines are not overwritten.
+        Object[] catalogueIdAndPartyId = CataloguePersistenceUtil.getCatalogueIdAndPartyId(catalogueUuid);
+        if (catalogueIdAndPartyId == null) {
+            return new ArrayList<>();
+        }
+        String partyId = (String) catalogueIdAndPartyId[1];
+        CatalogueType updatedCatalogue = catalogueVersionRegistry.update(partyId, (String) catalogueIdAndPartyId[0], () -> {
+            CatalogueType catalogue = getCatalogue(catalogueUuid);
+            // the catalogue may have been deleted in the meantime
+            if (catalogue == null) {
+                return null;
+            }
+            catalogue.getCatalogueLine().removeIf(line -> hjids.contains(line.getHjid()));
+            EntityIdAwareRepositoryWrapper repositoryWrapper = new EntityIdAwareRepositoryWrapper(partyId);
+            return repositoryWrapper.updateEntity(catalogue);
+        });
+        if (updatedCatalogue == null) {
+            return new ArrayList<>();
+        }
+        logger.info("Deleted {} lines of catalogue: {}", hjids.size(), catalogueUuid);
+
+        // delete the indexed items with a single request
+        itemIndexClient.deleteCatalogueLines(new ArrayList<>(hjids));
+        return deletedLineIds;
+    }
+
     @Override
     public List<Object[]> getCatalogueIdAndNameForParty(String partyId) {
         return CataloguePersistenceUtil.getCatalogueIdAndNameListsForParty(partyId);
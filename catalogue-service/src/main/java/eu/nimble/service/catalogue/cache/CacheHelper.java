@@ -33,4 +33,16 @@ public class CacheHelper {
     public Cache<Object,Object> getCategoryCache() {
         return cacheManager.getCache("category",Object.class, Object.class);
     }
+
+    public Cache<String,byte[]> getTemplateCache() {
+        return cacheManager.getCache("template",String.class, byte[].class);
+    }
+
+    /**
+     * Removes the cached templates. It should be called when the category or property definitions are updated. Only the
+     * cache of this instance is cleared, the templates cached by the other instances expire in an hour.
+     */
+    public void clearTemplateCache() {
+        getTemplateCache().clear();
+    }
 }
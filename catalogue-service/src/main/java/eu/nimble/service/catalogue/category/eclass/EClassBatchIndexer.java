@@ -0,0 +1,206 @@
+package eu.nimble.service.catalogue.category.eclass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Groups the resources to be indexed into batches and indexes the batches concurrently. At most {@code parallelism}
+ * batches are processed at the same time and at most {@code 2 * parallelism} batches are kept in memory, i.e. adding a
+ * resource blocks when the workers fall behind.
+ *
+ * If a checkpoint file is given, the keys of the successfully indexed resources are appended to the file after each
+ * batch and the resources already included in the file are skipped. The file is deleted once all resources are indexed
+ * successfully, so that a failed run is resumed by the next run from where it is left.
+ */
+class EClassBatchIndexer<T> {
+    private static final Logger logger = LoggerFactory.getLogger(EClassBatchIndexer.class);
+
+    private final String name;
+    private final int batchSize;
+    private final Function<T, String> keyFunction;
+    private final Predicate<T> indexFunction;
+    private final ExecutorService executorService;
+    private final Semaphore batchPermits;
+    private final Path checkpointFile;
+    private final Set<String> checkpointedKeys = new HashSet<>();
+    private BufferedWriter checkpointWriter;
+
+    private List<T> currentBatch = new ArrayList<>();
+    private final List<String> failedKeys = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong indexedCount = new AtomicLong();
+    private long skippedCount = 0;
+    private final long startTime = System.currentTimeMillis();
+
+    EClassBatchIndexer(String name, int batchSize, int parallelism, Path checkpointFile, Function<T, String> keyFunction, Predicate<T> indexFunction) {
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.keyFunction = keyFunction;
+        this.indexFunction = indexFunction;
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        this.batchPermits = new Semaphore(2 * Math.max(1, parallelism));
+        this.checkpointFile = checkpointFile;
+        openCheckpoint();
+    }
+
+    /**
+     * Adds the given resource to the current batch. The batch is dispatched when it is full.
+     */
+    void add(T resource) {
+        if(checkpointedKeys.contains(keyFunction.apply(resource))) {
+            skippedCount++;
+            return;
+        }
+        currentBatch.add(resource);
+        if(currentBatch.size() >= batchSize) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Dispatches the remaining resources, waits for all batches to complete and returns the keys of the resources
+     * failed to be indexed
+     */
+    List<String> complete() throws InterruptedException {
+        if(!currentBatch.isEmpty()) {
+            dispatch();
+        }
+        awaitWorkers();
+        closeCheckpoint(true);
+
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("Completed {} indexing. indexed: {}, skipped from checkpoint: {}, failed: {}, duration: {} ms, rate: {} docs/s",
+                name, indexedCount.get(), skippedCount, failedKeys.size(), duration, getRate(duration));
+        return new ArrayList<>(failedKeys);
+    }
+
+    /**
+     * Stops the indexing when the resources could not be provided completely, e.g. the database stream failed. The
+     * batches already dispatched are completed but the current one is discarded. The checkpoint file is kept, so that
+     * the next run skips the resources indexed so far.
+     */
+    void abort() {
+        currentBatch = new ArrayList<>();
+        try {
+            awaitWorkers();
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        closeCheckpoint(false);
+        logger.warn("Aborted {} indexing. indexed: {}, failed: {}", name, indexedCount.get(), failedKeys.size());
+    }
+
+    private void awaitWorkers() throws InterruptedException {
+        executorService.shutdown();
+        while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+            logProgress();
+        }
+    }
+
+    private void dispatch() {
+        List<T> batch = currentBatch;
+        currentBatch = new ArrayList<>();
+        batchPermits.acquireUninterruptibly();
+        executorService.execute(() -> {
+            try {
+                List<String> indexedKeys = new ArrayList<>();
+                for(T resource : batch) {
+                    String key = keyFunction.apply(resource);
+                    boolean isIndexed;
+                    try {
+                        isIndexed = indexFunction.test(resource);
+                    } catch (Exception e) {
+                        logger.error("Failed to index {}: {}", name, key, e);
+                        isIndexed = false;
+                    }
+                    if(isIndexed) {
+                        indexedKeys.add(key);
+                    } else {
+                        failedKeys.add(key);
+                    }
+                }
+                indexedCount.addAndGet(indexedKeys.size());
+                writeCheckpoint(indexedKeys);
+                logProgress();
+
+            } finally {
+                batchPermits.release();
+            }
+        });
+    }
+
+    private void logProgress() {
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("{} indexing progress. indexed: {}, failed: {}, rate: {} docs/s", name, indexedCount.get(), failedKeys.size(), getRate(duration));
+    }
+
+    private long getRate(long durationInMillis) {
+        return durationInMillis > 0 ? indexedCount.get() * 1000 / durationInMillis : indexedCount.get();
+    }
+
+    private void openCheckpoint() {
+        if(checkpointFile == null) {
+            return;
+        }
+        try {
+            if(Files.exists(checkpointFile)) {
+                checkpointedKeys.addAll(Files.readAllLines(checkpointFile, StandardCharsets.UTF_8));
+                logger.info("Resuming {} indexing from checkpoint: {}. {} resources were already indexed", name, checkpointFile, checkpointedKeys.size());
+            } else {
+                Files.createDirectories(checkpointFile.getParent());
+            }
+            checkpointWriter = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        } catch (IOException e) {
+            logger.warn("Failed to open the checkpoint file: {}. Indexing will continue without checkpoints", checkpointFile, e);
+            checkpointWriter = null;
+        }
+    }
+
+    private void writeCheckpoint(List<String> keys) {
+        if(checkpointWriter == null || keys.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                for(String key : keys) {
+                    checkpointWriter.write(key);
+                    checkpointWriter.newLine();
+                }
+                checkpointWriter.flush();
+            } catch (IOException e) {
+                logger.warn("Failed to write the checkpoint file: {}", checkpointFile, e);
+            }
+        }
+    }
+
+    private void closeCheckpoint(boolean completed) {
+        if(checkpointWriter == null) {
+            return;
+        }
+        try {
+            checkpointWriter.close();
+            // the run is completed, so there is nothing to resume
+            if(completed && failedKeys.isEmpty()) {
+                Files.deleteIfExists(checkpointFile);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close the checkpoint file: {}", checkpointFile, e);
+        }
+    }
+}
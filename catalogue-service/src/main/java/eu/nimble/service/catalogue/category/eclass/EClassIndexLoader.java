@@ -1,15 +1,20 @@
 package eu.nimble.service.catalogue.category.eclass;
 
+import eu.nimble.service.catalogue.cache.CacheHelper;
 import eu.nimble.service.catalogue.category.eclass.database.EClassCategoryDatabaseAdapter;
 import eu.nimble.service.catalogue.index.ClassIndexClient;
 import eu.nimble.service.catalogue.index.PropertyIndexClient;
 import eu.nimble.service.catalogue.model.category.Category;
 import eu.nimble.service.catalogue.model.category.Property;
+import eu.nimble.service.catalogue.util.CredentialsUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -25,24 +30,37 @@ public class EClassIndexLoader {
     private ClassIndexClient classIndexClient;
     @Autowired
     private PropertyIndexClient propertyIndexClient;
+    @Autowired
+    private CredentialsUtil credentialsUtil;
+    @Autowired
+    private CacheHelper cacheHelper;
+
+    // number of resources dispatched to an indexing worker at once
+    @Value("${nimble.indexing.eclass.batch-size:100}")
+    private int batchSize;
+    // number of batches indexed concurrently
+    @Value("${nimble.indexing.eclass.parallelism:8}")
+    private int parallelism;
+    // directory to keep the progress of the full index loads. Checkpoints are disabled if it is empty.
+    @Value("${nimble.indexing.eclass.checkpoint-directory:}")
+    private String checkpointDirectory;
 
     // indexes the given eClass categories
     // if no eClass categories are specified, indexes all eClass categories
     public void indexEClassCategories(List<String> categoryIds) throws Exception {
-        // categories failed to be indexed
-        List<String> categoriesFailedToIndex = new ArrayList<>();
+        // the in-memory category tree and keyword index are rebuilt from the current contents of the eClass database
+        EClassCategoryDatabaseAdapter.resetCategoryTreeIndex();
         // categories to be indexed
         List<Category> allCategories;
-        // properties of the categories to be indexed
-        Map<String, List<Property>> allProperties;
+        // properties of the categories to be indexed. It is populated only when specific categories are indexed.
+        // Otherwise, properties are streamed from the database during indexing.
+        Map<String, List<Property>> allProperties = null;
+        boolean indexAll = categoryIds == null || categoryIds.size() == 0;
         // get categories and their properties
-        if(categoryIds == null || categoryIds.size() == 0){
+        if(indexAll){
             allCategories = dbAdapter.getAllCategories();
             logger.info("Retrieved categories");
 
-            allProperties = dbAdapter.getAllProperties();
-            logger.info("Retrieved properties");
-
         } else{
             // get the given categories
             allCategories = dbAdapter.getCategories(categoryIds);
@@ -64,21 +82,14 @@ public class EClassIndexLoader {
         // create a category map for easy access
         // map keys are category codes
         Map<String, Category> allCategoriesMapWithCode = new HashMap<>();
-        // map keys are category uris
-        Map<String, Category> allCategoriesMapWithUri = new HashMap<>();
+        // map keys are category ids
+        Map<String, Category> allCategoriesMapWithId = new HashMap<>();
         for(Category category : allCategories) {
             allCategoriesMapWithCode.put(category.getCode(), category);
-            allCategoriesMapWithUri.put(category.getCategoryUri(), category);
+            allCategoriesMapWithId.put(category.getId(), category);
         }
         logger.info("Constructed maps");
 
-        // set properties of categories
-        for(Category category : allCategories) {
-            List<Property> properties = allProperties.get(category.getId());
-            category.setProperties(properties);
-        }
-        logger.info("Populated category properties");
-
         // construct category parent mapping
         ChildrenParentMaps categoryParentMapping = createCategoryParentMap(allCategories, allCategoriesMapWithCode);
         logger.info("Constructed parent category maps");
@@ -88,17 +99,71 @@ public class EClassIndexLoader {
         logger.info("Constructed children category maps");
 
         // index categories
-        for(Category category : allCategories) {
-            boolean isIndexed = classIndexClient.indexCategory(category,
-                    categoryParentMapping.direct.get(category.getCategoryUri()),
-                    categoryParentMapping.all.get(category.getCategoryUri()),
-                    categoryChildrenMapping.direct.get(category.getCategoryUri()),
-                    categoryChildrenMapping.all.get(category.getCategoryUri()));
-            if(!isIndexed){
-                categoriesFailedToIndex.add(category.getCategoryUri());
+        String bearerToken = credentialsUtil.getBearerToken();
+        EClassBatchIndexer<Category> indexer = new EClassBatchIndexer<>("category", batchSize, parallelism,
+                indexAll ? getCheckpointFile("categories") : null,
+                Category::getCategoryUri,
+                category -> {
+                    try {
+                        return classIndexClient.indexCategory(category,
+                                categoryParentMapping.direct.get(category.getCategoryUri()),
+                                categoryParentMapping.all.get(category.getCategoryUri()),
+                                categoryChildrenMapping.direct.get(category.getCategoryUri()),
+                                categoryChildrenMapping.all.get(category.getCategoryUri()),
+                                bearerToken);
+                    } finally {
+                        // the properties are released once the category is indexed, so that only the properties of
+                        // the queued batches are kept in memory
+                        category.setProperties(null);
+                    }
+                });
+        List<String> categoriesFailedToIndex;
+        boolean completed = false;
+        try {
+            if(indexAll) {
+                // properties are streamed per category. Each category is passed to the indexer as soon as its properties
+                // are received so that the whole property set is never kept in memory
+                Set<String> categoryIdsWithProperties = new HashSet<>();
+                dbAdapter.streamCategoryProperties((categoryId, properties) -> {
+                    Category category = allCategoriesMapWithId.get(categoryId);
+                    if(category == null) {
+                        return;
+                    }
+                    category.setProperties(properties);
+                    indexer.add(category);
+                    categoryIdsWithProperties.add(categoryId);
+                });
+
+                // index the categories without any properties
+                for(Category category : allCategories) {
+                    if(!categoryIdsWithProperties.contains(category.getId())) {
+                        indexer.add(category);
+                    }
+                }
+
+            } else {
+                // set properties of categories
+                for(Category category : allCategories) {
+                    List<Property> properties = allProperties.get(category.getId());
+                    category.setProperties(properties);
+                }
+                logger.info("Populated category properties");
+
+                for(Category category : allCategories) {
+                    indexer.add(category);
+                }
+            }
+            categoriesFailedToIndex = indexer.complete();
+            completed = true;
+        } finally {
+            // stop the workers and close the checkpoint if the categories could not be retrieved completely
+            if(!completed) {
+                indexer.abort();
             }
         }
         logger.info("Completed category indexing");
+        // templates generated so far may include outdated category definitions
+        cacheHelper.clearTemplateCache();
         // log the ones failed to be indexed
         if(categoriesFailedToIndex.size() > 0){
             logger.error("Failed to index following categories: {}",categoriesFailedToIndex);
@@ -108,56 +173,73 @@ public class EClassIndexLoader {
     // indexes the given eClass properties
     // if no eClass properties are specified, indexes all eClass properties
     public void indexEClassProperties(List<String> propertyIds) throws Exception {
-        // the ones failed to be indexed
-        List<String> propertiesFailedToIndex = new ArrayList<>();
-        // properties to be indexed
-        Map<String, List<Property>> allProperties;
-        // retrieve the properties
-        if(propertyIds == null || propertyIds.size() == 0){
-            allProperties = dbAdapter.getAllProperties();
-        } else{
-            allProperties = dbAdapter.getProperties(propertyIds);
-        }
-        logger.info("Retrieved properties");
-
-        // property -> category list
-        Map<String, Set<String>> propertyCategoryMap = new HashMap<>();
-        for(Map.Entry<String, List<Property>> entry : allProperties.entrySet()) {
-            String categoryId = entry.getKey();
-            List<Property> propertyList = entry.getValue();
-            for(Property property : propertyList) {
-                //
-                Set<String> categoryUris = propertyCategoryMap.get(property.getUri());
-                if(categoryUris == null) {
-                    categoryUris = new HashSet<>();
-                    propertyCategoryMap.put(property.getUri(), categoryUris);
-                }
-                categoryUris.add(EClassTaxonomyQueryImpl.namespace + categoryId);
-            }
-        }
-        logger.info("Constructed property category map");
+        String bearerToken = credentialsUtil.getBearerToken();
+        boolean indexAll = propertyIds == null || propertyIds.size() == 0;
+        // the category uris are passed together with the property, so nothing is kept for the properties which are
+        // skipped from the checkpoint or which are not indexed due to a failure
+        EClassBatchIndexer<PropertyCategories> indexer = new EClassBatchIndexer<>("property", batchSize, parallelism,
+                indexAll ? getCheckpointFile("properties") : null,
+                propertyCategories -> propertyCategories.property.getUri(),
+                propertyCategories -> propertyIndexClient.indexProperty(propertyCategories.property, propertyCategories.categoryUris, bearerToken));
 
-        // index properties
-        List<String> indexedProperties = new ArrayList<>();
-        for(List<Property> properties : allProperties.values()) {
-            for(Property property : properties) {
-                if(!indexedProperties.contains(property.getUri())) {
-                    boolean isIndexed = propertyIndexClient.indexProperty(property, propertyCategoryMap.get(property.getUri()));
-                    indexedProperties.add(property.getUri());
-
-                    if(!isIndexed){
-                        propertiesFailedToIndex.add(property.getUri());
+        List<String> propertiesFailedToIndex;
+        boolean completed = false;
+        try {
+            if(indexAll){
+                // properties are streamed together with their categories, so each property is passed to the indexer once it is received
+                dbAdapter.streamPropertyCategories((property, categoryIds) -> {
+                    Set<String> categoryUris = new HashSet<>();
+                    for(String categoryId : categoryIds) {
+                        categoryUris.add(EClassTaxonomyQueryImpl.namespace + categoryId);
+                    }
+                    indexer.add(new PropertyCategories(property, categoryUris));
+                });
+
+            } else {
+                // properties to be indexed
+                Map<String, List<Property>> allProperties = dbAdapter.getProperties(propertyIds);
+                logger.info("Retrieved properties");
+
+                // property uri -> property and its categories
+                Map<String, PropertyCategories> uniqueProperties = new LinkedHashMap<>();
+                for(Map.Entry<String, List<Property>> entry : allProperties.entrySet()) {
+                    String categoryId = entry.getKey();
+                    List<Property> propertyList = entry.getValue();
+                    for(Property property : propertyList) {
+                        PropertyCategories propertyCategories = uniqueProperties.computeIfAbsent(property.getUri(), uri -> new PropertyCategories(property, new HashSet<>()));
+                        propertyCategories.categoryUris.add(EClassTaxonomyQueryImpl.namespace + categoryId);
                     }
                 }
+                logger.info("Constructed property category map");
+
+                for(PropertyCategories propertyCategories : uniqueProperties.values()) {
+                    indexer.add(propertyCategories);
+                }
+            }
+            propertiesFailedToIndex = indexer.complete();
+            completed = true;
+        } finally {
+            // stop the workers and close the checkpoint if the properties could not be retrieved completely
+            if(!completed) {
+                indexer.abort();
             }
         }
         logger.info("Completed property indexing");
+        // templates generated so far may include outdated property definitions
+        cacheHelper.clearTemplateCache();
         // log the ones failed to be indexed
         if(propertiesFailedToIndex.size() > 0){
             logger.error("Failed to index following properties: {}",propertiesFailedToIndex);
         }
     }
 
+    private Path getCheckpointFile(String resourceType) {
+        if(checkpointDirectory == null || checkpointDirectory.isEmpty()) {
+            return null;
+        }
+        return Paths.get(checkpointDirectory, "eclass-" + resourceType + ".checkpoint");
+    }
+
     public void indexEClassResources() throws Exception {
         // index categories
         indexEClassCategories(null);
@@ -177,7 +259,7 @@ public class EClassIndexLoader {
                 allParentsCategories = new HashSet<>();
                 allParentsMap.put(category.getCategoryUri(), allParentsCategories);
             }
-            logger.info("category: {} processed for parents", category.getCategoryUri());
+            logger.debug("category: {} processed for parents", category.getCategoryUri());
             if(category.getLevel() == 1) {
                 // root category do nothing
             } else if(category.getLevel() == 2) {
@@ -225,7 +307,7 @@ public class EClassIndexLoader {
         Map<String, Set<String>> allChildrenMap = new HashMap<>();
 
         for(Category category : allCategories) {
-            logger.info("category: {} processed for children", category.getCategoryUri());
+            logger.debug("category: {} processed for children", category.getCategoryUri());
 
             // add this category to its direct parent as a children
             Optional<String> parentUri = directParentsMap.get(category.getCategoryUri()).stream().findFirst();
@@ -259,6 +341,17 @@ public class EClassIndexLoader {
 
 
 
+    private static class PropertyCategories {
+        private final Property property;
+        // uris of the categories including the property
+        private final Set<String> categoryUris;
+
+        private PropertyCategories(Property property, Set<String> categoryUris) {
+            this.property = property;
+            this.categoryUris = categoryUris;
+        }
+    }
+
     private static class ChildrenParentMaps {
         private Map<String, Set<String>> direct = new HashMap<>();
         private Map<String, Set<String>> all = new HashMap<>();
@@ -3,7 +3,6 @@ package eu.nimble.service.catalogue.category.eclass.database;
 import eu.nimble.service.catalogue.category.eclass.EClassTaxonomyQueryImpl;
 import eu.nimble.service.catalogue.model.category.*;
 import eu.nimble.service.catalogue.util.SpringBridge;
-import eu.nimble.service.catalogue.config.CatalogueServiceConfig;
 import eu.nimble.service.catalogue.exception.CategoryDatabaseException;
 import eu.nimble.service.catalogue.template.TemplateConfig;
 import eu.nimble.service.model.ubl.commonbasiccomponents.TextType;
@@ -12,10 +11,10 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import static eu.nimble.service.catalogue.category.eclass.database.EClassCategoryDatabaseConfig.*;
-import static eu.nimble.service.catalogue.category.eclass.database.EClassCategoryDatabaseConfig.eClassQueryGetRootCategories;
 
 /**
  * Created by suat on 03-Mar-17.
@@ -24,6 +23,12 @@ public class EClassCategoryDatabaseAdapter {
     private static final Logger logger = LoggerFactory.getLogger(EClassCategoryDatabaseAdapter.class);
 
     private String defaultLanguage = "en";
+    // number of rows fetched at once while streaming the category-property associations
+    private static final int PROPERTY_STREAM_FETCH_SIZE = 5000;
+    // in-memory index of the classification hierarchy shared by all adapter instances
+    private static volatile EClassCategoryTree categoryTree;
+    // in-memory keyword index of the classification classes shared by all adapter instances
+    private static volatile EClassKeywordIndex keywordIndex;
     /**
      * The record counts below are specified based on the eClass Basic 10.0 version. In case of any eclass taxonomy update,
      * the numbers should also be updated.
@@ -37,6 +42,18 @@ public class EClassCategoryDatabaseAdapter {
     private static final int RECORD_COUNT_PROPERTY_VALUE = 7782;
     private static final int RECORD_COUNT_UNIT = 997;
 
+    /**
+     * Queries having a fixed number of parameters are built once so that the same sql string is passed to the pool's
+     * statement cache for each call
+     */
+    private static final String QUERY_GET_ALL_KEYWORDS_AND_SYNONYMS = eClassQueryGetAllKeywordsAndSynonyms();
+    private static final String QUERY_GET_ALL_CATEGORIES = eClassQueryGetAllCategories();
+    private static final String QUERY_GET_ALL_PROPERTY_DEFINITIONS = eClassQueryGetAllPropertyDefinitions();
+    private static final String QUERY_GET_POSSIBLE_PROPERTIES_FOR_CATEGORY = eClassQueryGetPossiblePropertiesForCategory();
+    private static final String QUERY_GET_VALUES_FOR_PROPERTIES = eClassQueryGetValuesForProperties();
+    private static final String QUERY_GET_UNITS_FOR_PROPERTIES = eClassQueryGetUnitsForProperties();
+    private static final String QUERY_GET_ALL_PROPERTY_UNIT_MAPPINGS = eClassQueryGetAllPropertyUnitMappings();
+
     public static void main(String[] args) throws CategoryDatabaseException, SQLException, ClassNotFoundException {
         /*EClassCategoryDatabaseAdapter e = new EClassCategoryDatabaseAdapter();
         Connection c = e.getConnection();
@@ -51,37 +68,12 @@ public class EClassCategoryDatabaseAdapter {
 
     private Connection getConnection() throws CategoryDatabaseException {
         try {
-            CatalogueServiceConfig config = SpringBridge.getInstance().getCatalogueServiceConfig();
-
-            Class.forName(config.getCategoryDbDriver());
-            Connection connection = DriverManager
-                    .getConnection(config.getCategoryDbConnectionUrl(), config.getCategoryDbUsername(), config.getCategoryDbPassword());
+            // connections are obtained from the pool. The database schema is set by the pool when a physical connection is opened.
+            return SpringBridge.getInstance().getCategoryDbDataSource().getConnection();
 
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQuerySetPostgresDatabaseSchema(config.getCategoryDbScheme()));
-            preparedStatement.execute();
-
-            return connection;
-
-        } catch (SQLException | ClassNotFoundException e) {
+        } catch (SQLException e) {
             throw new CategoryDatabaseException("Failed to get connection", e);
         }
-
-        /*Class.forName(PRODUCT_CATEGORY_H2_CONFIG_DRIVER);
-        Connection connection = DriverManager
-                .getConnection(PRODUCT_CATEGORY_H2_CONFIG_URL, PRODUCT_CATEGORY_H2_CONFIG_USER, PRODUCT_CATEGORY_H2_CONFIG_PASSWORD);*/
-        // check h2 if there is metadata about a table to deduce whether it exists in the H2 DB already
-        /*ResultSet meta = connection.getMetaData().getTables(null, null, TABLE_NAME_CLASSIFICATION_CLASS, null);
-        if(meta.next() == false) {
-            InputStream is = EClassCategoryDatabaseAdapter.class.getResourceAsStream("/eClassLoader.sql");
-            try {
-                String initScript = IOUtils.toString(is);
-                initScript = initScript.replace("{dataPath}", EClassCategoryDatabaseConfig.PRODUCT_CATEGORY_DATA_PATH);
-                Statement stmt = connection.createStatement();
-                stmt.execute(initScript);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }*/
     }
 
     private void closeConnection(Connection connection) {
@@ -95,71 +87,36 @@ public class EClassCategoryDatabaseAdapter {
     }
 
     public Category getCategoryById(String categoryId) throws CategoryDatabaseException {
-        Connection connection = null;
-        List<Category> results = new ArrayList<>();
-
-        try {
-            connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetClassificationClassByIdList(Arrays.asList(new String[]{categoryId})));
-            preparedStatement.setString(1, categoryId);
-            ResultSet rs = preparedStatement.executeQuery();
-            Category cc = extractClassificationClassesFromResultSet(rs).get(0);
-            rs.close();
-            preparedStatement.close();
-
-            return cc;
-        } catch (SQLException e) {
-            throw new CategoryDatabaseException("Failed to retrieve classification by level", e);
-        } finally {
-            closeConnection(connection);
+        Category cc = getCategoryTreeIndex().getCategory(categoryId);
+        if(cc == null) {
+            throw new CategoryDatabaseException(String.format("No eClass category exists for id: %s", categoryId), null);
         }
+        return cc;
     }
 
     /**
      * Takes a {@code categoryName} and returns a list of {@link Category} including potential categories
-     * matching with the given name. The method first checks the names of classification class to match the given name;
-     * then additional results are added based on the equivalent keywords of classes
+     * matching with the given name. The name is searched in the preferred names, keywords and synonyms of the
+     * classification classes via the in-memory keyword index. The results are ranked by the index such that the better
+     * matches come first.
      *
      * @param categoryName
      * @return
      * @throws CategoryDatabaseException
      */
     public List<Category> getClassificationClassesByName(String categoryName) throws CategoryDatabaseException {
-        Connection connection = null;
-        try {
-            List<Category> allResults = new ArrayList<>();
+        EClassCategoryTree tree = getCategoryTreeIndex();
+        List<String> classIds = getKeywordIndex().search(categoryName);
 
-            connection = getConnection();
-            // first retrieve results from the classification list
-            allResults = getClassificationClassesByPreferredName(connection, categoryName);
-
-            // then retrieve the results based on the equivalent keywords
-            List<Category> categoriesByKeyword = getClassificationClassesByKeywords(connection, categoryName);
-            for(Category category : categoriesByKeyword) {
-                boolean existsAlready = false;
-                for(Category existingCategory : allResults) {
-                    if(existingCategory.getId().equals(category.getId())) {
-                        existsAlready = true;
-                        break;
-                    }
-                }
-                if(!existsAlready) {
-                    allResults.add(category);
-                }
-            }
-
-            // include only the leaf level classes in the result set
-            List<Category> results = new ArrayList<>();
-            for(Category category : allResults) {
-                if(category.getLevel() == 4) {
-                    results.add(category);
-                }
+        // include only the leaf level classes in the result set
+        List<Category> results = new ArrayList<>();
+        for(String classId : classIds) {
+            Category category = tree.getCategory(classId);
+            if(category != null && category.getLevel() == 4) {
+                results.add(category);
             }
-
-            return results;
-        } finally {
-            closeConnection(connection);
         }
+        return results;
     }
 
     public List<Category> getClassificationClassesByName(String categoryName, boolean forLogistics) throws CategoryDatabaseException {
@@ -182,281 +139,272 @@ public class EClassCategoryDatabaseAdapter {
         }
     }
 
-    private List<Category> getClassificationClassesByPreferredName(Connection connection, String categoryName) throws CategoryDatabaseException {
-        List<Category> results = new ArrayList<>();
+    public List<Category> getClassificationClassesByLevel(int level) throws CategoryDatabaseException {
+        return getCategoryTreeIndex().getCategoriesByLevel(level);
+    }
 
-        try {
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetClassificationClassByName());
-            preparedStatement.setString(1, "%" + categoryName + "%");
-            ResultSet rs = preparedStatement.executeQuery();
-            results = extractClassificationClassesFromResultSet(rs);
-            rs.close();
-            preparedStatement.close();
-        } catch (SQLException e) {
-            throw new CategoryDatabaseException("Failed to retrieve classification by preferred name", e);
-        }
-        return results;
+    public List<Category> getChildrenCategories(String categoryId) throws CategoryDatabaseException{
+        // make sure that the category exists
+        getCategoryById(categoryId);
+        return getCategoryTreeIndex().getChildren(categoryId);
     }
 
-    private List<Category> getClassificationClassesByKeywords(Connection connection, String categoryName) throws CategoryDatabaseException {
-        List<Category> results = new ArrayList<>();
+    public List<Category> getRootCategories() throws CategoryDatabaseException{
+        return getCategoryTreeIndex().getRootCategories();
+    }
 
-        try {
-            // Get the identifiers of the categories of which keywords match with the given category name
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetKeywordByValue());
-            preparedStatement.setString(1, "%" + categoryName + "%");
-            ResultSet rs = preparedStatement.executeQuery();
+    /**
+     * Returns the parents of the given category starting from the root category. The category itself is included
+     * as the last element.
+     */
+    public List<Category> getParentCategories(String categoryId) throws CategoryDatabaseException{
+        getCategoryById(categoryId);
+        return getCategoryTreeIndex().getParents(categoryId);
+    }
 
-            List<String> classIds = new ArrayList<>();
-            while (rs.next()) {
-                classIds.add(rs.getString(COLUMN_KEYWORD_SYNONYM_IRDI_TARGET));
+    public CategoryTreeResponse getCategoryTree(String categoryId) throws CategoryDatabaseException{
+        getCategoryById(categoryId);
+        return getCategoryTreeIndex().getCategoryTree(categoryId);
+    }
+
+    public List<Category> getAllCategories() throws Exception{
+        return getCategoryTreeIndex().getAllCategories();
+    }
+
+    public List<Category> getCategories(List<String> uris) throws Exception{
+        List<String> ids = new ArrayList<>();
+        for (String uri: uris) {
+            if(uri.startsWith(EClassTaxonomyQueryImpl.namespace)){
+                uri = uri.substring(EClassTaxonomyQueryImpl.namespace.length());
             }
-            rs.close();
-            preparedStatement.close();
+            ids.add(uri);
+        }
+        return getCategoryTreeIndex().getCategories(ids);
+    }
 
-            if (classIds.size() > 0) {
-                // get the classification classes based on the retrieved ids
-                preparedStatement = connection.prepareStatement(eClassQueryGetClassificationClassByIdList(classIds));
-                for (int i = 0; i < classIds.size(); i++) {
-                    preparedStatement.setString(i + 1, classIds.get(i));
+    /**
+     * Returns the in-memory index of the eClass classification hierarchy. The index is built at the first call by
+     * reading the whole classification_class table once.
+     */
+    public EClassCategoryTree getCategoryTreeIndex() throws CategoryDatabaseException {
+        EClassCategoryTree tree = categoryTree;
+        if(tree == null) {
+            synchronized (EClassCategoryDatabaseAdapter.class) {
+                tree = categoryTree;
+                if(tree == null) {
+                    tree = new EClassCategoryTree(getAllCategoriesFromDatabase(), defaultLanguage);
+                    categoryTree = tree;
+                    logger.info("Constructed the eClass category tree with {} categories", tree.size());
                 }
-                rs = preparedStatement.executeQuery();
-                results = extractClassificationClassesFromResultSet(rs);
-                rs.close();
-                preparedStatement.close();
             }
-
-        } catch (SQLException e) {
-            throw new CategoryDatabaseException("Failed to retrieve classification by preferred name", e);
         }
-        return results;
+        return tree;
     }
 
-    public List<Category> getClassificationClassesByLevel(int level) throws CategoryDatabaseException {
-        Connection connection = null;
-        List<Category> results = new ArrayList<>();
-
-        try {
-            connection = getConnection();
-
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetClassificationClassByLevel());
-            preparedStatement.setString(1, Integer.toString(level));
-            ResultSet rs = preparedStatement.executeQuery();
-            results = extractClassificationClassesFromResultSet(rs);
-            rs.close();
-            preparedStatement.close();
-
-            return results;
-        } catch (SQLException e) {
-            throw new CategoryDatabaseException("Failed to retrieve classification by level", e);
-        } finally {
-            closeConnection(connection);
+    /**
+     * Returns the in-memory keyword index over the preferred names, keywords and synonyms of the classification
+     * classes. Similar to the category tree, the index is built at the first call.
+     */
+    public EClassKeywordIndex getKeywordIndex() throws CategoryDatabaseException {
+        EClassKeywordIndex index = keywordIndex;
+        if(index == null) {
+            synchronized (EClassCategoryDatabaseAdapter.class) {
+                index = keywordIndex;
+                if(index == null) {
+                    EClassCategoryTree tree = getCategoryTreeIndex();
+                    EClassKeywordIndex.Builder builder = new EClassKeywordIndex.Builder().addCategories(tree.getAllCategories());
+                    addKeywordsAndSynonyms(builder, tree);
+                    index = builder.build();
+                    keywordIndex = index;
+                    logger.info("Constructed the eClass keyword index with {} terms", index.getTermCount());
+                }
+            }
         }
+        return index;
     }
 
-    public List<Category> getChildrenCategories(String categoryId) throws CategoryDatabaseException{
-        Connection connection = null;
-        List<Category> results = new ArrayList<>();
-        try {
-            connection = getConnection();
-            Category cc = getCategoryById(categoryId);
-
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetChildrenCategories());
-            preparedStatement.setString(1, Integer.toString(cc.getLevel()+1));
-            preparedStatement.setString(2,  cc.getCode().substring(0, 2*cc.getLevel()) + "%");
-
-            ResultSet rs = preparedStatement.executeQuery();
-            results = extractClassificationClassesFromResultSet(rs);
-            rs.close();
-            preparedStatement.close();
-            return results;
-
-        } catch (SQLException e){
-            throw new CategoryDatabaseException("Failed to retrieve classification by level",e);
-        } finally {
-            closeConnection(connection);
+    /**
+     * Discards the in-memory category tree and keyword index so that they are rebuilt from the database at the next access
+     */
+    public static void resetCategoryTreeIndex() {
+        synchronized (EClassCategoryDatabaseAdapter.class) {
+            categoryTree = null;
+            keywordIndex = null;
         }
     }
 
-    public List<Category> getRootCategories() throws CategoryDatabaseException{
+    private void addKeywordsAndSynonyms(EClassKeywordIndex.Builder builder, EClassCategoryTree tree) throws CategoryDatabaseException {
         Connection connection = null;
-        List<Category> results = new ArrayList<>();
         try {
             connection = getConnection();
-
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetRootCategories());
+            PreparedStatement preparedStatement = connection.prepareStatement(QUERY_GET_ALL_KEYWORDS_AND_SYNONYMS);
             ResultSet rs = preparedStatement.executeQuery();
-            results = extractClassificationClassesFromResultSet(rs);
+            while (rs.next()) {
+                String classId = rs.getString(COLUMN_KEYWORD_SYNONYM_IRDI_TARGET);
+                // keywords and synonyms might also target properties, which are not indexed
+                if(!tree.contains(classId)) {
+                    continue;
+                }
+                int field = "KW".equals(rs.getString(COLUMN_KEYWORD_SYNONYM_TYPE_OF_SE)) ? EClassKeywordIndex.FIELD_KEYWORD : EClassKeywordIndex.FIELD_SYNONYM;
+                builder.add(classId, rs.getString(COLUMN_KEYWORD_SYNONYM_KEYWORD_VALUE_SYNONYM_VALUE), field);
+            }
             rs.close();
             preparedStatement.close();
-            return results;
 
-        } catch (SQLException e){
-            throw new CategoryDatabaseException("Failed to retrieve classification by level",e);
+        } catch (SQLException e) {
+            throw new CategoryDatabaseException("Failed to retrieve keywords and synonyms", e);
         } finally {
             closeConnection(connection);
         }
     }
 
-    public List<Category> getParentCategories(String categoryId) throws CategoryDatabaseException{
+    private List<Category> getAllCategoriesFromDatabase() throws CategoryDatabaseException {
         Connection connection = null;
-        List<Category> results = new ArrayList<>();
+        List<Category> results;
         try {
             connection = getConnection();
-            Category cc = getCategoryById(categoryId);
-
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetParentCategoryIds());
-            preparedStatement.setString(1, Integer.toString(cc.getLevel()));
-            preparedStatement.setString(2, cc.getCode().substring(0, 2) + "000000");
-            preparedStatement.setString(3, cc.getCode().substring(0, 4) + "0000");
-            preparedStatement.setString(4, cc.getCode().substring(0, 6) + "00");
-            preparedStatement.setString(5,cc.getCode());
+            PreparedStatement preparedStatement = connection.prepareStatement(QUERY_GET_ALL_CATEGORIES);
             ResultSet rs = preparedStatement.executeQuery();
             results = extractClassificationClassesFromResultSet(rs);
             rs.close();
             preparedStatement.close();
-            return results;
 
-        } catch (SQLException e){
-            throw new CategoryDatabaseException("Failed to retrieve classification by level",e);
+        } catch (SQLException e) {
+            throw new CategoryDatabaseException("Failed to retrieve all classification classes", e);
         } finally {
             closeConnection(connection);
         }
+        return results;
     }
 
-    public CategoryTreeResponse getCategoryTree(String categoryId) throws CategoryDatabaseException{
-        CategoryTreeResponse categoryTreeResponse = new CategoryTreeResponse();
-
-        Connection connection = null;
-        List<Category> results;
-
-        try {
-            connection = getConnection();
-            Category cc = getCategoryById(categoryId);
-
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetParentCategoryIds());
-            preparedStatement.setString(1, Integer.toString(cc.getLevel()));
-            preparedStatement.setString(2, cc.getCode().substring(0, 2) + "000000");
-            preparedStatement.setString(3, cc.getCode().substring(0, 4) + "0000");
-            preparedStatement.setString(4, cc.getCode().substring(0, 6) + "00");
-            preparedStatement.setString(5,cc.getCode());
-            ResultSet rs = preparedStatement.executeQuery();
-            results = extractClassificationClassesFromResultSet(rs);
-            rs.close();
-            preparedStatement.close();
-
-            categoryTreeResponse.setParents(results);
-            List<List<Category>> categories = new ArrayList<>();
-            for(int i=1;i<=cc.getLevel()+1;i++){
-                PreparedStatement preparedStatement1 = connection.prepareStatement(eClassQueryGetSubCategoryIds());
-                if(i == 1){
-                    preparedStatement1.setString(1,"1");
-                    preparedStatement1.setString(2,"__000000");
-                    ResultSet rs1 = preparedStatement1.executeQuery();
-                    categories.add(extractClassificationClassesFromResultSet(rs1));
-                    rs1.close();
-                    preparedStatement1.close();
-                }
-                else if(i == 2){
-                    preparedStatement1.setString(1,"2");
-                    preparedStatement1.setString(2,cc.getCode().substring(0,2)+"__0000");
-                    ResultSet rs1 = preparedStatement1.executeQuery();
-                    categories.add(extractClassificationClassesFromResultSet(rs1));
-                    rs1.close();
-                    preparedStatement1.close();
+    /**
+     * Streams the properties of all eClass categories, grouped by category. The handler is called once for each
+     * category having at least one property with the category id and the properties of the category.
+     *
+     * The property definitions (i.e. the property table) are read once and the property instances are shared by
+     * the categories. The category-property associations are fetched from the database with a server side cursor, so
+     * the memory usage does not depend on the size of the classification_class_property table as long as the handler
+     * does not keep the passed groups.
+     */
+    public void streamCategoryProperties(BiConsumer<String, List<Property>> handler) throws CategoryDatabaseException {
+        streamCategoryPropertyPairs(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_CC, (properties, rs) -> {
+            String currentCategoryId = null;
+            List<Property> categoryProperties = new ArrayList<>();
+            while (rs.next()) {
+                Property property = properties.get(rs.getString(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_PR));
+                if(property == null) {
+                    continue;
                 }
-                else if(i == 3){
-                    preparedStatement1.setString(1,"3");
-                    preparedStatement1.setString(2,cc.getCode().substring(0,4)+"__00");
-                    ResultSet rs1 = preparedStatement1.executeQuery();
-                    categories.add(extractClassificationClassesFromResultSet(rs1));
-                    rs1.close();
-                    preparedStatement1.close();
+                String categoryId = rs.getString(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_CC);
+                if(!categoryId.equals(currentCategoryId)) {
+                    if(currentCategoryId != null) {
+                        handler.accept(currentCategoryId, categoryProperties);
+                    }
+                    currentCategoryId = categoryId;
+                    categoryProperties = new ArrayList<>();
                 }
-                else if(i == 4){
-                    preparedStatement1.setString(1,"4");
-                    preparedStatement1.setString(2,cc.getCode().substring(0,6)+"%");
-                    ResultSet rs1 = preparedStatement1.executeQuery();
-                    categories.add(extractClassificationClassesFromResultSet(rs1));
-                    rs1.close();
-                    preparedStatement1.close();
+                categoryProperties.add(property);
+            }
+            if(currentCategoryId != null) {
+                handler.accept(currentCategoryId, categoryProperties);
+            }
+        });
+    }
+
+    /**
+     * Streams all eClass properties together with the ids of the categories they are associated to. The handler is
+     * called once for each property. Similar to {@link #streamCategoryProperties(BiConsumer)}, the associations are
+     * fetched with a server side cursor.
+     */
+    public void streamPropertyCategories(BiConsumer<Property, List<String>> handler) throws CategoryDatabaseException {
+        streamCategoryPropertyPairs(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_PR, (properties, rs) -> {
+            String currentPropertyId = null;
+            List<String> categoryIds = new ArrayList<>();
+            while (rs.next()) {
+                String propertyId = rs.getString(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_PR);
+                if(!properties.containsKey(propertyId)) {
+                    continue;
                 }
-                else{
-                    break;
+                if(!propertyId.equals(currentPropertyId)) {
+                    if(currentPropertyId != null) {
+                        handler.accept(properties.get(currentPropertyId), categoryIds);
+                    }
+                    currentPropertyId = propertyId;
+                    categoryIds = new ArrayList<>();
                 }
+                categoryIds.add(rs.getString(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_CC));
             }
-            categoryTreeResponse.setCategories(categories);
-            return categoryTreeResponse;
-
-        } catch (SQLException e) {
-            throw new CategoryDatabaseException("Failed to retrieve classification by level", e);
-        } finally {
-            closeConnection(connection);
-        }
+            if(currentPropertyId != null) {
+                handler.accept(properties.get(currentPropertyId), categoryIds);
+            }
+        });
     }
 
-    public List<Category> getAllCategories() throws Exception{
+    private void streamCategoryPropertyPairs(String orderByColumn, PropertyPairConsumer consumer) throws CategoryDatabaseException {
         Connection connection = null;
-        List<Category> results;
+        Boolean autoCommit = null;
         try {
             connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetAllCategories());
+            Map<String, Property> properties = getAllPropertyDefinitions(connection);
+            logger.info("Retrieved {} property definitions", properties.size());
+
+            // Postgres driver uses a cursor to fetch the results in chunks of fetch size only if the auto-commit is disabled.
+            // Otherwise, the whole result set is loaded into memory.
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetCategoryPropertyPairs(orderByColumn),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(PROPERTY_STREAM_FETCH_SIZE);
             ResultSet rs = preparedStatement.executeQuery();
-            results = extractClassificationClassesFromResultSet(rs);
+            consumer.accept(properties, rs);
             rs.close();
             preparedStatement.close();
+            connection.commit();
 
+        } catch (SQLException e) {
+            throw new CategoryDatabaseException("Failed to stream category properties", e);
         } finally {
-            closeConnection(connection);
-        }
-        return results;
-    }
-
-    public List<Category> getCategories(List<String> uris) throws Exception{
-        Connection connection = null;
-        List<Category> results;
-        try {
-            connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetCategories(uris.size()));
-            int index = 1;
-            for (String uri: uris) {
-                if(uri.startsWith(EClassTaxonomyQueryImpl.namespace)){
-                    uri = uri.substring(EClassTaxonomyQueryImpl.namespace.length());
+            if(autoCommit != null) {
+                try {
+                    connection.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    logger.warn("Failed to restore the auto-commit mode of the connection", e);
                 }
-
-                preparedStatement.setString(index++,uri);
             }
-            ResultSet rs = preparedStatement.executeQuery();
-            results = extractClassificationClassesFromResultSet(rs);
-            rs.close();
-            preparedStatement.close();
-
-        } finally {
             closeConnection(connection);
         }
-        return results;
     }
 
-    public Map<String, List<Property>> getAllProperties() throws Exception {
-        Connection connection = null;
-
-        try {
-            connection = getConnection();
-
-            // get properties without the unit and allowed values. They are queried separately.
-            Map<String, List<Property>> properties;
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetAllProperties());
-            ResultSet rs = preparedStatement.executeQuery();
-            properties = extractCategoryPropertyMapFromResultSet(rs);
-            rs.close();
-            preparedStatement.close();
+    /**
+     * Retrieves all property definitions (without units and values) as a property id -> property map. The repeated
+     * string values are deduplicated as they are kept in memory during the streaming.
+     */
+    private Map<String, Property> getAllPropertyDefinitions(Connection connection) throws SQLException {
+        Map<String, String> stringPool = new HashMap<>();
+        Map<String, Property> properties = new HashMap<>();
+        PreparedStatement preparedStatement = connection.prepareStatement(QUERY_GET_ALL_PROPERTY_DEFINITIONS);
+        ResultSet rs = preparedStatement.executeQuery();
+        while (rs.next()) {
+            String propertyId = rs.getString(COLUMN_PROPERTY_IRDI_PR);
+            Property property = extractCategoryPropertyFromResultSet(rs);
+            property.setIecCategory(deduplicate(stringPool, property.getIecCategory()));
+            property.setAttributeType(deduplicate(stringPool, property.getAttributeType()));
+            property.setValueQualifier(deduplicate(stringPool, property.getValueQualifier()));
+            property.setNote(deduplicate(stringPool, property.getNote()));
+            property.getRemark().get(0).setValue(deduplicate(stringPool, property.getRemark().get(0).getValue()));
+            properties.put(propertyId, property);
+        }
+        rs.close();
+        preparedStatement.close();
+        return properties;
+    }
 
-            return properties;
-        } catch (SQLException e) {
-            throw new CategoryDatabaseException("Failed to retrieve properties for the category", e);
-        } finally {
-            closeConnection(connection);
+    private static String deduplicate(Map<String, String> stringPool, String value) {
+        if(value == null) {
+            return null;
         }
+        String pooledValue = stringPool.putIfAbsent(value, value);
+        return pooledValue != null ? pooledValue : value;
     }
 
     public Map<String, List<Property>> getPropertiesForCategories(List<String> uris) throws Exception {
@@ -529,7 +477,7 @@ public class EClassCategoryDatabaseAdapter {
 
             // get properties without the unit and allowed values. They are queried separately.
             Map<String, Property> properties;
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetPossiblePropertiesForCategory());
+            PreparedStatement preparedStatement = connection.prepareStatement(QUERY_GET_POSSIBLE_PROPERTIES_FOR_CATEGORY);
             preparedStatement.setString(1, categoryId);
             ResultSet rs = preparedStatement.executeQuery();
             properties = extractPropertiesFromResultSet(rs);
@@ -537,7 +485,7 @@ public class EClassCategoryDatabaseAdapter {
             preparedStatement.close();
 
             // get allowed values for properties
-            preparedStatement = connection.prepareStatement(eClassQueryGetValuesForProperties());
+            preparedStatement = connection.prepareStatement(QUERY_GET_VALUES_FOR_PROPERTIES);
             preparedStatement.setString(1, categoryId);
             rs = preparedStatement.executeQuery();
             setAllowedValuesToProperties(properties, rs);
@@ -545,7 +493,7 @@ public class EClassCategoryDatabaseAdapter {
             preparedStatement.close();
 
             // get units values for properties
-            preparedStatement = connection.prepareStatement(eClassQueryGetUnitsForProperties());
+            preparedStatement = connection.prepareStatement(QUERY_GET_UNITS_FOR_PROPERTIES);
             preparedStatement.setString(1, categoryId);
             rs = preparedStatement.executeQuery();
             setUnitsToProperties(properties, rs);
@@ -565,7 +513,7 @@ public class EClassCategoryDatabaseAdapter {
         List<String> results = new ArrayList<>();
         try {
             connection = getConnection();
-            PreparedStatement preparedStatement = connection.prepareStatement(eClassQueryGetAllPropertyUnitMappings());
+            PreparedStatement preparedStatement = connection.prepareStatement(QUERY_GET_ALL_PROPERTY_UNIT_MAPPINGS);
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()) {
                 results.add(rs.getString(1));
@@ -615,32 +563,34 @@ public class EClassCategoryDatabaseAdapter {
                 categoryProperties = new ArrayList<>();
                 results.put(categoryId, categoryProperties);
             }
-
-            Property prop = new Property();
-            prop.setId(EClassTaxonomyQueryImpl.namespace + rs.getString(COLUMN_PROPERTY_IRDI_PR));
-            // create a TextType for property definition
-            TextType textType = new TextType();
-            textType.setLanguageID(defaultLanguage);
-            textType.setValue(rs.getString(COLUMN_PROPERTY_PREFERRED_NAME));
-            prop.setPreferredName(Arrays.asList(textType));
-            prop.setShortName(rs.getString(COLUMN_PROPERTY_SHORT_NAME));
-            prop.setDefinition(rs.getString(COLUMN_PROPERTY_DEFINITION));
-            prop.setNote(rs.getString(COLUMN_PROPERTY_NOTE));
-            TextType remark = new TextType();
-            remark.setLanguageID("en");
-            remark.setValue(rs.getString(COLUMN_PROPERTY_REMARK));
-            prop.setRemark(Arrays.asList(remark));
-            prop.setPreferredSymbol(rs.getString(COLUMN_PROPERTY_PREFERRED_SYMBOL));
-            prop.setIecCategory(rs.getString(COLUMN_PROPERTY_CATEGORY));
-            prop.setAttributeType(rs.getString(COLUMN_PROPERTY_ATTRIBUTE_TYPE));
-            prop.setValueQualifier(rs.getString(COLUMN_PROPERTY_DATA_TYPE));
-            prop.setUri(EClassTaxonomyQueryImpl.namespace + rs.getString(COLUMN_PROPERTY_IRDI_PR));
-
-            categoryProperties.add(prop);
+            categoryProperties.add(extractCategoryPropertyFromResultSet(rs));
         }
         return results;
     }
 
+    private Property extractCategoryPropertyFromResultSet(ResultSet rs) throws SQLException {
+        Property prop = new Property();
+        prop.setId(EClassTaxonomyQueryImpl.namespace + rs.getString(COLUMN_PROPERTY_IRDI_PR));
+        // create a TextType for property definition
+        TextType textType = new TextType();
+        textType.setLanguageID(defaultLanguage);
+        textType.setValue(rs.getString(COLUMN_PROPERTY_PREFERRED_NAME));
+        prop.setPreferredName(Arrays.asList(textType));
+        prop.setShortName(rs.getString(COLUMN_PROPERTY_SHORT_NAME));
+        prop.setDefinition(rs.getString(COLUMN_PROPERTY_DEFINITION));
+        prop.setNote(rs.getString(COLUMN_PROPERTY_NOTE));
+        TextType remark = new TextType();
+        remark.setLanguageID("en");
+        remark.setValue(rs.getString(COLUMN_PROPERTY_REMARK));
+        prop.setRemark(Arrays.asList(remark));
+        prop.setPreferredSymbol(rs.getString(COLUMN_PROPERTY_PREFERRED_SYMBOL));
+        prop.setIecCategory(rs.getString(COLUMN_PROPERTY_CATEGORY));
+        prop.setAttributeType(rs.getString(COLUMN_PROPERTY_ATTRIBUTE_TYPE));
+        prop.setValueQualifier(rs.getString(COLUMN_PROPERTY_DATA_TYPE));
+        prop.setUri(EClassTaxonomyQueryImpl.namespace + rs.getString(COLUMN_PROPERTY_IRDI_PR));
+        return prop;
+    }
+
 
     private Map<String, Property> extractPropertiesFromResultSet(ResultSet rs) throws SQLException {
         Map<String, Property> results = new LinkedHashMap<>();
@@ -834,4 +784,9 @@ public class EClassCategoryDatabaseAdapter {
             closeConnection(c);
         }
     }
+
+    @FunctionalInterface
+    private interface PropertyPairConsumer {
+        void accept(Map<String, Property> properties, ResultSet rs) throws SQLException;
+    }
 }
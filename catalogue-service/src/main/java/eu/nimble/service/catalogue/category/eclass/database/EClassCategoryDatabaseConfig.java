@@ -3,7 +3,6 @@ package eu.nimble.service.catalogue.category.eclass.database;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
-import java.util.List;
 
 /**
  * Created by suat on 03-Mar-17.
@@ -116,93 +115,24 @@ public class EClassCategoryDatabaseConfig {
         return new StringBuilder("SET SEARCH_PATH = '").append(schemaName).append("'").toString();
     }
 
-    public static String eClassQueryGetClassificationClassByName() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS)
-                .append(" WHERE ")
-                .append(COLUMN_CLASSIFICATION_CLASS_PREFERRED_NAME).append(" ILIKE ?");
-        return sb.toString();
-    }
-
-    public static String eClassQueryGetClassificationClassByIdList(List<String> idList) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS)
-                .append(" WHERE ");
-
-        for (int i = 0; i < idList.size() - 1; i++) {
-            sb.append(COLUMN_CLASSIFICATION_CLASS_IRDICC).append(" = ? OR ");
-        }
-        sb.append(COLUMN_CLASSIFICATION_CLASS_IRDICC).append(" = ?");
-        return sb.toString();
-    }
-
-    public static String eClassQueryGetClassificationClassByLevel() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS)
-                .append(" WHERE ")
-                .append(COLUMN_CLASSIFICATION_CLASS_LEVEL).append(" = ?");
-        return sb.toString();
-    }
-
-    public static String eClassQueryGetSubCategoryIds() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS)
-                .append(" WHERE ")
-                .append(COLUMN_CLASSIFICATION_CLASS_LEVEL).append(" = ? AND ")
-                .append(COLUMN_CLASSIFICATION_CLASS_CODED_NAME).append(" ILIKE ?");
-        return sb.toString();
-    }
-
-    public static String eClassQueryGetParentCategoryIds(){
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS)
-                .append(" WHERE ")
-                .append(COLUMN_CLASSIFICATION_CLASS_LEVEL).append(" < ? AND ")
-                .append(COLUMN_CLASSIFICATION_CLASS_CODED_NAME).append(" = ? OR ")
-                .append(COLUMN_CLASSIFICATION_CLASS_CODED_NAME).append(" = ? OR ")
-                .append(COLUMN_CLASSIFICATION_CLASS_CODED_NAME).append(" = ? OR ")
-                .append(COLUMN_CLASSIFICATION_CLASS_CODED_NAME).append(" = ?")
-                .append(" ORDER BY ")
-                .append(COLUMN_CLASSIFICATION_CLASS_LEVEL);
-        return sb.toString();
-    }
-
-    public static String eClassQueryGetChildrenCategories(){
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS)
-                .append(" WHERE ")
-                .append(COLUMN_CLASSIFICATION_CLASS_LEVEL).append(" = ? AND ")
-                .append(COLUMN_CLASSIFICATION_CLASS_CODED_NAME).append(" ILIKE ?");
-        return sb.toString();
-    }
-
-    public static String eClassQueryGetRootCategories(){
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS)
-                .append(" WHERE ")
-                .append(COLUMN_CLASSIFICATION_CLASS_LEVEL).append(" = '1'");
-        return sb.toString();
-    }
-
-    public static String eClassQueryGetKeywordByValue() {
+    public static String eClassQueryGetKeywordsForClass() {
         StringBuilder sb = new StringBuilder();
         sb.append("SELECT ")
-                .append(COLUMN_KEYWORD_SYNONYM_IRDI_TARGET)
+                .append(COLUMN_KEYWORD_SYNONYM_KEYWORD_VALUE_SYNONYM_VALUE)
                 .append(" FROM ").append(TABLE_NAME_KEYWORD_SYNONYM)
                 .append(" WHERE ")
                 .append(COLUMN_KEYWORD_SYNONYM_TYPE_OF_SE).append(" = 'KW' AND ")
-                .append(COLUMN_KEYWORD_SYNONYM_KEYWORD_VALUE_SYNONYM_VALUE).append(" ILIKE ?");
+                .append(COLUMN_KEYWORD_SYNONYM_IRDI_TARGET).append(" = ?");
         return sb.toString();
     }
 
-    public static String eClassQueryGetKeywordsForClass() {
+    public static String eClassQueryGetAllKeywordsAndSynonyms() {
         StringBuilder sb = new StringBuilder();
         sb.append("SELECT ")
-                .append(COLUMN_KEYWORD_SYNONYM_KEYWORD_VALUE_SYNONYM_VALUE)
-                .append(" FROM ").append(TABLE_NAME_KEYWORD_SYNONYM)
-                .append(" WHERE ")
-                .append(COLUMN_KEYWORD_SYNONYM_TYPE_OF_SE).append(" = 'KW' AND ")
-                .append(COLUMN_KEYWORD_SYNONYM_IRDI_TARGET).append(" = ?");
+                .append(COLUMN_KEYWORD_SYNONYM_IRDI_TARGET).append(", ")
+                .append(COLUMN_KEYWORD_SYNONYM_KEYWORD_VALUE_SYNONYM_VALUE).append(", ")
+                .append(COLUMN_KEYWORD_SYNONYM_TYPE_OF_SE)
+                .append(" FROM ").append(TABLE_NAME_KEYWORD_SYNONYM);
         return sb.toString();
     }
 
@@ -212,26 +142,18 @@ public class EClassCategoryDatabaseConfig {
         return sb.toString();
     }
 
-    public static String eClassQueryGetCategories(int numberOfUris){
+    public static String eClassQueryGetAllPropertyDefinitions() {
         StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS).append(" cc")
-            .append(" WHERE ")
-            .append(" cc.").append(COLUMN_CLASSIFICATION_CLASS_IRDICC).append(" in (");
-        for( int i = 0 ; i < numberOfUris; i++ ) {
-            sb.append("?,");
-        }
-        sb.deleteCharAt( sb.length() -1 );
-        sb.append(")");
+        sb.append("SELECT * FROM ").append(TABLE_NAME_PROPERTY);
         return sb.toString();
     }
 
-    public static String eClassQueryGetAllProperties() {
+    public static String eClassQueryGetCategoryPropertyPairs(String orderByColumn) {
         StringBuilder sb = new StringBuilder();
         sb.append("SELECT ")
-                .append("pr.*, cc_pr.").append(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_CC)
-                .append(" FROM ").append(TABLE_NAME_PROPERTY).append(" pr, ").append(TABLE_NAME_CLASSIFICATION_CLASS_PROPERTY).append(" cc_pr ")
-                .append(" WHERE ")
-                .append("pr.").append(COLUMN_PROPERTY_IRDI_PR).append("=").append("cc_pr.").append(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_PR);
+                .append(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_CC).append(", ").append(COLUMN_CLASSIFICATION_CLASS_PROPERTY_IRDI_PR)
+                .append(" FROM ").append(TABLE_NAME_CLASSIFICATION_CLASS_PROPERTY)
+                .append(" ORDER BY ").append(orderByColumn);
         return sb.toString();
     }
 
@@ -0,0 +1,248 @@
+package eu.nimble.service.catalogue.category.eclass.database;
+
+import eu.nimble.service.catalogue.category.eclass.EClassTaxonomyQueryImpl;
+import eu.nimble.service.catalogue.model.category.Category;
+import eu.nimble.service.catalogue.model.category.CategoryTreeResponse;
+import eu.nimble.service.model.ubl.commonbasiccomponents.TextType;
+
+import java.util.*;
+
+/**
+ * In-memory index of the eClass classification hierarchy. eClass codes consist of four two-digit segments e.g. 27020701.
+ * A class at level n has the first 2*n digits of its code set and the remaining digits are zero. So, the parent of a
+ * class is the class whose code is obtained by zeroing the last set segment e.g. 27020700 -> 27020000 -> 27000000.
+ *
+ * The index is built once from the classification_class table and answers the tree, parent and children queries without
+ * any database round trip. Nodes keep only the fields needed to construct {@link Category} instances. A new
+ * {@link Category} is created for each request as the callers are allowed to modify the returned categories.
+ */
+public class EClassCategoryTree {
+    private static final int MAX_LEVEL = 4;
+
+    private final String language;
+    // code -> node
+    private final Map<String, Node> nodesByCode;
+    // irdi -> node
+    private final Map<String, Node> nodesByIrdi;
+    private final List<Node> roots = new ArrayList<>();
+
+    public EClassCategoryTree(List<Category> categories, String language) {
+        this.language = language;
+        this.nodesByCode = new HashMap<>(categories.size() * 2);
+        this.nodesByIrdi = new HashMap<>(categories.size() * 2);
+
+        // sort the categories by code so that the children lists are ordered as well
+        List<Category> sortedCategories = new ArrayList<>(categories);
+        sortedCategories.sort(Comparator.comparing(Category::getCode));
+        for (Category category : sortedCategories) {
+            Node node = new Node(category);
+            nodesByCode.put(node.code, node);
+            nodesByIrdi.put(node.irdi, node);
+        }
+
+        // link the nodes to their parents
+        for (Category category : sortedCategories) {
+            Node node = nodesByIrdi.get(category.getId());
+            if (node.level <= 1) {
+                roots.add(node);
+                continue;
+            }
+            Node parent = nodesByCode.get(getParentCode(node.code, node.level));
+            if (parent != null) {
+                node.parent = parent;
+                parent.children.add(node);
+            }
+        }
+    }
+
+    public int size() {
+        return nodesByIrdi.size();
+    }
+
+    public boolean contains(String irdi) {
+        return nodesByIrdi.containsKey(irdi);
+    }
+
+    public Category getCategory(String irdi) {
+        Node node = nodesByIrdi.get(irdi);
+        return node != null ? toCategory(node) : null;
+    }
+
+    public Category getCategoryByCode(String code) {
+        Node node = nodesByCode.get(code);
+        return node != null ? toCategory(node) : null;
+    }
+
+    public List<Category> getCategories(Collection<String> irdis) {
+        List<Category> categories = new ArrayList<>();
+        for (String irdi : irdis) {
+            Node node = nodesByIrdi.get(irdi);
+            if (node != null) {
+                categories.add(toCategory(node));
+            }
+        }
+        return categories;
+    }
+
+    public List<Category> getAllCategories() {
+        return toCategories(nodesByIrdi.values());
+    }
+
+    public List<Category> getRootCategories() {
+        return toCategories(roots);
+    }
+
+    public List<Category> getCategoriesByLevel(int level) {
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : nodesByIrdi.values()) {
+            if (node.level == level) {
+                nodes.add(node);
+            }
+        }
+        nodes.sort(Comparator.comparing(n -> n.code));
+        return toCategories(nodes);
+    }
+
+    /**
+     * Returns the direct children of the given category or an empty list if the category does not exist
+     */
+    public List<Category> getChildren(String irdi) {
+        Node node = nodesByIrdi.get(irdi);
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        return toCategories(node.children);
+    }
+
+    /**
+     * Returns the path from the root category to the given category. The given category is included as the last element.
+     */
+    public List<Category> getParents(String irdi) {
+        Node node = nodesByIrdi.get(irdi);
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        return toCategories(getPath(node));
+    }
+
+    /**
+     * Returns the ancestors of the given category except the category itself. The direct parent is the first element.
+     */
+    public List<String> getAncestorUris(String irdi) {
+        List<String> uris = new ArrayList<>();
+        Node node = nodesByIrdi.get(irdi);
+        if (node != null) {
+            for (Node parent = node.parent; parent != null; parent = parent.parent) {
+                uris.add(EClassTaxonomyQueryImpl.namespace + parent.irdi);
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Returns the uris of all descendants of the given category
+     */
+    public List<String> getDescendantUris(String irdi) {
+        List<String> uris = new ArrayList<>();
+        Node node = nodesByIrdi.get(irdi);
+        if (node == null) {
+            return uris;
+        }
+        Deque<Node> stack = new ArrayDeque<>(node.children);
+        while (!stack.isEmpty()) {
+            Node child = stack.pop();
+            uris.add(EClassTaxonomyQueryImpl.namespace + child.irdi);
+            stack.addAll(child.children);
+        }
+        return uris;
+    }
+
+    /**
+     * Constructs the tree for the given category such that the parents contain the path from the root to the category
+     * and the categories contain the siblings at each level of the path, i.e. the root categories, children of the
+     * first level parent and so on. The children of the category itself are included unless it is a leaf level category.
+     */
+    public CategoryTreeResponse getCategoryTree(String irdi) {
+        Node node = nodesByIrdi.get(irdi);
+        if (node == null) {
+            return null;
+        }
+
+        List<Node> path = getPath(node);
+        List<List<Category>> categories = new ArrayList<>();
+        categories.add(toCategories(roots));
+        for (int i = 0; i < path.size() && i + 2 <= Math.min(node.level + 1, MAX_LEVEL); i++) {
+            categories.add(toCategories(path.get(i).children));
+        }
+
+        CategoryTreeResponse categoryTreeResponse = new CategoryTreeResponse();
+        categoryTreeResponse.setParents(toCategories(path));
+        categoryTreeResponse.setCategories(categories);
+        return categoryTreeResponse;
+    }
+
+    private static List<Node> getPath(Node node) {
+        LinkedList<Node> path = new LinkedList<>();
+        for (Node current = node; current != null; current = current.parent) {
+            path.addFirst(current);
+        }
+        return path;
+    }
+
+    private static String getParentCode(String code, int level) {
+        int prefixLength = 2 * (level - 1);
+        StringBuilder sb = new StringBuilder(code.length());
+        sb.append(code, 0, prefixLength);
+        for (int i = prefixLength; i < code.length(); i++) {
+            sb.append('0');
+        }
+        return sb.toString();
+    }
+
+    private List<Category> toCategories(Collection<Node> nodes) {
+        List<Category> categories = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            categories.add(toCategory(node));
+        }
+        return categories;
+    }
+
+    private Category toCategory(Node node) {
+        Category cc = new Category();
+        cc.setCode(node.code);
+        TextType textType = new TextType();
+        textType.setLanguageID(language);
+        textType.setValue(node.definition);
+        cc.setDefinition(Arrays.asList(textType));
+        cc.setId(node.irdi);
+        cc.setLevel(node.level);
+        cc.addPreferredName(node.preferredName, language);
+        cc.setNote(node.note);
+        cc.setRemark(node.remark);
+        cc.setTaxonomyId(EClassTaxonomyQueryImpl.id);
+        cc.setCategoryUri(EClassTaxonomyQueryImpl.namespace + node.irdi);
+        return cc;
+    }
+
+    private static class Node {
+        private final String irdi;
+        private final String code;
+        private final int level;
+        private final String preferredName;
+        private final String definition;
+        private final String note;
+        private final String remark;
+        private Node parent;
+        private final List<Node> children = new ArrayList<>(0);
+
+        private Node(Category category) {
+            this.irdi = category.getId();
+            this.code = category.getCode();
+            this.level = category.getLevel();
+            this.preferredName = category.getPreferredName(null);
+            this.definition = category.getDefinition() != null && !category.getDefinition().isEmpty() ? category.getDefinition().get(0).getValue() : null;
+            this.note = category.getNote();
+            this.remark = category.getRemark();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package eu.nimble.service.catalogue.category.eclass.database;
+
+import eu.nimble.service.catalogue.model.category.Category;
+
+import java.util.*;
+
+/**
+ * In-memory inverted index over the preferred names, keywords and synonyms of the eClass classes. Texts are split into
+ * lower-cased terms and each term points to the classes containing it together with the field it is found in.
+ *
+ * A query is split into terms in the same way and all query terms must match a class for the class to be included in
+ * the results. A query term matches an indexed term if the indexed term contains it, so that the previous substring
+ * (i.e. ILIKE '%term%') semantics is preserved. The whole term dictionary is scanned once per query term and results
+ * of all classes are ranked in a single pass. Exact term matches are ranked higher than prefix matches, which are
+ * ranked higher than infix matches. Similarly, the matches on preferred names are ranked higher than keyword matches,
+ * which are ranked higher than synonym matches.
+ */
+public class EClassKeywordIndex {
+    public static final int FIELD_PREFERRED_NAME = 0;
+    public static final int FIELD_KEYWORD = 1;
+    public static final int FIELD_SYNONYM = 2;
+
+    private static final double[] FIELD_WEIGHTS = {3.0, 2.0, 1.0};
+    private static final double EXACT_MATCH_WEIGHT = 1.0;
+    private static final double PREFIX_MATCH_WEIGHT = 0.7;
+    private static final double INFIX_MATCH_WEIGHT = 0.4;
+
+    // class ordinal -> class irdi
+    private final String[] classIds;
+    // sorted term dictionary
+    private final String[] terms;
+    // postings of the terms in the same order with the dictionary. Each posting encodes the class ordinal and the field as (ordinal << 2 | field)
+    private final int[][] postings;
+
+    private EClassKeywordIndex(String[] classIds, String[] terms, int[][] postings) {
+        this.classIds = classIds;
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    /**
+     * Returns the ids of the classes matching with all terms of the given query, ordered by their scores
+     */
+    public List<String> search(String query) {
+        List<String> queryTerms = tokenize(query);
+        if(queryTerms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // class ordinal -> score
+        Map<Integer, Double> scores = null;
+        for(String queryTerm : queryTerms) {
+            Map<Integer, Double> termScores = scoreTerm(queryTerm);
+            if(scores == null) {
+                scores = termScores;
+            } else {
+                // keep only the classes matching with all terms
+                Map<Integer, Double> intersection = new HashMap<>();
+                for(Map.Entry<Integer, Double> entry : termScores.entrySet()) {
+                    Double score = scores.get(entry.getKey());
+                    if(score != null) {
+                        intersection.put(entry.getKey(), score + entry.getValue());
+                    }
+                }
+                scores = intersection;
+            }
+            if(scores.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+
+        List<Map.Entry<Integer, Double>> rankedEntries = new ArrayList<>(scores.entrySet());
+        rankedEntries.sort((e1, e2) -> {
+            int comparison = Double.compare(e2.getValue(), e1.getValue());
+            return comparison != 0 ? comparison : classIds[e1.getKey()].compareTo(classIds[e2.getKey()]);
+        });
+        List<String> results = new ArrayList<>(rankedEntries.size());
+        for(Map.Entry<Integer, Double> entry : rankedEntries) {
+            results.add(classIds[entry.getKey()]);
+        }
+        return results;
+    }
+
+    private Map<Integer, Double> scoreTerm(String queryTerm) {
+        Map<Integer, Double> scores = new HashMap<>();
+        for(int i = 0; i < terms.length; i++) {
+            String term = terms[i];
+            double matchWeight;
+            if(term.equals(queryTerm)) {
+                matchWeight = EXACT_MATCH_WEIGHT;
+            } else if(term.startsWith(queryTerm)) {
+                matchWeight = PREFIX_MATCH_WEIGHT;
+            } else if(term.contains(queryTerm)) {
+                matchWeight = INFIX_MATCH_WEIGHT;
+            } else {
+                continue;
+            }
+
+            for(int posting : postings[i]) {
+                int ordinal = posting >>> 2;
+                double score = matchWeight * FIELD_WEIGHTS[posting & 3];
+                // a class gets the score of its best matching term
+                scores.merge(ordinal, score, Math::max);
+            }
+        }
+        return scores;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if(text == null) {
+            return tokens;
+        }
+        StringBuilder sb = new StringBuilder();
+        String lowerCaseText = text.toLowerCase(Locale.ENGLISH);
+        for(int i = 0; i < lowerCaseText.length(); i++) {
+            char c = lowerCaseText.charAt(i);
+            if(Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            } else if(sb.length() > 0) {
+                tokens.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        if(sb.length() > 0) {
+            tokens.add(sb.toString());
+        }
+        return tokens;
+    }
+
+    public static class Builder {
+        private final Map<String, Integer> classOrdinals = new HashMap<>();
+        private final List<String> classIds = new ArrayList<>();
+        // term -> postings
+        private final Map<String, Set<Integer>> termPostings = new HashMap<>();
+
+        public Builder addCategories(Collection<Category> categories) {
+            for(Category category : categories) {
+                add(category.getId(), category.getPreferredName(null), FIELD_PREFERRED_NAME);
+            }
+            return this;
+        }
+
+        public Builder add(String classId, String text, int field) {
+            Integer ordinal = classOrdinals.get(classId);
+            if(ordinal == null) {
+                ordinal = classIds.size();
+                classOrdinals.put(classId, ordinal);
+                classIds.add(classId);
+            }
+            for(String token : tokenize(text)) {
+                termPostings.computeIfAbsent(token, t -> new HashSet<>()).add(ordinal << 2 | field);
+            }
+            return this;
+        }
+
+        public EClassKeywordIndex build() {
+            String[] terms = termPostings.keySet().toArray(new String[termPostings.size()]);
+            Arrays.sort(terms);
+            int[][] postings = new int[terms.length][];
+            for(int i = 0; i < terms.length; i++) {
+                Set<Integer> termPostingSet = termPostings.get(terms[i]);
+                int[] termPostingArray = new int[termPostingSet.size()];
+                int j = 0;
+                for(Integer posting : termPostingSet) {
+                    termPostingArray[j++] = posting;
+                }
+                postings[i] = termPostingArray;
+            }
+            return new EClassKeywordIndex(classIds.toArray(new String[classIds.size()]), terms, postings);
+        }
+    }
+}
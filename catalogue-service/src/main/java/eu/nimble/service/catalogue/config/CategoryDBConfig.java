@@ -0,0 +1,25 @@
+package eu.nimble.service.catalogue.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Provides the pooled datasource for the eClass category database. As the datasource is exposed as a bean, the pool
+ * statistics (i.e. active connections and usage) are published by the actuator metrics as {@code datasource.categorydb.*}
+ */
+@Configuration
+public class CategoryDBConfig {
+
+    @Autowired
+    private DataSourceFactory dataSourceFactory;
+    @Autowired
+    private CatalogueServiceConfig catalogueServiceConfig;
+
+    @Bean(name = "categorydbDataSource")
+    public DataSource categoryDbDataSource() {
+        return dataSourceFactory.createCategoryDatasource(catalogueServiceConfig);
+    }
+}
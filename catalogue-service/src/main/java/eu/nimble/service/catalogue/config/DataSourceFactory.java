@@ -1,5 +1,6 @@
 package eu.nimble.service.catalogue.config;
 
+import eu.nimble.service.catalogue.category.eclass.database.EClassCategoryDatabaseConfig;
 import eu.nimble.utility.config.BluemixDatabaseConfig;
 import org.apache.tomcat.jdbc.pool.DataSource;
 import org.slf4j.Logger;
@@ -48,6 +49,44 @@ public class DataSourceFactory {
         }
         // Assume we make use of Apache Tomcat connection pooling (default in Spring Boot)
         org.apache.tomcat.jdbc.pool.DataSource tds = (org.apache.tomcat.jdbc.pool.DataSource) ds;
+        configurePool(tds);
+        return tds;
+    }
+
+    /**
+     * Creates a pooled datasource for the eClass category database. Differently from the other datasources, the
+     * connection parameters are taken from the {@link CatalogueServiceConfig} as they are resolved there for the
+     * kubernetes profile. The schema is set once when a physical connection is opened and the prepared statements
+     * are cached per pooled connection so that the category queries are neither re-connected nor re-prepared for each call.
+     */
+    public DataSource createCategoryDatasource(CatalogueServiceConfig config) {
+        logger.info("Creating datasource: url={}, user={}", config.getCategoryDbConnectionUrl(), config.getCategoryDbUsername());
+
+        javax.sql.DataSource ds = DataSourceBuilder.create()
+                .url(config.getCategoryDbConnectionUrl())
+                .username(config.getCategoryDbUsername())
+                .password(config.getCategoryDbPassword())
+                .driverClassName(config.getCategoryDbDriver())
+                .build();
+
+        org.apache.tomcat.jdbc.pool.DataSource tds = (org.apache.tomcat.jdbc.pool.DataSource) ds;
+        configurePool(tds);
+        tds.setMaxActive(Integer.valueOf(environment.getProperty("persistence.categorydb.pool.max-active", "20")));
+        if(config.getCategoryDbScheme() != null && !config.getCategoryDbScheme().isEmpty()) {
+            tds.setInitSQL(EClassCategoryDatabaseConfig.eClassQuerySetPostgresDatabaseSchema(config.getCategoryDbScheme()));
+        }
+        // the statement cache keeps the prepared statements open per pooled connection. With the threshold below,
+        // Postgres also keeps them as server-side prepared statements so that they are not re-planned at each call
+        tds.setJdbcInterceptors("ConnectionState;StatementCache(prepared=true,callable=false,max="
+                + environment.getProperty("persistence.categorydb.pool.statement-cache-size", "100") + ")");
+        if("org.postgresql.Driver".contentEquals(String.valueOf(config.getCategoryDbDriver()))) {
+            tds.setConnectionProperties("prepareThreshold=1");
+        }
+        tds.setJmxEnabled(true);
+        return tds;
+    }
+
+    private void configurePool(org.apache.tomcat.jdbc.pool.DataSource tds) {
         tds.setTestOnBorrow(Boolean.valueOf(environment.getProperty("spring.datasource.test-on-borrow")));
         tds.setTestWhileIdle(Boolean.valueOf(environment.getProperty("spring.datasource.test-while-idle")));
         tds.setRemoveAbandoned(Boolean.valueOf(environment.getProperty("spring.datasource.remove-abandoned")));
@@ -60,6 +99,5 @@ public class DataSourceFactory {
         tds.setTimeBetweenEvictionRunsMillis(Integer.valueOf(environment.getProperty("spring.datasource.time-between-eviction-runs-millis")));
         tds.setMinEvictableIdleTimeMillis(Integer.valueOf(environment.getProperty("spring.datasource.min-evictable-idle-time-millis")));
         tds.setValidationQuery(String.valueOf(environment.getProperty("spring.datasource.validation-query")));
-        return tds;
     }
 }
@@ -0,0 +1,37 @@
+package eu.nimble.service.catalogue.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the bounded pools shared by the requests processing their contents concurrently. The pools are created once
+ * and shut down together with the application context, so the number of threads does not grow with the number of
+ * concurrent requests.
+ */
+@Configuration
+public class WorkerPoolConfig {
+
+    @Value("${nimble.catalog.template-parse.parallelism:4}")
+    private int templateParseParallelism;
+    @Value("${nimble.catalog.template-parse.queue-capacity:64}")
+    private int templateParseQueueCapacity;
+
+    /**
+     * Pool parsing the product rows of the uploaded templates. When the queue is full, the uploading thread parses the
+     * batch itself instead of waiting for the pool.
+     */
+    @Bean(name = "templateParseExecutor", destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor templateParseExecutor() {
+        return createExecutor(templateParseParallelism, templateParseQueueCapacity);
+    }
+
+    private static ThreadPoolExecutor createExecutor(int parallelism, int queueCapacity) {
+        return new ThreadPoolExecutor(Math.max(1, parallelism), Math.max(1, parallelism), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
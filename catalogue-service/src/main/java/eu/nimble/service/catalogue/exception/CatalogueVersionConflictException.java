@@ -0,0 +1,10 @@
+package eu.nimble.service.catalogue.exception;
+
+/**
+ * Thrown when a catalogue has been updated by another writer while an update of it was being prepared
+ */
+public class CatalogueVersionConflictException extends CatalogueServiceException {
+    public CatalogueVersionConflictException(String message) {
+        super(message);
+    }
+}
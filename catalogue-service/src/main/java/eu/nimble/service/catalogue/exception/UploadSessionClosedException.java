@@ -0,0 +1,11 @@
+package eu.nimble.service.catalogue.exception;
+
+/**
+ * Thrown when a chunk is sent to or a completion is requested for an upload session which has already been completed,
+ * aborted or expired
+ */
+public class UploadSessionClosedException extends CatalogueServiceException {
+    public UploadSessionClosedException(String message) {
+        super(message);
+    }
+}
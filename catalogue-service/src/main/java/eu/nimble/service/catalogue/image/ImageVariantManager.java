@@ -0,0 +1,288 @@
+package eu.nimble.service.catalogue.image;
+
+import eu.nimble.service.catalogue.exception.CatalogueServiceException;
+import eu.nimble.service.catalogue.persistence.util.BinaryContentHashRegistry;
+import eu.nimble.service.catalogue.persistence.util.BinaryContentStreamer;
+import eu.nimble.service.catalogue.persistence.util.ImageVariantStore;
+import eu.nimble.service.catalogue.persistence.util.ImageVariantStore.Variant;
+import eu.nimble.service.catalogue.persistence.util.ImageVariantStore.VariantKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Provides resized variants of the images stored in the binary content database. Variants are served from the
+ * {@link ImageVariantStore} if available, otherwise they are generated by a bounded executor and stored for the later
+ * requests. Concurrent requests for the same variant wait for a single generation. The requested sizes and qualities
+ * are snapped to fixed sets, so that the number of variants stored per image is bounded.
+ */
+@Component
+public class ImageVariantManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantManager.class);
+
+    public static final String FORMAT_JPG = "jpg";
+    public static final String FORMAT_PNG = "png";
+    public static final List<String> FORMATS = Arrays.asList(FORMAT_JPG, FORMAT_PNG);
+    // a requested size is rounded up to the next one, so that a variant is at most 1.5 times larger than requested
+    private static final int[] SIZES = {16, 24, 32, 48, 64, 96, 128, 192, 256, 384, 512, 768, 1024, 1536, 2048, 3072, 4096};
+    // a requested quality is rounded to the nearest one
+    private static final int[] QUALITIES = {40, 60, 75, 85, 95};
+
+    @Value("${nimble.catalog.image-variant.parallelism:2}")
+    private int parallelism;
+    @Value("${nimble.catalog.image-variant.queue-capacity:50}")
+    private int queueCapacity;
+    // maximum width and height of a variant, in pixels
+    @Value("${nimble.catalog.image-variant.max-size:2048}")
+    private int maxSize;
+    // maximum number of pixels of the images for which variants are generated, as an image is decoded into the memory
+    @Value("${nimble.catalog.image-variant.max-pixels:25000000}")
+    private long maxPixels;
+
+    @Autowired
+    private ImageVariantStore imageVariantStore;
+    @Autowired
+    private BinaryContentStreamer binaryContentStreamer;
+
+    private final Map<VariantKey, FutureTask<Variant>> generations = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    private void init() {
+        executor = new ThreadPoolExecutor(Math.max(1, parallelism), Math.max(1, parallelism), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the variant of the image with the given uri fitting into the given width and height, after they are
+     * rounded up to the next fixed size. Either of the dimensions might be 0, in which case it is derived from the
+     * aspect ratio of the image. Images are never scaled up. The quality, between 1 and 100, is rounded to the nearest
+     * fixed quality and only used for the jpg format.
+     *
+     * @return null if there is no content with the given uri
+     * @throws IllegalArgumentException if the content is not an image or the image is too large
+     * @throws RejectedExecutionException if the variant has to be generated but the queue of the executor is full
+     */
+    public Variant getVariant(String uri, int width, int height, String format, int quality) throws IOException {
+        // png is lossless, so the quality does not result in different variants
+        VariantKey key = new VariantKey(uri, snapSize(width, maxSize), snapSize(height, maxSize), format,
+                FORMAT_PNG.equals(format) ? 0 : snapQuality(quality));
+        Variant variant = imageVariantStore.getVariant(key);
+        if (variant != null) {
+            return variant;
+        }
+
+        FutureTask<Variant> generation = new FutureTask<Variant>(() -> generateVariant(key)) {
+            @Override
+            protected void done() {
+                generations.remove(key, this);
+            }
+        };
+        FutureTask<Variant> existingGeneration = generations.putIfAbsent(key, generation);
+        if (existingGeneration == null) {
+            try {
+                executor.execute(generation);
+            } catch (RejectedExecutionException e) {
+                generations.remove(key, generation);
+                throw e;
+            }
+            existingGeneration = generation;
+        }
+        return getResult(existingGeneration);
+    }
+
+    private Variant generateVariant(VariantKey key) throws IOException {
+        // checked again, as the variant might have been generated while this generation was waiting in the queue
+        Variant variant = imageVariantStore.getVariant(key);
+        if (variant != null) {
+            return variant;
+        }
+
+        BufferedImage[] image = new BufferedImage[1];
+        boolean exists = binaryContentStreamer.consumeContent(key.getUri(), content -> {
+            try (InputStream is = content.getStream(0, content.getLength())) {
+                image[0] = read(key.getUri(), is, maxPixels);
+            }
+        });
+        if (!exists) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        BufferedImage scaledImage = scale(image[0], key.getWidth(), key.getHeight(), FORMAT_JPG.equals(key.getFormat()));
+        byte[] content = write(scaledImage, key.getFormat(), key.getQuality());
+        String mimeCode = FORMAT_JPG.equals(key.getFormat()) ? "image/jpeg" : "image/png";
+        variant = new Variant(mimeCode, BinaryContentHashRegistry.computeHash(content), content);
+        imageVariantStore.saveVariant(key, variant);
+        logger.info("Generated image variant: {} of size {}x{} in {} ms", key, scaledImage.getWidth(), scaledImage.getHeight(), System.currentTimeMillis() - start);
+        return variant;
+    }
+
+    /**
+     * Reads the dimensions of the image from its header before decoding it, so that no memory is allocated for the
+     * images with more than the given number of pixels.
+     *
+     * @throws IllegalArgumentException if the content is not an image or the image is too large
+     */
+    private static BufferedImage read(String uri, InputStream content, long maxPixels) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(content)) {
+            Iterator<ImageReader> readers = iis != null ? ImageIO.getImageReaders(iis) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException(String.format("Binary content: %s is not an image", uri));
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IllegalArgumentException(String.format("Image: %s has %d pixels. Variants are generated for the images with at most %d pixels",
+                            uri, pixels, maxPixels));
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return the smallest fixed size which is not less than the given size, limited by the maximum size. 0 if the size
+     * is not requested.
+     */
+    static int snapSize(int size, int maxSize) {
+        if (size <= 0) {
+            return 0;
+        }
+        for (int fixedSize : SIZES) {
+            if (fixedSize >= size) {
+                return Math.min(fixedSize, maxSize);
+            }
+        }
+        return maxSize;
+    }
+
+    /**
+     * @return the fixed quality nearest to the given quality
+     */
+    static int snapQuality(int quality) {
+        int nearestQuality = QUALITIES[0];
+        for (int fixedQuality : QUALITIES) {
+            if (Math.abs(fixedQuality - quality) < Math.abs(nearestQuality - quality)) {
+                nearestQuality = fixedQuality;
+            }
+        }
+        return nearestQuality;
+    }
+
+    /**
+     * Scales the image in steps halving the size, as a single bilinear step loses the details of the images scaled
+     * down considerably. Transparent pixels are painted white for the formats without an alpha channel.
+     */
+    private static BufferedImage scale(BufferedImage image, int width, int height, boolean opaque) {
+        double ratio;
+        if (width > 0 && height > 0) {
+            ratio = Math.min((double) width / image.getWidth(), (double) height / image.getHeight());
+        } else if (width > 0) {
+            ratio = (double) width / image.getWidth();
+        } else {
+            ratio = (double) height / image.getHeight();
+        }
+        ratio = Math.min(ratio, 1);
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(targetWidth, currentWidth / 2);
+            currentHeight = Math.max(targetHeight, currentHeight / 2);
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                if (opaque) {
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, currentWidth, currentHeight);
+                }
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (currentWidth != targetWidth || currentHeight != targetHeight);
+        return current;
+    }
+
+    private static byte[] write(BufferedImage image, String format, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!FORMAT_JPG.equals(format)) {
+            ImageIO.write(image, format, out);
+            return out.toByteArray();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static Variant getResult(Future<Variant> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CatalogueServiceException("Interrupted while generating the image variant", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CatalogueServiceException("Failed to generate the image variant", e.getCause());
+        }
+    }
+}
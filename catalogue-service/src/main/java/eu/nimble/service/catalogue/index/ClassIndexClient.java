@@ -47,6 +47,13 @@ public class ClassIndexClient {
     private ClassIndexClient classIndexClient;
 
     public boolean indexCategory(Category category, Set<String> directParentUris, Set<String> allParentUris, Set<String> directChildrenUris, Set<String> allChildrenUris)  {
+        return indexCategory(category, directParentUris, allParentUris, directChildrenUris, allChildrenUris, credentialsUtil.getBearerToken());
+    }
+
+    /**
+     * Indexes the category with the given token. It is used when the categories are indexed outside of the request thread.
+     */
+    public boolean indexCategory(Category category, Set<String> directParentUris, Set<String> allParentUris, Set<String> directChildrenUris, Set<String> allChildrenUris, String bearerToken)  {
         try {
             String categoryJson;
             try {
@@ -60,7 +67,7 @@ public class ClassIndexClient {
                 return false;
             }
 
-            Response response = SpringBridge.getInstance().getiIndexingServiceClient().setClass(credentialsUtil.getBearerToken(), categoryJson);
+            Response response = SpringBridge.getInstance().getiIndexingServiceClient().setClass(bearerToken, categoryJson);
 
             if (response.status() == HttpStatus.OK.value()) {
                 logger.info("Indexed category successfully. category uri: {}", category.getCategoryUri());
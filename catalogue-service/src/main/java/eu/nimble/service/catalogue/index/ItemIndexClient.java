@@ -11,6 +11,7 @@ import feign.Response;
 import org.apache.commons.io.IOUtils;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +23,7 @@ import org.springframework.stereotype.Component;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Created by suat on 23-Jan-19.
@@ -40,6 +42,14 @@ public class ItemIndexClient {
     private HttpSolrClient httpSolrClient;
 
     public void indexCatalogue(CatalogueType catalogue) {
+        indexCatalogueLines(catalogue, catalogue.getCatalogueLine());
+    }
+
+    /**
+     * Indexes the given lines of the catalogue with a single request. The items posted for the catalogue are added or
+     * updated, the other items of the catalogue are kept as they are.
+     */
+    public void indexCatalogueLines(CatalogueType catalogue, List<CatalogueLineType> catalogueLines) {
         if(!indexingSync) {
             logger.info("Synchronization with Solr disabled. Won't index the catalogue");
             return;
@@ -48,7 +58,7 @@ public class ItemIndexClient {
         String indexItemsJson;
         try {
             List<ItemType> indexItems = new ArrayList<>();
-            for (CatalogueLineType catalogueLine : catalogue.getCatalogueLine()) {
+            for (CatalogueLineType catalogueLine : catalogueLines) {
                 indexItems.add(IndexingWrapper.toIndexItem(catalogueLine));
             }
             indexItemsJson = JsonSerializationUtility.getObjectMapper().writeValueAsString(indexItems);
@@ -148,6 +158,32 @@ public class ItemIndexClient {
         }
     }
 
+    /**
+     * Deletes the items of the given catalogues from the index with a single delete query
+     */
+    public void deleteCatalogues(List<String> catalogueUuids) {
+        if(!indexingSync) {
+            logger.info("Synchronization with Solr disabled. Won't delete the catalogues");
+            return;
+        }
+        if(catalogueUuids.isEmpty()) {
+            return;
+        }
+
+        try {
+            String query = catalogueUuids.stream()
+                    .map(uuid -> "\"" + ClientUtils.escapeQueryChars(uuid) + "\"")
+                    .collect(Collectors.joining(" OR ", "catalogueId:(", ")"));
+            UpdateResponse response = httpSolrClient.deleteByQuery(query);
+            logger.info("Delete query response: {}", response.getStatus());
+            response = httpSolrClient.commit();
+            logger.info("Deleted indexed Catalogues. uuids: {}, commit response: {}", catalogueUuids, response.getStatus());
+
+        } catch (SolrServerException | IOException e) {
+            logger.error("Failed to delete indexed Catalogues. uuids: {}", catalogueUuids, e);
+        }
+    }
+
     public void deleteCatalogueLine(long catalogueLineHjid) {
         if(!indexingSync) {
             logger.info("Synchronization with Solr disabled. Won't delete the catalogue line");
@@ -170,6 +206,33 @@ public class ItemIndexClient {
         }
     }
 
+    /**
+     * Deletes the given catalogue lines from the index with a single request
+     */
+    public void deleteCatalogueLines(List<Long> catalogueLineHjids) {
+        if(!indexingSync) {
+            logger.info("Synchronization with Solr disabled. Won't delete the catalogue lines");
+            return;
+        }
+        if(catalogueLineHjids.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<String> ids = new ArrayList<>();
+            for(Long hjid : catalogueLineHjids) {
+                ids.add(hjid.toString());
+            }
+            UpdateResponse response = httpSolrClient.deleteById(ids);
+            logger.info("Delete by id response: {}", response.getStatus());
+            response = httpSolrClient.commit();
+            logger.info("Deleted {} indexed CatalogueLines. Commit response: {}", ids.size(), response.getStatus());
+
+        } catch (SolrServerException | IOException e) {
+            logger.error("Failed to delete indexed CatalogueLines. hjids: {}", catalogueLineHjids, e);
+        }
+    }
+
     public void deleteAllContent() {
         if(!indexingSync) {
             logger.info("Synchronization with Solr disabled. Won't delete the content");
@@ -34,6 +34,13 @@ public class PropertyIndexClient {
     private CredentialsUtil credentialsUtil;
 
     public boolean indexProperty(Property property, Set<String> associatedCategoryUris) {
+        return indexProperty(property, associatedCategoryUris, credentialsUtil.getBearerToken());
+    }
+
+    /**
+     * Indexes the property with the given token. It is used when the properties are indexed outside of the request thread.
+     */
+    public boolean indexProperty(Property property, Set<String> associatedCategoryUris, String bearerToken) {
         try {
             String propertyJson;
             try {
@@ -47,7 +54,7 @@ public class PropertyIndexClient {
                 return false;
             }
 
-            Response response = SpringBridge.getInstance().getiIndexingServiceClient().setProperty(credentialsUtil.getBearerToken(),propertyJson);
+            Response response = SpringBridge.getInstance().getiIndexingServiceClient().setProperty(bearerToken,propertyJson);
 
             if (response.status() == HttpStatus.OK.value()) {
                 logger.info("Indexed property successfully. property uri: {}", property.getUri());
@@ -0,0 +1,85 @@
+package eu.nimble.service.catalogue.model.catalogue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a single line of a bulk catalogue line operation. Failed lines contain the error codes together with their
+ * parameters, in the same way as the validation errors of single line operations.
+ */
+public class CatalogueLineBulkResult {
+
+    public enum Status {
+        CREATED, UPDATED, FAILED
+    }
+
+    // position of the line in the request
+    private int index;
+    private String lineId;
+    private Long hjid;
+    private Status status;
+    private List<String> errorMessages = new ArrayList<>();
+    private List<List<String>> errorParameters = new ArrayList<>();
+
+    public CatalogueLineBulkResult() {
+    }
+
+    public CatalogueLineBulkResult(int index, String lineId) {
+        this.index = index;
+        this.lineId = lineId;
+    }
+
+    public void addError(String errorMessage, List<String> parameters) {
+        this.status = Status.FAILED;
+        this.errorMessages.add(errorMessage);
+        this.errorParameters.add(parameters);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getLineId() {
+        return lineId;
+    }
+
+    public void setLineId(String lineId) {
+        this.lineId = lineId;
+    }
+
+    public Long getHjid() {
+        return hjid;
+    }
+
+    public void setHjid(Long hjid) {
+        this.hjid = hjid;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public List<String> getErrorMessages() {
+        return errorMessages;
+    }
+
+    public void setErrorMessages(List<String> errorMessages) {
+        this.errorMessages = errorMessages;
+    }
+
+    public List<List<String>> getErrorParameters() {
+        return errorParameters;
+    }
+
+    public void setErrorParameters(List<List<String>> errorParameters) {
+        this.errorParameters = errorParameters;
+    }
+}
@@ -0,0 +1,175 @@
+package eu.nimble.service.catalogue.model.upload;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * Status of an upload which is processed in the background. The job is updated by the worker processing the staged
+ * file and polled by the clients via the job id.
+ */
+public class UploadJob {
+
+    public enum Type {
+        TEMPLATE, IMAGES
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    public enum Stage {
+        STAGED, PARSING, PERSISTING, PROCESSING_IMAGES, DONE
+    }
+
+    private final String jobId;
+    private final Type type;
+    private final String partyId;
+    private final Date createdAt = new Date();
+    private Status status = Status.QUEUED;
+    private Stage stage = Stage.STAGED;
+    private int progress;
+    private String catalogueUuid;
+    private String message;
+    // numbers of the lines affected by a template upload, set once the template is saved
+    private UploadMergeResult mergeResult;
+    private Date updatedAt = createdAt;
+    // cleared once the worker starts modifying the database, since the changes can not be rolled back partially
+    private boolean cancellable = true;
+
+    @JsonIgnore
+    private File stagedFile;
+    @JsonIgnore
+    private Future<?> future;
+
+    public UploadJob(String jobId, Type type, String partyId) {
+        this.jobId = jobId;
+        this.type = type;
+        this.partyId = partyId;
+    }
+
+    /**
+     * Moves the job to the given stage. Throws {@link CancellationException} if the job has been cancelled in the
+     * meantime so that the worker stops before starting the next stage.
+     */
+    public synchronized void enterStage(Stage stage, int progress, boolean cancellable) {
+        if (status == Status.CANCELLED) {
+            throw new CancellationException(String.format("Upload job %s has been cancelled", jobId));
+        }
+        this.status = Status.RUNNING;
+        this.stage = stage;
+        this.progress = progress;
+        this.cancellable = cancellable;
+        this.updatedAt = new Date();
+    }
+
+    public synchronized boolean cancel() {
+        if (status == Status.CANCELLED) {
+            return true;
+        }
+        if (!cancellable || isFinished()) {
+            return false;
+        }
+        // queued jobs are not removed from the executor so that they can clean up their staged files when they are picked
+        if (status == Status.RUNNING && future != null) {
+            future.cancel(true);
+        }
+        status = Status.CANCELLED;
+        updatedAt = new Date();
+        return true;
+    }
+
+    public synchronized void complete(String catalogueUuid) {
+        this.status = Status.COMPLETED;
+        this.stage = Stage.DONE;
+        this.progress = 100;
+        this.catalogueUuid = catalogueUuid;
+        this.cancellable = false;
+        this.updatedAt = new Date();
+    }
+
+    public synchronized void fail(String message) {
+        if (status != Status.CANCELLED) {
+            this.status = Status.FAILED;
+            this.message = message;
+        }
+        this.cancellable = false;
+        this.updatedAt = new Date();
+    }
+
+    @JsonIgnore
+    public synchronized boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPartyId() {
+        return partyId;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized Stage getStage() {
+        return stage;
+    }
+
+    public synchronized int getProgress() {
+        return progress;
+    }
+
+    public synchronized String getCatalogueUuid() {
+        return catalogueUuid;
+    }
+
+    public synchronized void setCatalogueUuid(String catalogueUuid) {
+        this.catalogueUuid = catalogueUuid;
+    }
+
+    public synchronized String getMessage() {
+        return message;
+    }
+
+    public synchronized UploadMergeResult getMergeResult() {
+        return mergeResult;
+    }
+
+    public synchronized void setMergeResult(UploadMergeResult mergeResult) {
+        this.mergeResult = mergeResult;
+    }
+
+    public synchronized Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public synchronized boolean isCancellable() {
+        return cancellable;
+    }
+
+    public File getStagedFile() {
+        return stagedFile;
+    }
+
+    public void setStagedFile(File stagedFile) {
+        this.stagedFile = stagedFile;
+    }
+
+    public synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+}
@@ -0,0 +1,53 @@
+package eu.nimble.service.catalogue.model.upload;
+
+/**
+ * Numbers of the catalogue lines grouped by the way they are affected by a template upload
+ */
+public class UploadMergeResult {
+
+    // uploaded lines not existing in the catalogue
+    private int inserted;
+    // existing lines updated or replaced by the uploaded ones
+    private int updated;
+    // existing lines removed in the replace mode
+    private int removed;
+    // existing lines not affected by the upload
+    private int unchanged;
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(int inserted) {
+        this.inserted = inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(int removed) {
+        this.removed = removed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public void setUnchanged(int unchanged) {
+        this.unchanged = unchanged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("inserted: %d, updated: %d, removed: %d, unchanged: %d", inserted, updated, removed, unchanged);
+    }
+}
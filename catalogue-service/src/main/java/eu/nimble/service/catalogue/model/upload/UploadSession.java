@@ -0,0 +1,132 @@
+package eu.nimble.service.catalogue.model.upload;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * A resumable upload whose content is sent in fixed-size chunks. Chunks are written into their position in the staged
+ * file, so they can be sent in any order and re-sent after a failure.
+ */
+public class UploadSession {
+
+    private final String sessionId;
+    private final UploadJob.Type type;
+    private final String partyId;
+    private final String fileName;
+    private final long size;
+    private final int chunkSize;
+    private final Date createdAt = new Date();
+    private Date updatedAt = createdAt;
+
+    @JsonIgnore
+    private final BitSet receivedChunks = new BitSet();
+    @JsonIgnore
+    private final File stagedFile;
+    // set once the session is completed, aborted or expired. No chunk is written afterwards.
+    @JsonIgnore
+    private boolean closed = false;
+
+    public UploadSession(String sessionId, UploadJob.Type type, String partyId, String fileName, long size, int chunkSize, File stagedFile) {
+        this.sessionId = sessionId;
+        this.type = type;
+        this.partyId = partyId;
+        this.fileName = fileName;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.stagedFile = stagedFile;
+    }
+
+    public int getChunkCount() {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Expected size of the chunk with the given index. Only the last chunk may be smaller than the chunk size.
+     */
+    public int getChunkLength(int index) {
+        return (int) Math.min(chunkSize, size - (long) index * chunkSize);
+    }
+
+    public synchronized void markChunkReceived(int index) {
+        receivedChunks.set(index);
+        updatedAt = new Date();
+    }
+
+    public synchronized int[] getReceivedChunks() {
+        return receivedChunks.stream().toArray();
+    }
+
+    /**
+     * Index of the first chunk which has not been received yet, which is the chunk to continue with when resuming
+     */
+    public synchronized int getNextChunk() {
+        return receivedChunks.nextClearBit(0);
+    }
+
+    /**
+     * Number of bytes received without a gap from the beginning of the file
+     */
+    public synchronized long getOffset() {
+        return Math.min(size, (long) receivedChunks.nextClearBit(0) * chunkSize);
+    }
+
+    @JsonIgnore
+    public synchronized boolean isComplete() {
+        return receivedChunks.nextClearBit(0) >= getChunkCount();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public UploadJob.Type getType() {
+        return type;
+    }
+
+    public String getPartyId() {
+        return partyId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public synchronized Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @JsonIgnore
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the session. Returns {@code false} if it has already been closed.
+     */
+    public synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    public File getStagedFile() {
+        return stagedFile;
+    }
+}
@@ -0,0 +1,169 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A PostgreSQL session level advisory lock identified by a lock namespace and a key. The lock is held on a dedicated
+ * connection, which is returned to the pool once the lock is released. The shared mode is acquired once for all the
+ * readers in the JVM and released with the last one of them, so that the readers do not occupy a connection each.
+ *
+ * The exclusive and the shared holds are kept on separate connections. A thread downgrading its write lock to a read
+ * lock acquires the shared mode on the connection of the exclusive one, as the session already holds the lock.
+ */
+class AdvisoryLock {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdvisoryLock.class);
+
+    // interval for polling the lock while waiting for it
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final DataSource dataSource;
+    private final int namespace;
+    private final int key;
+
+    // guarded by this
+    private Connection exclusiveConnection;
+    private Connection sharedConnection;
+    private int sharedHolds;
+
+    AdvisoryLock(DataSource dataSource, int namespace, int key) {
+        this.dataSource = dataSource;
+        this.namespace = namespace;
+        this.key = key;
+    }
+
+    /**
+     * Acquires the lock in the exclusive mode. The caller should already hold the JVM-local write lock, so that no other
+     * thread of this JVM uses the lock at the same time.
+     */
+    synchronized boolean acquireExclusive(long timeoutNanos) throws InterruptedException {
+        exclusiveConnection = acquire(false, timeoutNanos);
+        return exclusiveConnection != null;
+    }
+
+    synchronized void releaseExclusive() {
+        Connection conn = exclusiveConnection;
+        exclusiveConnection = null;
+        release(conn, false);
+    }
+
+    synchronized boolean acquireShared(long timeoutNanos) throws InterruptedException {
+        if (sharedHolds > 0) {
+            sharedHolds++;
+            return true;
+        }
+        if (exclusiveConnection != null) {
+            // the session holding the exclusive mode gets the shared mode immediately
+            sharedConnection = tryLock(exclusiveConnection, true) ? exclusiveConnection : null;
+        } else {
+            sharedConnection = acquire(true, timeoutNanos);
+        }
+        if (sharedConnection != null) {
+            sharedHolds = 1;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void releaseShared() {
+        if (--sharedHolds == 0) {
+            Connection conn = sharedConnection;
+            sharedConnection = null;
+            release(conn, true);
+        }
+    }
+
+    /**
+     * @return the connection holding the lock, null if the lock could not be acquired in time
+     */
+    private Connection acquire(boolean shared, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(true);
+            while (!tryLock(conn, shared)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    closeConnection(conn);
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS)));
+            }
+            return conn;
+
+        } catch (SQLException e) {
+            closeConnection(conn);
+            throw new IllegalStateException(String.format("Failed to acquire the advisory lock: %d/%d", namespace, key), e);
+        } catch (InterruptedException e) {
+            closeConnection(conn);
+            throw e;
+        }
+    }
+
+    private boolean tryLock(Connection conn, boolean shared) throws SQLException {
+        String query = shared ? "SELECT pg_try_advisory_lock_shared(?, ?)" : "SELECT pg_try_advisory_lock(?, ?)";
+        try (PreparedStatement statement = conn.prepareStatement(query)) {
+            statement.setInt(1, namespace);
+            statement.setInt(2, key);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private void release(Connection conn, boolean shared) {
+        String query = shared ? "SELECT pg_advisory_unlock_shared(?, ?)" : "SELECT pg_advisory_unlock(?, ?)";
+        boolean released = false;
+        try (PreparedStatement statement = conn.prepareStatement(query)) {
+            statement.setInt(1, namespace);
+            statement.setInt(2, key);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                released = resultSet.next() && resultSet.getBoolean(1);
+            }
+            if (!released) {
+                logger.error("Advisory lock: {}/{} was not held by the connection", namespace, key);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to release the advisory lock: {}/{}", namespace, key, e);
+        }
+
+        if (!released) {
+            // the session might still hold the lock, so it is ended instead of returning it to the pool
+            closePhysicalConnection(conn);
+        }
+        // the connection is shared by both modes while a write lock holder also holds the read lock
+        if (conn != exclusiveConnection && conn != sharedConnection) {
+            closeConnection(conn);
+        }
+    }
+
+    private void closePhysicalConnection(Connection conn) {
+        try {
+            // the pool discards the closed connection when it is validated on the next borrow
+            conn.unwrap(Connection.class).close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close the physical connection of the advisory lock: {}/{}", namespace, key, e);
+        }
+    }
+
+    private void closeConnection(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close the connection of the advisory lock: {}/{}", namespace, key, e);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the SHA-256 hashes of the binary contents, which are used as the ETags of the contents. As a content is never
+ * modified once it is stored with a uri, its hash is computed once. The hashes are saved when the contents are stored
+ * by this service. The contents stored through the repository wrapper are hashed by a background task, or when they are
+ * retrieved before the task reaches them.
+ */
+@Component
+public class BinaryContentHashRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryContentHashRegistry.class);
+
+    private static final String QUERY_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS binary_content_hash (" +
+            "uri VARCHAR(1024) NOT NULL PRIMARY KEY, hash VARCHAR(64) NOT NULL)";
+    // the hash may be saved by a concurrent request or another instance in the meantime
+    private static final String QUERY_INSERT_HASH = "INSERT INTO binary_content_hash (uri, hash) SELECT CAST(? AS VARCHAR(1024)), CAST(? AS VARCHAR(64))" +
+            " WHERE NOT EXISTS (SELECT 1 FROM binary_content_hash WHERE uri = ?)";
+    // maximum number of the hashes kept in the memory while they cannot be saved
+    private static final int MAX_UNSAVED_HASHES = 10000;
+
+    @Value("${nimble.catalog.binary-content.hash-batch-size:100}")
+    private int hashBatchSize;
+
+    @Autowired
+    @Qualifier("binarycontentdbDataSource")
+    private DataSource binaryContentDataSource;
+    @Autowired
+    private BinaryContentStreamer binaryContentStreamer;
+    @Autowired
+    private BinaryContentSchema binaryContentSchema;
+
+    private String queryGetHash;
+    private String queryGetUrisWithoutHash;
+
+    // hashes which could not be saved, so that the contents are not read again until they are saved
+    private final Map<String, String> unsavedHashes = new ConcurrentHashMap<>();
+    // the uris are hashed in the order of the uris, starting after the last uri of the previous batch
+    private String lastHashedUri = "";
+    private ScheduledExecutorService hashExecutor;
+
+    @PostConstruct
+    private void init() throws SQLException {
+        String tableName = binaryContentSchema.getTableName();
+        String uriColumn = binaryContentSchema.getUriColumn();
+        // hashes are not removed with the contents, so the hash is looked up through the content
+        queryGetHash = String.format("SELECT hash.hash FROM %s binary_object LEFT JOIN binary_content_hash hash ON hash.uri = binary_object.%s" +
+                " WHERE binary_object.%s = ?", tableName, uriColumn, uriColumn);
+        queryGetUrisWithoutHash = String.format("SELECT binary_object.%s FROM %s binary_object WHERE binary_object.%s > ?" +
+                " AND NOT EXISTS (SELECT 1 FROM binary_content_hash hash WHERE hash.uri = binary_object.%s) ORDER BY binary_object.%s",
+                uriColumn, tableName, uriColumn, uriColumn, uriColumn);
+        try (Connection connection = binaryContentDataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(QUERY_CREATE_TABLE);
+        }
+
+        hashExecutor = Executors.newSingleThreadScheduledExecutor();
+        hashExecutor.scheduleWithFixedDelay(this::hashContents, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        hashExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the hash of the content with the given uri. If the hash is not available yet, it is computed by reading
+     * the content.
+     *
+     * @return null if there is no content with the given uri
+     */
+    public String getHash(String uri) throws IOException {
+        try (Connection connection = binaryContentDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(queryGetHash)) {
+            statement.setString(1, uri);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                if (resultSet.getString(1) != null) {
+                    return resultSet.getString(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(String.format("Failed to get the hash of binary content: %s", uri), e);
+        }
+
+        String unsavedHash = unsavedHashes.get(uri);
+        if (unsavedHash != null) {
+            return unsavedHash;
+        }
+        return computeAndSaveHash(uri);
+    }
+
+    private String computeAndSaveHash(String uri) throws IOException {
+        String[] hash = new String[1];
+        boolean exists = binaryContentStreamer.consumeContent(uri, content -> {
+            try (InputStream is = content.getStream(0, content.getLength())) {
+                hash[0] = computeHash(is);
+            }
+        });
+        if (!exists) {
+            return null;
+        }
+        saveHash(uri, hash[0]);
+        return hash[0];
+    }
+
+    /**
+     * Saves the hash of the content with the given uri. If the hash cannot be saved, it is kept in the memory and saved
+     * by the background task later.
+     */
+    public void saveHash(String uri, String hash) {
+        if (insertHash(uri, hash)) {
+            unsavedHashes.remove(uri);
+        } else if (unsavedHashes.size() < MAX_UNSAVED_HASHES) {
+            unsavedHashes.put(uri, hash);
+        }
+    }
+
+    private boolean insertHash(String uri, String hash) {
+        try (Connection connection = binaryContentDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_INSERT_HASH)) {
+            statement.setString(1, uri);
+            statement.setString(2, hash);
+            statement.setString(3, uri);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Failed to save the hash of binary content: {}", uri, e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves the hashes which could not be saved before and computes the hashes of the next batch of contents without a
+     * hash. Once the last content is reached, the contents are checked again from the beginning.
+     */
+    void hashContents() {
+        try {
+            for (Map.Entry<String, String> unsavedHash : new ArrayList<>(unsavedHashes.entrySet())) {
+                if (insertHash(unsavedHash.getKey(), unsavedHash.getValue())) {
+                    unsavedHashes.remove(unsavedHash.getKey());
+                }
+            }
+
+            List<String> uris = new ArrayList<>();
+            try (Connection connection = binaryContentDataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(queryGetUrisWithoutHash)) {
+                statement.setMaxRows(hashBatchSize);
+                statement.setString(1, lastHashedUri);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        uris.add(resultSet.getString(1));
+                    }
+                }
+            }
+            for (String uri : uris) {
+                if (!unsavedHashes.containsKey(uri)) {
+                    try {
+                        computeAndSaveHash(uri);
+                    } catch (IOException e) {
+                        // the content is hashed again with the next pass
+                        logger.warn("Failed to compute the hash of binary content: {}", uri, e);
+                    }
+                }
+            }
+            lastHashedUri = uris.size() < hashBatchSize ? "" : uris.get(uris.size() - 1);
+            if (!uris.isEmpty()) {
+                logger.info("Computed the hashes of {} binary contents", uris.size());
+            }
+
+        } catch (Exception e) {
+            // the task is not scheduled anymore if an exception is thrown
+            logger.error("Failed to compute the hashes of binary contents", e);
+        }
+    }
+
+    public static String computeHash(byte[] content) {
+        return Hex.encodeHexString(getDigest().digest(content));
+    }
+
+    public static String computeHash(InputStream content) throws IOException {
+        DigestInputStream digestStream = new DigestInputStream(content, getDigest());
+        IOUtils.copyLarge(digestStream, NullOutputStream.NULL_OUTPUT_STREAM);
+        return Hex.encodeHexString(digestStream.getMessageDigest().digest());
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import eu.nimble.service.model.ubl.commonbasiccomponents.BinaryObjectType;
+import org.hibernate.SessionFactory;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Provides the table and column names of the binary contents for the queries reading the binary content database via
+ * JDBC. The names are taken from the Hibernate mapping of {@link BinaryObjectType}, which is the entity the binary
+ * contents are stored with, so that the queries follow the schema generated for the entity.
+ */
+@Component
+public class BinaryContentSchema {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryContentSchema.class);
+
+    // the binary content database is generated from the same UBL entity
+    @Autowired
+    @Qualifier("ubldbEntityManagerFactory")
+    private EntityManagerFactory entityManagerFactory;
+
+    private String tableName;
+    private String uriColumn;
+    private String fileNameColumn;
+    private String mimeCodeColumn;
+    private String valueColumn;
+
+    @PostConstruct
+    private void init() {
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityManagerFactory.unwrap(SessionFactory.class).getClassMetadata(BinaryObjectType.class);
+        tableName = persister.getTableName();
+        uriColumn = getColumn(persister, "uri");
+        fileNameColumn = getColumn(persister, "fileName");
+        mimeCodeColumn = getColumn(persister, "mimeCode");
+        valueColumn = getColumn(persister, "value");
+        logger.info("Binary contents are read from table: {}, uri column: {}, content column: {}", tableName, uriColumn, valueColumn);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getUriColumn() {
+        return uriColumn;
+    }
+
+    public String getFileNameColumn() {
+        return fileNameColumn;
+    }
+
+    public String getMimeCodeColumn() {
+        return mimeCodeColumn;
+    }
+
+    public String getValueColumn() {
+        return valueColumn;
+    }
+
+    private static String getColumn(AbstractEntityPersister persister, String propertyName) {
+        return persister.getPropertyColumnNames(propertyName)[0];
+    }
+}
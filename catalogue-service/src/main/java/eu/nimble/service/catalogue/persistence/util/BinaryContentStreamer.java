@@ -0,0 +1,192 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import eu.nimble.service.model.ubl.commonbasiccomponents.BinaryObjectType;
+import eu.nimble.utility.persistence.binary.BinaryContentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Provides the binary contents as streams so that they are not loaded into the memory as a whole. The content is read
+ * from the large object of the binary content database, which also allows reading only a part of it. If the content
+ * can not be accessed as a large object (e.g. it is stored in a column type without stream support), it is loaded via
+ * the {@link BinaryContentService} as before.
+ */
+@Component
+public class BinaryContentStreamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryContentStreamer.class);
+
+    @Autowired
+    @Qualifier("binarycontentdbDataSource")
+    private DataSource binaryContentDataSource;
+    @Autowired
+    private BinaryContentSchema binaryContentSchema;
+
+    private String queryGetContent;
+
+    @PostConstruct
+    private void init() {
+        queryGetContent = String.format("SELECT %s, %s, %s FROM %s WHERE %s = ?", binaryContentSchema.getFileNameColumn(), binaryContentSchema.getMimeCodeColumn(),
+                binaryContentSchema.getValueColumn(), binaryContentSchema.getTableName(), binaryContentSchema.getUriColumn());
+    }
+
+    public interface Content {
+        String getFileName();
+
+        String getMimeCode();
+
+        long getLength() throws IOException;
+
+        /**
+         * @return true if the content is read from the database as a stream, false if it is loaded as a whole
+         */
+        boolean isStreamed();
+
+        /**
+         * @param start offset of the first byte, starting from 0
+         */
+        InputStream getStream(long start, long length) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface ContentConsumer {
+        void accept(Content content) throws IOException;
+    }
+
+    /**
+     * Passes the content with the given uri to the consumer. The content is only available until the consumer returns.
+     *
+     * @return false if there is no content with the given uri
+     */
+    public boolean consumeContent(String uri, ContentConsumer consumer) throws IOException {
+        boolean consumed = false;
+        try (Connection connection = binaryContentDataSource.getConnection()) {
+            // large objects can only be read inside a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(queryGetContent)) {
+                statement.setString(1, uri);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    Blob blob = resultSet.getBlob(3);
+                    consumed = true;
+                    consumer.accept(new BlobContent(resultSet.getString(1), resultSet.getString(2), blob));
+                    return true;
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            if (consumed) {
+                throw new IOException(String.format("Failed to read binary content: %s", uri), e);
+            }
+            logger.warn("Failed to stream binary content: {}. It will be loaded as a whole", uri, e);
+        }
+
+        BinaryObjectType binaryObject = new BinaryContentService().retrieveContent(uri);
+        if (binaryObject == null) {
+            return false;
+        }
+        consumer.accept(new ByteArrayContent(binaryObject));
+        return true;
+    }
+
+    private static class BlobContent implements Content {
+        private final String fileName;
+        private final String mimeCode;
+        private final Blob blob;
+
+        private BlobContent(String fileName, String mimeCode, Blob blob) {
+            this.fileName = fileName;
+            this.mimeCode = mimeCode;
+            this.blob = blob;
+        }
+
+        @Override
+        public String getFileName() {
+            return fileName;
+        }
+
+        @Override
+        public String getMimeCode() {
+            return mimeCode;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            try {
+                return blob.length();
+            } catch (SQLException e) {
+                throw new IOException("Failed to get the length of the binary content", e);
+            }
+        }
+
+        @Override
+        public boolean isStreamed() {
+            return true;
+        }
+
+        @Override
+        public InputStream getStream(long start, long length) throws IOException {
+            if (length == 0) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            try {
+                // positions of blobs start from 1
+                return blob.getBinaryStream(start + 1, length);
+            } catch (SQLException e) {
+                throw new IOException("Failed to read the binary content", e);
+            }
+        }
+    }
+
+    private static class ByteArrayContent implements Content {
+        private final BinaryObjectType binaryObject;
+
+        private ByteArrayContent(BinaryObjectType binaryObject) {
+            this.binaryObject = binaryObject;
+        }
+
+        @Override
+        public String getFileName() {
+            return binaryObject.getFileName();
+        }
+
+        @Override
+        public String getMimeCode() {
+            return binaryObject.getMimeCode();
+        }
+
+        @Override
+        public long getLength() {
+            return binaryObject.getValue().length;
+        }
+
+        @Override
+        public boolean isStreamed() {
+            return false;
+        }
+
+        @Override
+        public InputStream getStream(long start, long length) {
+            return new ByteArrayInputStream(binaryObject.getValue(), (int) start, (int) length);
+        }
+    }
+}
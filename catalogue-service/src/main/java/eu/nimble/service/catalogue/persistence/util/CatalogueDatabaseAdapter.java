@@ -18,9 +18,8 @@ public class CatalogueDatabaseAdapter {
     private static final Logger logger = LoggerFactory.getLogger(CatalogueDatabaseAdapter.class);
 
     public static PartyType syncPartyInUBLDB(String partyId, String bearerToken) {
+        SpringBridge.getInstance().getLockPool().getLockForParty(partyId).writeLock().lock();
         try {
-            SpringBridge.getInstance().getLockPool().getLockForParty(partyId).writeLock().lock();
-
             PartyType catalogueParty = PartyTypePersistenceUtil.getPartyById(partyId,SpringBridge.getInstance().getFederationId());
             if (catalogueParty == null) {
                 PartyType identityParty;
@@ -41,6 +41,8 @@ public class CatalogueLinePersistenceUtil {
             + " JOIN c.catalogueLine as clj join clj.goodsItem.item.manufacturerParty.partyIdentification partyIdentification"
             + " WHERE c.UUID = :catalogueUuid "
             + " AND clj.ID = :lineId";
+    private static final String QUERY_GET_HJID_AND_ID_BY_CAT_UUID = "SELECT DISTINCT clj.hjid, clj.ID FROM CatalogueType as c"
+            + " JOIN c.catalogueLine as clj JOIN clj.goodsItem.item as item";
     private static final String QUERY_GET_BY_HJID = "SELECT cl FROM CatalogueLineType as cl WHERE cl.hjid = :hjid";
     private static final String QUERY_GET_BY_HJIDS = "SELECT cl FROM CatalogueLineType as cl WHERE cl.hjid in :hjids";
     private static final String QUERY_GET_LINE_ITEMS_WITH_LCPA_INPUT_WITHOUT_LCPA_OUTPUT = "SELECT cl.hjid, i FROM CatalogueLineType cl" +
@@ -139,4 +141,41 @@ public class CatalogueLinePersistenceUtil {
     public static Object[] getCatalogueLineHjidAndPartyId(String catalogueUuid, String lineId){
         return new JPARepositoryFactory().forCatalogueRepository().getSingleEntity(QUERY_GET_HJID_AND_PARTY_ID_BY_CAT_UUID_AND_ID, new String[]{"catalogueUuid", "lineId"}, new Object[]{catalogueUuid, lineId});
     }
+
+    /**
+     * Returns the hjids and ids of the lines of the catalogue matching all of the given filters. Null filters are not
+     * considered.
+     *
+     * @param lineIds                  ids of the lines
+     * @param categoryUri              uri of a category of the lines
+     * @param manufacturerItemIdPrefix prefix of the manufacturer item ids of the lines
+     */
+    public static List<Object[]> getCatalogueLineHjidsAndIds(String catalogueUuid, List<String> lineIds, String categoryUri, String manufacturerItemIdPrefix) {
+        StringBuilder query = new StringBuilder(QUERY_GET_HJID_AND_ID_BY_CAT_UUID);
+        List<String> parameterNames = new ArrayList<>();
+        List<Object> parameterValues = new ArrayList<>();
+        if (categoryUri != null) {
+            query.append(" JOIN item.commodityClassification as cc");
+        }
+        query.append(" WHERE c.UUID = :catalogueUuid");
+        parameterNames.add("catalogueUuid");
+        parameterValues.add(catalogueUuid);
+
+        if (lineIds != null && lineIds.size() > 0) {
+            query.append(" AND clj.ID in :lineIds");
+            parameterNames.add("lineIds");
+            parameterValues.add(lineIds);
+        }
+        if (categoryUri != null) {
+            query.append(" AND cc.itemClassificationCode.URI = :categoryUri");
+            parameterNames.add("categoryUri");
+            parameterValues.add(categoryUri);
+        }
+        if (manufacturerItemIdPrefix != null) {
+            query.append(" AND item.manufacturersItemIdentification.ID LIKE :idPrefix ESCAPE '\\'");
+            parameterNames.add("idPrefix");
+            parameterValues.add(manufacturerItemIdPrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+        return new JPARepositoryFactory().forCatalogueRepository().getEntities(query.toString(), parameterNames.toArray(new String[0]), parameterValues.toArray());
+    }
 }
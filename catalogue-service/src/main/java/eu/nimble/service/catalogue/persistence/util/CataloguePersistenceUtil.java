@@ -3,14 +3,21 @@ package eu.nimble.service.catalogue.persistence.util;
 import eu.nimble.service.catalogue.model.catalogue.CatalogueLineSortOptions;
 import eu.nimble.service.catalogue.model.catalogue.CataloguePaginationResponse;
 import eu.nimble.service.model.ubl.catalogue.CatalogueType;
+import eu.nimble.service.catalogue.util.SpringBridge;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.CatalogueLineType;
 import eu.nimble.utility.persistence.JPARepositoryFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by suat on 31-Dec-18.
+ *
+ * The catalogues marked as deleted by {@link CataloguePurgeRegistry} are excluded from the results, as their rows are
+ * removed in the background.
  */
 public class CataloguePersistenceUtil {
     private static final String QUERY_GET_ALL_CATALOGUES = "SELECT catalogue FROM CatalogueType catalogue";
@@ -18,14 +25,16 @@ public class CataloguePersistenceUtil {
             + " JOIN catalogue.providerParty as catalogue_provider_party JOIN catalogue_provider_party.partyIdentification partyIdentification"
             + " WHERE partyIdentification.ID = :partyId";
     private static final String QUERY_GET_BY_UUID = "SELECT catalogue FROM CatalogueType catalogue WHERE catalogue.UUID = :uuid";
+    private static final String QUERY_GET_HJID_BY_UUID = "SELECT catalogue.hjid FROM CatalogueType catalogue WHERE catalogue.UUID = :uuid";
+    private static final String QUERY_GET_ID_AND_PARTY_ID_BY_UUID = "SELECT catalogue.ID, partyIdentification.ID FROM CatalogueType as catalogue "
+            + " JOIN catalogue.providerParty as catalogue_provider_party JOIN catalogue_provider_party.partyIdentification partyIdentification"
+            + " WHERE catalogue.UUID = :uuid";
     private static final String QUERY_GET_FOR_PARTY = "SELECT catalogue FROM CatalogueType as catalogue "
             + " JOIN catalogue.providerParty as catalogue_provider_party JOIN catalogue_provider_party.partyIdentification partyIdentification"
             + " WHERE catalogue.ID = :catalogueId"
             + " AND partyIdentification.ID = :partyId";
-    private static final String QUERY_CHECK_EXISTENCE_BY_ID = "SELECT COUNT(catalogue) FROM CatalogueType catalogue"
-            + " JOIN catalogue.providerParty as catalogue_provider_party JOIN catalogue_provider_party.partyIdentification partyIdentification"
-            + " WHERE catalogue.ID = :catalogueId and partyIdentification.ID = :partyId";
-    private static final String QUERY_GET_CATALOGUE_IDLIST_FOR_PARTY = "SELECT catalogue.ID FROM CatalogueType as catalogue" +
+    private static final String QUERY_CHECK_EXISTENCE_BY_UUID = "SELECT COUNT(catalogue) FROM CatalogueType catalogue WHERE catalogue.UUID = :catalogueUuid";
+    private static final String QUERY_GET_CATALOGUE_UUID_LIST_FOR_PARTY = "SELECT catalogue.UUID FROM CatalogueType as catalogue" +
             " JOIN catalogue.providerParty as catalogue_provider_party JOIN catalogue_provider_party.partyIdentification partyIdentification" +
             " WHERE partyIdentification.ID = :partyId";
     private static final String QUERY_GET_CATALOGUE_ID_AND_NAME_LIST_FOR_PARTY = "SELECT catalogue.ID,catalogue.UUID FROM CatalogueType as catalogue" +
@@ -91,11 +100,17 @@ public class CataloguePersistenceUtil {
             ")";
 
     public static List<CatalogueType> getAllCatalogues() {
-        return new JPARepositoryFactory().forCatalogueRepository(true).getEntities(QUERY_GET_ALL_CATALOGUES);
+        List<CatalogueType> catalogues = new JPARepositoryFactory().forCatalogueRepository(true).getEntities(QUERY_GET_ALL_CATALOGUES);
+        Set<String> purgedCatalogueUuids = new HashSet<>();
+        for (List<String> catalogueUuids : getPurgeRegistry().getMarkedCatalogues().values()) {
+            purgedCatalogueUuids.addAll(catalogueUuids);
+        }
+        return removePurgedCatalogues(catalogues, purgedCatalogueUuids);
     }
 
     public static List<CatalogueType> getAllCataloguesForParty(String partyId) {
-        return new JPARepositoryFactory().forCatalogueRepository(true).getEntities(QUERY_GET_ALL_CATALOGUES_FOR_PARTY, new String[]{"partyId"}, new Object[]{partyId});
+        List<CatalogueType> catalogues = new JPARepositoryFactory().forCatalogueRepository(true).getEntities(QUERY_GET_ALL_CATALOGUES_FOR_PARTY, new String[]{"partyId"}, new Object[]{partyId});
+        return removePurgedCatalogues(catalogues, getPurgeRegistry().getMarkedCatalogueUuids(partyId));
     }
 
     public static CataloguePaginationResponse getCatalogueLinesForParty(String catalogueId, String partyId, String selectedCategoryName, String searchText, String languageId, CatalogueLineSortOptions sortOption, int limit, int offset,String catalogueUUID) {
@@ -107,19 +122,30 @@ public class CataloguePersistenceUtil {
         List<String> catalogueLineIds;
         String getCatalogueLinesQuery = null;
         QueryData queryData = null;
+        Set<String> purgedCatalogueUuids = getPurgeRegistry().getMarkedCatalogueUuids(partyId);
         if(catalogueId.equals("all")){
-            categoryNames = new JPARepositoryFactory().forCatalogueRepository().getEntities(QUERY_GET_COMMODITY_CLASSIFICATION_NAMES_FOR_PARTY_CATALOGUES,new String[]{"partyId"}, new Object[]{partyId});
+            String categoryNamesQuery = QUERY_GET_COMMODITY_CLASSIFICATION_NAMES_FOR_PARTY_CATALOGUES;
+            List<String> parameterNames = new ArrayList<>();
+            List<Object> parameterValues = new ArrayList<>();
+            parameterNames.add("partyId");
+            parameterValues.add(partyId);
+            if(!purgedCatalogueUuids.isEmpty()){
+                categoryNamesQuery += " AND catalogue.UUID NOT IN (:purgedCatalogueUuids)";
+                parameterNames.add("purgedCatalogueUuids");
+                parameterValues.add(purgedCatalogueUuids);
+            }
+            categoryNames = new JPARepositoryFactory().forCatalogueRepository().getEntities(categoryNamesQuery,parameterNames.toArray(new String[0]), parameterValues.toArray());
             if(limit != 0){
                 // get the query
-                queryData = getQuery(null,partyId,searchText,languageId,selectedCategoryName,sortOption,catalogueUUID);
+                queryData = getQuery(null,partyId,searchText,languageId,selectedCategoryName,sortOption,catalogueUUID,purgedCatalogueUuids);
             }
 
         }else{
             if(catalogueUUID == null){
                 // get catalogue uuid
-                catalogueUuid = new JPARepositoryFactory().forCatalogueRepository().getSingleEntity(QUERY_GET_CATALOGUE_UUID_FOR_PARTY,new String[]{"catalogueId","partyId"}, new Object[]{catalogueId,partyId});
+                catalogueUuid = getCatalogueUuidForParty(catalogueId, partyId);
             }else{
-                catalogueUuid = catalogueUUID;
+                catalogueUuid = purgedCatalogueUuids.contains(catalogueUUID) ? null : catalogueUUID;
             }
 
             if(catalogueUuid != null){
@@ -128,12 +154,12 @@ public class CataloguePersistenceUtil {
                 // if limit is equal to 0,then no catalogue lines are returned
                 if(limit != 0){
                     // get the query
-                    queryData = getQuery(catalogueId,partyId,searchText,languageId,selectedCategoryName,sortOption,catalogueUuid);
+                    queryData = getQuery(catalogueId,partyId,searchText,languageId,selectedCategoryName,sortOption,catalogueUuid,purgedCatalogueUuids);
                 }
             }
         }
 
-        if(limit != 0) {
+        if(queryData != null) {
             // get all catalogue line ids
             catalogueLineIds = new JPARepositoryFactory().forCatalogueRepository().getEntities(queryData.query,queryData.parameterNames.toArray(new String[0]), queryData.parameterValues.toArray(),null,null,queryData.isNativeQuery);
             // set the size of catalogue lines
@@ -150,6 +176,14 @@ public class CataloguePersistenceUtil {
             // although we use the sort option to create the query in getQuery function
             // we also have to use this option to sort catalogue lines while getting them since the result can be something arbitrary without this option
             getCatalogueLinesQuery = QUERY_GET_CATALOGUE_LINES_BY_IDS;
+            // the lines of a deleted catalogue might have the same ids
+            String[] parameterNames = new String[]{"partyId", "catalogueLineIds"};
+            Object[] parameterValues = new Object[]{partyId, catalogueLineIds};
+            if(!purgedCatalogueUuids.isEmpty()){
+                getCatalogueLinesQuery += " AND cat.UUID NOT IN (:purgedCatalogueUuids)";
+                parameterNames = new String[]{"partyId", "catalogueLineIds", "purgedCatalogueUuids"};
+                parameterValues = new Object[]{partyId, catalogueLineIds, purgedCatalogueUuids};
+            }
             if(sortOption != null){
                 switch (sortOption){
                     case PRICE_HIGH_TO_LOW:
@@ -163,7 +197,7 @@ public class CataloguePersistenceUtil {
 
             if (catalogueLineIds.size() != 0) {
                 catalogueLines = new JPARepositoryFactory().forCatalogueRepository(true)
-                        .getEntities(getCatalogueLinesQuery, new String[]{"partyId", "catalogueLineIds"}, new Object[]{partyId, catalogueLineIds});
+                        .getEntities(getCatalogueLinesQuery, parameterNames, parameterValues);
             }
         }
 
@@ -178,31 +212,92 @@ public class CataloguePersistenceUtil {
     }
 
     public static CatalogueType getCatalogueByUuid(String catalogueUuid) {
+        if (getPurgeRegistry().isMarked(catalogueUuid)) {
+            return null;
+        }
         return new JPARepositoryFactory().forCatalogueRepository(true).getSingleEntity(QUERY_GET_BY_UUID, new String[]{"uuid"}, new Object[]{catalogueUuid});
     }
 
+    /**
+     * Returns the hjid of the catalogue even if the catalogue is marked as deleted, so that its rows can be removed
+     */
+    public static Long getCatalogueHjid(String catalogueUuid) {
+        return new JPARepositoryFactory().forCatalogueRepository().getSingleEntity(QUERY_GET_HJID_BY_UUID, new String[]{"uuid"}, new Object[]{catalogueUuid});
+    }
+
+    /**
+     * Returns the id of the catalogue and the id of the party providing it, which identify the catalogue for the locks
+     * and the versions. The catalogue is returned even if it is marked as deleted.
+     */
+    public static Object[] getCatalogueIdAndPartyId(String catalogueUuid) {
+        return new JPARepositoryFactory().forCatalogueRepository().getSingleEntity(QUERY_GET_ID_AND_PARTY_ID_BY_UUID, new String[]{"uuid"}, new Object[]{catalogueUuid});
+    }
+
     public static CatalogueType getCatalogueForParty(String catalogueId, String partyId) {
         return getCatalogueForParty(catalogueId, partyId, true);
     }
 
     public static CatalogueType getCatalogueForParty(String catalogueId, String partyId, boolean lazyDisabled) {
-        return new JPARepositoryFactory().forCatalogueRepository(lazyDisabled).getSingleEntity(QUERY_GET_FOR_PARTY, new String[]{"catalogueId", "partyId"}, new Object[]{catalogueId, partyId});
+        // a deleted catalogue and a new one with the same id might exist together until the deleted one is removed
+        List<CatalogueType> catalogues = new JPARepositoryFactory().forCatalogueRepository(lazyDisabled).getEntities(QUERY_GET_FOR_PARTY, new String[]{"catalogueId", "partyId"}, new Object[]{catalogueId, partyId});
+        catalogues = removePurgedCatalogues(catalogues, getPurgeRegistry().getMarkedCatalogueUuids(partyId));
+        return catalogues.isEmpty() ? null : catalogues.get(0);
     }
 
     public static Boolean checkCatalogueExistenceById(String catalogueId, String partyId) {
-        long catalogueExists = new JPARepositoryFactory().forCatalogueRepository().getSingleEntity(QUERY_CHECK_EXISTENCE_BY_ID, new String[]{"catalogueId", "partyId"}, new Object[]{catalogueId, partyId});
-        return catalogueExists == 1 ? true : false;
+        return getCatalogueUuidForParty(catalogueId, partyId) != null;
+    }
+
+    public static Boolean checkCatalogueExistenceByUuid(String catalogueUuid) {
+        long catalogueExists = new JPARepositoryFactory().forCatalogueRepository().getSingleEntity(QUERY_CHECK_EXISTENCE_BY_UUID, new String[]{"catalogueUuid"}, new Object[]{catalogueUuid});
+        return catalogueExists == 1 && !getPurgeRegistry().isMarked(catalogueUuid);
     }
 
     public static List<String> getCatalogueIdListsForParty(String partyId) {
-        return new JPARepositoryFactory().forCatalogueRepository().getEntities(QUERY_GET_CATALOGUE_IDLIST_FOR_PARTY, new String[]{"partyId"}, new Object[]{partyId});
+        List<String> catalogueIds = new ArrayList<>();
+        for (Object[] idAndUuid : getCatalogueIdAndNameListsForParty(partyId)) {
+            catalogueIds.add((String) idAndUuid[0]);
+        }
+        return catalogueIds;
+    }
+
+    public static List<String> getCatalogueUuidsForParty(String partyId) {
+        List<String> catalogueUuids = new ArrayList<>(new JPARepositoryFactory().forCatalogueRepository().getEntities(QUERY_GET_CATALOGUE_UUID_LIST_FOR_PARTY, new String[]{"partyId"}, new Object[]{partyId}));
+        catalogueUuids.removeAll(getPurgeRegistry().getMarkedCatalogueUuids(partyId));
+        return catalogueUuids;
     }
 
     public static List<Object[]> getCatalogueIdAndNameListsForParty(String partyId) {
-        return new JPARepositoryFactory().forCatalogueRepository().getEntities(QUERY_GET_CATALOGUE_ID_AND_NAME_LIST_FOR_PARTY, new String[]{"partyId"}, new Object[]{partyId});
+        List<Object[]> catalogueIdsAndUuids = new ArrayList<>(new JPARepositoryFactory().forCatalogueRepository().getEntities(QUERY_GET_CATALOGUE_ID_AND_NAME_LIST_FOR_PARTY, new String[]{"partyId"}, new Object[]{partyId}));
+        Set<String> purgedCatalogueUuids = getPurgeRegistry().getMarkedCatalogueUuids(partyId);
+        catalogueIdsAndUuids.removeIf(idAndUuid -> purgedCatalogueUuids.contains((String) idAndUuid[1]));
+        return catalogueIdsAndUuids;
+    }
+
+    private static String getCatalogueUuidForParty(String catalogueId, String partyId) {
+        List<String> catalogueUuids = new ArrayList<>(new JPARepositoryFactory().forCatalogueRepository().getEntities(QUERY_GET_CATALOGUE_UUID_FOR_PARTY, new String[]{"catalogueId", "partyId"}, new Object[]{catalogueId, partyId}));
+        catalogueUuids.removeAll(getPurgeRegistry().getMarkedCatalogueUuids(partyId));
+        return catalogueUuids.isEmpty() ? null : catalogueUuids.get(0);
+    }
+
+    private static List<CatalogueType> removePurgedCatalogues(List<CatalogueType> catalogues, Collection<String> purgedCatalogueUuids) {
+        if (purgedCatalogueUuids.isEmpty()) {
+            return catalogues;
+        }
+        List<CatalogueType> results = new ArrayList<>();
+        for (CatalogueType catalogue : catalogues) {
+            if (!purgedCatalogueUuids.contains(catalogue.getUUID())) {
+                results.add(catalogue);
+            }
+        }
+        return results;
     }
 
-    private static QueryData getQuery(String catalogueId,String partyId,String searchText,String languageId,String selectedCategoryName,CatalogueLineSortOptions sortOption,String catalogueUUID){
+    private static CataloguePurgeRegistry getPurgeRegistry() {
+        return SpringBridge.getInstance().getCataloguePurgeRegistry();
+    }
+
+    private static QueryData getQuery(String catalogueId,String partyId,String searchText,String languageId,String selectedCategoryName,CatalogueLineSortOptions sortOption,String catalogueUUID,Set<String> purgedCatalogueUuids){
         QueryData queryData = new QueryData();
         String addQuery = "";
         if(catalogueId != null && catalogueUUID == null) {
@@ -219,6 +314,12 @@ public class CataloguePersistenceUtil {
             addQuery = " AND catalogue.UUID = :catalogueUUId";
 
         }
+        else if(!purgedCatalogueUuids.isEmpty()){
+            // the lines of all catalogues of the party are queried, so the deleted ones are excluded
+            queryData.parameterNames.add("purgedCatalogueUuids");
+            queryData.parameterValues.add(purgedCatalogueUuids);
+            addQuery += " AND catalogue.UUID NOT IN (:purgedCatalogueUuids)";
+        }
 
         queryData.parameterNames.add("partyId");
         queryData.parameterValues.add(partyId);
@@ -0,0 +1,168 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import eu.nimble.service.catalogue.exception.CatalogueServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the uuids of the catalogues which are deleted but whose rows are not removed from the database yet. The marks
+ * are kept in a separate table of the UBL database, so that the catalogues stay hidden after a restart and their
+ * removal can be resumed.
+ *
+ * Each mark is claimed by the instance removing the catalogue. The claim is renewed while the catalogue is removed, so
+ * that the other instances take over only the removals whose owner has stopped.
+ */
+@Component
+public class CataloguePurgeRegistry {
+
+    private static final String QUERY_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS catalogue_purge (" +
+            "catalogue_uuid VARCHAR(255) NOT NULL PRIMARY KEY, party_id VARCHAR(255) NOT NULL, owner VARCHAR(255), claimed_at TIMESTAMP)";
+    private static final String QUERY_INSERT_MARK = "INSERT INTO catalogue_purge (catalogue_uuid, party_id, owner, claimed_at)" +
+            " SELECT CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP)" +
+            " WHERE NOT EXISTS (SELECT 1 FROM catalogue_purge WHERE catalogue_uuid = ?)";
+    private static final String QUERY_CLAIM_MARK = "UPDATE catalogue_purge SET owner = ?, claimed_at = ?" +
+            " WHERE catalogue_uuid = ? AND (owner IS NULL OR owner = ? OR claimed_at < ?)";
+    private static final String QUERY_CHECK_MARK = "SELECT 1 FROM catalogue_purge WHERE catalogue_uuid = ?";
+    private static final String QUERY_GET_UUIDS_FOR_PARTY = "SELECT catalogue_uuid FROM catalogue_purge WHERE party_id = ?";
+    private static final String QUERY_GET_MARKS = "SELECT party_id, catalogue_uuid FROM catalogue_purge ORDER BY party_id";
+    private static final String QUERY_DELETE_MARK = "DELETE FROM catalogue_purge WHERE catalogue_uuid = ?";
+
+    @Autowired
+    @Qualifier("ubldbDataSource")
+    private DataSource ubldbDataSource;
+
+    @PostConstruct
+    private void init() throws SQLException {
+        try (Connection connection = ubldbDataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(QUERY_CREATE_TABLE);
+        }
+    }
+
+    /**
+     * Marks the given catalogues of the party as deleted in a single transaction. The new marks are claimed by the given
+     * owner.
+     */
+    public void markCatalogues(String partyId, List<String> catalogueUuids, String owner) {
+        try (Connection connection = ubldbDataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(QUERY_INSERT_MARK)) {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                for (String catalogueUuid : catalogueUuids) {
+                    statement.setString(1, catalogueUuid);
+                    statement.setString(2, partyId);
+                    statement.setString(3, owner);
+                    statement.setTimestamp(4, now);
+                    statement.setString(5, catalogueUuid);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to mark the catalogues: %s of party: %s as deleted", catalogueUuids, partyId), e);
+        }
+    }
+
+    public boolean isMarked(String catalogueUuid) {
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_CHECK_MARK)) {
+            statement.setString(1, catalogueUuid);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to check whether the catalogue: %s is deleted", catalogueUuid), e);
+        }
+    }
+
+    public Set<String> getMarkedCatalogueUuids(String partyId) {
+        Set<String> catalogueUuids = new HashSet<>();
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_GET_UUIDS_FOR_PARTY)) {
+            statement.setString(1, partyId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    catalogueUuids.add(resultSet.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to get the deleted catalogues of party: %s", partyId), e);
+        }
+        return catalogueUuids;
+    }
+
+    /**
+     * @return uuids of all marked catalogues grouped by the ids of the parties
+     */
+    public Map<String, List<String>> getMarkedCatalogues() {
+        Map<String, List<String>> catalogueUuids = new LinkedHashMap<>();
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_GET_MARKS);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                catalogueUuids.computeIfAbsent(resultSet.getString(1), partyId -> new ArrayList<>()).add(resultSet.getString(2));
+            }
+        } catch (SQLException e) {
+            throw new CatalogueServiceException("Failed to get the deleted catalogues", e);
+        }
+        return catalogueUuids;
+    }
+
+    /**
+     * Claims the mark of the catalogue for the given owner or renews the claim of the owner. A claim of another owner is
+     * taken over only if it has not been renewed within the given timeout.
+     *
+     * @return whether the catalogue is claimed by the owner. {@code false} if another owner removes the catalogue or
+     * the catalogue is not marked anymore.
+     */
+    public boolean claimCatalogue(String catalogueUuid, String owner, long claimTimeoutMillis) {
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_CLAIM_MARK)) {
+            long now = System.currentTimeMillis();
+            statement.setString(1, owner);
+            statement.setTimestamp(2, new Timestamp(now));
+            statement.setString(3, catalogueUuid);
+            statement.setString(4, owner);
+            statement.setTimestamp(5, new Timestamp(now - claimTimeoutMillis));
+            return statement.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to claim the removal of catalogue: %s", catalogueUuid), e);
+        }
+    }
+
+    /**
+     * Removes the mark of the catalogue once its rows are removed from the database
+     */
+    public void unmarkCatalogue(String catalogueUuid) {
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_DELETE_MARK)) {
+            statement.setString(1, catalogueUuid);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to remove the deletion mark of catalogue: %s", catalogueUuid), e);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import eu.nimble.service.catalogue.exception.CatalogueServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a version number per catalogue, identified by the catalogue id and the party id, which is incremented with
+ * each update of the catalogue. The versions are kept in a separate table of the UBL database, as the catalogue
+ * entities are generated from the UBL schema. Writers read the version before preparing an update and save the update
+ * only if the version has not changed in the meantime.
+ *
+ * All writes of the catalogues are saved via {@link #update(String, String, Supplier)} or
+ * {@link #updateIfUnchanged(String, String, long, Supplier)}. The version is incremented with a compare-and-swap update
+ * in the same transaction as the update of the catalogue, so the row of the version stays locked until the update is
+ * committed and the conflicting writers of all the instances are detected. The write lock of the catalogue is held as
+ * well, so that the writers of the same instance wait for each other instead of the database.
+ */
+@Component
+public class CatalogueVersionRegistry {
+
+    private static final String QUERY_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS catalogue_version (" +
+            "party_id VARCHAR(255) NOT NULL, catalogue_id VARCHAR(255) NOT NULL, version BIGINT NOT NULL, " +
+            "PRIMARY KEY (party_id, catalogue_id))";
+    private static final String QUERY_GET_VERSION = "SELECT version FROM catalogue_version WHERE party_id = ? AND catalogue_id = ?";
+    private static final String QUERY_INSERT_VERSION = "INSERT INTO catalogue_version (party_id, catalogue_id, version) SELECT CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), 0" +
+            " WHERE NOT EXISTS (SELECT 1 FROM catalogue_version WHERE party_id = ? AND catalogue_id = ?)";
+    private static final String QUERY_INCREMENT_VERSION = "UPDATE catalogue_version SET version = version + 1 WHERE party_id = ? AND catalogue_id = ?";
+    private static final String QUERY_INCREMENT_EXPECTED_VERSION = QUERY_INCREMENT_VERSION + " AND version = ?";
+
+    @Autowired
+    @Qualifier("ubldbDataSource")
+    private DataSource ubldbDataSource;
+    @Autowired
+    @Qualifier("ubldbTransactionManager")
+    private PlatformTransactionManager ubldbTransactionManager;
+    @Autowired
+    private LockPool lockPool;
+
+    @PostConstruct
+    private void init() throws SQLException {
+        try (Connection connection = ubldbDataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(QUERY_CREATE_TABLE);
+        }
+    }
+
+    /**
+     * @return the current version of the catalogue, 0 if the catalogue has never been updated
+     */
+    public long getVersion(String partyId, String catalogueId) {
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_GET_VERSION)) {
+            statement.setString(1, partyId);
+            statement.setString(2, catalogueId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to get the version of catalogue: %s for party: %s", catalogueId, partyId), e);
+        }
+    }
+
+    /**
+     * Saves the given update of the catalogue and increments the version of the catalogue in a single transaction
+     *
+     * @return the result of the update
+     */
+    public <T> T update(String partyId, String catalogueId, Supplier<T> update) {
+        return update(partyId, Collections.singletonList(catalogueId), update);
+    }
+
+    /**
+     * Saves the given update affecting several catalogues of the party, e.g. moving a line between two catalogues. The
+     * locks and the versions of the catalogues are acquired in a fixed order.
+     *
+     * @return the result of the update
+     */
+    public <T> T update(String partyId, Collection<String> catalogueIds, Supplier<T> update) {
+        return save(partyId, catalogueIds, null, update).getValue();
+    }
+
+    /**
+     * Saves the given update of the catalogue only if the version of the catalogue is still the expected one. The
+     * version is compared and incremented in the same transaction as the update is saved.
+     *
+     * @param update update returning a non-null result
+     * @return the result of the update, or an empty result if the catalogue has been updated after the expected version
+     */
+    public <T> Optional<T> updateIfUnchanged(String partyId, String catalogueId, long expectedVersion, Supplier<T> update) {
+        UpdateResult<T> result = save(partyId, Collections.singletonList(catalogueId), expectedVersion, update);
+        return result != null ? Optional.of(result.getValue()) : Optional.empty();
+    }
+
+    /**
+     * @param expectedVersion null if the update is saved regardless of the version
+     * @return null if the version is not the expected one
+     */
+    private <T> UpdateResult<T> save(String partyId, Collection<String> catalogueIds, Long expectedVersion, Supplier<T> update) {
+        // the rows of the versions are locked in the order of the catalogue ids, so that the writers do not deadlock
+        Collection<String> distinctCatalogueIds = new TreeSet<>(catalogueIds);
+        List<String> lockKeys = new ArrayList<>();
+        for (String catalogueId : distinctCatalogueIds) {
+            insertVersion(partyId, catalogueId);
+            lockKeys.add(getLockKey(partyId, catalogueId));
+        }
+        List<Lock> acquiredLocks = new ArrayList<>();
+        try {
+            for (ReadWriteLock lock : lockPool.getLocksForCatalogues(lockKeys)) {
+                lock.writeLock().lock();
+                acquiredLocks.add(lock.writeLock());
+            }
+            return new TransactionTemplate(ubldbTransactionManager).execute(status -> {
+                for (String catalogueId : distinctCatalogueIds) {
+                    if (!incrementVersion(partyId, catalogueId, expectedVersion)) {
+                        status.setRollbackOnly();
+                        return null;
+                    }
+                }
+                // the update joins the transaction, so a failed update is rolled back together with the version
+                return new UpdateResult<>(update.get());
+            });
+        } finally {
+            for (int i = acquiredLocks.size() - 1; i >= 0; i--) {
+                acquiredLocks.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Inserts the first version of the catalogue, so that the version can be incremented with an update
+     */
+    private void insertVersion(String partyId, String catalogueId) {
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_INSERT_VERSION)) {
+            statement.setString(1, partyId);
+            statement.setString(2, catalogueId);
+            statement.setString(3, partyId);
+            statement.setString(4, catalogueId);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            // the first version might have been inserted by another instance concurrently
+            if (!versionExists(partyId, catalogueId)) {
+                throw new CatalogueServiceException(String.format("Failed to insert the version of catalogue: %s for party: %s", catalogueId, partyId), e);
+            }
+        }
+    }
+
+    private boolean versionExists(String partyId, String catalogueId) {
+        try (Connection connection = ubldbDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_GET_VERSION)) {
+            statement.setString(1, partyId);
+            statement.setString(2, catalogueId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to get the version of catalogue: %s for party: %s", catalogueId, partyId), e);
+        }
+    }
+
+    /**
+     * Increments the version on the connection of the current transaction. The row of the version stays locked until
+     * the transaction is completed.
+     *
+     * @return false if the version is not the expected one
+     */
+    private boolean incrementVersion(String partyId, String catalogueId, Long expectedVersion) {
+        Connection connection = DataSourceUtils.getConnection(ubldbDataSource);
+        try (PreparedStatement statement = connection.prepareStatement(expectedVersion == null ? QUERY_INCREMENT_VERSION : QUERY_INCREMENT_EXPECTED_VERSION)) {
+            statement.setString(1, partyId);
+            statement.setString(2, catalogueId);
+            if (expectedVersion != null) {
+                statement.setLong(3, expectedVersion);
+            }
+            int updatedRows = statement.executeUpdate();
+            if (updatedRows == 0 && expectedVersion == null) {
+                throw new CatalogueServiceException(String.format("No version exists for catalogue: %s of party: %s", catalogueId, partyId));
+            }
+            return updatedRows > 0;
+        } catch (SQLException e) {
+            throw new CatalogueServiceException(String.format("Failed to increment the version of catalogue: %s for party: %s", catalogueId, partyId), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, ubldbDataSource);
+        }
+    }
+
+    private static String getLockKey(String partyId, String catalogueId) {
+        return partyId + "/" + catalogueId;
+    }
+
+    private static class UpdateResult<T> {
+        private final T value;
+
+        private UpdateResult(T value) {
+            this.value = value;
+        }
+
+        private T getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the resized variants of the images stored in the binary content database. A variant is identified by the uri
+ * of the original content, the requested size, the format and the quality. As the original contents are never modified,
+ * a variant is generated once and served from this store afterwards. The originals are removed through the repository
+ * wrapper of the utility library, so the variants of the removed originals are deleted periodically.
+ */
+@Component
+public class ImageVariantStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantStore.class);
+
+    private static final String QUERY_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS image_variant (" +
+            "uri VARCHAR(1024) NOT NULL, width INT NOT NULL, height INT NOT NULL, format VARCHAR(8) NOT NULL, quality INT NOT NULL, " +
+            "mime_code VARCHAR(255) NOT NULL, hash VARCHAR(64) NOT NULL, content BYTEA NOT NULL, " +
+            "PRIMARY KEY (uri, width, height, format, quality))";
+    private static final String QUERY_INSERT_VARIANT = "INSERT INTO image_variant (uri, width, height, format, quality, mime_code, hash, content) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    @Qualifier("binarycontentdbDataSource")
+    private DataSource binaryContentDataSource;
+    @Autowired
+    private BinaryContentSchema binaryContentSchema;
+
+    private String queryGetVariant;
+    private String queryDeleteOrphanedVariants;
+    private ScheduledExecutorService cleanupExecutor;
+
+    @PostConstruct
+    private void init() throws SQLException {
+        // variants are not removed with the originals, so the existence of the original is checked as well
+        queryGetVariant = String.format("SELECT variant.mime_code, variant.hash, variant.content FROM image_variant variant " +
+                "WHERE variant.uri = ? AND variant.width = ? AND variant.height = ? AND variant.format = ? AND variant.quality = ?" +
+                " AND EXISTS (SELECT 1 FROM %s binary_object WHERE binary_object.%s = variant.uri)", binaryContentSchema.getTableName(), binaryContentSchema.getUriColumn());
+        queryDeleteOrphanedVariants = String.format("DELETE FROM image_variant WHERE NOT EXISTS (SELECT 1 FROM %s binary_object WHERE binary_object.%s = image_variant.uri)",
+                binaryContentSchema.getTableName(), binaryContentSchema.getUriColumn());
+        try (Connection connection = binaryContentDataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(QUERY_CREATE_TABLE);
+        }
+
+        cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
+        cleanupExecutor.scheduleWithFixedDelay(this::deleteOrphanedVariants, 10, 10, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        cleanupExecutor.shutdownNow();
+    }
+
+    /**
+     * @return null if the variant has not been stored yet
+     */
+    public Variant getVariant(VariantKey key) throws IOException {
+        try (Connection connection = binaryContentDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(queryGetVariant)) {
+            setKey(statement, key);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                return new Variant(resultSet.getString(1), resultSet.getString(2), resultSet.getBytes(3));
+            }
+        } catch (SQLException e) {
+            throw new IOException(String.format("Failed to get the image variant: %s", key), e);
+        }
+    }
+
+    public void saveVariant(VariantKey key, Variant variant) {
+        try (Connection connection = binaryContentDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(QUERY_INSERT_VARIANT)) {
+            setKey(statement, key);
+            statement.setString(6, variant.getMimeCode());
+            statement.setString(7, variant.getHash());
+            statement.setBytes(8, variant.getContent());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            // e.g. the variant has been saved by another instance. It is generated again otherwise.
+            logger.warn("Failed to save the image variant: {}", key, e);
+        }
+    }
+
+    /**
+     * Deletes the variants of the originals which do not exist anymore
+     */
+    public void deleteOrphanedVariants() {
+        try (Connection connection = binaryContentDataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            int deletedVariants = statement.executeUpdate(queryDeleteOrphanedVariants);
+            if (deletedVariants > 0) {
+                logger.info("Deleted {} variants of the removed images", deletedVariants);
+            }
+        } catch (Exception e) {
+            // the task is not scheduled anymore if an exception is thrown
+            logger.error("Failed to delete the variants of the removed images", e);
+        }
+    }
+
+    private static void setKey(PreparedStatement statement, VariantKey key) throws SQLException {
+        statement.setString(1, key.getUri());
+        statement.setInt(2, key.getWidth());
+        statement.setInt(3, key.getHeight());
+        statement.setString(4, key.getFormat());
+        statement.setInt(5, key.getQuality());
+    }
+
+    /**
+     * Identifies a variant by the requested size rather than the actual one, so that a variant is found without reading
+     * the original. A dimension which is not requested is 0.
+     */
+    public static class VariantKey {
+        private final String uri;
+        private final int width;
+        private final int height;
+        private final String format;
+        private final int quality;
+
+        public VariantKey(String uri, int width, int height, String format, int quality) {
+            this.uri = uri;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.quality = quality;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof VariantKey)) {
+                return false;
+            }
+            VariantKey other = (VariantKey) o;
+            return width == other.width && height == other.height && quality == other.quality
+                    && uri.equals(other.uri) && format.equals(other.format);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = uri.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + format.hashCode();
+            result = 31 * result + quality;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (width: %d, height: %d, format: %s, quality: %d)", uri, width, height, format, quality);
+        }
+    }
+
+    public static class Variant {
+        private final String mimeCode;
+        private final String hash;
+        private final byte[] content;
+
+        public Variant(String mimeCode, String hash, byte[] content) {
+            this.mimeCode = mimeCode;
+            this.hash = hash;
+            this.content = content;
+        }
+
+        public String getMimeCode() {
+            return mimeCode;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
@@ -1,35 +1,353 @@
 package eu.nimble.service.catalogue.persistence.util;
 
+import eu.nimble.service.catalogue.exception.CatalogueServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Created by suat on 25-Mar-19.
+ *
+ * Locks are striped over a fixed number of locks per lock class, so the pool does not grow with the number of
+ * catalogues and parties and no global monitor is needed to obtain a lock. Keys falling into the same stripe share the
+ * lock, which is safe as long as a thread does not hold locks for two different keys of the same class at once. The
+ * locks of several catalogues are obtained together via {@link #getLocksForCatalogues(Collection)}, which orders them by
+ * their stripes, so that two threads locking overlapping sets of catalogues do not deadlock.
+ *
+ * With the {@code database} provider, each stripe is additionally backed by a PostgreSQL advisory lock on the UBL
+ * database so that the locks are held across all the instances of the service. The JVM-local lock is always acquired
+ * first, so an instance occupies at most one connection per stripe.
  */
 @Component
 public class LockPool {
-    private Map<String, ReadWriteLock> catalogueUuidLocks = new HashMap<>();
-    private Map<String, ReadWriteLock> partyIdLocks = new HashMap<>();
 
-    public synchronized ReadWriteLock getLockForCatalogue(String catalogueUuid) {
-        ReadWriteLock lock = catalogueUuidLocks.get(catalogueUuid);
-        if(lock == null) {
-            lock = new ReentrantReadWriteLock();
-            catalogueUuidLocks.put(catalogueUuid, lock);
+    private static final Logger logger = LoggerFactory.getLogger(LockPool.class);
+
+    // advisory lock namespace of the first lock class, to avoid clashes with the other users of the database
+    private static final int ADVISORY_LOCK_NAMESPACE = 0x4e43_0000;
+
+    public enum LockClass {
+        CATALOGUE, PARTY
+    }
+
+    public enum Provider {
+        LOCAL, DATABASE
+    }
+
+    // rounded up to the next power of two
+    @Value("${nimble.catalog.lock.stripes:256}")
+    private int stripeCount;
+    @Value("${nimble.catalog.lock.provider:local}")
+    private String provider;
+    // maximum time to wait for a lock held by another instance
+    @Value("${nimble.catalog.lock.timeout-seconds:300}")
+    private long timeoutSeconds;
+
+    @Autowired
+    @Qualifier("ubldbDataSource")
+    private DataSource ubldbDataSource;
+
+    private InstrumentedReadWriteLock[] catalogueUuidLocks;
+    private InstrumentedReadWriteLock[] partyIdLocks;
+    private final LockStatistics catalogueLockStatistics = new LockStatistics();
+    private final LockStatistics partyLockStatistics = new LockStatistics();
+
+    @PostConstruct
+    private void init() {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        DataSource dataSource = null;
+        if (Provider.valueOf(provider.toUpperCase()) == Provider.DATABASE) {
+            if (supportsAdvisoryLocks(ubldbDataSource)) {
+                dataSource = ubldbDataSource;
+                logger.info("Catalogue and party locks are backed by the advisory locks of the UBL database");
+            } else {
+                // e.g. the in-memory H2 database of the tests
+                logger.warn("UBL database does not support advisory locks. Catalogue and party locks are local to this instance");
+            }
+        }
+        catalogueUuidLocks = createStripes(size, catalogueLockStatistics, dataSource, ADVISORY_LOCK_NAMESPACE + LockClass.CATALOGUE.ordinal());
+        partyIdLocks = createStripes(size, partyLockStatistics, dataSource, ADVISORY_LOCK_NAMESPACE + LockClass.PARTY.ordinal());
+    }
+
+    public ReadWriteLock getLockForCatalogue(String catalogueUuid) {
+        return catalogueUuidLocks[getStripe(catalogueUuid, catalogueUuidLocks.length)];
+    }
+
+    /**
+     * @return the distinct locks of the given catalogues in the order they must be acquired
+     */
+    public List<ReadWriteLock> getLocksForCatalogues(Collection<String> catalogueUuids) {
+        SortedSet<Integer> stripes = new TreeSet<>();
+        for (String catalogueUuid : catalogueUuids) {
+            stripes.add(getStripe(catalogueUuid, catalogueUuidLocks.length));
         }
-        return lock;
+        List<ReadWriteLock> locks = new ArrayList<>();
+        for (int stripe : stripes) {
+            locks.add(catalogueUuidLocks[stripe]);
+        }
+        return locks;
     }
 
-    public synchronized ReadWriteLock getLockForParty(String partyId) {
-        ReadWriteLock lock = partyIdLocks.get(partyId);
-        if(lock == null) {
-            lock = new ReentrantReadWriteLock();
-            partyIdLocks.put(partyId, lock);
+    public ReadWriteLock getLockForParty(String partyId) {
+        return partyIdLocks[getStripe(partyId, partyIdLocks.length)];
+    }
+
+    public LockStatistics getStatistics(LockClass lockClass) {
+        return lockClass == LockClass.CATALOGUE ? catalogueLockStatistics : partyLockStatistics;
+    }
+
+    private InstrumentedReadWriteLock[] createStripes(int size, LockStatistics statistics, DataSource dataSource, int namespace) {
+        InstrumentedReadWriteLock[] locks = new InstrumentedReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            AdvisoryLock advisoryLock = dataSource != null ? new AdvisoryLock(dataSource, namespace, i) : null;
+            locks[i] = new InstrumentedReadWriteLock(statistics, advisoryLock, TimeUnit.SECONDS.toNanos(timeoutSeconds));
+        }
+        return locks;
+    }
+
+    private static boolean supportsAdvisoryLocks(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            return "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+        } catch (SQLException e) {
+            logger.error("Failed to get the product name of the UBL database", e);
+            return false;
+        }
+    }
+
+    private static int getStripe(String key, int size) {
+        // spread the higher bits as only the lower ones are used for the index
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (size - 1);
+    }
+
+    /**
+     * Wait and hold times of the locks of a lock class. Hold times are collected for the write locks only, as they are
+     * the ones serializing the updates.
+     */
+    public static class LockStatistics {
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder writeHolds = new LongAdder();
+        private final LongAdder writeHoldNanos = new LongAdder();
+        private volatile long maxWaitNanos;
+        private volatile long maxWriteHoldNanos;
+
+        private void recordWait(long nanos) {
+            acquisitions.increment();
+            waitNanos.add(nanos);
+            if (nanos > maxWaitNanos) {
+                maxWaitNanos = nanos;
+            }
+        }
+
+        private void recordWriteHold(long nanos) {
+            writeHolds.increment();
+            writeHoldNanos.add(nanos);
+            if (nanos > maxWriteHoldNanos) {
+                maxWriteHoldNanos = nanos;
+            }
+        }
+
+        public long getAcquisitions() {
+            return acquisitions.sum();
+        }
+
+        public long getTotalWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+        }
+
+        public long getMaxWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        }
+
+        public long getWriteHolds() {
+            return writeHolds.sum();
+        }
+
+        public long getTotalWriteHoldMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(writeHoldNanos.sum());
+        }
+
+        public long getMaxWriteHoldMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWriteHoldNanos);
+        }
+    }
+
+    private static class InstrumentedReadWriteLock implements ReadWriteLock {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final LockStatistics statistics;
+        // null if the locks are local to this instance
+        private final AdvisoryLock advisoryLock;
+        private final long timeoutNanos;
+        private final Lock readLock;
+        private final Lock writeLock;
+        // only accessed by the thread holding the write lock
+        private long writeAcquiredAt;
+
+        private InstrumentedReadWriteLock(LockStatistics statistics, AdvisoryLock advisoryLock, long timeoutNanos) {
+            this.statistics = statistics;
+            this.advisoryLock = advisoryLock;
+            this.timeoutNanos = timeoutNanos;
+            this.readLock = new InstrumentedLock(lock.readLock(), false);
+            this.writeLock = new InstrumentedLock(lock.writeLock(), true);
+        }
+
+        @Override
+        public Lock readLock() {
+            return readLock;
+        }
+
+        @Override
+        public Lock writeLock() {
+            return writeLock;
+        }
+
+        private class InstrumentedLock implements Lock {
+            private final Lock delegate;
+            private final boolean write;
+
+            private InstrumentedLock(Lock delegate, boolean write) {
+                this.delegate = delegate;
+                this.write = write;
+            }
+
+            @Override
+            public void lock() {
+                long start = System.nanoTime();
+                delegate.lock();
+                try {
+                    if (!acquireAdvisoryLock(timeoutNanos)) {
+                        delegate.unlock();
+                        throw new CatalogueServiceException(String.format("Failed to acquire the lock in %d seconds", TimeUnit.NANOSECONDS.toSeconds(timeoutNanos)));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    delegate.unlock();
+                    throw new CatalogueServiceException("Interrupted while waiting for the lock", e);
+                }
+                acquired(start);
+            }
+
+            @Override
+            public void lockInterruptibly() throws InterruptedException {
+                long start = System.nanoTime();
+                delegate.lockInterruptibly();
+                boolean advisoryLockAcquired = false;
+                try {
+                    advisoryLockAcquired = acquireAdvisoryLock(timeoutNanos);
+                } finally {
+                    if (!advisoryLockAcquired) {
+                        delegate.unlock();
+                    }
+                }
+                if (!advisoryLockAcquired) {
+                    throw new CatalogueServiceException(String.format("Failed to acquire the lock in %d seconds", TimeUnit.NANOSECONDS.toSeconds(timeoutNanos)));
+                }
+                acquired(start);
+            }
+
+            @Override
+            public boolean tryLock() {
+                long start = System.nanoTime();
+                if (!delegate.tryLock()) {
+                    return false;
+                }
+                try {
+                    if (!acquireAdvisoryLock(0)) {
+                        delegate.unlock();
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    delegate.unlock();
+                    return false;
+                }
+                acquired(start);
+                return true;
+            }
+
+            @Override
+            public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+                long start = System.nanoTime();
+                if (!delegate.tryLock(time, unit)) {
+                    return false;
+                }
+                boolean advisoryLockAcquired = false;
+                try {
+                    advisoryLockAcquired = acquireAdvisoryLock(unit.toNanos(time) - (System.nanoTime() - start));
+                } finally {
+                    if (!advisoryLockAcquired) {
+                        delegate.unlock();
+                    }
+                }
+                if (advisoryLockAcquired) {
+                    acquired(start);
+                }
+                return advisoryLockAcquired;
+            }
+
+            @Override
+            public void unlock() {
+                // the hold time is recorded when the outermost reentrant acquisition is released
+                if (write && lock.getWriteHoldCount() == 1) {
+                    statistics.recordWriteHold(System.nanoTime() - writeAcquiredAt);
+                }
+                if (advisoryLock != null) {
+                    if (!write) {
+                        advisoryLock.releaseShared();
+                    } else if (lock.getWriteHoldCount() == 1) {
+                        advisoryLock.releaseExclusive();
+                    }
+                }
+                delegate.unlock();
+            }
+
+            @Override
+            public Condition newCondition() {
+                return delegate.newCondition();
+            }
+
+            /**
+             * Acquires the advisory lock after the local one. Reentrant write acquisitions reuse the advisory lock of
+             * the outermost one.
+             */
+            private boolean acquireAdvisoryLock(long timeoutNanos) throws InterruptedException {
+                if (advisoryLock == null) {
+                    return true;
+                }
+                if (!write) {
+                    return advisoryLock.acquireShared(timeoutNanos);
+                }
+                return lock.getWriteHoldCount() > 1 || advisoryLock.acquireExclusive(timeoutNanos);
+            }
+
+            private void acquired(long start) {
+                long now = System.nanoTime();
+                statistics.recordWait(now - start);
+                if (write && lock.getWriteHoldCount() == 1) {
+                    writeAcquiredAt = now;
+                }
+            }
         }
-        return lock;
     }
 }
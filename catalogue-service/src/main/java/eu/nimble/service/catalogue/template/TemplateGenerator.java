@@ -15,11 +15,13 @@ import eu.nimble.service.model.ubl.commonbasiccomponents.TextType;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.CellRangeAddressList;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.*;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.function.IntPredicate;
 
 import static eu.nimble.service.catalogue.template.TemplateConfig.*;
 import static eu.nimble.service.catalogue.template.TemplateConfig.TEMPLATE_DATA_TYPE_BOOLEAN;
@@ -29,7 +31,15 @@ import static eu.nimble.service.catalogue.template.TemplateConfig.TEMPLATE_DATA_
  * Created by suat on 12-Sep-17.
  */
 public class TemplateGenerator {
+    // number of rows kept in memory while the catalogue lines are written in the streaming mode
+    private static final int STREAMING_ROW_ACCESS_WINDOW_SIZE = 100;
+    // upper bound for the estimated column widths in characters
+    private static final int MAX_ESTIMATED_COLUMN_WIDTH = 60;
+
     private Workbook template;
+    // whether the catalogue lines are written via a streaming workbook and the column widths are estimated instead of
+    // measuring the cell contents
+    private boolean streaming;
     private CellStyle headerCellStyle;
     private CellStyle mandatoryCellStyle;
     private CellStyle boldCellStyle;
@@ -40,6 +50,16 @@ public class TemplateGenerator {
     private String defaultLanguage = "en";
 
     public TemplateGenerator() {
+        this(false);
+    }
+
+    /**
+     * @param streaming if true, the rows of the catalogue lines are flushed to a temporary file as they are written so
+     *                  that the memory usage does not depend on the number of lines. Workbooks generated in this mode
+     *                  should be disposed via {@link SXSSFWorkbook#dispose()} after they are written.
+     * */
+    public TemplateGenerator(boolean streaming) {
+        this.streaming = streaming;
         template = new XSSFWorkbook();
         createStyles();
     }
@@ -80,251 +100,250 @@ public class TemplateGenerator {
     public Workbook generateTemplateForCatalogueLines(List<CatalogueLineType> catalogueLines, List<Category> categories, String languageId) throws InvalidCategoryException {
         // use property id while generating the excel
         Workbook template = generateTemplateForCategory(categories,languageId, true);
-        fillProductPropertiesTab(template.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES),catalogueLines);
-        fillTradingDeliveryTermsTab(template.getSheet(TemplateConfig.TEMPLATE_TAB_TRADING_DELIVERY_TERMS),catalogueLines);
-        fillCustomProperties(template.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES),catalogueLines,categories);
-        fillCategoryProperties(template.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES),catalogueLines,categories);
-        // we need to replace property ids with preferred names
-        replaceCategoryPropertyIdsWithNames(template.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES),categories);
-        return template;
-    }
+        Sheet productPropertiesTab = template.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES);
+        Sheet termsTab = template.getSheet(TemplateConfig.TEMPLATE_TAB_TRADING_DELIVERY_TERMS);
+        // index the header rows once, rather than scanning them for each property of each catalogue line
+        TemplateHeader header = TemplateHeader.of(productPropertiesTab);
+        Map<Category,List<String>> parentCategoryUriMap = getParentCategoryUriMap(categories);
+        int customPropertyColumnIndex = getCustomPropertyColumnIndex(categories);
+
+        // in the streaming mode, the rows following the first editable row are appended via a streaming workbook which
+        // keeps only a window of rows in memory. The header rows and the first editable row remain in the template.
+        Workbook workbook = template;
+        Sheet productPropertiesDataTab = productPropertiesTab;
+        Sheet termsDataTab = termsTab;
+        if(streaming){
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook((XSSFWorkbook) template, STREAMING_ROW_ACCESS_WINDOW_SIZE, true);
+            productPropertiesDataTab = streamingWorkbook.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES);
+            termsDataTab = streamingWorkbook.getSheet(TemplateConfig.TEMPLATE_TAB_TRADING_DELIVERY_TERMS);
+            workbook = streamingWorkbook;
+        }
 
-    private void fillProductPropertiesTab(Sheet productPropertiesTab,List<CatalogueLineType> catalogueLines){
         // 5th row is the first editable row
         int rowIndex = 4;
-
         for(CatalogueLineType catalogueLine : catalogueLines){
-            Row row;
+            boolean firstRow = rowIndex == 4;
             // we have already created a row for rowIndex = 4, use it
-            if(rowIndex == 4){
-                row = productPropertiesTab.getRow(rowIndex);
-            }
-            else{
-                row = productPropertiesTab.createRow(rowIndex);
-            }
-            // fill fixed properties
-
-            // manufacturer item identification
-            Cell cell = row.createCell(1);
-            cell.setCellValue(catalogueLine.getID());
-            if(rowIndex == 4){
-                cell.setCellStyle(mandatoryCellStyle);
-            }
-
-            // name
-            cell = row.createCell(2);
-            cell.setCellValue(this.getMultiValueText(catalogueLine.getGoodsItem().getItem().getName()));
-            if(rowIndex == 4){
-                cell.setCellStyle(mandatoryCellStyle);
-            }
-
-            // description
-            cell = row.createCell(3);
-            cell.setCellValue(this.getMultiValueText(catalogueLine.getGoodsItem().getItem().getDescription()));
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-            }
+            Row propertiesRow = firstRow ? productPropertiesTab.getRow(rowIndex) : productPropertiesDataTab.createRow(rowIndex);
+            Row termsRow = firstRow ? termsTab.getRow(rowIndex) : termsDataTab.createRow(rowIndex);
 
-            // dimensions
-            for(DimensionType dimensionType : catalogueLine.getGoodsItem().getItem().getDimension()){
-                int columnIndex = 8;
-                if(dimensionType.getAttributeID().contentEquals(TEMPLATE_PRODUCT_PROPERTIES_WIDTH)){
-                    columnIndex = 4;
-                }
-                else if(dimensionType.getAttributeID().contentEquals(TEMPLATE_PRODUCT_PROPERTIES_LENGTH)){
-                    columnIndex = 6;
-                }
-//                else if(dimensionType.getAttributeID().contentEquals(TEMPLATE_PRODUCT_PROPERTIES_HEIGHT)){
-//                    columnIndex = 8;
-//                }
-                cell = row.createCell(columnIndex);
-                // get unit cell
-                Cell unitCell = row.createCell(columnIndex+1);
-                // set value and unit
-                unitCell.setCellValue(dimensionType.getMeasure().getUnitCode());
-                unitCell.setCellStyle(editableStyle);
-                if(dimensionType.getMeasure().getValue() != null){
-                    cell.setCellValue(new DecimalFormat(".00").format(dimensionType.getMeasure().getValue()));
-                }
-                if(rowIndex == 4){
-                    cell.setCellStyle(editableStyle);
-                }
-            }
+            fillProductPropertiesRow(propertiesRow, catalogueLine, firstRow);
+            fillTradingDeliveryTermsRow(termsRow, catalogueLine, firstRow);
+            fillCustomPropertiesRow(productPropertiesTab, propertiesRow, catalogueLine, customPropertyColumnIndex);
+            fillCategoryPropertiesRow(header, propertiesRow, catalogueLine, parentCategoryUriMap, firstRow);
             rowIndex++;
         }
+        // we need to replace property ids with preferred names
+        replaceCategoryPropertyIdsWithNames(productPropertiesTab,categories);
+        return workbook;
     }
 
-    private void fillTradingDeliveryTermsTab(Sheet termsTab,List<CatalogueLineType> catalogueLines){
-        // 5th row is the first editable row
-        int rowIndex = 4;
+    private void fillProductPropertiesRow(Row row, CatalogueLineType catalogueLine, boolean firstRow){
+        // fill fixed properties
 
-        for(CatalogueLineType catalogueLine : catalogueLines){
-            Row row;
-            // we have already created a row for rowIndex = 4, use it
-            if(rowIndex == 4){
-                row = termsTab.getRow(rowIndex);
-            }
-            else{
-                row = termsTab.createRow(rowIndex);
-            }
+        // manufacturer item identification
+        Cell cell = row.createCell(1);
+        cell.setCellValue(catalogueLine.getID());
+        if(firstRow){
+            cell.setCellStyle(mandatoryCellStyle);
+        }
 
-            int columnIndex = 1;
-            // fill fixed properties
+        // name
+        cell = row.createCell(2);
+        cell.setCellValue(this.getMultiValueText(catalogueLine.getGoodsItem().getItem().getName()));
+        if(firstRow){
+            cell.setCellStyle(mandatoryCellStyle);
+        }
 
-            // manufacturer item identification
-            Cell cell = row.createCell(columnIndex++);
-            cell.setCellValue(catalogueLine.getID());
-            if(rowIndex == 4){
-                cell.setCellStyle(mandatoryCellStyle);
-            }
+        // description
+        cell = row.createCell(3);
+        cell.setCellValue(this.getMultiValueText(catalogueLine.getGoodsItem().getItem().getDescription()));
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
 
-            // price amount
-            cell = row.createCell(columnIndex++);
-            // get unit cell
-            Cell unitCell = row.createCell(columnIndex++);
-            // set value and unit
-            unitCell.setCellValue(catalogueLine.getRequiredItemLocationQuantity().getPrice().getPriceAmount().getCurrencyID());
-            if(catalogueLine.getRequiredItemLocationQuantity().getPrice().getPriceAmount().getValue() != null){
-                cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getRequiredItemLocationQuantity().getPrice().getPriceAmount().getValue()));
+        // dimensions
+        for(DimensionType dimensionType : catalogueLine.getGoodsItem().getItem().getDimension()){
+            int columnIndex = 8;
+            if(dimensionType.getAttributeID().contentEquals(TEMPLATE_PRODUCT_PROPERTIES_WIDTH)){
+                columnIndex = 4;
             }
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-                unitCell.setCellStyle(editableStyle);
+            else if(dimensionType.getAttributeID().contentEquals(TEMPLATE_PRODUCT_PROPERTIES_LENGTH)){
+                columnIndex = 6;
             }
-
-            // price base quantity
-            cell = row.createCell(columnIndex++);
+//                else if(dimensionType.getAttributeID().contentEquals(TEMPLATE_PRODUCT_PROPERTIES_HEIGHT)){
+//                    columnIndex = 8;
+//                }
+            cell = row.createCell(columnIndex);
             // get unit cell
-            unitCell = row.createCell(columnIndex++);
+            Cell unitCell = row.createCell(columnIndex+1);
             // set value and unit
-            unitCell.setCellValue(catalogueLine.getRequiredItemLocationQuantity().getPrice().getBaseQuantity().getUnitCode());
-            if(catalogueLine.getRequiredItemLocationQuantity().getPrice().getBaseQuantity().getValue() != null){
-                cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getRequiredItemLocationQuantity().getPrice().getBaseQuantity().getValue()));
+            unitCell.setCellValue(dimensionType.getMeasure().getUnitCode());
+            unitCell.setCellStyle(editableStyle);
+            if(dimensionType.getMeasure().getValue() != null){
+                cell.setCellValue(new DecimalFormat(".00").format(dimensionType.getMeasure().getValue()));
             }
-            if(rowIndex == 4){
-                unitCell.setCellStyle(editableStyle);
+            if(firstRow){
                 cell.setCellStyle(editableStyle);
             }
+        }
+    }
 
-            // minimum order quantity
-            cell = row.createCell(columnIndex++);
-            // get unit cell
-            unitCell = row.createCell(columnIndex++);
-            // set value and unit
-            if(catalogueLine.getMinimumOrderQuantity() != null){
-                unitCell.setCellValue(catalogueLine.getMinimumOrderQuantity().getUnitCode());
-                if(catalogueLine.getMinimumOrderQuantity().getValue() != null){
-                    cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getMinimumOrderQuantity().getValue()));
-                }
-            }
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-                unitCell.setCellStyle(editableStyle);
-            }
+    private void fillTradingDeliveryTermsRow(Row row, CatalogueLineType catalogueLine, boolean firstRow){
+        int columnIndex = 1;
+        // fill fixed properties
 
-            // free sample
-            cell = row.createCell(columnIndex++);
-            String freeSample = catalogueLine.isFreeOfChargeIndicator() == null ? "": catalogueLine.isFreeOfChargeIndicator() ? "TRUE":"FALSE";
-            cell.setCellValue(freeSample);
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-            }
+        // manufacturer item identification
+        Cell cell = row.createCell(columnIndex++);
+        cell.setCellValue(catalogueLine.getID());
+        if(firstRow){
+            cell.setCellStyle(mandatoryCellStyle);
+        }
 
-            // warranty validity period
-            cell = row.createCell(columnIndex++);
-            // get unit cell
-            unitCell = row.createCell(columnIndex++);
-            // set value and unit
-            unitCell.setCellValue(catalogueLine.getWarrantyValidityPeriod().getDurationMeasure().getUnitCode());
-            if(catalogueLine.getWarrantyValidityPeriod().getDurationMeasure().getValue() != null){
-                cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getWarrantyValidityPeriod().getDurationMeasure().getValue()));
-            }
-            if(rowIndex == 4){
-                unitCell.setCellStyle(editableStyle);
-                cell.setCellStyle(editableStyle);
-            }
+        // price amount
+        cell = row.createCell(columnIndex++);
+        // get unit cell
+        Cell unitCell = row.createCell(columnIndex++);
+        // set value and unit
+        unitCell.setCellValue(catalogueLine.getRequiredItemLocationQuantity().getPrice().getPriceAmount().getCurrencyID());
+        if(catalogueLine.getRequiredItemLocationQuantity().getPrice().getPriceAmount().getValue() != null){
+            cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getRequiredItemLocationQuantity().getPrice().getPriceAmount().getValue()));
+        }
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+            unitCell.setCellStyle(editableStyle);
+        }
 
-            // warranty information
-            cell = row.createCell(columnIndex++);
-            cell.setCellValue(getMultiValueRepresentation(catalogueLine.getWarrantyInformation(),TemplateConfig.TEMPLATE_DATA_TYPE_STRING));
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-            }
+        // price base quantity
+        cell = row.createCell(columnIndex++);
+        // get unit cell
+        unitCell = row.createCell(columnIndex++);
+        // set value and unit
+        unitCell.setCellValue(catalogueLine.getRequiredItemLocationQuantity().getPrice().getBaseQuantity().getUnitCode());
+        if(catalogueLine.getRequiredItemLocationQuantity().getPrice().getBaseQuantity().getValue() != null){
+            cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getRequiredItemLocationQuantity().getPrice().getBaseQuantity().getValue()));
+        }
+        if(firstRow){
+            unitCell.setCellStyle(editableStyle);
+            cell.setCellStyle(editableStyle);
+        }
 
-            // incoterms
-            cell = row.createCell(columnIndex++);
-            cell.setCellValue(catalogueLine.getGoodsItem().getDeliveryTerms().getIncoterms());
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
+        // minimum order quantity
+        cell = row.createCell(columnIndex++);
+        // get unit cell
+        unitCell = row.createCell(columnIndex++);
+        // set value and unit
+        if(catalogueLine.getMinimumOrderQuantity() != null){
+            unitCell.setCellValue(catalogueLine.getMinimumOrderQuantity().getUnitCode());
+            if(catalogueLine.getMinimumOrderQuantity().getValue() != null){
+                cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getMinimumOrderQuantity().getValue()));
             }
+        }
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+            unitCell.setCellStyle(editableStyle);
+        }
 
-            // special terms
-            // although special terms are multilingual, we assume that they are not.
-            List<String> values = new ArrayList<>();
-            for(TextType textType:catalogueLine.getGoodsItem().getDeliveryTerms().getSpecialTerms()){
-                values.add(textType.getValue());
-            }
-            cell = row.createCell(columnIndex++);
-            cell.setCellValue(getMultiValueRepresentation(values,TemplateConfig.TEMPLATE_DATA_TYPE_TEXT));
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-            }
-            // estimated delivery period
-            cell = row.createCell(columnIndex++);
-            // get unit cell
-            unitCell = row.createCell(columnIndex++);
-            // set value and unit
-            unitCell.setCellValue(catalogueLine.getGoodsItem().getDeliveryTerms().getEstimatedDeliveryPeriod().getDurationMeasure().getUnitCode());
-            if(catalogueLine.getGoodsItem().getDeliveryTerms().getEstimatedDeliveryPeriod().getDurationMeasure().getValue() != null){
-                cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getGoodsItem().getDeliveryTerms().getEstimatedDeliveryPeriod().getDurationMeasure().getValue()));
-            }
-            if(rowIndex == 4){
-                unitCell.setCellStyle(editableStyle);
-                cell.setCellStyle(editableStyle);
-            }
-            // applicable address country
-            List<String> countries = new ArrayList<>();
-            for(AddressType address:catalogueLine.getRequiredItemLocationQuantity().getApplicableTerritoryAddress()){
-                countries.add(address.getCountry().getName().getValue());
-            }
-            cell = row.createCell(columnIndex++);
-            cell.setCellValue(getMultiValueRepresentation(countries,TemplateConfig.TEMPLATE_DATA_TYPE_TEXT));
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-            }
-            // transport mode
-            cell = row.createCell(columnIndex++);
-            if(catalogueLine.getGoodsItem().getDeliveryTerms().getTransportModeCode() != null){
-                cell.setCellValue(catalogueLine.getGoodsItem().getDeliveryTerms().getTransportModeCode().getValue());
-            }
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-            }
-            // packaging type
-            cell = row.createCell(columnIndex++);
-            cell.setCellValue(catalogueLine.getGoodsItem().getContainingPackage().getPackagingTypeCode().getValue());
-            if(rowIndex == 4){
-                cell.setCellStyle(editableStyle);
-            }
-            // package quantity
-            cell = row.createCell(columnIndex++);
-            // get unit cell
-            unitCell = row.createCell(columnIndex++);
-            // set value and unit
-            unitCell.setCellValue(catalogueLine.getGoodsItem().getContainingPackage().getQuantity().getUnitCode());
-            if(catalogueLine.getGoodsItem().getContainingPackage().getQuantity().getValue() != null){
-                cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getGoodsItem().getContainingPackage().getQuantity().getValue()));
-            }
-            if(rowIndex == 4){
-                unitCell.setCellStyle(editableStyle);
-                cell.setCellStyle(editableStyle);
-            }
+        // free sample
+        cell = row.createCell(columnIndex++);
+        String freeSample = catalogueLine.isFreeOfChargeIndicator() == null ? "": catalogueLine.isFreeOfChargeIndicator() ? "TRUE":"FALSE";
+        cell.setCellValue(freeSample);
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
 
-            rowIndex++;
+        // warranty validity period
+        cell = row.createCell(columnIndex++);
+        // get unit cell
+        unitCell = row.createCell(columnIndex++);
+        // set value and unit
+        unitCell.setCellValue(catalogueLine.getWarrantyValidityPeriod().getDurationMeasure().getUnitCode());
+        if(catalogueLine.getWarrantyValidityPeriod().getDurationMeasure().getValue() != null){
+            cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getWarrantyValidityPeriod().getDurationMeasure().getValue()));
+        }
+        if(firstRow){
+            unitCell.setCellStyle(editableStyle);
+            cell.setCellStyle(editableStyle);
+        }
+
+        // warranty information
+        cell = row.createCell(columnIndex++);
+        cell.setCellValue(getMultiValueRepresentation(catalogueLine.getWarrantyInformation(),TemplateConfig.TEMPLATE_DATA_TYPE_STRING));
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
+
+        // incoterms
+        cell = row.createCell(columnIndex++);
+        cell.setCellValue(catalogueLine.getGoodsItem().getDeliveryTerms().getIncoterms());
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
+
+        // special terms
+        // although special terms are multilingual, we assume that they are not.
+        List<String> values = new ArrayList<>();
+        for(TextType textType:catalogueLine.getGoodsItem().getDeliveryTerms().getSpecialTerms()){
+            values.add(textType.getValue());
+        }
+        cell = row.createCell(columnIndex++);
+        cell.setCellValue(getMultiValueRepresentation(values,TemplateConfig.TEMPLATE_DATA_TYPE_TEXT));
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
+        // estimated delivery period
+        cell = row.createCell(columnIndex++);
+        // get unit cell
+        unitCell = row.createCell(columnIndex++);
+        // set value and unit
+        unitCell.setCellValue(catalogueLine.getGoodsItem().getDeliveryTerms().getEstimatedDeliveryPeriod().getDurationMeasure().getUnitCode());
+        if(catalogueLine.getGoodsItem().getDeliveryTerms().getEstimatedDeliveryPeriod().getDurationMeasure().getValue() != null){
+            cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getGoodsItem().getDeliveryTerms().getEstimatedDeliveryPeriod().getDurationMeasure().getValue()));
+        }
+        if(firstRow){
+            unitCell.setCellStyle(editableStyle);
+            cell.setCellStyle(editableStyle);
+        }
+        // applicable address country
+        List<String> countries = new ArrayList<>();
+        for(AddressType address:catalogueLine.getRequiredItemLocationQuantity().getApplicableTerritoryAddress()){
+            countries.add(address.getCountry().getName().getValue());
+        }
+        cell = row.createCell(columnIndex++);
+        cell.setCellValue(getMultiValueRepresentation(countries,TemplateConfig.TEMPLATE_DATA_TYPE_TEXT));
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
+        // transport mode
+        cell = row.createCell(columnIndex++);
+        if(catalogueLine.getGoodsItem().getDeliveryTerms().getTransportModeCode() != null){
+            cell.setCellValue(catalogueLine.getGoodsItem().getDeliveryTerms().getTransportModeCode().getValue());
+        }
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
+        // packaging type
+        cell = row.createCell(columnIndex++);
+        cell.setCellValue(catalogueLine.getGoodsItem().getContainingPackage().getPackagingTypeCode().getValue());
+        if(firstRow){
+            cell.setCellStyle(editableStyle);
+        }
+        // package quantity
+        cell = row.createCell(columnIndex++);
+        // get unit cell
+        unitCell = row.createCell(columnIndex++);
+        // set value and unit
+        unitCell.setCellValue(catalogueLine.getGoodsItem().getContainingPackage().getQuantity().getUnitCode());
+        if(catalogueLine.getGoodsItem().getContainingPackage().getQuantity().getValue() != null){
+            cell.setCellValue(new DecimalFormat(".00").format(catalogueLine.getGoodsItem().getContainingPackage().getQuantity().getValue()));
+        }
+        if(firstRow){
+            unitCell.setCellStyle(editableStyle);
+            cell.setCellStyle(editableStyle);
         }
     }
 
-    private void fillCustomProperties(Sheet productPropertiesTab,List<CatalogueLineType> catalogueLines,List<Category> categories){
+    private int getCustomPropertyColumnIndex(List<Category> categories){
         // find the offset for the custom properties
         int totalCategoryPropertyNumber = 0;
         for (Category category : categories) {
@@ -337,51 +356,52 @@ public class TemplateGenerator {
                 }
             }
         }
-        int customPropertyColumnIndex = 4 + TemplateConfig.getFixedPropertiesForProductPropertyTab().size() + totalCategoryPropertyNumber;
+        return 4 + TemplateConfig.getFixedPropertiesForProductPropertyTab().size() + totalCategoryPropertyNumber;
+    }
 
-        int rowIndex = 4;
-        for(CatalogueLineType catalogueLine:catalogueLines){
-            int propertyColumnIndex = customPropertyColumnIndex;
-            for(ItemPropertyType itemProperty:catalogueLine.getGoodsItem().getItem().getAdditionalItemProperty()){
-                // consider only custom properties
-                if(itemProperty.getItemClassificationCode().getListID().contentEquals("Custom")){
-                    // set the name of property
-                    Cell cell = productPropertiesTab.getRow(1).createCell(propertyColumnIndex);
-                    cell.setCellValue(getMultiValueText(itemProperty.getName()));
-                    // set data type of property
-                    String dataType = normalizeDataTypeForTemplate(itemProperty.getValueQualifier());
-                    cell = productPropertiesTab.getRow(2).createCell(propertyColumnIndex);
-                    cell.setCellValue(dataType);
-                    // set the value of property
-                    if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY)){
-                        if(itemProperty.getValueQuantity().size() > 0){
-                            // set the value
-                            cell = productPropertiesTab.getRow(rowIndex).createCell(propertyColumnIndex);
-                            cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueQuantity(),TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY));
-                            // we need to set unit as well
-                            Cell unitCell = productPropertiesTab.getRow(rowIndex).createCell(++propertyColumnIndex);
-                            unitCell.setCellValue(itemProperty.getValueQuantity().get(0).getUnitCode());
-                            productPropertiesTab.getRow(2).createCell(propertyColumnIndex).setCellValue(TemplateConfig.TEMPLATE_QUANTITY_UNIT);
-                        }
-                    } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT)){
-                        cell = productPropertiesTab.getRow(rowIndex).createCell(propertyColumnIndex);
-                        cell.setCellValue(getMultiValueText(itemProperty.getValue()));
-                    } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_BOOLEAN)){
-                        cell = productPropertiesTab.getRow(rowIndex).createCell(propertyColumnIndex);
-                        cell.setCellValue(getMultiValueText(itemProperty.getValue(),false));
-                    } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER)){
-                        cell = productPropertiesTab.getRow(rowIndex).createCell(propertyColumnIndex);
-                        cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueDecimal(),TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER));
+    /**
+     * Fills the custom properties of the catalogue line. Names and data types of the custom properties are written to
+     * the header rows of the given product properties tab.
+     */
+    private void fillCustomPropertiesRow(Sheet productPropertiesTab, Row row, CatalogueLineType catalogueLine, int customPropertyColumnIndex){
+        int propertyColumnIndex = customPropertyColumnIndex;
+        for(ItemPropertyType itemProperty:catalogueLine.getGoodsItem().getItem().getAdditionalItemProperty()){
+            // consider only custom properties
+            if(itemProperty.getItemClassificationCode().getListID().contentEquals("Custom")){
+                // set the name of property
+                Cell cell = productPropertiesTab.getRow(1).createCell(propertyColumnIndex);
+                cell.setCellValue(getMultiValueText(itemProperty.getName()));
+                // set data type of property
+                String dataType = normalizeDataTypeForTemplate(itemProperty.getValueQualifier());
+                cell = productPropertiesTab.getRow(2).createCell(propertyColumnIndex);
+                cell.setCellValue(dataType);
+                // set the value of property
+                if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY)){
+                    if(itemProperty.getValueQuantity().size() > 0){
+                        // set the value
+                        cell = row.createCell(propertyColumnIndex);
+                        cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueQuantity(),TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY));
+                        // we need to set unit as well
+                        Cell unitCell = row.createCell(++propertyColumnIndex);
+                        unitCell.setCellValue(itemProperty.getValueQuantity().get(0).getUnitCode());
+                        productPropertiesTab.getRow(2).createCell(propertyColumnIndex).setCellValue(TemplateConfig.TEMPLATE_QUANTITY_UNIT);
                     }
-                    propertyColumnIndex++;
+                } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT)){
+                    cell = row.createCell(propertyColumnIndex);
+                    cell.setCellValue(getMultiValueText(itemProperty.getValue()));
+                } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_BOOLEAN)){
+                    cell = row.createCell(propertyColumnIndex);
+                    cell.setCellValue(getMultiValueText(itemProperty.getValue(),false));
+                } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER)){
+                    cell = row.createCell(propertyColumnIndex);
+                    cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueDecimal(),TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER));
                 }
+                propertyColumnIndex++;
             }
-            rowIndex++;
         }
     }
 
-    private void fillCategoryProperties(Sheet productPropertiesTab,List<CatalogueLineType> catalogueLines,List<Category> categories) throws InvalidCategoryException {
-
+    private Map<Category,List<String>> getParentCategoryUriMap(List<Category> categories) throws InvalidCategoryException {
         // create category - parent category uris map
         Map<Category,List<String>> parentCategoryUriMap = new HashMap<>();
         for(Category category:categories){
@@ -392,56 +412,55 @@ public class TemplateGenerator {
                 parentCategoryUriMap.put(category,uriList);
             }
         }
-        
-        int rowIndex = 4;
-        for(CatalogueLineType catalogueLine:catalogueLines){
-            for(ItemPropertyType itemProperty:catalogueLine.getGoodsItem().getItem().getAdditionalItemProperty()){
-                // consider category properties
-                if(!itemProperty.getItemClassificationCode().getListID().contentEquals("Custom")){
-                    // get the category names
-                    List<TextType> categoryNames = getNamesOfCategory(parentCategoryUriMap,itemProperty.getItemClassificationCode().getURI());
-                    // get column index
-                    Integer columnIndex = findCellIndexForProperty(productPropertiesTab,itemProperty.getID(),categoryNames);
-                    if(columnIndex == null){
-                        continue;
-                    }
-                    String dataType = normalizeDataTypeForTemplate(itemProperty.getValueQualifier());
-                    // set the value of property
-                    if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY)){
-                        if(itemProperty.getValueQuantity().size() > 0){
-                            // set the value
-                            Cell cell = productPropertiesTab.getRow(rowIndex).createCell(columnIndex);
-                            cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueQuantity(),TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY));
-                            // we need to set unit as well
-                            Cell unitCell = productPropertiesTab.getRow(rowIndex).createCell(++columnIndex);
-                            unitCell.setCellValue(itemProperty.getValueQuantity().get(0).getUnitCode());
-                            if(rowIndex == 4){
-                                cell.setCellStyle(editableStyle);
-                                unitCell.setCellStyle(editableStyle);
-                            }
-                        }
-                    } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT)){
-                        Cell cell = productPropertiesTab.getRow(rowIndex).createCell(columnIndex);
-                        cell.setCellValue(getMultiValueText(itemProperty.getValue()));
-                        if(rowIndex == 4){
-                            cell.setCellStyle(editableStyle);
-                        }
-                    } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_BOOLEAN)){
-                        Cell cell = productPropertiesTab.getRow(rowIndex).createCell(columnIndex);
-                        cell.setCellValue(getMultiValueText(itemProperty.getValue(),false));
-                        if(rowIndex == 4){
-                            cell.setCellStyle(editableStyle);
-                        }
-                    } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER)){
-                        Cell cell = productPropertiesTab.getRow(rowIndex).createCell(columnIndex);
-                        cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueDecimal(),TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER));
-                        if(rowIndex == 4){
+        return parentCategoryUriMap;
+    }
+
+    private void fillCategoryPropertiesRow(TemplateHeader header, Row row, CatalogueLineType catalogueLine, Map<Category,List<String>> parentCategoryUriMap, boolean firstRow){
+        for(ItemPropertyType itemProperty:catalogueLine.getGoodsItem().getItem().getAdditionalItemProperty()){
+            // consider category properties
+            if(!itemProperty.getItemClassificationCode().getListID().contentEquals("Custom")){
+                // get the category names
+                List<TextType> categoryNames = getNamesOfCategory(parentCategoryUriMap,itemProperty.getItemClassificationCode().getURI());
+                // get column index
+                Integer columnIndex = header.findColumnIndexForProperty(itemProperty.getID(),null,categoryNames);
+                if(columnIndex == null){
+                    continue;
+                }
+                String dataType = normalizeDataTypeForTemplate(itemProperty.getValueQualifier());
+                // set the value of property
+                if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY)){
+                    if(itemProperty.getValueQuantity().size() > 0){
+                        // set the value
+                        Cell cell = row.createCell(columnIndex);
+                        cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueQuantity(),TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY));
+                        // we need to set unit as well
+                        Cell unitCell = row.createCell(++columnIndex);
+                        unitCell.setCellValue(itemProperty.getValueQuantity().get(0).getUnitCode());
+                        if(firstRow){
                             cell.setCellStyle(editableStyle);
+                            unitCell.setCellStyle(editableStyle);
                         }
                     }
+                } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT)){
+                    Cell cell = row.createCell(columnIndex);
+                    cell.setCellValue(getMultiValueText(itemProperty.getValue()));
+                    if(firstRow){
+                        cell.setCellStyle(editableStyle);
+                    }
+                } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_BOOLEAN)){
+                    Cell cell = row.createCell(columnIndex);
+                    cell.setCellValue(getMultiValueText(itemProperty.getValue(),false));
+                    if(firstRow){
+                        cell.setCellStyle(editableStyle);
+                    }
+                } else if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER)){
+                    Cell cell = row.createCell(columnIndex);
+                    cell.setCellValue(getMultiValueRepresentation(itemProperty.getValueDecimal(),TemplateConfig.TEMPLATE_DATA_TYPE_NUMBER));
+                    if(firstRow){
+                        cell.setCellStyle(editableStyle);
+                    }
                 }
             }
-            rowIndex++;
         }
     }
 
@@ -600,7 +619,7 @@ public class TemplateGenerator {
         row = infoTab.createRow(++rowIndex);
         row.createCell(0).setCellValue(TemplateConfig.TEMPLATE_INFO_THIS_TAB_CONTAINS_INFORMATION);
 
-        infoTab.autoSizeColumn(0);
+        autoSizeColumn(infoTab, 0, false);
     }
 
     private void populateProductPropertiesTab(List<Category> categories, Sheet productPropertiesTab, Boolean usePropertyId) {
@@ -1517,7 +1536,7 @@ public class TemplateGenerator {
                 }
             }
         }
-        propertyDetailsTab.autoSizeColumn(0, true);
+        autoSizeColumn(propertyDetailsTab, 0, true);
 
         // header row containing the labels of property related fields
         rowIndex = 0;
@@ -1791,71 +1810,6 @@ public class TemplateGenerator {
         return propertyIdPreferredNameMap;
     }
 
-    public static Integer findCellIndexForProperty(Sheet sheet,String propertyId, List<TextType> categoryNames){
-        return findCellIndexForProperty(sheet, propertyId, null, categoryNames);
-    }
-
-    public static Integer findCellIndexForProperty(Sheet sheet, List<TextType> propertyNames ,List<TextType> categoryNames){
-        return findCellIndexForProperty(sheet,null,propertyNames,categoryNames);
-    }
-
-    public static Integer findCellIndexForProperty(Sheet sheet,String propertyId, List<TextType> propertyNames ,List<TextType> categoryNames){
-        // get category names
-        List<String> categoryNamesString = new ArrayList<>();
-        for(TextType text: categoryNames){
-            categoryNamesString.add(text.getValue());
-        }
-
-        // get property names
-        List<String> propertyNamesString = null;
-        if(propertyNames != null){
-            // get property names
-            propertyNamesString = new ArrayList<>();
-            for(TextType text: propertyNames){
-                propertyNamesString.add(text.getValue());
-            }
-        }
-
-        Integer categoryIndex = null;
-        // get the row where category names are specified
-        Row row = sheet.getRow(0);
-        for(int i = 0; i<row.getLastCellNum(); i++) {
-            Cell cell = getCellWithMissingCellPolicy(row, i);
-            // null cell means we reach to the end of the template
-            if(cell == null) {
-                break;
-            }
-            String value = getCellStringValue(cell);
-            if(categoryNamesString.contains(value)) {
-                categoryIndex = i;
-                break;
-            }
-        }
-
-        if(categoryIndex != null){
-            // get the row where property names are specified
-            row = sheet.getRow(1);
-            for(int i = categoryIndex; i<row.getLastCellNum(); i++) {
-                Cell cell = TemplateGenerator.getCellWithMissingCellPolicy(row, i);
-                // null cell means we reach to the end of the template
-                if(cell == null) {
-                    break;
-                }
-                String value = getCellStringValue(cell);
-                // if we have property name, search for it in the excel,
-                // otherwise, search for property id
-                if(propertyNames != null && propertyNamesString.contains(value)) {
-                    return i;
-                }
-                else if(propertyId != null && value.contentEquals(propertyId)){
-                    return i;
-                }
-            }
-        }
-
-        return null;
-    }
-
     public static String getCellStringValue(Cell cell) {
         if(cell == null) {
             return "";
@@ -1916,12 +1870,85 @@ public class TemplateGenerator {
     }
 
     private void autoSizeAllColumns(Sheet sheet) {
+        // measuring the cells with the font metrics is too slow for the large sheets
+        if(streaming){
+            estimateColumnWidths(sheet, columnIndex -> true);
+            return;
+        }
         int maxColumnIndex = getMaxColumnIndex(sheet);
         for (int i = 0; i <= maxColumnIndex; i++) {
             sheet.autoSizeColumn(i, true);
         }
     }
 
+    private void autoSizeColumn(Sheet sheet, int columnIndex, boolean useMergedCells) {
+        if(streaming){
+            estimateColumnWidths(sheet, index -> index == columnIndex);
+            return;
+        }
+        sheet.autoSizeColumn(columnIndex, useMergedCells);
+    }
+
+    /**
+     * Sets the widths of the selected columns based on the number of characters in the cells. The content of a merged
+     * cell is distributed over the merged columns, similar to {@link Sheet#autoSizeColumn(int, boolean)}.
+     */
+    private void estimateColumnWidths(Sheet sheet, IntPredicate columnFilter) {
+        // first cell of merged region -> number of merged columns
+        Map<String,Integer> mergedColumnCounts = new HashMap<>();
+        for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
+            CellRangeAddress region = sheet.getMergedRegion(i);
+            mergedColumnCounts.put(region.getFirstRow() + ":" + region.getFirstColumn(), region.getLastColumn() - region.getFirstColumn() + 1);
+        }
+
+        // column index -> width in characters
+        Map<Integer,Integer> columnWidths = new HashMap<>();
+        for (Row row : sheet) {
+            for (Cell cell : row) {
+                if(!columnFilter.test(cell.getColumnIndex())) {
+                    continue;
+                }
+                int length = getEstimatedLength(cell);
+                if(length == 0) {
+                    continue;
+                }
+                Integer mergedColumnCount = mergedColumnCounts.get(row.getRowNum() + ":" + cell.getColumnIndex());
+                if(mergedColumnCount != null) {
+                    length = (length + mergedColumnCount - 1) / mergedColumnCount;
+                }
+                columnWidths.merge(cell.getColumnIndex(), length, Math::max);
+            }
+        }
+        for (Map.Entry<Integer,Integer> columnWidth : columnWidths.entrySet()) {
+            // two more characters for the padding. The width is specified in 1/256th of a character.
+            int width = Math.min(columnWidth.getValue() + 2, MAX_ESTIMATED_COLUMN_WIDTH);
+            sheet.setColumnWidth(columnWidth.getKey(), width * 256);
+        }
+    }
+
+    private int getEstimatedLength(Cell cell) {
+        String value;
+        switch (cell.getCellTypeEnum()) {
+            case STRING:
+                value = cell.getStringCellValue();
+                break;
+            case NUMERIC:
+                value = String.valueOf(cell.getNumericCellValue());
+                break;
+            case BOOLEAN:
+                value = String.valueOf(cell.getBooleanCellValue());
+                break;
+            default:
+                return 0;
+        }
+        // the longest line determines the width of multi-line values
+        int length = 0;
+        for (String line : value.split("\n")) {
+            length = Math.max(length, line.length());
+        }
+        return length;
+    }
+
     private int getMaxColumnIndex(Sheet sheet) {
         int maxColumnIndex = 0;
         for (int i = 0; i <= sheet.getLastRowNum(); i++) {
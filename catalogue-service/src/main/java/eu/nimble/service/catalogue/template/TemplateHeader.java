@@ -0,0 +1,98 @@
+package eu.nimble.service.catalogue.template;
+
+import eu.nimble.service.model.ubl.commonbasiccomponents.TextType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.*;
+
+/**
+ * Index of the header rows of the product properties tab. The first row contains the category names and the second row
+ * contains the property names (or identifiers) of the category properties listed under each category. The index is
+ * built once per sheet and maps the header values to their column indices, so that the column of a property is found
+ * with map lookups instead of scanning the header rows for each property of each product.
+ */
+class TemplateHeader {
+    // category name -> ascending column indices containing the name
+    private final Map<String, List<Integer>> categoryColumns = new HashMap<>();
+    // property name or id -> ascending column indices containing the name or id
+    private final Map<String, List<Integer>> propertyColumns = new HashMap<>();
+
+    TemplateHeader(TemplateRow categoryRow, TemplateRow propertyRow) {
+        for (int i = 0; i < categoryRow.getLastCellNum(); i++) {
+            addColumn(categoryColumns, categoryRow.getValue(i), i);
+        }
+        for (int i = 0; i < propertyRow.getLastCellNum(); i++) {
+            addColumn(propertyColumns, propertyRow.getValue(i), i);
+        }
+    }
+
+    /**
+     * Creates the index using the first two rows of the given sheet
+     */
+    static TemplateHeader of(Sheet sheet) {
+        return new TemplateHeader(toTemplateRow(sheet.getRow(0), 0), toTemplateRow(sheet.getRow(1), 1));
+    }
+
+    /**
+     * Returns the column of the given property under the given category. The first column including one of the category
+     * names is considered as the start of the category properties. Then, the first column after that one including
+     * the property id or one of the property names is returned. If no such column exists, {@code null} is returned.
+     */
+    Integer findColumnIndexForProperty(String propertyId, List<TextType> propertyNames, List<TextType> categoryNames) {
+        Integer categoryIndex = null;
+        for (TextType categoryName : categoryNames) {
+            categoryIndex = min(categoryIndex, findFirstColumn(categoryColumns, categoryName.getValue(), 0));
+        }
+        if (categoryIndex == null) {
+            return null;
+        }
+
+        Integer columnIndex = null;
+        if (propertyNames != null) {
+            for (TextType propertyName : propertyNames) {
+                columnIndex = min(columnIndex, findFirstColumn(propertyColumns, propertyName.getValue(), categoryIndex));
+            }
+        }
+        if (propertyId != null) {
+            columnIndex = min(columnIndex, findFirstColumn(propertyColumns, propertyId, categoryIndex));
+        }
+        return columnIndex;
+    }
+
+    private static Integer findFirstColumn(Map<String, List<Integer>> columnMap, String value, int fromColumn) {
+        List<Integer> columns = columnMap.get(value);
+        if (columns == null) {
+            return null;
+        }
+        int position = Collections.binarySearch(columns, fromColumn);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        return position < columns.size() ? columns.get(position) : null;
+    }
+
+    private static Integer min(Integer current, Integer candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        return candidate != null && candidate < current ? candidate : current;
+    }
+
+    private static void addColumn(Map<String, List<Integer>> columnMap, String value, int columnIndex) {
+        if (value.isEmpty()) {
+            return;
+        }
+        columnMap.computeIfAbsent(value, v -> new ArrayList<>()).add(columnIndex);
+    }
+
+    private static TemplateRow toTemplateRow(Row row, int rowNum) {
+        TemplateRow templateRow = new TemplateRow(rowNum);
+        if (row != null) {
+            for (int i = 0; i < row.getLastCellNum(); i++) {
+                templateRow.setValue(i, TemplateGenerator.getCellStringValue(row.getCell(i)));
+            }
+        }
+        return templateRow;
+    }
+}
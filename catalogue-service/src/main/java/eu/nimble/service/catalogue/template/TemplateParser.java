@@ -14,10 +14,6 @@ import eu.nimble.service.model.ubl.commonbasiccomponents.AmountType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.BinaryObjectType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.CodeType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.QuantityType;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.openxml4j.opc.OPCPackage;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,7 +23,11 @@ import java.io.InputStream;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static eu.nimble.service.catalogue.template.TemplateConfig.*;
 
@@ -37,9 +37,19 @@ import static eu.nimble.service.catalogue.template.TemplateConfig.*;
 public class TemplateParser {
     private static final Logger logger = LoggerFactory.getLogger(TemplateParser.class);
 
+    // number of rows at the top of the product properties and terms tabs containing the category names, property names,
+    // data types and units
+    private static final int HEADER_ROW_COUNT = 4;
+
     private PartyType party;
-    private Workbook wb;
     private String defaultLanguage = "en";
+    // header rows of the product properties and trading & delivery terms tabs
+    private Map<Integer, TemplateRow> productPropertiesHeader = new HashMap<>();
+    private Map<Integer, TemplateRow> termsHeader = new HashMap<>();
+    // columns of the category properties in the product properties tab. They are resolved once the header rows are read.
+    private List<PropertyColumn> categoryPropertyColumns;
+    // number of columns allocated for the category properties. Custom properties start after these columns.
+    private int totalCategoryPropertyNumber;
 
     static Map<String, Integer> defaultVats = new HashMap<>();
     static {
@@ -53,74 +63,101 @@ public class TemplateParser {
         this.party = party;
     }
 
+    /**
+     * Parses the given template with a streaming parser. The template is copied into a temporary file, so that the
+     * sheets are read from the disk while they are parsed, and the rows are processed one by one without keeping the
+     * whole workbook in memory.
+     */
     public List<CatalogueLineType> getCatalogueLines(InputStream catalogueTemplate, Boolean includeVat) throws TemplateParseException {
-        OPCPackage pkg = null;
+        File templateFile = null;
         try {
-            pkg = OPCPackage.open(catalogueTemplate);
-            wb = new XSSFWorkbook(pkg);
-        } catch (InvalidFormatException e) {
-            throw new TemplateParseException("Invalid format for the submitted template", e);
+            templateFile = File.createTempFile("catalogue-template", ".xlsx");
+            Files.copy(catalogueTemplate, templateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            try (TemplateSheetReader reader = new TemplateSheetReader(templateFile)) {
+                List<CatalogueLineType> results = null;
+                try {
+                    results = parseProductPropertiesTab(reader);
+                } catch (InvalidCategoryException e) {
+                    throw new TemplateParseException("Failed to parse product properties tab", e);
+                }
+                parseTermsTab(reader, results, includeVat);
+
+                return results;
+            }
+
         } catch (IOException e) {
             throw new TemplateParseException("Failed to read the submitted template", e);
         } finally {
-            if (pkg != null) {
-                try {
-                    pkg.close();
-                } catch (IOException e) {
-                    logger.warn("Failed to close the OPC Package", e);
-                }
+            if (templateFile != null && !templateFile.delete()) {
+                logger.warn("Failed to delete the temporary template file: {}", templateFile.getAbsolutePath());
             }
         }
+    }
+
+    private List<CatalogueLineType> parseProductPropertiesTab(TemplateSheetReader reader) throws TemplateParseException, InvalidCategoryException {
+        List<Category> categories = getTemplateCategories(reader.readRows(TemplateConfig.TEMPLATE_TAB_METADATA));
 
-        List<CatalogueLineType> results = null;
+        // rows are independent from each other once the header rows and the categories are resolved, so they are
+        // parsed in batches concurrently while the sheet is being read
+        ProductRowParser rowParser = new ProductRowParser(categories, SpringBridge.getInstance().getTemplateParseExecutor());
         try {
-            results = parseProductPropertiesTab();
-        } catch (InvalidCategoryException e) {
-            throw new TemplateParseException("Failed to parse product properties tab", e);
-        }
-        parseTermsTab(results, includeVat);
+            reader.readSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES, row -> {
+                // first four rows contains fixed values
+                if (row.getRowNum() < HEADER_ROW_COUNT) {
+                    productPropertiesHeader.put(row.getRowNum(), row);
+                    return;
+                }
+                // skip the rows without any value e.g. the formatted but empty rows at the end of the tab
+                if (row.isEmpty()) {
+                    return;
+                }
+                if (categoryPropertyColumns == null) {
+                    resolveCategoryPropertyColumns(categories);
+                }
+                rowParser.add(row);
+            });
+            return rowParser.complete();
 
-        return results;
+        } finally {
+            rowParser.cancel();
+        }
     }
 
-    private List<CatalogueLineType> parseProductPropertiesTab() throws TemplateParseException, InvalidCategoryException {
-        Sheet productPropertiesTab = wb.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES);
-        Sheet metadataTab = productPropertiesTab.getWorkbook().getSheet(TemplateConfig.TEMPLATE_TAB_METADATA);
-        List<Category> categories = getTemplateCategories(metadataTab);
-        List<CatalogueLineType> results = new ArrayList<>();
-
-        // identifiers of the products in template
-        List<String> productIds = new ArrayList<>();
-
-        int catalogSize = productPropertiesTab.getLastRowNum();
-        // first four rows contains fixed values
-        for (int rowNum = 4; rowNum <= catalogSize; rowNum++) {
-            CatalogueLineType clt = new CatalogueLineType();
-            GoodsItemType goodsItem = new GoodsItemType();
-            ItemType item = new ItemType();
-            List<CommodityClassificationType> classifications = new ArrayList<>();
-            List<ItemPropertyType> itemProperties = new ArrayList<>();
-            item.setManufacturerParty(party);
-            goodsItem.setItem(item);
-            clt.setGoodsItem(goodsItem);
-            item.setCommodityClassification(classifications);
-            item.setAdditionalItemProperty(itemProperties);
-            results.add(clt);
-
-            classifications.addAll(getCommodityClassification(categories));
-            parseFixedProperties(productPropertiesTab, rowNum, item);
-            itemProperties.addAll(getCategoryRelatedItemProperties(categories, rowNum));
-            itemProperties.addAll(0, getCustomItemProperties(categories, rowNum));
-
-            String productId = item.getManufacturersItemIdentification().getID();
-            // throw an exception if the same id is used for multiple products
-            if(productIds.contains(productId)){
-                throw new TemplateParseException(String.format("There exists multiple products with the same id: %s in the template",productId));
-            }
-            productIds.add(productId);
+    /**
+     * Parses the given rows of the product properties tab. If a row fails to be parsed, the catalogue lines of the
+     * preceding rows are returned together with the error.
+     */
+    private ProductRowBatch parseProductRows(List<TemplateRow> rows, List<Category> categories) {
+        ProductRowBatch batch = new ProductRowBatch();
+        for (TemplateRow row : rows) {
+            try {
+                batch.catalogueLines.add(parseProductRow(row, categories));
+            } catch (TemplateParseException e) {
+                batch.error = e;
+                break;
+            }
         }
+        return batch;
+    }
 
-        return results;
+    private CatalogueLineType parseProductRow(TemplateRow row, List<Category> categories) throws TemplateParseException {
+        CatalogueLineType clt = new CatalogueLineType();
+        GoodsItemType goodsItem = new GoodsItemType();
+        ItemType item = new ItemType();
+        List<CommodityClassificationType> classifications = new ArrayList<>();
+        List<ItemPropertyType> itemProperties = new ArrayList<>();
+        item.setManufacturerParty(party);
+        goodsItem.setItem(item);
+        clt.setGoodsItem(goodsItem);
+        item.setCommodityClassification(classifications);
+        item.setAdditionalItemProperty(itemProperties);
+
+        classifications.addAll(getCommodityClassification(categories));
+        parseFixedProperties(row, item);
+        itemProperties.addAll(getCategoryRelatedItemProperties(row));
+        itemProperties.addAll(0, getCustomItemProperties(row));
+        return clt;
     }
 
     private List<CommodityClassificationType> getCommodityClassification(List<Category> categories) {
@@ -138,40 +175,54 @@ public class TemplateParser {
         return classifications;
     }
 
-    private List<ItemPropertyType> getCategoryRelatedItemProperties(List<Category> categories, int rowIndex) throws TemplateParseException {
-        Sheet productPropertiesTab = wb.getSheet(TemplateConfig.TEMPLATE_TAB_PRODUCT_PROPERTIES);
-        List<ItemPropertyType> additionalItemProperties = new ArrayList<>();
+    /**
+     * Finds the columns of the category properties using the header rows of the product properties tab. The header is
+     * indexed once, so that the columns are not searched again for each product.
+     */
+    private void resolveCategoryPropertyColumns(List<Category> categories) {
+        TemplateHeader header = new TemplateHeader(getHeaderRow(productPropertiesHeader, 0), getHeaderRow(productPropertiesHeader, 1));
+        categoryPropertyColumns = new ArrayList<>();
+        totalCategoryPropertyNumber = 0;
         for (Category category : categories) {
             if(category.getProperties() != null){
                 for (Property property : category.getProperties()) {
-                    // check unit
-                    // if the user provided unit for a number data type
-                    Integer columnIndex = TemplateGenerator.findCellIndexForProperty(productPropertiesTab,property.getPreferredName(),category.getPreferredName());
-                    if(columnIndex == null) {
-                        continue;
+                    Integer columnIndex = header.findColumnIndexForProperty(null, property.getPreferredName(), category.getPreferredName());
+                    if(columnIndex != null) {
+                        categoryPropertyColumns.add(new PropertyColumn(category, property, columnIndex));
                     }
-
-                    Row propertyRow =  productPropertiesTab.getRow(rowIndex);
-                    Cell cell = TemplateGenerator.getCellWithMissingCellPolicy(propertyRow, columnIndex);
-                    // for Quantity properties, get the cell containing the unit information
-                    Cell unitCell = null;
+                    // for quantity properties, since there are two columns (value and unit), we should increment total property number by two
                     if(property.getDataType().contentEquals(TEMPLATE_DATA_TYPE_QUANTITY)){
-                        unitCell = TemplateGenerator.getCellWithMissingCellPolicy(propertyRow, columnIndex+1);
-                    }
-                    List<Object> values = (List<Object>) parseCell(productPropertiesTab,cell,unitCell,property.getPreferredName(defaultLanguage), property.getDataType(), true);
-                    if (values.isEmpty()) {
-                        continue;
+                        totalCategoryPropertyNumber++;
                     }
-                    ItemPropertyType itemProp = getItemPropertyFromCategoryProperty(category, property, values);
-                    additionalItemProperties.add(itemProp);
+                    totalCategoryPropertyNumber++;
                 }
             }
         }
-
-        return additionalItemProperties;
     }
 
+    private List<ItemPropertyType> getCategoryRelatedItemProperties(TemplateRow row) throws TemplateParseException {
+        TemplateRow dataTypeRow = getHeaderRow(productPropertiesHeader, 2);
+        List<ItemPropertyType> additionalItemProperties = new ArrayList<>();
+        for (PropertyColumn propertyColumn : categoryPropertyColumns) {
+            Category category = propertyColumn.category;
+            Property property = propertyColumn.property;
+            int columnIndex = propertyColumn.columnIndex;
+
+            // for Quantity properties, get the column containing the unit information
+            Integer unitColumnIndex = null;
+            if(property.getDataType().contentEquals(TEMPLATE_DATA_TYPE_QUANTITY)){
+                unitColumnIndex = columnIndex+1;
+            }
+            List<Object> values = (List<Object>) parseCell(dataTypeRow,row,columnIndex,unitColumnIndex,property.getPreferredName(defaultLanguage), property.getDataType(), true);
+            if (values.isEmpty()) {
+                continue;
+            }
+            ItemPropertyType itemProp = getItemPropertyFromCategoryProperty(category, property, values);
+            additionalItemProperties.add(itemProp);
+        }
 
+        return additionalItemProperties;
+    }
 
     private ItemPropertyType getItemPropertyFromCategoryProperty(Category category, Property property, Object values) throws TemplateParseException{
         ItemPropertyType itemProp = new ItemPropertyType();
@@ -239,34 +290,22 @@ public class TemplateParser {
         return itemProp;
     }
 
-    private List<ItemPropertyType> getCustomItemProperties(List<Category> categories, int rowIndex) throws TemplateParseException {
-        Sheet productPropertiesTab = wb.getSheet(TEMPLATE_TAB_PRODUCT_PROPERTIES);
+    private List<ItemPropertyType> getCustomItemProperties(TemplateRow row) throws TemplateParseException {
+        TemplateRow propertyNameRow = getHeaderRow(productPropertiesHeader, 1);
+        TemplateRow dataTypeRow = getHeaderRow(productPropertiesHeader, 2);
         List<ItemPropertyType> itemProperties = new ArrayList<>();
 
         // find the offset for the custom properties
-        int totalCategoryPropertyNumber = 0;
-        for (Category category : categories) {
-            if(category.getProperties() != null){
-                for(Property property : category.getProperties()){
-                    // for quantity properties, since there are two columns (value and unit), we should increment total property number by two
-                    if(property.getDataType().contentEquals(TEMPLATE_DATA_TYPE_QUANTITY)){
-                        totalCategoryPropertyNumber++;
-                    }
-                    totalCategoryPropertyNumber++;
-                }
-            }
-        }
         int fixedPropNumber = TemplateConfig.getFixedPropertiesForProductPropertyTab().size()+3;
-        int customPropertyNum = productPropertiesTab.getRow(1).getLastCellNum() - (totalCategoryPropertyNumber + fixedPropNumber + 1);
+        int customPropertyNum = propertyNameRow.getLastCellNum() - (totalCategoryPropertyNumber + fixedPropNumber + 1);
         int columnIndex = 1 + fixedPropNumber + totalCategoryPropertyNumber;
 
         // traverse the custom properties
         for (int i = 0; i < customPropertyNum; i++) {
 
             // create a temporary property using the information regarding the custom property
-            Row row = productPropertiesTab.getRow(1);
             List<TextType> propertyNames = new ArrayList<>();
-            List<String> propertyNamesString = parseMultiValues(TemplateGenerator.getCellWithMissingCellPolicy(row, columnIndex));
+            List<String> propertyNamesString = parseMultiValues(propertyNameRow.getValue(columnIndex));
             for(String propertyNameString: propertyNamesString){
                 String languageId;
                 String textValue;
@@ -292,18 +331,17 @@ public class TemplateParser {
 
                 propertyNames.add(textType);
             }
-            row = productPropertiesTab.getRow(2);
-            String dataType = TemplateGenerator.getCellStringValue(TemplateGenerator.getCellWithMissingCellPolicy(row, columnIndex));
+            String dataType = dataTypeRow.getValue(columnIndex);
             // custom properties can not have TEXT data type
             if(dataType.contentEquals(TemplateConfig.TEMPLATE_DATA_TYPE_TEXT)){
                 throw new TemplateParseException("Custom properties can not have TEXT data type. Please, use MULTILINGUAL TEXT data type instead.");
             }
             dataType = TemplateGenerator.denormalizeDataTypeFromTemplate(dataType);
 
-            // get the cell containing unit information
-            Cell unitCell = null;
+            // get the column containing unit information
+            Integer unitColumnIndex = null;
             if(dataType.contentEquals(TEMPLATE_DATA_TYPE_QUANTITY)){
-                unitCell = TemplateGenerator.getCellWithMissingCellPolicy(productPropertiesTab.getRow(rowIndex), columnIndex+1);
+                unitColumnIndex = columnIndex+1;
                 // if it is a quantity property, then we need to increase i by one
                 i++;
             }
@@ -313,8 +351,7 @@ public class TemplateParser {
             property.setDataType(dataType);
 
             // get the values for the custom property
-            Cell cell = TemplateGenerator.getCellWithMissingCellPolicy(productPropertiesTab.getRow(rowIndex), columnIndex);
-            List<Object> values = (List<Object>) parseCell(productPropertiesTab,cell,unitCell,property.getPreferredName(defaultLanguage), property.getDataType(), true);
+            List<Object> values = (List<Object>) parseCell(dataTypeRow,row,columnIndex,unitColumnIndex,property.getPreferredName(defaultLanguage), property.getDataType(), true);
             if (values.isEmpty()) {
                 columnIndex++;
                 continue;
@@ -331,33 +368,33 @@ public class TemplateParser {
         return itemProperties;
     }
 
-    private void parseFixedProperties(Sheet productPropertiesTab, int rowIndex, ItemType item) throws TemplateParseException {
-        Row propertiesRow = productPropertiesTab.getRow(rowIndex);
+    private void parseFixedProperties(TemplateRow propertiesRow, ItemType item) throws TemplateParseException {
+        TemplateRow dataTypeRow = getHeaderRow(productPropertiesHeader, 2);
         List<Property> properties = TemplateConfig.getFixedPropertiesForProductPropertyTab();
         int columnIndex = 1;
         for (int i = 0; i < properties.size(); i++) {
             Property property = properties.get(i);
-            Cell cell = TemplateGenerator.getCellWithMissingCellPolicy(propertiesRow, columnIndex);
+            int cellIndex = columnIndex;
             if (property.getPreferredName(null).equals(TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_MANUFACTURER_ITEM_IDENTIFICATION)) {
-                if(TemplateGenerator.getCellStringValue(cell).contentEquals("")){
+                if(propertiesRow.getValue(cellIndex).contentEquals("")){
                     throw new TemplateParseException("No Manufacturer Item Identification provided for the item");
                 }
                 ItemIdentificationType itemId = new ItemIdentificationType();
-                itemId.setID((String) parseCell(cell,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_MANUFACTURER_ITEM_IDENTIFICATION, TEMPLATE_DATA_TYPE_TEXT, false));
+                itemId.setID((String) parseCell(propertiesRow,cellIndex,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_MANUFACTURER_ITEM_IDENTIFICATION, TEMPLATE_DATA_TYPE_TEXT, false));
                 item.setManufacturersItemIdentification(itemId);
 
             } else if (property.getPreferredName(null).equals(TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_NAME)) {
-                if(TemplateGenerator.getCellStringValue(cell).contentEquals("")){
+                if(propertiesRow.getValue(cellIndex).contentEquals("")){
                     throw new TemplateParseException("No name provided for the item : " + " id: " + item.getManufacturersItemIdentification().getID());
                 }
-                List<TextType> productNames = (List<TextType>) parseCell(cell, TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_NAME, TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT, true);
+                List<TextType> productNames = (List<TextType>) parseCell(propertiesRow, cellIndex, TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_NAME, TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT, true);
 
                 for(TextType productName: productNames) {
                     item.getName().add(productName);
                 }
 
             } else if (property.getPreferredName(null).equals(TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_DESCRIPTION)) {
-                List<TextType> productDescriptions = (List<TextType>) parseCell(cell,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_DESCRIPTION, TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT, true);
+                List<TextType> productDescriptions = (List<TextType>) parseCell(propertiesRow,cellIndex,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_DESCRIPTION, TEMPLATE_DATA_TYPE_MULTILINGUAL_TEXT, true);
                 // be sure that each item name has a corresponding item description
                 for(TextType itemName: item.getName()){
                     boolean descriptionFound = false;
@@ -414,12 +451,12 @@ public class TemplateParser {
                 }
                 item.setSafetyDataSheet(docRefs);
             }*/ else if (property.getPreferredName(null).equals(TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_WIDTH)) {
-                Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(propertiesRow, ++columnIndex);
+                int unitCellIndex = ++columnIndex;
                 // just to initialize the dimension array
                 item.getDimension();
                 List<QuantityType> widths;
                 try {
-                    widths = (List<QuantityType>) parseCell(productPropertiesTab,cell,unitCell,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_WIDTH, TEMPLATE_DATA_TYPE_QUANTITY, true);
+                    widths = (List<QuantityType>) parseCell(dataTypeRow,propertiesRow,cellIndex,unitCellIndex,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_WIDTH, TEMPLATE_DATA_TYPE_QUANTITY, true);
                 } catch (TemplateParseException e) {
                     throw new TemplateParseException("Failed to parse width dimension. Check the corresponding unit", e);
                 }
@@ -431,10 +468,10 @@ public class TemplateParser {
                 }
 
             } else if (property.getPreferredName(null).equals(TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_LENGTH)) {
-                Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(propertiesRow, ++columnIndex);
+                int unitCellIndex = ++columnIndex;
                 List<QuantityType> lengths;
                 try {
-                    lengths = (List<QuantityType>) parseCell(productPropertiesTab,cell,unitCell,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_LENGTH, TEMPLATE_DATA_TYPE_QUANTITY, true);
+                    lengths = (List<QuantityType>) parseCell(dataTypeRow,propertiesRow,cellIndex,unitCellIndex,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_LENGTH, TEMPLATE_DATA_TYPE_QUANTITY, true);
                 } catch (TemplateParseException e) {
                     throw new TemplateParseException("Failed to parse length dimension. Check the corresponding unit", e);
                 }
@@ -446,10 +483,10 @@ public class TemplateParser {
                 }
 
             } else if (property.getPreferredName(null).equals(TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_HEIGHT)) {
-                Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(propertiesRow, ++columnIndex);
+                int unitCellIndex = ++columnIndex;
                 List<QuantityType> widths;
                 try {
-                    widths = (List<QuantityType>) parseCell(productPropertiesTab,cell,unitCell,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_HEIGHT, TEMPLATE_DATA_TYPE_QUANTITY, true);
+                    widths = (List<QuantityType>) parseCell(dataTypeRow,propertiesRow,cellIndex,unitCellIndex,TemplateConfig.TEMPLATE_PRODUCT_PROPERTIES_HEIGHT, TEMPLATE_DATA_TYPE_QUANTITY, true);
                 } catch (TemplateParseException e) {
                     throw new TemplateParseException("Failed to parse width dimension. Check the corresponding unit", e);
                 }
@@ -464,196 +501,195 @@ public class TemplateParser {
         }
     }
 
-    private void parseTermsTab(List<CatalogueLineType> catalogueLines, Boolean includeVat) throws TemplateParseException {
-        Sheet termsTab = wb.getSheet(TemplateConfig.TEMPLATE_TAB_TRADING_DELIVERY_TERMS);
+    private void parseTermsTab(TemplateSheetReader reader, List<CatalogueLineType> catalogueLines, Boolean includeVat) throws TemplateParseException {
+        // manufacturer item identifier -> catalogue line
+        Map<String, CatalogueLineType> catalogueLineMap = new HashMap<>();
         for (CatalogueLineType catalogueLine : catalogueLines) {
-            ItemType item = catalogueLine.getGoodsItem().getItem();
-            // find row corresponding to the provided item
-            int rowIndex = 4;
-            Row row = null;
-            Cell cell;
-            String value;
-            for (; rowIndex <= termsTab.getLastRowNum(); rowIndex++) {
-                row = termsTab.getRow(rowIndex);
-                cell = row.getCell(1);
-                if (cell == null) {
-                    row = null;
-                    continue;
-                } else {
-                    if (TemplateGenerator.getCellStringValue(cell).contentEquals(item.getManufacturersItemIdentification().getID())) {
-                        break;
-                    } else {
-                        row = null;
-                    }
-                }
+            catalogueLineMap.put(catalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID(), catalogueLine);
+        }
+        // identifiers of the items for which the terms are parsed
+        Set<String> parsedItemIds = new HashSet<>();
+
+        reader.readSheet(TemplateConfig.TEMPLATE_TAB_TRADING_DELIVERY_TERMS, row -> {
+            // first four rows contains fixed values
+            if (row.getRowNum() < HEADER_ROW_COUNT) {
+                termsHeader.put(row.getRowNum(), row);
+                return;
             }
-            if (row == null) {
-                throw new TemplateParseException("No trading & delivery terms for item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
+            // find the item corresponding to the row. If there are multiple rows for the same item, the first one is used.
+            String itemId = row.getValue(1);
+            CatalogueLineType catalogueLine = catalogueLineMap.get(itemId);
+            if (catalogueLine == null || !parsedItemIds.add(itemId)) {
+                return;
             }
+            parseTerms(row, catalogueLine);
+        });
 
-            // parse the terms
-            int columnIndex = 1;
-            List<Property> termRelatedProperties = TemplateConfig.getFixedPropertiesForTermsTab();
-            for (Property property : termRelatedProperties) {
-                cell = TemplateGenerator.getCellWithMissingCellPolicy(row, columnIndex);
-                if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PRICE_AMOUNT)) {
-                    ItemLocationQuantityType itemLocationQuantity = new ItemLocationQuantityType();
-                    catalogueLine.setRequiredItemLocationQuantity(itemLocationQuantity);
-                    PriceType price = new PriceType();
-                    itemLocationQuantity.setPrice(price);
-                    AmountType amount = new AmountType();
-                    price.setPriceAmount(amount);
-                    // parse price amount
-                    Boolean priceNotExist = TemplateGenerator.getCellStringValue(cell).contentEquals("");
-
-                    // parse currency
-                    Cell tmp = TemplateGenerator.getCellWithMissingCellPolicy(row, ++columnIndex);
-                    Boolean currencyNotExist = (tmp == null || TemplateGenerator.getCellStringValue(tmp).contentEquals(""));
-
-                    if((priceNotExist && !currencyNotExist) || (!priceNotExist && currencyNotExist)){
-                        throw new TemplateParseException("Both amount and currency must be filled for the price of the item name:"+LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
-                    }
-
-                    amount.setValue((BigDecimal) parseCell(cell,TEMPLATE_TRADING_DELIVERY_PRICE_AMOUNT, TEMPLATE_DATA_TYPE_NUMBER, false));
+        for (CatalogueLineType catalogueLine : catalogueLines) {
+            ItemType item = catalogueLine.getGoodsItem().getItem();
+            if (!parsedItemIds.contains(item.getManufacturersItemIdentification().getID())) {
+                throw new TemplateParseException("No trading & delivery terms for item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
+            }
+        }
 
-                    value = TemplateGenerator.getCellStringValue(tmp);
-                    amount.setCurrencyID(value);
+        // create vats for catalogue lines
+        createVatsForCatalogueLines(catalogueLines, includeVat);
+    }
 
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PRICE_BASE_QUANTITY)) {
-                    Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(row, ++columnIndex);
-                    QuantityType baseQuantity = (QuantityType) parseCell(termsTab,cell,unitCell,TEMPLATE_TRADING_DELIVERY_PRICE_BASE_QUANTITY, TEMPLATE_DATA_TYPE_QUANTITY, false);
-                    if (baseQuantity == null) {
-                        baseQuantity = new QuantityType();
-                    }
-                    catalogueLine.getRequiredItemLocationQuantity().getPrice().setBaseQuantity(baseQuantity);
-
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_MINIMUM_ORDER_QUANTITY)) {
-                    Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(row, ++columnIndex);
-                    QuantityType minimumOrderQuantity = (QuantityType) parseCell(termsTab,cell,unitCell,TEMPLATE_TRADING_DELIVERY_MINIMUM_ORDER_QUANTITY, TEMPLATE_DATA_TYPE_QUANTITY, false);
-                    if (minimumOrderQuantity != null) {
-                        if (minimumOrderQuantity.getUnitCode() == null) {
-                            throw new TemplateParseException("A unit must be provided for the minimum order quantity of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
-                        }
-                    } else {
-                        minimumOrderQuantity = new QuantityType();
-                    }
-                    catalogueLine.setMinimumOrderQuantity(minimumOrderQuantity);
+    private void parseTerms(TemplateRow row, CatalogueLineType catalogueLine) throws TemplateParseException {
+        ItemType item = catalogueLine.getGoodsItem().getItem();
+        TemplateRow dataTypeRow = getHeaderRow(termsHeader, 2);
+        String value;
+        // parse the terms
+        int columnIndex = 1;
+        List<Property> termRelatedProperties = TemplateConfig.getFixedPropertiesForTermsTab();
+        for (Property property : termRelatedProperties) {
+            int cellIndex = columnIndex;
+            if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PRICE_AMOUNT)) {
+                ItemLocationQuantityType itemLocationQuantity = new ItemLocationQuantityType();
+                catalogueLine.setRequiredItemLocationQuantity(itemLocationQuantity);
+                PriceType price = new PriceType();
+                itemLocationQuantity.setPrice(price);
+                AmountType amount = new AmountType();
+                price.setPriceAmount(amount);
+                // parse price amount
+                Boolean priceNotExist = row.getValue(cellIndex).contentEquals("");
+
+                // parse currency
+                int currencyCellIndex = ++columnIndex;
+                Boolean currencyNotExist = row.getValue(currencyCellIndex).contentEquals("");
+
+                if((priceNotExist && !currencyNotExist) || (!priceNotExist && currencyNotExist)){
+                    throw new TemplateParseException("Both amount and currency must be filled for the price of the item name:"+LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
+                }
 
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_FREE_SAMPLE)) {
-                    catalogueLine.setFreeOfChargeIndicator((Boolean) parseCell(cell,TEMPLATE_TRADING_DELIVERY_FREE_SAMPLE, TEMPLATE_DATA_TYPE_BOOLEAN, false));
+                amount.setValue((BigDecimal) parseCell(row,cellIndex,TEMPLATE_TRADING_DELIVERY_PRICE_AMOUNT, TEMPLATE_DATA_TYPE_NUMBER, false));
 
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_WARRANTY_VALIDITY_PERIOD)) {
-                    Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(row, ++columnIndex);
-                    QuantityType warrantyValidityPeriod = (QuantityType) parseCell(termsTab,cell,unitCell,TEMPLATE_TRADING_DELIVERY_WARRANTY_VALIDITY_PERIOD, TEMPLATE_DATA_TYPE_QUANTITY, false);
-                    if (warrantyValidityPeriod != null) {
-                        if (warrantyValidityPeriod.getUnitCode() == null) {
-                            throw new TemplateParseException("A unit must be provided for the warranty validity period of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
-                        }
-                    } else {
-                        warrantyValidityPeriod = new QuantityType();
-                    }
-                    PeriodType period = new PeriodType();
-                    catalogueLine.setWarrantyValidityPeriod(period);
-                    period.setDurationMeasure(warrantyValidityPeriod);
-
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_WARRANTY_INFORMATION)) {
-                    if (cell != null) {
-                        List<String> values = (List<String>) parseCell(cell,TEMPLATE_TRADING_DELIVERY_WARRANTY_INFORMATION, TEMPLATE_DATA_TYPE_TEXT, true);
-                        if (values.size() > 0) {
-                            catalogueLine.getWarrantyInformation().addAll(values);
-                        }
-                    }
+                value = row.getValue(currencyCellIndex);
+                amount.setCurrencyID(value);
 
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_INCOTERMS)) {
-                    DeliveryTermsType deliveryTerms = new DeliveryTermsType();
-                    catalogueLine.getGoodsItem().setDeliveryTerms(deliveryTerms);
-                    value = (String) parseCell(cell,TEMPLATE_TRADING_DELIVERY_INCOTERMS, TEMPLATE_DATA_TYPE_TEXT, false);
-                    if (value != null){
-                        value = value.replace("_"," ");
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PRICE_BASE_QUANTITY)) {
+                int unitCellIndex = ++columnIndex;
+                QuantityType baseQuantity = (QuantityType) parseCell(dataTypeRow,row,cellIndex,unitCellIndex,TEMPLATE_TRADING_DELIVERY_PRICE_BASE_QUANTITY, TEMPLATE_DATA_TYPE_QUANTITY, false);
+                if (baseQuantity == null) {
+                    baseQuantity = new QuantityType();
+                }
+                catalogueLine.getRequiredItemLocationQuantity().getPrice().setBaseQuantity(baseQuantity);
+
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_MINIMUM_ORDER_QUANTITY)) {
+                int unitCellIndex = ++columnIndex;
+                QuantityType minimumOrderQuantity = (QuantityType) parseCell(dataTypeRow,row,cellIndex,unitCellIndex,TEMPLATE_TRADING_DELIVERY_MINIMUM_ORDER_QUANTITY, TEMPLATE_DATA_TYPE_QUANTITY, false);
+                if (minimumOrderQuantity != null) {
+                    if (minimumOrderQuantity.getUnitCode() == null) {
+                        throw new TemplateParseException("A unit must be provided for the minimum order quantity of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
                     }
-                    catalogueLine.getGoodsItem().getDeliveryTerms().setIncoterms(value);
-
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_SPECIAL_TERMS)) {
-                    List<String> values = (List<String>) parseCell(cell,TEMPLATE_TRADING_DELIVERY_SPECIAL_TERMS, TEMPLATE_DATA_TYPE_TEXT, true);
+                } else {
+                    minimumOrderQuantity = new QuantityType();
+                }
+                catalogueLine.setMinimumOrderQuantity(minimumOrderQuantity);
 
-                    for(String stvalue: values) {
-                        TextType textType = new TextType();
-                        textType.setLanguageID(defaultLanguage);
-                        textType.setValue(stvalue);
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_FREE_SAMPLE)) {
+                catalogueLine.setFreeOfChargeIndicator((Boolean) parseCell(row,cellIndex,TEMPLATE_TRADING_DELIVERY_FREE_SAMPLE, TEMPLATE_DATA_TYPE_BOOLEAN, false));
 
-                        catalogueLine.getGoodsItem().getDeliveryTerms().getSpecialTerms().add(textType);
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_WARRANTY_VALIDITY_PERIOD)) {
+                int unitCellIndex = ++columnIndex;
+                QuantityType warrantyValidityPeriod = (QuantityType) parseCell(dataTypeRow,row,cellIndex,unitCellIndex,TEMPLATE_TRADING_DELIVERY_WARRANTY_VALIDITY_PERIOD, TEMPLATE_DATA_TYPE_QUANTITY, false);
+                if (warrantyValidityPeriod != null) {
+                    if (warrantyValidityPeriod.getUnitCode() == null) {
+                        throw new TemplateParseException("A unit must be provided for the warranty validity period of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
                     }
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_ESTIMATED_DELIVERY_PERIOD)) {
-                    Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(row, ++columnIndex);
-                    QuantityType estimatedDeliveryQuantity = (QuantityType) parseCell(termsTab,cell,unitCell,TEMPLATE_TRADING_DELIVERY_ESTIMATED_DELIVERY_PERIOD, TEMPLATE_DATA_TYPE_QUANTITY, false);
-                    if (estimatedDeliveryQuantity != null) {
-                        if (estimatedDeliveryQuantity.getUnitCode() == null) {
-                            throw new TemplateParseException("A unit must be provided for the estimated delivery period of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
-                        }
+                } else {
+                    warrantyValidityPeriod = new QuantityType();
+                }
+                PeriodType period = new PeriodType();
+                catalogueLine.setWarrantyValidityPeriod(period);
+                period.setDurationMeasure(warrantyValidityPeriod);
+
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_WARRANTY_INFORMATION)) {
+                List<String> values = (List<String>) parseCell(row,cellIndex,TEMPLATE_TRADING_DELIVERY_WARRANTY_INFORMATION, TEMPLATE_DATA_TYPE_TEXT, true);
+                if (values.size() > 0) {
+                    catalogueLine.getWarrantyInformation().addAll(values);
+                }
 
-                    } else {
-                        estimatedDeliveryQuantity = new QuantityType();
-                    }
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_INCOTERMS)) {
+                DeliveryTermsType deliveryTerms = new DeliveryTermsType();
+                catalogueLine.getGoodsItem().setDeliveryTerms(deliveryTerms);
+                value = (String) parseCell(row,cellIndex,TEMPLATE_TRADING_DELIVERY_INCOTERMS, TEMPLATE_DATA_TYPE_TEXT, false);
+                if (value != null){
+                    value = value.replace("_"," ");
+                }
+                catalogueLine.getGoodsItem().getDeliveryTerms().setIncoterms(value);
 
-                    PeriodType period = new PeriodType();
-                    catalogueLine.getGoodsItem().getDeliveryTerms().setEstimatedDeliveryPeriod(period);
-                    period.setDurationMeasure(estimatedDeliveryQuantity);
-
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_TRANSPORT_MODE)) {
-                    cell = TemplateGenerator.getCellWithMissingCellPolicy(row, columnIndex);
-                    if (cell != null) {
-                        value = TemplateGenerator.getCellStringValue(cell);
-                        CodeType transportModeCode = new CodeType();
-                        transportModeCode.setValue(value);
-                        catalogueLine.getGoodsItem().getDeliveryTerms().setTransportModeCode(transportModeCode);
-                    }
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_SPECIAL_TERMS)) {
+                List<String> values = (List<String>) parseCell(row,cellIndex,TEMPLATE_TRADING_DELIVERY_SPECIAL_TERMS, TEMPLATE_DATA_TYPE_TEXT, true);
 
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_APPLICABLE_ADDRESS_COUNTRY)) {
-                    List<AddressType> applicableAddressList = new ArrayList<>();
-                    cell = TemplateGenerator.getCellWithMissingCellPolicy(row, columnIndex);
-                    List<String> countries = parseMultiValues(cell);
-                    for(String addr : countries) {
-                        AddressType address = new AddressType();
-                        applicableAddressList.add(address);
-                        CountryType country = new CountryType();
-                        TextType cName = new TextType();
-                        cName.setLanguageID(defaultLanguage);
-                        cName.setValue(addr);
-                        country.setName(cName);
-                        address.setCountry(country);
-                    }
-                    catalogueLine.getRequiredItemLocationQuantity().setApplicableTerritoryAddress(applicableAddressList);
-
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PACKAGING_TYPE)) {
-                    cell = TemplateGenerator.getCellWithMissingCellPolicy(row, columnIndex);
-                    CodeType packagingType = new CodeType();
-                    if (cell != null) {
-                        value = TemplateGenerator.getCellStringValue(cell);
-                        packagingType.setValue(value);
+                for(String stvalue: values) {
+                    TextType textType = new TextType();
+                    textType.setLanguageID(defaultLanguage);
+                    textType.setValue(stvalue);
+
+                    catalogueLine.getGoodsItem().getDeliveryTerms().getSpecialTerms().add(textType);
+                }
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_ESTIMATED_DELIVERY_PERIOD)) {
+                int unitCellIndex = ++columnIndex;
+                QuantityType estimatedDeliveryQuantity = (QuantityType) parseCell(dataTypeRow,row,cellIndex,unitCellIndex,TEMPLATE_TRADING_DELIVERY_ESTIMATED_DELIVERY_PERIOD, TEMPLATE_DATA_TYPE_QUANTITY, false);
+                if (estimatedDeliveryQuantity != null) {
+                    if (estimatedDeliveryQuantity.getUnitCode() == null) {
+                        throw new TemplateParseException("A unit must be provided for the estimated delivery period of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
                     }
 
-                    PackageType packaging = new PackageType();
-                    catalogueLine.getGoodsItem().setContainingPackage(packaging);
-                    packaging.setPackagingTypeCode(packagingType);
+                } else {
+                    estimatedDeliveryQuantity = new QuantityType();
+                }
 
-                } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PACKAGE_QUANTITY)) {
-                    Cell unitCell = TemplateGenerator.getCellWithMissingCellPolicy(row, ++columnIndex);
-                    QuantityType packageQuantity = (QuantityType) parseCell(termsTab,cell,unitCell,TEMPLATE_TRADING_DELIVERY_PACKAGE_QUANTITY, TEMPLATE_DATA_TYPE_QUANTITY, false);
-                    if (packageQuantity != null) {
-                        if (packageQuantity.getUnitCode() == null) {
-                            throw new TemplateParseException("A unit must be provided for the package quantity of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
-                        }
-                    } else {
-                        packageQuantity = new QuantityType();
+                PeriodType period = new PeriodType();
+                catalogueLine.getGoodsItem().getDeliveryTerms().setEstimatedDeliveryPeriod(period);
+                period.setDurationMeasure(estimatedDeliveryQuantity);
+
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_TRANSPORT_MODE)) {
+                value = row.getValue(cellIndex);
+                CodeType transportModeCode = new CodeType();
+                transportModeCode.setValue(value);
+                catalogueLine.getGoodsItem().getDeliveryTerms().setTransportModeCode(transportModeCode);
+
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_APPLICABLE_ADDRESS_COUNTRY)) {
+                List<AddressType> applicableAddressList = new ArrayList<>();
+                List<String> countries = parseMultiValues(row.getValue(cellIndex));
+                for(String addr : countries) {
+                    AddressType address = new AddressType();
+                    applicableAddressList.add(address);
+                    CountryType country = new CountryType();
+                    TextType cName = new TextType();
+                    cName.setLanguageID(defaultLanguage);
+                    cName.setValue(addr);
+                    country.setName(cName);
+                    address.setCountry(country);
+                }
+                catalogueLine.getRequiredItemLocationQuantity().setApplicableTerritoryAddress(applicableAddressList);
+
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PACKAGING_TYPE)) {
+                CodeType packagingType = new CodeType();
+                value = row.getValue(cellIndex);
+                packagingType.setValue(value);
+
+                PackageType packaging = new PackageType();
+                catalogueLine.getGoodsItem().setContainingPackage(packaging);
+                packaging.setPackagingTypeCode(packagingType);
+
+            } else if (property.getPreferredName(null).contentEquals(TEMPLATE_TRADING_DELIVERY_PACKAGE_QUANTITY)) {
+                int unitCellIndex = ++columnIndex;
+                QuantityType packageQuantity = (QuantityType) parseCell(dataTypeRow,row,cellIndex,unitCellIndex,TEMPLATE_TRADING_DELIVERY_PACKAGE_QUANTITY, TEMPLATE_DATA_TYPE_QUANTITY, false);
+                if (packageQuantity != null) {
+                    if (packageQuantity.getUnitCode() == null) {
+                        throw new TemplateParseException("A unit must be provided for the package quantity of the item name: " + LanguageUtil.getValue(item.getName(),defaultLanguage) + " id: " + item.getManufacturersItemIdentification().getID());
                     }
-                    catalogueLine.getGoodsItem().getContainingPackage().setQuantity(packageQuantity);
+                } else {
+                    packageQuantity = new QuantityType();
                 }
-                columnIndex++;
+                catalogueLine.getGoodsItem().getContainingPackage().setQuantity(packageQuantity);
             }
+            columnIndex++;
         }
-
-        // create vats for catalogue lines
-        createVatsForCatalogueLines(catalogueLines, includeVat);
     }
 
     private void createVatsForCatalogueLines(List<CatalogueLineType> catalogueLines, Boolean includeVat){
@@ -685,12 +721,16 @@ public class TemplateParser {
         }
     }
 
-    private Object parseCell(Cell cell,String propertyName, String dataType, boolean multiValue) throws TemplateParseException {
-        return parseCell(null,cell,null,propertyName,dataType,multiValue);
+    private Object parseCell(TemplateRow row,int columnIndex,String propertyName, String dataType, boolean multiValue) throws TemplateParseException {
+        return parseCell(null,row,columnIndex,null,propertyName,dataType,multiValue);
     }
 
-    private Object parseCell(Sheet sheet,Cell cell,Cell adjacentCell,String propertyName, String dataType, boolean multiValue) throws TemplateParseException {
-        List<String> values = parseMultiValues(cell);
+    /**
+     * Parses the value(s) in the given column of the row. For quantities, the unit is read from the adjacent column
+     * whose data type is checked against the data type row of the tab.
+     */
+    private Object parseCell(TemplateRow dataTypeRow,TemplateRow row,int columnIndex,Integer unitColumnIndex,String propertyName, String dataType, boolean multiValue) throws TemplateParseException {
+        List<String> values = parseMultiValues(row.getValue(columnIndex));
         List<Object> results = new ArrayList<>();
         String normalizedDataType = TemplateGenerator.normalizeDataTypeForTemplate(dataType);
         for (String value : values) {
@@ -731,7 +771,7 @@ public class TemplateParser {
                     throw new TemplateParseException("'"+propertyName+"' property can only have number : '"+value+"' is not a number");
                 }
             } else if (normalizedDataType.compareToIgnoreCase(TemplateConfig.TEMPLATE_DATA_TYPE_QUANTITY) == 0) {
-                results.add(parseQuantity(sheet,propertyName,value, cell,adjacentCell));
+                results.add(parseQuantity(dataTypeRow,row,unitColumnIndex,propertyName,value));
             } else if (normalizedDataType.compareToIgnoreCase("FILE") == 0) {
                 results.add(parseBinaryObject(value));
             }
@@ -760,13 +800,9 @@ public class TemplateParser {
         return new Boolean(value);
     }
 
-    private QuantityType parseQuantity(Sheet sheet,String propertyName,String value, Cell cell, Cell adjacentCell) throws TemplateParseException {
+    private QuantityType parseQuantity(TemplateRow dataTypeRow,TemplateRow row,Integer unitColumnIndex,String propertyName,String value) throws TemplateParseException {
         QuantityType quantity = new QuantityType();
 
-        if (cell == null) {
-            return null;
-        }
-
         try {
             quantity.setValue(new BigDecimal(value));
         } catch (NumberFormatException e) {
@@ -776,17 +812,15 @@ public class TemplateParser {
         }
 
         // parse unit
-        if (adjacentCell == null) {
+        if (unitColumnIndex == null) {
             throw new TemplateParseException("Both value and unit must be provided for '"+propertyName+"' property");
         } else {
             // check the data type of the quantity unit
-            int columnIndex = adjacentCell.getColumnIndex();
-            Row row = sheet.getRow(2);
-            if(!TemplateGenerator.getCellStringValue(row.getCell(columnIndex)).contentEquals(TemplateConfig.TEMPLATE_QUANTITY_UNIT)){
+            if(!dataTypeRow.getValue(unitColumnIndex).contentEquals(TemplateConfig.TEMPLATE_QUANTITY_UNIT)){
                 throw new TemplateParseException("Quantity unit should be specified by using 'QUANTITY UNIT' data type");
             }
 
-            value = TemplateGenerator.getCellStringValue(adjacentCell);
+            value = row.getValue(unitColumnIndex);
             if(value.contentEquals("")) {
                 throw new TemplateParseException("Both value and unit must be provided for '"+propertyName+"' property");
             }
@@ -816,14 +850,8 @@ public class TemplateParser {
         return binaryObject;
     }
 
-    private List<String> parseMultiValues(Cell cell) {
+    private List<String> parseMultiValues(String value) {
         List<String> values = new ArrayList<>();
-        if (cell == null) {
-            return values;
-        }
-
-        String value = TemplateGenerator.getCellStringValue(cell);
-
         if (value.equals("")) {
             return values;
         } else {
@@ -831,22 +859,22 @@ public class TemplateParser {
         }
     }
 
-    private List<Category> getTemplateCategories(Sheet metadataTab) throws InvalidCategoryException {
+    private List<Category> getTemplateCategories(List<TemplateRow> metadataRows) throws InvalidCategoryException {
         List<Category> categories = new ArrayList<>();
-        Row row = metadataTab.getRow(0);
+        Map<Integer, TemplateRow> rows = new HashMap<>();
+        for (TemplateRow row : metadataRows) {
+            rows.put(row.getRowNum(), row);
+        }
         // if there is no category
-        if(row == null) {
+        if(rows.get(0) == null) {
             return categories;
         }
 
-        String categoryIdsStr = TemplateGenerator.getCellStringValue(metadataTab.getRow(0).getCell(0));
-        String taxonomyIdsStr = TemplateGenerator.getCellStringValue(metadataTab.getRow(1).getCell(0));
-        Row metadataRow = metadataTab.getRow(2);
+        String categoryIdsStr = rows.get(0).getValue(0);
+        String taxonomyIdsStr = getHeaderRow(rows, 1).getValue(0);
+        TemplateRow metadataRow = rows.get(2);
         if(metadataRow != null) {
-            Cell cell = TemplateGenerator.getCellWithMissingCellPolicy(metadataRow, 0);
-            if(cell != null) {
-                defaultLanguage = TemplateGenerator.getCellStringValue(metadataTab.getRow(2).getCell(0));
-            }
+            defaultLanguage = metadataRow.getValue(0);
         }
         if (defaultLanguage.trim().equals("")) {
             defaultLanguage = "en";
@@ -855,6 +883,8 @@ public class TemplateParser {
         List<String> categoryIds = Arrays.asList(categoryIdsStr.split(","));
         List<String> taxonomyIds = Arrays.asList(taxonomyIdsStr.split(","));
 
+        // categories are resolved one by one as the template generator does, so that the properties of each category
+        // match the columns allocated for them in the template
         IndexCategoryService categoryServicecsm = SpringBridge.getInstance().getIndexCategoryService();
         for (int i = 0; i < categoryIds.size(); i++) {
             Category category = categoryServicecsm.getCategory(taxonomyIds.get(i), categoryIds.get(i));
@@ -864,5 +894,120 @@ public class TemplateParser {
         return categories;
     }
 
+    private static TemplateRow getHeaderRow(Map<Integer, TemplateRow> header, int rowNum) {
+        TemplateRow row = header.get(rowNum);
+        return row != null ? row : new TemplateRow(rowNum);
+    }
+
+    /**
+     * Dispatches the rows of the product properties tab in batches to the pool shared by all uploads and collects the
+     * parsed catalogue lines in the row order. At most {@code 2 * parallelism} batches of an upload are kept in memory,
+     * i.e. adding a row blocks when the workers fall behind.
+     */
+    private class ProductRowParser {
+        // number of rows parsed by a worker at once
+        private static final int ROW_BATCH_SIZE = 50;
+
+        private final List<Category> categories;
+        private final int parallelism;
+        private final ThreadPoolExecutor executorService;
+        // batches being parsed in the row order
+        private final Deque<Future<ProductRowBatch>> pendingBatches = new ArrayDeque<>();
+        private List<TemplateRow> currentBatch = new ArrayList<>();
+
+        private final List<CatalogueLineType> results = new ArrayList<>();
+        // identifiers of the products in template
+        private final Set<String> productIds = new HashSet<>();
+
+        private ProductRowParser(List<Category> categories, ThreadPoolExecutor executorService) {
+            this.categories = categories;
+            this.parallelism = Math.max(1, executorService.getMaximumPoolSize());
+            this.executorService = executorService;
+        }
+
+        private void add(TemplateRow row) throws TemplateParseException {
+            currentBatch.add(row);
+            if (currentBatch.size() >= ROW_BATCH_SIZE) {
+                dispatch();
+            }
+        }
+
+        /**
+         * Waits for the remaining batches and returns the catalogue lines of all rows
+         */
+        private List<CatalogueLineType> complete() throws TemplateParseException {
+            if (!currentBatch.isEmpty()) {
+                dispatch();
+            }
+            while (!pendingBatches.isEmpty()) {
+                collect(pendingBatches.poll());
+            }
+            return results;
+        }
+
+        /**
+         * Cancels the batches which are not collected yet e.g. when a row fails to be parsed. The pool is shared, so
+         * it is not shut down.
+         */
+        private void cancel() {
+            for (Future<ProductRowBatch> pendingBatch : pendingBatches) {
+                pendingBatch.cancel(true);
+            }
+            pendingBatches.clear();
+        }
 
-}
\ No newline at end of file
+        private void dispatch() throws TemplateParseException {
+            if (pendingBatches.size() >= 2 * parallelism) {
+                collect(pendingBatches.poll());
+            }
+            List<TemplateRow> batch = currentBatch;
+            currentBatch = new ArrayList<>();
+            pendingBatches.add(executorService.submit(() -> parseProductRows(batch, categories)));
+        }
+
+        private void collect(Future<ProductRowBatch> future) throws TemplateParseException {
+            ProductRowBatch batch;
+            try {
+                batch = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TemplateParseException("Interrupted while parsing the product properties tab", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new TemplateParseException("Failed to parse the product properties tab", e.getCause());
+            }
+
+            for (CatalogueLineType catalogueLine : batch.catalogueLines) {
+                String productId = catalogueLine.getGoodsItem().getItem().getManufacturersItemIdentification().getID();
+                // throw an exception if the same id is used for multiple products
+                if(!productIds.add(productId)){
+                    throw new TemplateParseException(String.format("There exists multiple products with the same id: %s in the template",productId));
+                }
+                results.add(catalogueLine);
+            }
+            if (batch.error != null) {
+                throw batch.error;
+            }
+        }
+    }
+
+    private static class ProductRowBatch {
+        private final List<CatalogueLineType> catalogueLines = new ArrayList<>();
+        // error for the first row failed to be parsed. The rows following that row are not parsed.
+        private TemplateParseException error;
+    }
+
+    private static class PropertyColumn {
+        private final Category category;
+        private final Property property;
+        private final int columnIndex;
+
+        private PropertyColumn(Category category, Property property, int columnIndex) {
+            this.category = category;
+            this.property = property;
+            this.columnIndex = columnIndex;
+        }
+    }
+}
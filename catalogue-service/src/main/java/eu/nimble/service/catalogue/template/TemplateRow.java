@@ -0,0 +1,50 @@
+package eu.nimble.service.catalogue.template;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * String values of a single template row. Only the cells having a value are kept, the other cells are considered as
+ * empty.
+ */
+class TemplateRow {
+    private final int rowNum;
+    // column index -> cell value
+    private final Map<Integer, String> values = new HashMap<>();
+    private int lastCellNum = 0;
+
+    TemplateRow(int rowNum) {
+        this.rowNum = rowNum;
+    }
+
+    int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * Returns the value of the cell at the given column or an empty string if the cell is empty
+     */
+    String getValue(int columnIndex) {
+        String value = values.get(columnIndex);
+        return value != null ? value : "";
+    }
+
+    void setValue(int columnIndex, String value) {
+        if(value == null || value.isEmpty()) {
+            return;
+        }
+        values.put(columnIndex, value);
+        lastCellNum = Math.max(lastCellNum, columnIndex + 1);
+    }
+
+    /**
+     * Returns the index of the last non-empty cell plus one, similar to {@link org.apache.poi.ss.usermodel.Row#getLastCellNum()}
+     */
+    int getLastCellNum() {
+        return lastCellNum;
+    }
+
+    boolean isEmpty() {
+        return values.isEmpty();
+    }
+}
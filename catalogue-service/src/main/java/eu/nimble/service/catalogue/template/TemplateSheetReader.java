@@ -0,0 +1,183 @@
+package eu.nimble.service.catalogue.template;
+
+import eu.nimble.service.catalogue.exception.TemplateParseException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads the sheets of a template with POI's event model. Sheets are parsed with SAX and handed over to the caller row
+ * by row, so that only the row being processed is kept in memory instead of the whole workbook. Cell values are
+ * provided as they are stored in the sheet, i.e. numbers are not formatted according to the cell styles, to be
+ * consistent with {@link TemplateGenerator#getCellStringValue(org.apache.poi.ss.usermodel.Cell)}.
+ */
+class TemplateSheetReader implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TemplateSheetReader.class);
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+
+    TemplateSheetReader(File template) throws TemplateParseException {
+        try {
+            pkg = OPCPackage.open(template, PackageAccess.READ);
+        } catch (Exception e) {
+            throw new TemplateParseException("Invalid format for the submitted template", e);
+        }
+        try {
+            reader = new XSSFReader(pkg);
+            sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            styles = reader.getStylesTable();
+        } catch (IOException | OpenXML4JException | SAXException e) {
+            pkg.revert();
+            throw new TemplateParseException("Failed to read the submitted template", e);
+        }
+    }
+
+    /**
+     * Passes the rows of the given sheet to the handler one by one in the order they appear in the sheet. Rows without
+     * any value are passed as empty rows.
+     */
+    void readSheet(String sheetName, TemplateRowHandler rowHandler) throws TemplateParseException {
+        InputStream sheetStream = null;
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                InputStream stream = sheets.next();
+                if(sheets.getSheetName().equals(sheetName)) {
+                    sheetStream = stream;
+                    break;
+                }
+                stream.close();
+            }
+            if(sheetStream == null) {
+                throw new TemplateParseException(String.format("No '%s' tab in the submitted template", sheetName));
+            }
+
+            XMLReader sheetParser = SAXHelper.newXMLReader();
+            sheetParser.setContentHandler(new XSSFSheetXMLHandler(styles, null, sharedStrings, new RowCollector(rowHandler), new RawValueFormatter(), false));
+            sheetParser.parse(new InputSource(sheetStream));
+
+        } catch (RowHandlingException e) {
+            throw e.getCause();
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new TemplateParseException(String.format("Failed to read the '%s' tab of the submitted template", sheetName), e);
+        } finally {
+            if(sheetStream != null) {
+                try {
+                    sheetStream.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close the stream for sheet: {}", sheetName, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads all rows of the given sheet. It should be used only for the sheets having a few rows e.g. metadata tab.
+     */
+    List<TemplateRow> readRows(String sheetName) throws TemplateParseException {
+        List<TemplateRow> rows = new ArrayList<>();
+        readSheet(sheetName, rows::add);
+        return rows;
+    }
+
+    @Override
+    public void close() {
+        // the package is opened in read-only mode, so there is nothing to be saved
+        pkg.revert();
+    }
+
+    @FunctionalInterface
+    interface TemplateRowHandler {
+        void handleRow(TemplateRow row) throws TemplateParseException;
+    }
+
+    /**
+     * Collects the cell values of the current row and passes the row to the {@link TemplateRowHandler} once the row ends
+     */
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final TemplateRowHandler rowHandler;
+        private TemplateRow currentRow;
+        private int currentColumn;
+
+        private RowCollector(TemplateRowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow = new TemplateRow(rowNum);
+            currentColumn = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            try {
+                rowHandler.handleRow(currentRow);
+            } catch (TemplateParseException e) {
+                throw new RowHandlingException(e);
+            }
+            currentRow = null;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // cell references are optional in the sheet xml. If not available, the cell follows the previous one
+            currentColumn = cellReference != null ? new CellReference(cellReference).getCol() : currentColumn + 1;
+            currentRow.setValue(currentColumn, formattedValue);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+
+    /**
+     * Returns the numeric values without applying the number formats of the cells e.g. 1 instead of 1.00 or a date
+     */
+    private static class RawValueFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    /**
+     * Carries the exceptions thrown by the {@link TemplateRowHandler} through the SAX parser
+     */
+    private static class RowHandlingException extends RuntimeException {
+        private RowHandlingException(TemplateParseException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized TemplateParseException getCause() {
+            return (TemplateParseException) super.getCause();
+        }
+    }
+}
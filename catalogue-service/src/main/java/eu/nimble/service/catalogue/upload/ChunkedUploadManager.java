@@ -0,0 +1,242 @@
+package eu.nimble.service.catalogue.upload;
+
+import eu.nimble.service.catalogue.exception.CatalogueServiceException;
+import eu.nimble.service.catalogue.exception.UploadSessionClosedException;
+import eu.nimble.service.catalogue.model.upload.UploadJob;
+import eu.nimble.service.catalogue.model.upload.UploadSession;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the resumable upload sessions. Each chunk is verified against its SHA-256 checksum and written to its position
+ * in a file in the staging directory. Once all chunks are received, the file is handed over to the
+ * {@link UploadJobManager} so that it is processed like any other staged upload.
+ *
+ * The number of open sessions and the total size reserved for them are limited, and the sessions without any chunk
+ * received for {@code session-expiry-minutes} are removed periodically.
+ */
+@Component
+public class ChunkedUploadManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadManager.class);
+
+    @Value("${nimble.catalog.upload.chunk-size:5}")
+    private int chunkSizeInMB;
+    @Value("${nimble.catalog.upload.max-size:1024}")
+    private long maxSizeInMB;
+    @Value("${nimble.catalog.upload.session-expiry-minutes:1440}")
+    private long sessionExpiryMinutes;
+    @Value("${nimble.catalog.upload.max-sessions:20}")
+    private int maxSessions;
+    @Value("${nimble.catalog.upload.max-total-size:4096}")
+    private long maxTotalSizeInMB;
+
+    @Autowired
+    private UploadJobManager uploadJobManager;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    // number of the open sessions and the total size of their staged files
+    private int reservedSessions = 0;
+    private long reservedSize = 0;
+    private ScheduledExecutorService expiryExecutor;
+
+    @PostConstruct
+    private void init() {
+        expiryExecutor = Executors.newSingleThreadScheduledExecutor();
+        expiryExecutor.scheduleWithFixedDelay(this::removeExpiredSessions, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        expiryExecutor.shutdownNow();
+    }
+
+    /**
+     * Creates a session and reserves the space for the whole file in the staging directory
+     *
+     * @throws RejectedExecutionException if the maximum number of sessions or the maximum total size would be exceeded
+     */
+    public UploadSession createSession(UploadJob.Type type, String partyId, String fileName, long size) throws IOException {
+        if (size <= 0 || size > maxSizeInMB * 1024 * 1024) {
+            throw new CatalogueServiceException(String.format("Upload size should be between 1 byte and %d MB", maxSizeInMB));
+        }
+        reserve(size);
+
+        UploadSession session;
+        try {
+            // reserve the space for the whole file so that the chunks can be written in any order
+            Path stagedFile = Files.createTempFile(Paths.get(uploadJobManager.getStagingDirectory()), "chunked-", ".upload");
+            session = new UploadSession(UUID.randomUUID().toString(), type, partyId, fileName, size, chunkSizeInMB * 1024 * 1024, stagedFile.toFile());
+            try (RandomAccessFile raf = new RandomAccessFile(stagedFile.toFile(), "rw")) {
+                raf.setLength(size);
+            } catch (IOException e) {
+                Files.deleteIfExists(stagedFile);
+                throw e;
+            }
+        } catch (IOException e) {
+            release(size);
+            throw e;
+        }
+
+        sessions.put(session.getSessionId(), session);
+        logger.info("Created upload session: {} for party: {}, size: {}, chunks: {}", session.getSessionId(), partyId, size, session.getChunkCount());
+        return session;
+    }
+
+    public UploadSession getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Writes the given chunk into the staged file. The content is read completely and verified before anything is
+     * written, so a failed chunk never overwrites a previously received one.
+     *
+     * @throws UploadSessionClosedException if the session is completed, aborted or expired in the meantime
+     */
+    public UploadSession writeChunk(UploadSession session, int index, InputStream content, String checksum) throws IOException {
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new CatalogueServiceException(String.format("Invalid chunk index: %d. The upload consists of %d chunks", index, session.getChunkCount()));
+        }
+        int length = session.getChunkLength(index);
+        byte[] chunk = new byte[length];
+        int read = IOUtils.read(content, chunk);
+        if (read != length || content.read() != -1) {
+            throw new CatalogueServiceException(String.format("Chunk %d should consist of %d bytes", index, length));
+        }
+        if (!getChecksum(chunk).equalsIgnoreCase(checksum)) {
+            throw new CatalogueServiceException(String.format("Checksum of chunk %d does not match", index));
+        }
+
+        // the session is locked while the chunk is written, so that it is not closed and its file is not deleted or
+        // handed over in the meantime
+        synchronized (session) {
+            checkOpen(session);
+            try (FileChannel channel = FileChannel.open(session.getStagedFile().toPath(), StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                long position = (long) index * session.getChunkSize();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            session.markChunkReceived(index);
+        }
+        return session;
+    }
+
+    /**
+     * Queues the assembled file for processing and closes the session. If the job is rejected, the session is kept as
+     * it is, so the completion can be requested again later.
+     *
+     * @throws RejectedExecutionException if the queue of the upload jobs is full
+     * @throws UploadSessionClosedException if the session is completed, aborted or expired in the meantime
+     */
+    public UploadJob complete(UploadSession session, UploadJobManager.UploadTask task) {
+        synchronized (session) {
+            checkOpen(session);
+            if (!session.isComplete()) {
+                throw new CatalogueServiceException(String.format("Upload session %s is missing chunks starting from: %d", session.getSessionId(), session.getNextChunk()));
+            }
+            UploadJob job = uploadJobManager.submit(session.getType(), session.getPartyId(), session.getStagedFile(), task);
+            // the file is owned by the job from now on
+            close(session);
+            return job;
+        }
+    }
+
+    public void abort(UploadSession session) {
+        synchronized (session) {
+            if (close(session)) {
+                deleteStagedFile(session);
+            }
+        }
+    }
+
+    private void removeExpiredSessions() {
+        long threshold = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(sessionExpiryMinutes);
+        for (UploadSession session : sessions.values()) {
+            synchronized (session) {
+                if (session.getUpdatedAt().getTime() < threshold && close(session)) {
+                    deleteStagedFile(session);
+                    logger.info("Removed expired upload session: {}", session.getSessionId());
+                }
+            }
+        }
+    }
+
+    private void checkOpen(UploadSession session) {
+        if (session.isClosed()) {
+            throw new UploadSessionClosedException(String.format("Upload session %s has already been completed, aborted or expired", session.getSessionId()));
+        }
+    }
+
+    /**
+     * Closes the session and releases its reservation. Returns {@code false} if the session has already been closed.
+     */
+    private boolean close(UploadSession session) {
+        if (!session.close()) {
+            return false;
+        }
+        sessions.remove(session.getSessionId());
+        release(session.getSize());
+        return true;
+    }
+
+    private synchronized void reserve(long size) {
+        if (reservedSessions >= maxSessions) {
+            throw new RejectedExecutionException(String.format("There are already %d open upload sessions", reservedSessions));
+        }
+        if (reservedSize + size > maxTotalSizeInMB * 1024 * 1024) {
+            throw new RejectedExecutionException(String.format("The open upload sessions already reserve %d bytes", reservedSize));
+        }
+        reservedSessions++;
+        reservedSize += size;
+    }
+
+    private synchronized void release(long size) {
+        reservedSessions--;
+        reservedSize -= size;
+    }
+
+    private void deleteStagedFile(UploadSession session) {
+        try {
+            Files.deleteIfExists(session.getStagedFile().toPath());
+        } catch (IOException e) {
+            logger.warn("Failed to delete staged file of the upload session: {}", session.getSessionId(), e);
+        }
+    }
+
+    private static String getChecksum(byte[] content) {
+        try {
+            return Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
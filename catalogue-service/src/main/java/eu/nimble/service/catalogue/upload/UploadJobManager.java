@@ -0,0 +1,161 @@
+package eu.nimble.service.catalogue.upload;
+
+import eu.nimble.service.catalogue.model.upload.UploadJob;
+import eu.nimble.utility.ExecutionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Keeps the uploads which are processed in the background. Uploaded files are copied into a local staging directory
+ * so that the HTTP request can be completed right away, and they are processed by a bounded executor afterwards.
+ */
+@Component
+public class UploadJobManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadJobManager.class);
+
+    @Value("${nimble.catalog.upload.staging-directory:${java.io.tmpdir}/nimble/upload}")
+    private String stagingDirectory;
+    @Value("${nimble.catalog.upload.parallelism:2}")
+    private int parallelism;
+    @Value("${nimble.catalog.upload.queue-capacity:20}")
+    private int queueCapacity;
+    @Value("${nimble.catalog.upload.job-retention-minutes:60}")
+    private long jobRetentionMinutes;
+
+    @Autowired
+    private ExecutionContext executionContext;
+
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @FunctionalInterface
+    public interface UploadTask {
+        /**
+         * Processes the staged file of the job and returns the uuid of the affected catalogue
+         */
+        String process(UploadJob job, File stagedFile) throws Exception;
+    }
+
+    @PostConstruct
+    private void init() throws IOException {
+        Files.createDirectories(Paths.get(stagingDirectory));
+        executor = new ThreadPoolExecutor(Math.max(1, parallelism), Math.max(1, parallelism), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Copies the given content into the staging directory and queues the job processing it.
+     *
+     * @throws RejectedExecutionException if the queue of the executor is full
+     */
+    public UploadJob submit(UploadJob.Type type, String partyId, InputStream content, UploadTask task) throws IOException {
+        Path stagedFile = Files.createTempFile(Paths.get(stagingDirectory), type.name().toLowerCase() + "-", ".upload");
+        try {
+            Files.copy(content, stagedFile, StandardCopyOption.REPLACE_EXISTING);
+            return submit(type, partyId, stagedFile.toFile(), task);
+        } catch (IOException | RejectedExecutionException e) {
+            Files.deleteIfExists(stagedFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues the job processing the given file which is already available in the staging directory. The file is
+     * deleted once the job finishes. If the job is rejected, the file is kept so that it can be submitted again.
+     *
+     * @throws RejectedExecutionException if the queue of the executor is full
+     */
+    public UploadJob submit(UploadJob.Type type, String partyId, File stagedFile, UploadTask task) {
+        removeExpiredJobs();
+
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), type, partyId);
+        job.setStagedFile(stagedFile);
+        // the job uses the token of the user submitting it, e.g. while indexing the catalogue
+        String bearerToken = executionContext.getBearerToken();
+        jobs.put(job.getJobId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job, task, bearerToken)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            throw e;
+        }
+        logger.info("Queued {} upload job: {} for party: {}", type, job.getJobId(), partyId);
+        return job;
+    }
+
+    public UploadJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public String getStagingDirectory() {
+        return stagingDirectory;
+    }
+
+    private void run(UploadJob job, UploadTask task, String bearerToken) {
+        UploadJobRequestAttributes requestAttributes = new UploadJobRequestAttributes();
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        executionContext.setBearerToken(bearerToken);
+        try {
+            job.enterStage(UploadJob.Stage.STAGED, 0, true);
+            String catalogueUuid = task.process(job, job.getStagedFile());
+            job.complete(catalogueUuid);
+            logger.info("Completed upload job: {}", job.getJobId());
+
+        } catch (CancellationException e) {
+            job.fail(e.getMessage());
+            logger.info("Cancelled upload job: {}", job.getJobId());
+
+        } catch (Exception e) {
+            job.fail(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            logger.error("Failed to process upload job: {}", job.getJobId(), e);
+
+        } finally {
+            deleteStagedFile(job);
+            requestAttributes.requestCompleted();
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    private void removeExpiredJobs() {
+        long threshold = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(jobRetentionMinutes);
+        Iterator<UploadJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            UploadJob job = it.next();
+            if (job.isFinished() && job.getUpdatedAt().getTime() < threshold) {
+                it.remove();
+            }
+        }
+    }
+
+    private void deleteStagedFile(UploadJob job) {
+        try {
+            Files.deleteIfExists(job.getStagedFile().toPath());
+        } catch (IOException e) {
+            logger.warn("Failed to delete staged file of the upload job: {}", job.getJobId(), e);
+        }
+    }
+}
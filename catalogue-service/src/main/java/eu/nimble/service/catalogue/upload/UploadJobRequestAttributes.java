@@ -0,0 +1,60 @@
+package eu.nimble.service.catalogue.upload;
+
+import org.springframework.web.context.request.AbstractRequestAttributes;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request attributes bound to the thread processing an upload job. The HTTP request submitting the job is completed
+ * before the job runs, so its attributes can not be used by the job. Instead, the request scoped beans (e.g. the
+ * execution context keeping the bearer token of the user) are created in these attributes for the duration of the job.
+ */
+class UploadJobRequestAttributes extends AbstractRequestAttributes {
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    @Override
+    public Object getAttribute(String name, int scope) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value, int scope) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name, int scope) {
+        attributes.remove(name);
+        removeRequestDestructionCallback(name);
+    }
+
+    @Override
+    public String[] getAttributeNames(int scope) {
+        return attributes.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public void registerDestructionCallback(String name, Runnable callback, int scope) {
+        registerRequestDestructionCallback(name, callback);
+    }
+
+    @Override
+    public Object resolveReference(String key) {
+        return null;
+    }
+
+    @Override
+    public String getSessionId() {
+        throw new IllegalStateException("No session is available for upload jobs");
+    }
+
+    @Override
+    public Object getSessionMutex() {
+        throw new IllegalStateException("No session is available for upload jobs");
+    }
+
+    @Override
+    protected void updateAccessedSessionAttributes() {
+    }
+}
@@ -12,6 +12,7 @@ import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.CodeType;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -37,6 +38,22 @@ public class DataIntegratorUtil {
         setCatalogueDocumentReference(catalogue.getUUID(),catalogueLine);
     }
 
+    /**
+     * Enhances the given lines of the catalogue together. The parents of the categories shared by the lines are
+     * retrieved only once.
+     */
+    public static void ensureCatalogueLinesDataIntegrityAndEnhancement(List<CatalogueLineType> catalogueLines, CatalogueType catalogue) throws InvalidCategoryException {
+        Map<String, List<Category>> parentCategoryCache = new HashMap<>();
+        for(CatalogueLineType catalogueLine : catalogueLines) {
+            catalogueLine.getGoodsItem().getItem().setManufacturerParty(catalogue.getProviderParty());
+            setDefaultCategories(catalogueLine);
+            List<CommodityClassificationType> commodityClassifications = catalogueLine.getGoodsItem().getItem().getCommodityClassification();
+            commodityClassifications.addAll(getParentCategories(commodityClassifications, parentCategoryCache));
+            checkCatalogueLineIDs(catalogueLine);
+            setCatalogueDocumentReference(catalogue.getUUID(),catalogueLine);
+        }
+    }
+
     public static void setParentCategories(List<CommodityClassificationType> commodityClassifications) throws InvalidCategoryException {
         // add parents of the selected category to commodity classifications of the item
         for(CommodityClassificationType cct : getParentCategories(commodityClassifications)){
@@ -75,6 +92,10 @@ public class DataIntegratorUtil {
     }
 
     public static List<CommodityClassificationType> getParentCategories(List<CommodityClassificationType> commodityClassifications) throws InvalidCategoryException {
+        return getParentCategories(commodityClassifications, new HashMap<>());
+    }
+
+    private static List<CommodityClassificationType> getParentCategories(List<CommodityClassificationType> commodityClassifications, Map<String, List<Category>> parentCategoryCache) throws InvalidCategoryException {
         // get uris of the given categories
         List<String> uris = new ArrayList<>();
         for(CommodityClassificationType commodityClassificationType:commodityClassifications){
@@ -89,8 +110,13 @@ public class DataIntegratorUtil {
             if(cct.getItemClassificationCode().getListID().contentEquals("Default")){
                 continue;
             }
-            IndexCategoryService csm = SpringBridge.getInstance().getIndexCategoryService();
-            List<Category> parentCategories = csm.getParentCategories(cct.getItemClassificationCode().getListID(),cct.getItemClassificationCode().getValue());
+            String cacheKey = cct.getItemClassificationCode().getListID() + "|" + cct.getItemClassificationCode().getValue();
+            List<Category> parentCategories = parentCategoryCache.get(cacheKey);
+            if(parentCategories == null){
+                IndexCategoryService csm = SpringBridge.getInstance().getIndexCategoryService();
+                parentCategories = csm.getParentCategories(cct.getItemClassificationCode().getListID(),cct.getItemClassificationCode().getValue());
+                parentCategoryCache.put(cacheKey, parentCategories);
+            }
 
             for(int i = 0; i< parentCategories.size();i++){
                 Category category = parentCategories.get(i);
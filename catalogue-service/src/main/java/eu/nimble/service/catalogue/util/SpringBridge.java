@@ -6,14 +6,19 @@ import eu.nimble.common.rest.indexing.IIndexingServiceClient;
 import eu.nimble.service.catalogue.category.IndexCategoryService;
 import eu.nimble.service.catalogue.category.TaxonomyManager;
 import eu.nimble.service.catalogue.config.CatalogueServiceConfig;
+import eu.nimble.service.catalogue.persistence.util.CataloguePurgeRegistry;
 import eu.nimble.service.catalogue.persistence.util.LockPool;
 import feign.Response;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadPoolExecutor;
+
 /**
  * Created by suat on 24-Jul-18.
  */
@@ -37,9 +42,17 @@ public class SpringBridge implements ApplicationContextAware {
     @Autowired
     private LockPool lockPool;
     @Autowired
+    private CataloguePurgeRegistry cataloguePurgeRegistry;
+    @Autowired
     private TaxonomyManager taxonomyManager;
     @Autowired
     private IDelegateClient delegateClient;
+    @Autowired
+    @Qualifier("categorydbDataSource")
+    private DataSource categoryDbDataSource;
+    @Autowired
+    @Qualifier("templateParseExecutor")
+    private ThreadPoolExecutor templateParseExecutor;
 
     private String federationId = null;
 
@@ -65,6 +78,10 @@ public class SpringBridge implements ApplicationContextAware {
         return lockPool;
     }
 
+    public CataloguePurgeRegistry getCataloguePurgeRegistry() {
+        return cataloguePurgeRegistry;
+    }
+
     public TaxonomyManager getTaxonomyManager() {
         return taxonomyManager;
     }
@@ -77,6 +94,14 @@ public class SpringBridge implements ApplicationContextAware {
         return delegateClient;
     }
 
+    public DataSource getCategoryDbDataSource() {
+        return categoryDbDataSource;
+    }
+
+    public ThreadPoolExecutor getTemplateParseExecutor() {
+        return templateParseExecutor;
+    }
+
     public String getFederationId() {
         return getCatalogueServiceConfig().getFederationInstanceId();
     }
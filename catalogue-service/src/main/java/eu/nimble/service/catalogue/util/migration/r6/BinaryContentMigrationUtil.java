@@ -1,5 +1,6 @@
 package eu.nimble.service.catalogue.util.migration.r6;
 
+import eu.nimble.service.catalogue.persistence.util.BinaryContentHashRegistry;
 import eu.nimble.service.model.ubl.commonbasiccomponents.BinaryObjectType;
 import eu.nimble.utility.persistence.JPARepositoryFactory;
 import eu.nimble.utility.persistence.binary.BinaryContentService;
@@ -35,6 +36,9 @@ public class BinaryContentMigrationUtil {
     @Autowired
     private ImageScaler imageScaler;
 
+    @Autowired
+    private BinaryContentHashRegistry binaryContentHashRegistry;
+
     public void migrateBinaryObjects() {
 
         List<BinaryObjectType> binaryObjects = repoFactory.forCatalogueRepository(true).getEntities(BinaryObjectType.class);
@@ -113,6 +117,7 @@ public class BinaryContentMigrationUtil {
             originalBinaryObject.setMimeCode(binaryObject.getMimeCode());
             originalBinaryObject.setFileName(binaryObject.getFileName());
             originalBinaryObject = new BinaryContentService().createContent(originalBinaryObject);
+            binaryContentHashRegistry.saveHash(originalBinaryObject.getUri(), BinaryContentHashRegistry.computeHash(originalContentBytes));
 
             // refer to the original content from the initial binary object
             binaryObject.setUri(originalBinaryObject.getUri());
@@ -0,0 +1,108 @@
+package eu.nimble.service.catalogue;
+
+import eu.nimble.service.catalogue.model.upload.UploadMergeResult;
+import eu.nimble.service.model.ubl.catalogue.CatalogueType;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.*;
+import eu.nimble.service.model.ubl.commonbasiccomponents.QuantityType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class CatalogueServiceImplTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogueServiceImplTest.class);
+
+    private final CatalogueServiceImpl service = new CatalogueServiceImpl();
+
+    @Test
+    public void mergesUploadedLinesInAppendMode() {
+        CatalogueType catalogue = new CatalogueType();
+        catalogue.getCatalogueLine().add(createCatalogueLine("1", 1));
+        catalogue.getCatalogueLine().add(createCatalogueLine("2", 1));
+        catalogue.getCatalogueLine().add(createCatalogueLine("3", 1));
+
+        List<CatalogueLineType> uploadedLines = new ArrayList<>();
+        uploadedLines.add(createCatalogueLine("4", 2));
+        uploadedLines.add(createCatalogueLine("2", 2));
+        uploadedLines.add(createCatalogueLine("5", 2));
+
+        UploadMergeResult mergeResult = service.updateLinesForUploadMode(catalogue, "append", uploadedLines);
+        Assert.assertEquals(2, mergeResult.getInserted());
+        Assert.assertEquals(1, mergeResult.getUpdated());
+        Assert.assertEquals(0, mergeResult.getRemoved());
+        Assert.assertEquals(2, mergeResult.getUnchanged());
+
+        // the existing lines keep their positions and the new ones are appended in the order of the upload
+        Map<String, CatalogueLineType> lines = new HashMap<>();
+        List<String> lineIds = new ArrayList<>();
+        for (CatalogueLineType line : catalogue.getCatalogueLine()) {
+            String lineId = line.getGoodsItem().getItem().getManufacturersItemIdentification().getID();
+            lines.put(lineId, line);
+            lineIds.add(lineId);
+        }
+        Assert.assertEquals(5, lineIds.size());
+        Assert.assertEquals("1", lineIds.get(0));
+        Assert.assertEquals("2", lineIds.get(1));
+        Assert.assertEquals("3", lineIds.get(2));
+        Assert.assertEquals("4", lineIds.get(3));
+        Assert.assertEquals("5", lineIds.get(4));
+        Assert.assertEquals(0, new BigDecimal(2).compareTo(lines.get("2").getMinimumOrderQuantity().getValue()));
+        Assert.assertEquals(0, new BigDecimal(1).compareTo(lines.get("1").getMinimumOrderQuantity().getValue()));
+    }
+
+    // merges uploads in which half of the lines exist in the catalogue. A merge comparing each uploaded line with all
+    // the existing ones does not complete within the limit for the largest upload.
+    @Test
+    public void mergesLargeUploadsInLinearTime() {
+        for (int size : new int[]{10000, 50000, 100000}) {
+            CatalogueType catalogue = new CatalogueType();
+            for (int i = 0; i < size; i++) {
+                catalogue.getCatalogueLine().add(createCatalogueLine(Integer.toString(i), 1));
+            }
+            List<CatalogueLineType> uploadedLines = new ArrayList<>();
+            for (int i = size / 2; i < size + size / 2; i++) {
+                uploadedLines.add(createCatalogueLine(Integer.toString(i), 2));
+            }
+
+            long start = System.nanoTime();
+            UploadMergeResult mergeResult = service.updateLinesForUploadMode(catalogue, "append", uploadedLines);
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.info("Merged {} uploaded lines into {} lines in {} ms", size, size, duration);
+
+            Assert.assertEquals(size - size / 2, mergeResult.getInserted());
+            Assert.assertEquals(size - size / 2, mergeResult.getUpdated());
+            Assert.assertEquals(size / 2, mergeResult.getUnchanged());
+            Assert.assertEquals(size + size - size / 2, catalogue.getCatalogueLine().size());
+            Assert.assertTrue(duration < TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private static CatalogueLineType createCatalogueLine(String id, int minimumOrderQuantity) {
+        ItemIdentificationType itemIdentification = new ItemIdentificationType();
+        itemIdentification.setID(id);
+        ItemType item = new ItemType();
+        item.setManufacturersItemIdentification(itemIdentification);
+        GoodsItemType goodsItem = new GoodsItemType();
+        goodsItem.setItem(item);
+        goodsItem.setDeliveryTerms(new DeliveryTermsType());
+        ItemLocationQuantityType itemLocationQuantity = new ItemLocationQuantityType();
+        itemLocationQuantity.setPrice(new PriceType());
+        QuantityType quantity = new QuantityType();
+        quantity.setValue(new BigDecimal(minimumOrderQuantity));
+
+        CatalogueLineType catalogueLine = new CatalogueLineType();
+        catalogueLine.setID(id);
+        catalogueLine.setGoodsItem(goodsItem);
+        catalogueLine.setRequiredItemLocationQuantity(itemLocationQuantity);
+        catalogueLine.setMinimumOrderQuantity(quantity);
+        return catalogueLine;
+    }
+}
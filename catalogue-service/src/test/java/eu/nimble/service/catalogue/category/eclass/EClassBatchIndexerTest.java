@@ -0,0 +1,79 @@
+package eu.nimble.service.catalogue.category.eclass;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+public class EClassBatchIndexerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void indexesAllResourcesAndReportsFailures() throws Exception {
+        List<String> indexed = Collections.synchronizedList(new ArrayList<>());
+        EClassBatchIndexer<String> indexer = new EClassBatchIndexer<>("test", 3, 2, null, Function.identity(), resource -> {
+            if(resource.equals("r4")) {
+                return false;
+            }
+            if(resource.equals("r7")) {
+                throw new IllegalStateException("index is not available");
+            }
+            return indexed.add(resource);
+        });
+        for(int i = 0; i < 10; i++) {
+            indexer.add("r" + i);
+        }
+
+        List<String> failedKeys = indexer.complete();
+        Collections.sort(failedKeys);
+        Assert.assertEquals(Arrays.asList("r4", "r7"), failedKeys);
+        Assert.assertEquals(8, indexed.size());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        Path checkpointFile = temporaryFolder.getRoot().toPath().resolve("checkpoints").resolve("test.checkpoint");
+
+        // the first run fails for a single resource so the checkpoint is kept
+        EClassBatchIndexer<String> indexer = new EClassBatchIndexer<>("test", 2, 1, checkpointFile, Function.identity(), resource -> !resource.equals("r2"));
+        for(int i = 0; i < 5; i++) {
+            indexer.add("r" + i);
+        }
+        Assert.assertEquals(Collections.singletonList("r2"), indexer.complete());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r0", "r1", "r3", "r4")), new HashSet<>(Files.readAllLines(checkpointFile, StandardCharsets.UTF_8)));
+
+        // the second run indexes only the failed resource and deletes the checkpoint
+        List<String> indexed = new ArrayList<>();
+        indexer = new EClassBatchIndexer<>("test", 2, 1, checkpointFile, Function.identity(), indexed::add);
+        for(int i = 0; i < 5; i++) {
+            indexer.add("r" + i);
+        }
+        Assert.assertTrue(indexer.complete().isEmpty());
+        Assert.assertEquals(Collections.singletonList("r2"), indexed);
+        Assert.assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void keepsCheckpointWhenAborted() throws Exception {
+        Path checkpointFile = temporaryFolder.getRoot().toPath().resolve("test.checkpoint");
+        List<String> indexed = Collections.synchronizedList(new ArrayList<>());
+        EClassBatchIndexer<String> indexer = new EClassBatchIndexer<>("test", 2, 1, checkpointFile, Function.identity(), indexed::add);
+        for(int i = 0; i < 3; i++) {
+            indexer.add("r" + i);
+        }
+        // the resources could not be provided completely, e.g. the database stream failed
+        indexer.abort();
+
+        // the dispatched batch is completed, while the incomplete one is discarded
+        Assert.assertEquals(Arrays.asList("r0", "r1"), indexed);
+        Assert.assertEquals(Arrays.asList("r0", "r1"), Files.readAllLines(checkpointFile, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+package eu.nimble.service.catalogue.category.eclass.database;
+
+import eu.nimble.service.catalogue.category.eclass.EClassTaxonomyQueryImpl;
+import eu.nimble.service.catalogue.model.category.Category;
+import eu.nimble.service.catalogue.model.category.CategoryTreeResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class EClassCategoryTreeTest {
+
+    private EClassCategoryTree tree;
+
+    @Before
+    public void setUp() {
+        tree = new EClassCategoryTree(Arrays.asList(
+                createCategory("0173-1#01-AAA001#001", "27000000", 1, "Electric engineering"),
+                createCategory("0173-1#01-AAA002#001", "27020000", 2, "Electric drive"),
+                createCategory("0173-1#01-AAA003#001", "27020700", 3, "Motor"),
+                createCategory("0173-1#01-AAA005#001", "27020702", 4, "DC motor"),
+                createCategory("0173-1#01-AAA004#001", "27020701", 4, "AC motor"),
+                createCategory("0173-1#01-BBB001#001", "28000000", 1, "Automotive technology")), "en");
+    }
+
+    @Test
+    public void resolvesRootsAndChildrenByCode() {
+        Assert.assertEquals(6, tree.size());
+        Assert.assertEquals(Arrays.asList("27000000", "28000000"), getCodes(tree.getRootCategories()));
+        // the children are ordered by code
+        Assert.assertEquals(Arrays.asList("27020701", "27020702"), getCodes(tree.getChildren("0173-1#01-AAA003#001")));
+        Assert.assertTrue(tree.getChildren("0173-1#01-AAA004#001").isEmpty());
+        Assert.assertTrue(tree.getChildren("unknown").isEmpty());
+        Assert.assertEquals(Arrays.asList("27020701", "27020702"), getCodes(tree.getCategoriesByLevel(4)));
+    }
+
+    @Test
+    public void resolvesParentsAndDescendants() {
+        Assert.assertEquals(Arrays.asList("27000000", "27020000", "27020700", "27020701"), getCodes(tree.getParents("0173-1#01-AAA004#001")));
+        Assert.assertEquals(Arrays.asList(
+                EClassTaxonomyQueryImpl.namespace + "0173-1#01-AAA003#001",
+                EClassTaxonomyQueryImpl.namespace + "0173-1#01-AAA002#001",
+                EClassTaxonomyQueryImpl.namespace + "0173-1#01-AAA001#001"), tree.getAncestorUris("0173-1#01-AAA004#001"));
+        Assert.assertEquals(4, tree.getDescendantUris("0173-1#01-AAA001#001").size());
+        Assert.assertTrue(tree.getDescendantUris("0173-1#01-BBB001#001").isEmpty());
+    }
+
+    @Test
+    public void constructsCategoryTreeOfLeafCategory() {
+        CategoryTreeResponse response = tree.getCategoryTree("0173-1#01-AAA004#001");
+
+        Assert.assertEquals(Arrays.asList("27000000", "27020000", "27020700", "27020701"), getCodes(response.getParents()));
+        // roots and the children of the first three levels of the path
+        Assert.assertEquals(4, response.getCategories().size());
+        Assert.assertEquals(Arrays.asList("27000000", "28000000"), getCodes(response.getCategories().get(0)));
+        Assert.assertEquals(Arrays.asList("27020701", "27020702"), getCodes(response.getCategories().get(3)));
+        Assert.assertNull(tree.getCategoryTree("unknown"));
+    }
+
+    @Test
+    public void returnsNewCategoryInstances() {
+        Category category = tree.getCategory("0173-1#01-AAA004#001");
+        Assert.assertEquals("AC motor", category.getPreferredName("en"));
+        Assert.assertEquals(EClassTaxonomyQueryImpl.namespace + "0173-1#01-AAA004#001", category.getCategoryUri());
+
+        // callers are allowed to modify the returned categories
+        category.setProperties(Arrays.asList());
+        category.setCode("changed");
+        Category sameCategory = tree.getCategory("0173-1#01-AAA004#001");
+        Assert.assertNotSame(category, sameCategory);
+        Assert.assertEquals("27020701", sameCategory.getCode());
+        Assert.assertNull(sameCategory.getProperties());
+    }
+
+    private static Category createCategory(String irdi, String code, int level, String name) {
+        Category category = new Category();
+        category.setId(irdi);
+        category.setCode(code);
+        category.setLevel(level);
+        category.addPreferredName(name, "en");
+        return category;
+    }
+
+    private static List<String> getCodes(List<Category> categories) {
+        return categories.stream().map(Category::getCode).collect(Collectors.toList());
+    }
+}
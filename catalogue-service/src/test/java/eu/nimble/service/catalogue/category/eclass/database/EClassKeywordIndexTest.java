@@ -0,0 +1,52 @@
+package eu.nimble.service.catalogue.category.eclass.database;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class EClassKeywordIndexTest {
+
+    private EClassKeywordIndex index;
+
+    @Before
+    public void setUp() {
+        index = new EClassKeywordIndex.Builder()
+                .add("motor", "Electric motor", EClassKeywordIndex.FIELD_PREFERRED_NAME)
+                .add("generator", "Generator", EClassKeywordIndex.FIELD_PREFERRED_NAME)
+                .add("generator", "motor generator set", EClassKeywordIndex.FIELD_KEYWORD)
+                .add("pump", "Pump", EClassKeywordIndex.FIELD_PREFERRED_NAME)
+                .add("pump", "electromotor pump", EClassKeywordIndex.FIELD_SYNONYM)
+                .build();
+    }
+
+    @Test
+    public void tokenizesIntoLowerCaseTerms() {
+        Assert.assertEquals(Arrays.asList("ac", "dc", "motor", "230v"), EClassKeywordIndex.tokenize("AC/DC Motor, 230V"));
+        Assert.assertTrue(EClassKeywordIndex.tokenize(null).isEmpty());
+        Assert.assertTrue(EClassKeywordIndex.tokenize(" - ").isEmpty());
+    }
+
+    @Test
+    public void ranksExactNameMatchesFirst() {
+        // exact preferred name match, exact keyword match and infix synonym match respectively
+        Assert.assertEquals(Arrays.asList("motor", "generator", "pump"), index.search("Motor"));
+    }
+
+    @Test
+    public void requiresAllQueryTermsToMatch() {
+        Assert.assertEquals(Collections.singletonList("motor"), index.search("electric motor"));
+        Assert.assertEquals(Collections.singletonList("generator"), index.search("motor set"));
+        Assert.assertTrue(index.search("electric pump gear").isEmpty());
+        Assert.assertTrue(index.search("").isEmpty());
+    }
+
+    @Test
+    public void matchesSubstringsOfTerms() {
+        // preserves the semantics of the previous ILIKE '%term%' queries
+        Assert.assertEquals(Collections.singletonList("generator"), index.search("gen"));
+        Assert.assertEquals(Collections.singletonList("pump"), index.search("lectromo"));
+    }
+}
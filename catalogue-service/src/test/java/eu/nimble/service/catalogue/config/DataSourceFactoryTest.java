@@ -0,0 +1,82 @@
+package eu.nimble.service.catalogue.config;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+public class DataSourceFactoryTest {
+
+    private DataSourceFactory dataSourceFactory;
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("spring.datasource.test-on-borrow", "false")
+                .withProperty("spring.datasource.test-while-idle", "false")
+                .withProperty("spring.datasource.remove-abandoned", "false")
+                .withProperty("spring.datasource.log-abandoned", "false")
+                .withProperty("spring.datasource.initial-size", "0")
+                .withProperty("spring.datasource.max-active", "10")
+                .withProperty("spring.datasource.max-idle", "2")
+                .withProperty("spring.datasource.min-idle", "0")
+                .withProperty("spring.datasource.max-wait", "1000")
+                .withProperty("spring.datasource.time-between-eviction-runs-millis", "30000")
+                .withProperty("spring.datasource.min-evictable-idle-time-millis", "60000")
+                .withProperty("spring.datasource.validation-query", "SELECT 1")
+                .withProperty("persistence.categorydb.pool.max-active", "4");
+        dataSourceFactory = new DataSourceFactory();
+        ReflectionTestUtils.setField(dataSourceFactory, "environment", environment);
+    }
+
+    @After
+    public void tearDown() {
+        if (dataSource != null) {
+            dataSource.close(true);
+        }
+    }
+
+    @Test
+    public void setsSchemaAndStatementCacheOfCategoryDataSource() {
+        dataSource = dataSourceFactory.createCategoryDatasource(createConfig("org.postgresql.Driver", "jdbc:postgresql://localhost:5432/eclass", "eClass"));
+
+        Assert.assertEquals("SET SEARCH_PATH = 'eClass'", dataSource.getPoolProperties().getInitSQL());
+        Assert.assertTrue(dataSource.getPoolProperties().getJdbcInterceptors().contains("StatementCache(prepared=true"));
+        Assert.assertEquals("1", dataSource.getPoolProperties().getDbProperties().getProperty("prepareThreshold"));
+        Assert.assertEquals(4, dataSource.getPoolProperties().getMaxActive());
+    }
+
+    @Test
+    public void reusesPhysicalConnectionsOfCategoryDataSource() throws Exception {
+        dataSource = dataSourceFactory.createCategoryDatasource(createConfig("org.h2.Driver", "jdbc:h2:mem:categorydb;DB_CLOSE_DELAY=-1", null));
+        Assert.assertNull(dataSource.getPoolProperties().getInitSQL());
+
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement("SELECT 1");
+                 ResultSet resultSet = statement.executeQuery()) {
+                Assert.assertTrue(resultSet.next());
+            }
+        }
+        // the connection is returned to the pool and borrowed again instead of opening a new one for each lookup
+        Assert.assertEquals(1, dataSource.getPool().getSize());
+    }
+
+    private static CatalogueServiceConfig createConfig(String driver, String url, String schema) {
+        CatalogueServiceConfig config = new CatalogueServiceConfig();
+        config.setCategoryDbDriver(driver);
+        config.setCategoryDbConnectionUrl(url);
+        config.setCategoryDbUsername("sa");
+        config.setCategoryDbPassword("");
+        config.setCategoryDbScheme(schema);
+        return config;
+    }
+}
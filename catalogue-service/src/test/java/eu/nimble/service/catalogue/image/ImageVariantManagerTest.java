@@ -0,0 +1,156 @@
+package eu.nimble.service.catalogue.image;
+
+import eu.nimble.service.catalogue.persistence.util.BinaryContentSchema;
+import eu.nimble.service.catalogue.persistence.util.BinaryContentStreamer;
+import eu.nimble.service.catalogue.persistence.util.ImageVariantStore;
+import eu.nimble.service.catalogue.persistence.util.ImageVariantStore.Variant;
+import eu.nimble.service.catalogue.persistence.util.ImageVariantStore.VariantKey;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+public class ImageVariantManagerTest {
+
+    private JdbcDataSource dataSource;
+    private ImageVariantStore store;
+    private ImageVariantManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:imagevariant;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE binary_object_type (uri VARCHAR(1024), file_name VARCHAR(255), mime_code VARCHAR(255), value_ BLOB)");
+        }
+
+        BinaryContentSchema schema = new BinaryContentSchema();
+        ReflectionTestUtils.setField(schema, "tableName", "binary_object_type");
+        ReflectionTestUtils.setField(schema, "uriColumn", "uri");
+        ReflectionTestUtils.setField(schema, "fileNameColumn", "file_name");
+        ReflectionTestUtils.setField(schema, "mimeCodeColumn", "mime_code");
+        ReflectionTestUtils.setField(schema, "valueColumn", "value_");
+
+        BinaryContentStreamer streamer = new BinaryContentStreamer();
+        ReflectionTestUtils.setField(streamer, "binaryContentDataSource", dataSource);
+        ReflectionTestUtils.setField(streamer, "binaryContentSchema", schema);
+        ReflectionTestUtils.invokeMethod(streamer, "init");
+
+        store = new ImageVariantStore();
+        ReflectionTestUtils.setField(store, "binaryContentDataSource", dataSource);
+        ReflectionTestUtils.setField(store, "binaryContentSchema", schema);
+        ReflectionTestUtils.invokeMethod(store, "init");
+
+        manager = new ImageVariantManager();
+        ReflectionTestUtils.setField(manager, "parallelism", 1);
+        ReflectionTestUtils.setField(manager, "queueCapacity", 10);
+        ReflectionTestUtils.setField(manager, "maxSize", 2048);
+        ReflectionTestUtils.setField(manager, "maxPixels", 100000L);
+        ReflectionTestUtils.setField(manager, "imageVariantStore", store);
+        ReflectionTestUtils.setField(manager, "binaryContentStreamer", streamer);
+        ReflectionTestUtils.invokeMethod(manager, "init");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ReflectionTestUtils.invokeMethod(manager, "shutdown");
+        ReflectionTestUtils.invokeMethod(store, "shutdown");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE image_variant");
+            statement.execute("DROP TABLE binary_object_type");
+        }
+    }
+
+    @Test
+    public void snapsSizesAndQualities() {
+        Assert.assertEquals(0, ImageVariantManager.snapSize(0, 2048));
+        Assert.assertEquals(16, ImageVariantManager.snapSize(1, 2048));
+        Assert.assertEquals(128, ImageVariantManager.snapSize(100, 2048));
+        Assert.assertEquals(128, ImageVariantManager.snapSize(128, 2048));
+        Assert.assertEquals(1000, ImageVariantManager.snapSize(800, 1000));
+
+        Assert.assertEquals(40, ImageVariantManager.snapQuality(1));
+        Assert.assertEquals(75, ImageVariantManager.snapQuality(77));
+        Assert.assertEquals(95, ImageVariantManager.snapQuality(100));
+    }
+
+    @Test
+    public void storesSingleVariantForSnappedRequests() throws Exception {
+        storeImage("uri-1", 400, 200);
+
+        Variant variant = manager.getVariant("uri-1", 100, 0, ImageVariantManager.FORMAT_JPG, 77);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(variant.getContent()));
+        Assert.assertEquals(128, image.getWidth());
+        Assert.assertEquals(64, image.getHeight());
+
+        // a close size and quality is served by the same variant
+        Assert.assertEquals(variant.getHash(), manager.getVariant("uri-1", 110, 0, ImageVariantManager.FORMAT_JPG, 80).getHash());
+        Assert.assertNotNull(store.getVariant(new VariantKey("uri-1", 128, 0, ImageVariantManager.FORMAT_JPG, 75)));
+        Assert.assertEquals(1, countVariants());
+    }
+
+    @Test
+    public void rejectsImagesWithTooManyPixels() throws Exception {
+        storeImage("uri-1", 400, 300);
+
+        try {
+            manager.getVariant("uri-1", 100, 0, ImageVariantManager.FORMAT_JPG, 80);
+            Assert.fail("The image should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertEquals(0, countVariants());
+    }
+
+    @Test
+    public void deletesVariantsOfRemovedImages() throws Exception {
+        storeImage("uri-1", 400, 200);
+        storeImage("uri-2", 400, 200);
+        manager.getVariant("uri-1", 100, 0, ImageVariantManager.FORMAT_JPG, 80);
+        manager.getVariant("uri-2", 100, 0, ImageVariantManager.FORMAT_PNG, 80);
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM binary_object_type WHERE uri = 'uri-1'");
+        }
+        store.deleteOrphanedVariants();
+
+        Assert.assertEquals(1, countVariants());
+        Assert.assertNotNull(store.getVariant(new VariantKey("uri-2", 128, 0, ImageVariantManager.FORMAT_PNG, 0)));
+    }
+
+    private void storeImage(String uri, int width, int height) throws Exception {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", content);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO binary_object_type (uri, file_name, mime_code, value_) VALUES (?, ?, ?, ?)")) {
+            statement.setString(1, uri);
+            statement.setString(2, uri + ".png");
+            statement.setString(3, "image/png");
+            statement.setBytes(4, content.toByteArray());
+            statement.executeUpdate();
+        }
+    }
+
+    private int countVariants() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM image_variant")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
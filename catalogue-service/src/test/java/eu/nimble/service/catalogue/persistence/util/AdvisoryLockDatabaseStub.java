@@ -0,0 +1,140 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Emulates the session level advisory locks of PostgreSQL for a single lock key. Each connection obtained from the data
+ * source is a separate session.
+ */
+class AdvisoryLockDatabaseStub {
+
+    // a session of another instance of the service
+    static final Object OTHER_SESSION = new Object();
+
+    private final Map<Object, Integer> exclusiveHolds = new HashMap<>();
+    private final Map<Object, Integer> sharedHolds = new HashMap<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Connection> closedConnections = new ArrayList<>();
+    private final List<Connection> closedPhysicalConnections = new ArrayList<>();
+    private boolean failUnlock;
+
+    DataSource createDataSource() throws SQLException {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> createConnection());
+        return dataSource;
+    }
+
+    synchronized void lock(Object session, boolean shared) {
+        (shared ? sharedHolds : exclusiveHolds).merge(session, 1, Integer::sum);
+    }
+
+    synchronized void unlock(Object session) {
+        exclusiveHolds.remove(session);
+        sharedHolds.remove(session);
+    }
+
+    synchronized boolean isLocked(Object session, boolean shared) {
+        return (shared ? sharedHolds : exclusiveHolds).containsKey(session);
+    }
+
+    synchronized boolean isUnlocked() {
+        return exclusiveHolds.isEmpty() && sharedHolds.isEmpty();
+    }
+
+    synchronized void setFailUnlock(boolean failUnlock) {
+        this.failUnlock = failUnlock;
+    }
+
+    synchronized List<Connection> getConnections() {
+        return new ArrayList<>(connections);
+    }
+
+    synchronized List<Connection> getClosedConnections() {
+        return new ArrayList<>(closedConnections);
+    }
+
+    synchronized List<Connection> getClosedPhysicalConnections() {
+        return new ArrayList<>(closedPhysicalConnections);
+    }
+
+    private synchronized Connection createConnection() throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        Connection physicalConnection = Mockito.mock(Connection.class);
+        DatabaseMetaData metaData = Mockito.mock(DatabaseMetaData.class);
+        Mockito.when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+        Mockito.when(connection.getMetaData()).thenReturn(metaData);
+        Mockito.when(connection.unwrap(Connection.class)).thenReturn(physicalConnection);
+        Mockito.when(connection.prepareStatement(Matchers.anyString())).thenAnswer(invocation -> createStatement(connection, (String) invocation.getArguments()[0]));
+        Mockito.doAnswer(invocation -> {
+            closeSession(connection, false);
+            return null;
+        }).when(connection).close();
+        Mockito.doAnswer(invocation -> {
+            closeSession(connection, true);
+            return null;
+        }).when(physicalConnection).close();
+        connections.add(connection);
+        return connection;
+    }
+
+    private PreparedStatement createStatement(Connection session, String query) throws SQLException {
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+        Mockito.when(statement.executeQuery()).thenAnswer(invocation -> {
+            boolean result = execute(session, query);
+            ResultSet resultSet = Mockito.mock(ResultSet.class);
+            Mockito.when(resultSet.next()).thenReturn(true);
+            Mockito.when(resultSet.getBoolean(1)).thenReturn(result);
+            return resultSet;
+        });
+        return statement;
+    }
+
+    private synchronized boolean execute(Object session, String query) throws SQLException {
+        boolean shared = query.contains("_shared");
+        if (query.contains("pg_try_advisory_lock")) {
+            boolean heldByOthers = exclusiveHolds.keySet().stream().anyMatch(holder -> holder != session) ||
+                    (!shared && sharedHolds.keySet().stream().anyMatch(holder -> holder != session));
+            if (heldByOthers) {
+                return false;
+            }
+            lock(session, shared);
+            return true;
+        }
+
+        if (failUnlock) {
+            throw new SQLException("Connection reset");
+        }
+        Map<Object, Integer> holds = shared ? sharedHolds : exclusiveHolds;
+        Integer count = holds.get(session);
+        if (count == null) {
+            return false;
+        }
+        if (count == 1) {
+            holds.remove(session);
+        } else {
+            holds.put(session, count - 1);
+        }
+        return true;
+    }
+
+    private synchronized void closeSession(Connection session, boolean physical) {
+        (physical ? closedPhysicalConnections : closedConnections).add(session);
+        // the locks of a session are released when the session ends, but not when a pooled connection is returned
+        if (physical) {
+            exclusiveHolds.remove(session);
+            sharedHolds.remove(session);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+public class AdvisoryLockTest {
+
+    private AdvisoryLockDatabaseStub database;
+    private AdvisoryLock advisoryLock;
+
+    @Before
+    public void setUp() throws Exception {
+        database = new AdvisoryLockDatabaseStub();
+        advisoryLock = new AdvisoryLock(database.createDataSource(), 1, 2);
+    }
+
+    @Test
+    public void holdsExclusiveLockOnDedicatedConnection() throws Exception {
+        Assert.assertTrue(advisoryLock.acquireExclusive(0));
+        Connection connection = database.getConnections().get(0);
+        Assert.assertTrue(database.isLocked(connection, false));
+        Assert.assertTrue(database.getClosedConnections().isEmpty());
+
+        advisoryLock.releaseExclusive();
+        Assert.assertTrue(database.isUnlocked());
+        Assert.assertEquals(1, database.getClosedConnections().size());
+    }
+
+    @Test
+    public void sharesSingleConnectionAmongReaders() throws Exception {
+        Assert.assertTrue(advisoryLock.acquireShared(0));
+        Assert.assertTrue(advisoryLock.acquireShared(0));
+        Assert.assertEquals(1, database.getConnections().size());
+
+        advisoryLock.releaseShared();
+        Assert.assertFalse(database.isUnlocked());
+        advisoryLock.releaseShared();
+        Assert.assertTrue(database.isUnlocked());
+        Assert.assertEquals(1, database.getClosedConnections().size());
+    }
+
+    @Test
+    public void timesOutWhileAnotherInstanceHoldsLock() throws Exception {
+        database.lock(AdvisoryLockDatabaseStub.OTHER_SESSION, false);
+
+        long start = System.nanoTime();
+        Assert.assertFalse(advisoryLock.acquireExclusive(TimeUnit.MILLISECONDS.toNanos(250)));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+        Assert.assertFalse(advisoryLock.acquireShared(0));
+        // the connections used for polling are returned
+        Assert.assertEquals(database.getConnections(), database.getClosedConnections());
+    }
+
+    @Test
+    public void acquiresSharedModeOnExclusiveConnectionWhenDowngrading() throws Exception {
+        Assert.assertTrue(advisoryLock.acquireExclusive(0));
+        Assert.assertTrue(advisoryLock.acquireShared(0));
+        Connection connection = database.getConnections().get(0);
+        Assert.assertEquals(1, database.getConnections().size());
+        Assert.assertTrue(database.isLocked(connection, true));
+
+        // the connection still holds the shared mode
+        advisoryLock.releaseExclusive();
+        Assert.assertFalse(database.isLocked(connection, false));
+        Assert.assertTrue(database.getClosedConnections().isEmpty());
+
+        advisoryLock.releaseShared();
+        Assert.assertTrue(database.isUnlocked());
+        Assert.assertEquals(1, database.getClosedConnections().size());
+    }
+
+    @Test
+    public void keepsConnectionUntilBothModesAreReleased() throws Exception {
+        Assert.assertTrue(advisoryLock.acquireExclusive(0));
+        Assert.assertTrue(advisoryLock.acquireShared(0));
+
+        advisoryLock.releaseShared();
+        Assert.assertTrue(database.getClosedConnections().isEmpty());
+        advisoryLock.releaseExclusive();
+        Assert.assertTrue(database.isUnlocked());
+        Assert.assertEquals(1, database.getClosedConnections().size());
+    }
+
+    @Test
+    public void endsSessionWhenUnlockFails() throws Exception {
+        Assert.assertTrue(advisoryLock.acquireExclusive(0));
+        Connection connection = database.getConnections().get(0);
+        database.setFailUnlock(true);
+
+        advisoryLock.releaseExclusive();
+        // the session holding the lock is not returned to the pool as it is
+        Assert.assertEquals(1, database.getClosedPhysicalConnections().size());
+        Assert.assertFalse(database.isLocked(connection, false));
+
+        // the lock can be acquired again by this instance
+        database.setFailUnlock(false);
+        Assert.assertTrue(advisoryLock.acquireExclusive(0));
+        advisoryLock.releaseExclusive();
+        Assert.assertTrue(database.isUnlocked());
+    }
+}
@@ -0,0 +1,158 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BinaryContentHashRegistryTest {
+
+    private JdbcDataSource dataSource;
+    private BinaryContentHashRegistry registry;
+    // number of the contents read by the registry
+    private final AtomicInteger readContents = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:binarycontenthash;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE binary_object_type (uri VARCHAR(1024), file_name VARCHAR(255), mime_code VARCHAR(255), value_ BLOB)");
+        }
+
+        BinaryContentSchema schema = new BinaryContentSchema();
+        ReflectionTestUtils.setField(schema, "tableName", "binary_object_type");
+        ReflectionTestUtils.setField(schema, "uriColumn", "uri");
+        ReflectionTestUtils.setField(schema, "fileNameColumn", "file_name");
+        ReflectionTestUtils.setField(schema, "mimeCodeColumn", "mime_code");
+        ReflectionTestUtils.setField(schema, "valueColumn", "value_");
+
+        BinaryContentStreamer streamer = new BinaryContentStreamer() {
+            @Override
+            public boolean consumeContent(String uri, ContentConsumer consumer) throws IOException {
+                readContents.incrementAndGet();
+                return super.consumeContent(uri, consumer);
+            }
+        };
+        ReflectionTestUtils.setField(streamer, "binaryContentDataSource", dataSource);
+        ReflectionTestUtils.setField(streamer, "binaryContentSchema", schema);
+        ReflectionTestUtils.invokeMethod(streamer, "init");
+
+        registry = new BinaryContentHashRegistry();
+        ReflectionTestUtils.setField(registry, "binaryContentDataSource", dataSource);
+        ReflectionTestUtils.setField(registry, "binaryContentStreamer", streamer);
+        ReflectionTestUtils.setField(registry, "binaryContentSchema", schema);
+        ReflectionTestUtils.setField(registry, "hashBatchSize", 2);
+        ReflectionTestUtils.invokeMethod(registry, "init");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ReflectionTestUtils.invokeMethod(registry, "shutdown");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE binary_content_hash");
+            statement.execute("DROP TABLE binary_object_type");
+        }
+    }
+
+    @Test
+    public void computesHashOfContentOnce() throws Exception {
+        byte[] content = storeContent("uri-1", "content");
+
+        Assert.assertEquals(BinaryContentHashRegistry.computeHash(content), registry.getHash("uri-1"));
+        Assert.assertEquals(BinaryContentHashRegistry.computeHash(content), registry.getHash("uri-1"));
+        Assert.assertEquals(1, readContents.get());
+        Assert.assertEquals(BinaryContentHashRegistry.computeHash(content), getSavedHash("uri-1"));
+
+        Assert.assertNull(registry.getHash("uri-2"));
+    }
+
+    @Test
+    public void keepsHashOfContentWhichCannotBeSaved() throws Exception {
+        byte[] content = storeContent("uri-1", "content");
+        String hash = BinaryContentHashRegistry.computeHash(content);
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE binary_content_hash ADD CONSTRAINT reject_hash CHECK (hash <> '" + hash + "')");
+        }
+
+        Assert.assertEquals(hash, registry.getHash("uri-1"));
+        Assert.assertEquals(hash, registry.getHash("uri-1"));
+        Assert.assertEquals(1, readContents.get());
+        Assert.assertNull(getSavedHash("uri-1"));
+
+        // the background task saves the hash once it can be saved
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE binary_content_hash DROP CONSTRAINT reject_hash");
+        }
+        registry.hashContents();
+        Assert.assertEquals(hash, getSavedHash("uri-1"));
+        Assert.assertEquals(1, readContents.get());
+    }
+
+    @Test
+    public void hashesStoredContentsInBatches() throws Exception {
+        byte[] firstContent = storeContent("uri-1", "first");
+        byte[] secondContent = storeContent("uri-2", "second");
+        byte[] thirdContent = storeContent("uri-3", "third");
+        // e.g. a content stored by this service
+        registry.saveHash("uri-2", BinaryContentHashRegistry.computeHash(secondContent));
+
+        registry.hashContents();
+        Assert.assertEquals(BinaryContentHashRegistry.computeHash(firstContent), getSavedHash("uri-1"));
+        Assert.assertEquals(BinaryContentHashRegistry.computeHash(thirdContent), getSavedHash("uri-3"));
+        Assert.assertEquals(2, readContents.get());
+
+        // nothing is read once all the contents are hashed
+        registry.hashContents();
+        Assert.assertEquals(2, readContents.get());
+    }
+
+    @Test
+    public void doesNotReturnHashOfRemovedContent() throws Exception {
+        storeContent("uri-1", "content");
+        Assert.assertNotNull(registry.getHash("uri-1"));
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM binary_object_type WHERE uri = 'uri-1'");
+        }
+        Assert.assertNull(registry.getHash("uri-1"));
+    }
+
+    private byte[] storeContent(String uri, String value) throws Exception {
+        byte[] content = value.getBytes(StandardCharsets.UTF_8);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO binary_object_type (uri, file_name, mime_code, value_) VALUES (?, ?, ?, ?)")) {
+            statement.setString(1, uri);
+            statement.setString(2, uri + ".txt");
+            statement.setString(3, "text/plain");
+            statement.setBytes(4, content);
+            statement.executeUpdate();
+        }
+        return content;
+    }
+
+    private String getSavedHash(String uri) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT hash FROM binary_content_hash WHERE uri = ?")) {
+            statement.setString(1, uri);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class CataloguePurgeRegistryTest {
+
+    private JdbcDataSource dataSource;
+    private CataloguePurgeRegistry registry;
+
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:cataloguepurge;DB_CLOSE_DELAY=-1");
+        registry = new CataloguePurgeRegistry();
+        ReflectionTestUtils.setField(registry, "ubldbDataSource", dataSource);
+        ReflectionTestUtils.invokeMethod(registry, "init");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE catalogue_purge");
+        }
+    }
+
+    @Test
+    public void keepsMarksPerParty() {
+        registry.markCatalogues("1", Arrays.asList("uuid-1", "uuid-2"), "instance-1");
+        registry.markCatalogues("2", Collections.singletonList("uuid-3"), "instance-1");
+
+        Assert.assertTrue(registry.isMarked("uuid-1"));
+        Assert.assertFalse(registry.isMarked("uuid-4"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("uuid-1", "uuid-2")), registry.getMarkedCatalogueUuids("1"));
+        Assert.assertTrue(registry.getMarkedCatalogueUuids("3").isEmpty());
+    }
+
+    @Test
+    public void groupsMarksByPartyForResuming() {
+        registry.markCatalogues("1", Arrays.asList("uuid-1", "uuid-2"), "instance-1");
+        registry.markCatalogues("2", Collections.singletonList("uuid-3"), "instance-1");
+
+        Map<String, List<String>> markedCatalogues = registry.getMarkedCatalogues();
+        Assert.assertEquals(2, markedCatalogues.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("uuid-1", "uuid-2")), new HashSet<>(markedCatalogues.get("1")));
+        Assert.assertEquals(Collections.singletonList("uuid-3"), markedCatalogues.get("2"));
+    }
+
+    @Test
+    public void ignoresCataloguesMarkedAgain() {
+        registry.markCatalogues("1", Collections.singletonList("uuid-1"), "instance-1");
+        // e.g. the purge is requested again before the catalogue is removed
+        registry.markCatalogues("1", Arrays.asList("uuid-1", "uuid-2"), "instance-1");
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("uuid-1", "uuid-2")), registry.getMarkedCatalogueUuids("1"));
+    }
+
+    @Test
+    public void removesMarkOfRemovedCatalogue() {
+        registry.markCatalogues("1", Arrays.asList("uuid-1", "uuid-2"), "instance-1");
+        registry.unmarkCatalogue("uuid-1");
+
+        Assert.assertFalse(registry.isMarked("uuid-1"));
+        Assert.assertEquals(Collections.singleton("uuid-2"), registry.getMarkedCatalogueUuids("1"));
+    }
+
+    @Test
+    public void claimsRemovalForSingleInstance() {
+        registry.markCatalogues("1", Collections.singletonList("uuid-1"), "instance-1");
+
+        // the instance marking the catalogue owns its removal and renews its claim
+        Assert.assertTrue(registry.claimCatalogue("uuid-1", "instance-1", TimeUnit.MINUTES.toMillis(10)));
+        Assert.assertFalse(registry.claimCatalogue("uuid-1", "instance-2", TimeUnit.MINUTES.toMillis(10)));
+
+        registry.unmarkCatalogue("uuid-1");
+        Assert.assertFalse(registry.claimCatalogue("uuid-1", "instance-1", TimeUnit.MINUTES.toMillis(10)));
+    }
+
+    @Test
+    public void takesOverExpiredClaim() throws Exception {
+        registry.markCatalogues("1", Collections.singletonList("uuid-1"), "instance-1");
+        Thread.sleep(20);
+
+        // e.g. the first instance has stopped while removing the catalogue
+        Assert.assertTrue(registry.claimCatalogue("uuid-1", "instance-2", 10));
+        Assert.assertFalse(registry.claimCatalogue("uuid-1", "instance-1", TimeUnit.MINUTES.toMillis(10)));
+    }
+}
@@ -0,0 +1,194 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CatalogueVersionRegistryTest {
+
+    private JdbcDataSource dataSource;
+    private CatalogueVersionRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:catalogueversion;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE catalogue_line (id VARCHAR(255) NOT NULL PRIMARY KEY)");
+        }
+        registry = createRegistry();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE catalogue_version");
+            statement.execute("DROP TABLE catalogue_line");
+        }
+    }
+
+    /**
+     * Creates a registry with its own locks, as the registry of another instance
+     */
+    private CatalogueVersionRegistry createRegistry() {
+        LockPool lockPool = new LockPool();
+        ReflectionTestUtils.setField(lockPool, "stripeCount", 16);
+        ReflectionTestUtils.setField(lockPool, "provider", "local");
+        ReflectionTestUtils.setField(lockPool, "timeoutSeconds", 5L);
+        ReflectionTestUtils.setField(lockPool, "ubldbDataSource", dataSource);
+        ReflectionTestUtils.invokeMethod(lockPool, "init");
+
+        CatalogueVersionRegistry registry = new CatalogueVersionRegistry();
+        ReflectionTestUtils.setField(registry, "ubldbDataSource", dataSource);
+        ReflectionTestUtils.setField(registry, "ubldbTransactionManager", new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(registry, "lockPool", lockPool);
+        ReflectionTestUtils.invokeMethod(registry, "init");
+        return registry;
+    }
+
+    @Test
+    public void incrementsVersionWithEachUpdate() {
+        Assert.assertEquals(0, registry.getVersion("1", "default"));
+
+        Assert.assertEquals("saved", registry.update("1", "default", () -> "saved"));
+        registry.update("1", "default", () -> null);
+
+        Assert.assertEquals(2, registry.getVersion("1", "default"));
+        Assert.assertEquals(0, registry.getVersion("2", "default"));
+    }
+
+    @Test
+    public void rollsBackVersionWithFailedUpdate() throws Exception {
+        try {
+            registry.update("1", "default", () -> {
+                insertLine("line-1");
+                throw new IllegalStateException("failed after saving a line");
+            });
+            Assert.fail("The failure of the update should be thrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(0, registry.getVersion("1", "default"));
+        Assert.assertEquals(0, countLines());
+
+        registry.update("1", "default", () -> insertLine("line-1"));
+        Assert.assertEquals(1, registry.getVersion("1", "default"));
+        Assert.assertEquals(1, countLines());
+    }
+
+    @Test
+    public void skipsUpdateOfChangedCatalogue() {
+        long version = registry.getVersion("1", "default");
+        // e.g. a line is deleted while the template is being parsed
+        registry.update("1", "default", () -> null);
+
+        Optional<String> result = registry.updateIfUnchanged("1", "default", version, () -> {
+            Assert.fail("The update should not be saved");
+            return "saved";
+        });
+        Assert.assertFalse(result.isPresent());
+
+        result = registry.updateIfUnchanged("1", "default", registry.getVersion("1", "default"), () -> "saved");
+        Assert.assertEquals(Optional.of("saved"), result);
+        Assert.assertEquals(2, registry.getVersion("1", "default"));
+    }
+
+    @Test
+    public void detectsConflictingUpdateOfAnotherInstance() throws Exception {
+        // the instances do not share their locks, e.g. with the local lock provider
+        CatalogueVersionRegistry otherRegistry = createRegistry();
+        long version = registry.getVersion("1", "default");
+        otherRegistry.update("1", "default", () -> insertLine("line-1"));
+
+        Optional<String> result = registry.updateIfUnchanged("1", "default", version, () -> insertLine("line-2"));
+        Assert.assertFalse(result.isPresent());
+        Assert.assertEquals(1, registry.getVersion("1", "default"));
+        Assert.assertEquals(1, countLines());
+    }
+
+    @Test
+    public void checksVersionAfterConcurrentUpdateIsSaved() throws Exception {
+        long version = registry.getVersion("1", "default");
+        CountDownLatch updateStarted = new CountDownLatch(1);
+        CountDownLatch updateReleased = new CountDownLatch(1);
+        CompletableFuture<Object> update = CompletableFuture.supplyAsync(() -> registry.update("1", "default", () -> {
+            updateStarted.countDown();
+            try {
+                updateReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        Assert.assertTrue(updateStarted.await(5, TimeUnit.SECONDS));
+
+        // the conditional update waits for the lock held by the running update and sees its version afterwards
+        CompletableFuture<Optional<String>> conditionalUpdate = CompletableFuture.supplyAsync(() -> registry.updateIfUnchanged("1", "default", version, () -> "saved"));
+        Thread.sleep(100);
+        Assert.assertFalse(conditionalUpdate.isDone());
+        updateReleased.countDown();
+
+        update.get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(conditionalUpdate.get(5, TimeUnit.SECONDS).isPresent());
+    }
+
+    @Test
+    public void locksCataloguesOfMovedLinesInFixedOrder() throws Exception {
+        // opposite orders would deadlock if the locks were acquired in the given order
+        CompletableFuture<Void> forward = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 100; i++) {
+                registry.update("1", Arrays.asList("catalogue-a", "catalogue-b"), () -> null);
+            }
+        });
+        CompletableFuture<Void> backward = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 100; i++) {
+                registry.update("1", Arrays.asList("catalogue-b", "catalogue-a"), () -> null);
+            }
+        });
+        CompletableFuture.allOf(forward, backward).get(30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(200, registry.getVersion("1", "catalogue-a"));
+        Assert.assertEquals(200, registry.getVersion("1", "catalogue-b"));
+    }
+
+    /**
+     * Inserts a line on the connection of the current transaction, as the repositories joining the transaction do
+     */
+    private String insertLine(String id) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO catalogue_line (id) VALUES ('" + id + "')");
+            return id;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private int countLines() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM catalogue_line")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
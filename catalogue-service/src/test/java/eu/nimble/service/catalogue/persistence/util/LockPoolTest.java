@@ -0,0 +1,186 @@
+package eu.nimble.service.catalogue.persistence.util;
+
+import eu.nimble.service.catalogue.exception.CatalogueServiceException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+
+public class LockPoolTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LockPoolTest.class);
+
+    @Test
+    public void stripesLocksPerLockClass() throws Exception {
+        LockPool lockPool = createLockPool("local", 4, new AdvisoryLockDatabaseStub().createDataSource());
+
+        Assert.assertSame(lockPool.getLockForParty("1"), lockPool.getLockForParty("1"));
+        Assert.assertNotSame(lockPool.getLockForParty("1"), lockPool.getLockForCatalogue("1"));
+    }
+
+    @Test
+    public void recordsWaitAndHoldTimes() throws Exception {
+        LockPool lockPool = createLockPool("local", 4, new AdvisoryLockDatabaseStub().createDataSource());
+        ReadWriteLock lock = lockPool.getLockForCatalogue("uuid");
+
+        lock.writeLock().lock();
+        // reentrant acquisitions are recorded as a single hold
+        lock.writeLock().lock();
+        lock.writeLock().unlock();
+        lock.writeLock().unlock();
+        lock.readLock().lock();
+        lock.readLock().unlock();
+
+        LockPool.LockStatistics statistics = lockPool.getStatistics(LockPool.LockClass.CATALOGUE);
+        Assert.assertEquals(3, statistics.getAcquisitions());
+        Assert.assertEquals(1, statistics.getWriteHolds());
+        Assert.assertEquals(0, lockPool.getStatistics(LockPool.LockClass.PARTY).getAcquisitions());
+    }
+
+    @Test
+    public void holdsAdvisoryLockWithLocalLock() throws Exception {
+        AdvisoryLockDatabaseStub database = new AdvisoryLockDatabaseStub();
+        LockPool lockPool = createLockPool("database", 1, database.createDataSource());
+        ReadWriteLock lock = lockPool.getLockForParty("1");
+
+        lock.writeLock().lock();
+        lock.writeLock().lock();
+        Assert.assertFalse(database.isUnlocked());
+        lock.writeLock().unlock();
+        // the advisory lock is held until the outermost acquisition is released
+        Assert.assertFalse(database.isUnlocked());
+        // downgrade to the read lock
+        lock.readLock().lock();
+        lock.writeLock().unlock();
+        Assert.assertFalse(database.isUnlocked());
+        lock.readLock().unlock();
+        Assert.assertTrue(database.isUnlocked());
+    }
+
+    @Test
+    public void releasesLocalLockWhenAdvisoryLockIsNotAcquired() throws Exception {
+        AdvisoryLockDatabaseStub database = new AdvisoryLockDatabaseStub();
+        LockPool lockPool = createLockPool("database", 1, database.createDataSource());
+        ReadWriteLock lock = lockPool.getLockForParty("1");
+        database.lock(AdvisoryLockDatabaseStub.OTHER_SESSION, false);
+
+        Assert.assertFalse(lock.writeLock().tryLock(100, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(lock.readLock().tryLock());
+        try {
+            lock.writeLock().lock();
+            Assert.fail("The lock should time out");
+        } catch (CatalogueServiceException e) {
+            // expected
+        }
+
+        // the local lock is released after the failures, so another thread of this instance gets the lock
+        database.unlock(AdvisoryLockDatabaseStub.OTHER_SESSION);
+        Assert.assertTrue(CompletableFuture.supplyAsync(() -> {
+            boolean locked = lock.writeLock().tryLock();
+            if (locked) {
+                lock.writeLock().unlock();
+            }
+            return locked;
+        }).get());
+        Assert.assertTrue(database.isUnlocked());
+    }
+
+    // contention benchmark: threads updating random pairs of catalogues, e.g. moving lines between them, while holding
+    // the locks of both catalogues for a millisecond. The striped locks let the updates of different catalogues run
+    // concurrently, while a single stripe serializes all of them.
+    @Test
+    public void stripedLocksReduceContention() throws Exception {
+        long singleStripeMillis = runContentionBenchmark(1);
+        long stripedMillis = runContentionBenchmark(256);
+        logger.info("Contended catalogue updates took {} ms with a single stripe and {} ms with 256 stripes", singleStripeMillis, stripedMillis);
+        Assert.assertTrue(stripedMillis < singleStripeMillis);
+    }
+
+    private static long runContentionBenchmark(int stripeCount) throws Exception {
+        int threadCount = 8;
+        int updatesPerThread = 50;
+        int catalogueCount = 64;
+        LockPool lockPool = createLockPool("local", stripeCount, new AdvisoryLockDatabaseStub().createDataSource());
+        // number of updates per catalogue, modified only under the locks of the catalogues
+        int[] updates = new int[catalogueCount];
+        AtomicInteger expectedUpdates = new AtomicInteger();
+        AtomicLong acquisitions = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        long start = System.nanoTime();
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                Random random = new Random(i);
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < updatesPerThread; j++) {
+                        int first = random.nextInt(catalogueCount);
+                        int second = random.nextInt(catalogueCount);
+                        List<ReadWriteLock> locks = lockPool.getLocksForCatalogues(Arrays.asList("uuid-" + first, "uuid-" + second));
+                        for (ReadWriteLock lock : locks) {
+                            lock.writeLock().lock();
+                        }
+                        try {
+                            updates[first]++;
+                            if (second != first) {
+                                updates[second]++;
+                            }
+                            Thread.sleep(1);
+                        } finally {
+                            for (int k = locks.size() - 1; k >= 0; k--) {
+                                locks.get(k).writeLock().unlock();
+                            }
+                        }
+                        expectedUpdates.addAndGet(second != first ? 2 : 1);
+                        acquisitions.addAndGet(locks.size());
+                    }
+                    return null;
+                }));
+            }
+            // a deadlock between the threads fails the benchmark
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // no update is lost, i.e. the updates of a catalogue are not run concurrently
+        int totalUpdates = 0;
+        for (int catalogueUpdates : updates) {
+            totalUpdates += catalogueUpdates;
+        }
+        Assert.assertEquals(expectedUpdates.get(), totalUpdates);
+        LockPool.LockStatistics statistics = lockPool.getStatistics(LockPool.LockClass.CATALOGUE);
+        Assert.assertEquals(acquisitions.get(), statistics.getAcquisitions());
+        logger.info("{} stripes: {} updates in {} ms, total wait: {} ms, max wait: {} ms", stripeCount, threadCount * updatesPerThread,
+                millis, statistics.getTotalWaitMillis(), statistics.getMaxWaitMillis());
+        return millis;
+    }
+
+    private static LockPool createLockPool(String provider, int stripeCount, DataSource dataSource) {
+        LockPool lockPool = new LockPool();
+        ReflectionTestUtils.setField(lockPool, "stripeCount", stripeCount);
+        ReflectionTestUtils.setField(lockPool, "provider", provider);
+        ReflectionTestUtils.setField(lockPool, "timeoutSeconds", 1L);
+        ReflectionTestUtils.setField(lockPool, "ubldbDataSource", dataSource);
+        ReflectionTestUtils.invokeMethod(lockPool, "init");
+        return lockPool;
+    }
+}
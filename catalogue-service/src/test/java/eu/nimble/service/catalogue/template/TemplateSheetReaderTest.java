@@ -0,0 +1,123 @@
+package eu.nimble.service.catalogue.template;
+
+import eu.nimble.service.catalogue.exception.TemplateParseException;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TemplateSheetReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File template;
+
+    @Before
+    public void setUp() throws Exception {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        Sheet metadata = workbook.createSheet("Metadata");
+        metadata.createRow(0).createCell(0).setCellValue("0173-1#01-AAA004#001");
+
+        Sheet products = workbook.createSheet("Product Properties");
+        Row header = products.createRow(0);
+        header.createCell(0).setCellValue("Manufacturer item identification");
+        header.createCell(2).setCellValue("Price");
+
+        Row product = products.createRow(3);
+        product.createCell(0).setCellValue("item-1");
+        // the number format of the cell should not be applied
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(workbook.createDataFormat().getFormat("0.00"));
+        Cell price = product.createCell(2);
+        price.setCellValue(12.5);
+        price.setCellStyle(style);
+        product.createCell(3).setCellValue(3);
+
+        template = temporaryFolder.newFile("template.xlsx");
+        try (OutputStream outputStream = new FileOutputStream(template)) {
+            workbook.write(outputStream);
+        }
+        workbook.close();
+    }
+
+    @Test
+    public void readsRowsInSheetOrder() throws Exception {
+        List<TemplateRow> rows = new ArrayList<>();
+        try (TemplateSheetReader reader = new TemplateSheetReader(template)) {
+            reader.readSheet("Product Properties", rows::add);
+        }
+
+        Assert.assertEquals(2, rows.size());
+        TemplateRow header = rows.get(0);
+        Assert.assertEquals(0, header.getRowNum());
+        Assert.assertEquals("Manufacturer item identification", header.getValue(0));
+        Assert.assertEquals("", header.getValue(1));
+        Assert.assertEquals(3, header.getLastCellNum());
+
+        TemplateRow product = rows.get(1);
+        Assert.assertEquals(3, product.getRowNum());
+        Assert.assertEquals("item-1", product.getValue(0));
+        Assert.assertEquals("12.5", product.getValue(2));
+        Assert.assertEquals("3", product.getValue(3));
+        Assert.assertEquals(4, product.getLastCellNum());
+    }
+
+    @Test
+    public void readsRowsOfAnySheet() throws Exception {
+        try (TemplateSheetReader reader = new TemplateSheetReader(template)) {
+            List<TemplateRow> rows = reader.readRows("Metadata");
+            Assert.assertEquals(1, rows.size());
+            Assert.assertEquals("0173-1#01-AAA004#001", rows.get(0).getValue(0));
+            // the same reader can be used for multiple sheets
+            Assert.assertEquals(2, reader.readRows("Product Properties").size());
+        }
+    }
+
+    @Test
+    public void passesHandlerExceptionsToCaller() throws Exception {
+        List<Integer> handledRows = new ArrayList<>();
+        try (TemplateSheetReader reader = new TemplateSheetReader(template)) {
+            reader.readSheet("Product Properties", row -> {
+                handledRows.add(row.getRowNum());
+                throw new TemplateParseException("Invalid row: " + row.getRowNum());
+            });
+            Assert.fail("The exception of the row handler should be thrown");
+        } catch (TemplateParseException e) {
+            Assert.assertEquals("Invalid row: 0", e.getMessage());
+        }
+        // parsing stops at the first failing row
+        Assert.assertEquals(Arrays.asList(0), handledRows);
+    }
+
+    @Test
+    public void rejectsMissingSheetsAndInvalidFiles() throws Exception {
+        try (TemplateSheetReader reader = new TemplateSheetReader(template)) {
+            reader.readSheet("Trading and Delivery Terms", row -> {});
+            Assert.fail("A missing sheet should be rejected");
+        } catch (TemplateParseException e) {
+            Assert.assertEquals("No 'Trading and Delivery Terms' tab in the submitted template", e.getMessage());
+        }
+
+        File invalidTemplate = temporaryFolder.newFile("invalid.xlsx");
+        try {
+            new TemplateSheetReader(invalidTemplate);
+            Assert.fail("An invalid template should be rejected");
+        } catch (TemplateParseException e) {
+            Assert.assertEquals("Invalid format for the submitted template", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package eu.nimble.service.catalogue.upload;
+
+import eu.nimble.service.catalogue.exception.UploadSessionClosedException;
+import eu.nimble.service.catalogue.model.upload.UploadJob;
+import eu.nimble.service.catalogue.model.upload.UploadSession;
+import eu.nimble.utility.ExecutionContext;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ChunkedUploadManagerTest {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private UploadJobManager uploadJobManager;
+    private ChunkedUploadManager chunkedUploadManager;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        uploadJobManager = new UploadJobManager();
+        ReflectionTestUtils.setField(uploadJobManager, "stagingDirectory", temporaryFolder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(uploadJobManager, "parallelism", 1);
+        ReflectionTestUtils.setField(uploadJobManager, "queueCapacity", 1);
+        ReflectionTestUtils.setField(uploadJobManager, "jobRetentionMinutes", 60L);
+        ReflectionTestUtils.setField(uploadJobManager, "executionContext", Mockito.mock(ExecutionContext.class));
+        ReflectionTestUtils.invokeMethod(uploadJobManager, "init");
+
+        chunkedUploadManager = new ChunkedUploadManager();
+        ReflectionTestUtils.setField(chunkedUploadManager, "chunkSizeInMB", 1);
+        ReflectionTestUtils.setField(chunkedUploadManager, "maxSizeInMB", 10L);
+        ReflectionTestUtils.setField(chunkedUploadManager, "sessionExpiryMinutes", 60L);
+        ReflectionTestUtils.setField(chunkedUploadManager, "maxSessions", 2);
+        ReflectionTestUtils.setField(chunkedUploadManager, "maxTotalSizeInMB", 3L);
+        ReflectionTestUtils.setField(chunkedUploadManager, "uploadJobManager", uploadJobManager);
+
+        // two chunks, the last one consisting of 10 bytes
+        content = new byte[CHUNK_SIZE + 10];
+        new Random(42).nextBytes(content);
+    }
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(uploadJobManager, "shutdown");
+    }
+
+    @Test
+    public void assemblesChunksSentInAnyOrder() throws Exception {
+        UploadSession session = chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", content.length);
+        Assert.assertEquals(2, session.getChunkCount());
+
+        writeChunk(session, 1);
+        Assert.assertEquals(0, session.getNextChunk());
+        writeChunk(session, 0);
+        Assert.assertTrue(session.isComplete());
+
+        AtomicReference<byte[]> processedContent = new AtomicReference<>();
+        UploadJob job = chunkedUploadManager.complete(session, (uploadJob, stagedFile) -> {
+            processedContent.set(Files.readAllBytes(stagedFile.toPath()));
+            return "catalogue-uuid";
+        });
+        awaitJob(job);
+
+        Assert.assertEquals(UploadJob.Status.COMPLETED, job.getStatus());
+        Assert.assertArrayEquals(content, processedContent.get());
+        Assert.assertNull(chunkedUploadManager.getSession(session.getSessionId()));
+        // the file is deleted by the job once it is processed
+        Assert.assertFalse(session.getStagedFile().exists());
+    }
+
+    @Test
+    public void keepsSessionWhenJobIsRejected() throws Exception {
+        UploadSession session = createCompleteSession();
+
+        // occupy the single worker and the single queue slot of the job manager
+        CountDownLatch latch = new CountDownLatch(1);
+        UploadJob runningJob = uploadJobManager.submit(UploadJob.Type.TEMPLATE, "1", new ByteArrayInputStream(new byte[1]), (uploadJob, stagedFile) -> {
+            latch.await();
+            return null;
+        });
+        UploadJob queuedJob = uploadJobManager.submit(UploadJob.Type.TEMPLATE, "1", new ByteArrayInputStream(new byte[1]), (uploadJob, stagedFile) -> null);
+        try {
+            chunkedUploadManager.complete(session, (uploadJob, stagedFile) -> null);
+            Assert.fail("The job should be rejected as the queue is full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertSame(session, chunkedUploadManager.getSession(session.getSessionId()));
+        Assert.assertTrue(session.getStagedFile().exists());
+
+        // the completion succeeds once the queue has space
+        latch.countDown();
+        awaitJob(runningJob);
+        awaitJob(queuedJob);
+        UploadJob job = chunkedUploadManager.complete(session, (uploadJob, stagedFile) -> "catalogue-uuid");
+        awaitJob(job);
+        Assert.assertEquals(UploadJob.Status.COMPLETED, job.getStatus());
+    }
+
+    @Test
+    public void rejectsChunksOfClosedSessions() throws Exception {
+        UploadSession session = chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", content.length);
+        writeChunk(session, 0);
+        chunkedUploadManager.abort(session);
+
+        Assert.assertNull(chunkedUploadManager.getSession(session.getSessionId()));
+        Assert.assertFalse(session.getStagedFile().exists());
+        try {
+            writeChunk(session, 1);
+            Assert.fail("The chunk of an aborted session should be rejected");
+        } catch (UploadSessionClosedException e) {
+            // expected
+        }
+        try {
+            chunkedUploadManager.complete(session, (uploadJob, stagedFile) -> null);
+            Assert.fail("An aborted session should not be completed");
+        } catch (UploadSessionClosedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void limitsOpenSessionsAndReservedSize() throws Exception {
+        UploadSession first = chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", 2 * CHUNK_SIZE);
+        // 3 MB can be reserved in total
+        assertRejected(2 * CHUNK_SIZE);
+        chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", CHUNK_SIZE);
+        // at most two sessions can be open
+        assertRejected(1);
+
+        // the reservation is released with the session
+        chunkedUploadManager.abort(first);
+        chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", 2 * CHUNK_SIZE);
+    }
+
+    @Test
+    public void removesExpiredSessions() throws Exception {
+        UploadSession session = chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", content.length);
+        ReflectionTestUtils.setField(chunkedUploadManager, "sessionExpiryMinutes", -1L);
+        ReflectionTestUtils.invokeMethod(chunkedUploadManager, "removeExpiredSessions");
+
+        Assert.assertNull(chunkedUploadManager.getSession(session.getSessionId()));
+        Assert.assertTrue(session.isClosed());
+        Assert.assertFalse(session.getStagedFile().exists());
+    }
+
+    private UploadSession createCompleteSession() throws Exception {
+        UploadSession session = chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", content.length);
+        writeChunk(session, 0);
+        writeChunk(session, 1);
+        return session;
+    }
+
+    private void writeChunk(UploadSession session, int index) throws Exception {
+        byte[] chunk = Arrays.copyOfRange(content, index * CHUNK_SIZE, Math.min(content.length, (index + 1) * CHUNK_SIZE));
+        chunkedUploadManager.writeChunk(session, index, new ByteArrayInputStream(chunk), DigestUtils.sha256Hex(chunk));
+    }
+
+    private void assertRejected(long size) throws Exception {
+        try {
+            chunkedUploadManager.createSession(UploadJob.Type.TEMPLATE, "1", "template.xlsx", size);
+            Assert.fail("The session should be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    private static void awaitJob(UploadJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(job.isFinished());
+    }
+}